@@ -0,0 +1,80 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.benchmark;
+
+import org.opentripplanner.ConstantsForTests;
+import org.opentripplanner.routing.algorithm.AStar;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.spt.ShortestPathTree;
+import org.opentripplanner.util.TestUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transit searches on the Portland test graph, with both the map-based and the vertex-indexed shortest path tree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class AStarBenchmark {
+
+    @Param({"false", "true"})
+    public boolean indexedSearch;
+
+    private Graph graph;
+
+    private Vertex origin;
+
+    private Vertex destination;
+
+    private long startTime;
+
+    @Setup
+    public void setup() {
+        graph = ConstantsForTests.getInstance().getPortlandGraph();
+        String feedId = graph.getFeedIds().iterator().next();
+        origin = graph.getVertex(feedId + ":8371");
+        destination = graph.getVertex(feedId + ":8374");
+        startTime = TestUtils.dateInSeconds("America/Los_Angeles", 2009, 11, 1, 12, 34, 25);
+    }
+
+    @Benchmark
+    public ShortestPathTree transitSearch() {
+        RoutingRequest options = new RoutingRequest();
+        options.dateTime = startTime;
+        options.worstTime = startTime + 60 * 60;
+        options.indexedSearch = indexedSearch;
+        options.setRoutingContext(graph, origin, destination);
+        ShortestPathTree spt = new AStar().getShortestPathTree(options);
+        options.cleanup();
+        return spt;
+    }
+
+}
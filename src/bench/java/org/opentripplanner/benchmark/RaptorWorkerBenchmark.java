@@ -0,0 +1,98 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.benchmark;
+
+import gnu.trove.map.TIntIntMap;
+import org.joda.time.LocalDate;
+import org.opentripplanner.analyst.cluster.TaskStatistics;
+import org.opentripplanner.api.parameter.QualifiedModeSet;
+import org.opentripplanner.profile.PropagatedTimesStore;
+import org.opentripplanner.profile.ProfileRequest;
+import org.opentripplanner.profile.RaptorWorker;
+import org.opentripplanner.profile.RaptorWorkerData;
+import org.opentripplanner.profile.RepeatedRaptorProfileRouter;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.opentripplanner.graph_builder.module.FakeGraph.*;
+
+/**
+ * A full two-hour RAPTOR departure window on the Columbus test graph with several scheduled and frequency lines.
+ * The RaptorWorkerData and access times are computed once, so only the RAPTOR rounds and propagation are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RaptorWorkerBenchmark {
+
+    private Graph graph;
+
+    private ProfileRequest request;
+
+    private RaptorWorkerData data;
+
+    private TIntIntMap accessTimes;
+
+    private int[] nonTransitTimes;
+
+    @Setup
+    public void setup() throws Exception {
+        graph = buildGraphNoTransit();
+        addRegularStopGrid(graph);
+        addTransitMultipleLines(graph);
+        link(graph);
+        graph.index(new DefaultStreetVertexIndexFactory());
+
+        request = new ProfileRequest();
+        request.fromLon = request.toLon = -83.0118;
+        request.fromLat = request.toLat = 39.9908;
+        request.date = new LocalDate(2015, 9, 17);
+        request.walkSpeed = 1.3f;
+        request.fromTime = 7 * 3600;
+        request.toTime = 9 * 3600;
+        request.maxWalkTime = 20;
+        request.transitModes = new TraverseModeSet("TRANSIT");
+        request.accessModes = request.egressModes = request.directModes = new QualifiedModeSet("WALK");
+
+        data = RepeatedRaptorProfileRouter.getRaptorWorkerData(request, graph, null, new TaskStatistics());
+        accessTimes = new RepeatedRaptorProfileRouter(graph, request).findInitialStops(false, data);
+        nonTransitTimes = new int[Vertex.getMaxIndex()];
+        Arrays.fill(nonTransitTimes, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public PropagatedTimesStore runRaptor() {
+        RaptorWorker worker = new RaptorWorker(data, request);
+        return worker.runRaptor(graph, accessTimes, nonTransitTimes, new TaskStatistics());
+    }
+
+}
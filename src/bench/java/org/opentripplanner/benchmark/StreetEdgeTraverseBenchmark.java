@@ -0,0 +1,81 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.benchmark;
+
+import org.opentripplanner.graph_builder.module.FakeGraph;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.graph.Graph;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Traversal of individual street edges in the Columbus test graph, which is the innermost operation of every street
+ * search. Each invocation traverses a fixed sample of edges, and results are reported per edge.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StreetEdgeTraverseBenchmark {
+
+    private static final int N_EDGES = 10000;
+
+    @Param({"WALK", "BICYCLE", "CAR"})
+    public TraverseMode mode;
+
+    private List<StreetEdge> edges = new ArrayList<>();
+
+    private List<org.opentripplanner.routing.core.State> initialStates = new ArrayList<>();
+
+    @Setup
+    public void setup() throws Exception {
+        Graph graph = FakeGraph.buildGraphNoTransit();
+        RoutingRequest options = new RoutingRequest(mode);
+        options.setDummyRoutingContext(graph);
+        for (StreetEdge edge : graph.getStreetEdges()) {
+            edges.add(edge);
+            initialStates.add(new org.opentripplanner.routing.core.State(edge.getFromVertex(), options));
+            if (edges.size() == N_EDGES) break;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N_EDGES)
+    public void traverse(Blackhole blackhole) {
+        // The graph may have fewer edges than N_EDGES, in which case the per-edge time is slightly underestimated.
+        for (int i = 0; i < edges.size(); i++) {
+            blackhole.consume(edges.get(i).traverse(initialStates.get(i)));
+        }
+    }
+
+}
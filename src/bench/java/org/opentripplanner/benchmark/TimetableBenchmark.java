@@ -0,0 +1,102 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.benchmark;
+
+import org.opentripplanner.ConstantsForTests;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.ServiceDay;
+import org.opentripplanner.routing.edgetype.Timetable;
+import org.opentripplanner.routing.edgetype.TripPattern;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+import org.opentripplanner.routing.trippattern.TripTimes;
+import org.opentripplanner.util.TestUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Boarding and alighting searches in the scheduled timetable of the busiest pattern in the Portland test graph.
+ * This is what every board and alight edge traversal does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TimetableBenchmark {
+
+    private Timetable timetable;
+
+    private ServiceDay serviceDay;
+
+    private org.opentripplanner.routing.core.State[] states;
+
+    private int stopIndex;
+
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        Graph graph = ConstantsForTests.getInstance().getPortlandGraph();
+        if (graph.index == null) {
+            graph.index(new DefaultStreetVertexIndexFactory());
+        }
+        TripPattern busiest = null;
+        for (TripPattern pattern : graph.index.patternForId.values()) {
+            if (busiest == null || pattern.scheduledTimetable.tripTimes.size() >
+                    busiest.scheduledTimetable.tripTimes.size()) {
+                busiest = pattern;
+            }
+        }
+        timetable = busiest.scheduledTimetable;
+        stopIndex = busiest.getStops().size() / 2;
+
+        RoutingRequest options = new RoutingRequest();
+        options.dateTime = TestUtils.dateInSeconds("America/Los_Angeles", 2009, 11, 2, 0, 0, 0);
+        options.setDummyRoutingContext(graph);
+        serviceDay = new ServiceDay(graph, options.dateTime, graph.getCalendarService(),
+                busiest.route.getAgency().getId());
+        // One search every ten minutes across the service day
+        states = new org.opentripplanner.routing.core.State[24 * 6];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = new org.opentripplanner.routing.core.State(
+                    graph.index.stopVertexForStop.get(busiest.getStop(stopIndex)),
+                    options.dateTime + i * 600, options);
+        }
+    }
+
+    @Benchmark
+    public TripTimes boardingSearch() {
+        org.opentripplanner.routing.core.State s0 = states[next++ % states.length];
+        return timetable.getNextTrip(s0, serviceDay, stopIndex, true);
+    }
+
+    @Benchmark
+    public TripTimes alightingSearch() {
+        org.opentripplanner.routing.core.State s0 = states[next++ % states.length];
+        return timetable.getNextTrip(s0, serviceDay, stopIndex, false);
+    }
+
+}
@@ -0,0 +1,83 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.benchmark;
+
+import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.graph_builder.module.FakeGraph;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+import org.opentripplanner.routing.vertextype.TemporaryVertex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Linking origin coordinates into the Columbus street graph, as done at the start of every plan request.
+ * The temporary vertices and edges are disposed of after each operation, which is included in the measurement
+ * because every request must do the same.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class VertexLinkingBenchmark {
+
+    private static final int N_LOCATIONS = 1000;
+
+    private Graph graph;
+
+    private RoutingRequest options;
+
+    private GenericLocation[] locations = new GenericLocation[N_LOCATIONS];
+
+    private int next = 0;
+
+    @Setup
+    public void setup() throws Exception {
+        graph = FakeGraph.buildGraphNoTransit();
+        graph.index(new DefaultStreetVertexIndexFactory());
+        options = new RoutingRequest();
+        // Fixed seed so every run links the same points
+        Random random = new Random(42);
+        for (int i = 0; i < N_LOCATIONS; i++) {
+            locations[i] = new GenericLocation(39.9908 + (random.nextDouble() - 0.5) * 0.02,
+                    -83.0118 + (random.nextDouble() - 0.5) * 0.02);
+        }
+    }
+
+    @Benchmark
+    public Vertex getVertexForLocation() {
+        GenericLocation location = locations[next++ % N_LOCATIONS];
+        Vertex vertex = graph.streetIndex.getVertexForLocation(location, options, false);
+        if (vertex instanceof TemporaryVertex) {
+            ((TemporaryVertex) vertex).dispose();
+        }
+        return vertex;
+    }
+
+}
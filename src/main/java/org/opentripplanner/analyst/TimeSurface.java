@@ -1,9 +1,8 @@
 package org.opentripplanner.analyst;
 
 import com.vividsolutions.jts.geom.Coordinate;
-import gnu.trove.iterator.TObjectIntIterator;
-import gnu.trove.map.TObjectIntMap;
-import gnu.trove.map.hash.TObjectIntHashMap;
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
 import org.apache.commons.math3.util.FastMath;
 import org.opentripplanner.analyst.request.SampleGridRenderer;
 import org.opentripplanner.analyst.request.SampleGridRenderer.WTWD;
@@ -21,12 +20,15 @@ import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.routing.spt.ShortestPathTree;
 import org.opentripplanner.routing.vertextype.StreetVertex;
+import org.opentripplanner.routing.vertextype.TemporaryVertex;
 import org.opentripplanner.routing.vertextype.TransitStop;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.function.ObjIntConsumer;
 
 import static org.apache.commons.math3.util.FastMath.toRadians;
 
@@ -41,7 +43,26 @@ public class TimeSurface implements Serializable {
 
     public final String routerId;
     public final int id;
-    public final TObjectIntMap<Vertex> times = new TObjectIntHashMap<Vertex>(500000, 0.5f, UNREACHABLE);
+
+    /**
+     * Travel times in seconds, by vertex index minus timesOffset. Only the range of indexes between the first and the
+     * last vertex reached is stored. This is much smaller than a hash map keyed on vertices for all but the most
+     * scattered surfaces, and lookups (one per pixel when rendering tiles) do not need any hashing.
+     */
+    private int[] times = new int[0];
+    private int timesOffset = 0;
+
+    /**
+     * Vertices from this index on are not in the graph (e.g. real-time bike stations and the streets they split) and
+     * have ever-growing indexes, so their times are kept aside instead of stretching the range of the time array.
+     */
+    private int indexLimit = Integer.MAX_VALUE;
+    private TIntIntMap extraTimes;
+
+    /** The vertices that have a time, in the order they were reached, to iterate over the surface. */
+    private Vertex[] vertices = new Vertex[0];
+    private int vertexCount = 0;
+
     public final double lat, lon;
     public int cutoffMinutes = 90; // this should really be copied from the data source but the new repeated raptor does not do so
     public long dateTime;
@@ -68,17 +89,25 @@ public class TimeSurface implements Serializable {
         // Here we use the key "default" unlike the graphservice which substitutes in the default ID.
         // We don't want to keep that default in sync across two modules.
         this.routerId = routerId;
+        if (spt.getOptions().rctx != null) {
+            indexLimit = spt.getOptions().rctx.graph.getVertexIndexLimit();
+        }
         long t0 = System.currentTimeMillis();
         for (State state : spt.getAllStates()) {
             Vertex vertex = state.getVertex();
+            // The origin and the streets split to reach it only exist for this request.
+            if (vertex instanceof TemporaryVertex) {
+                continue;
+            }
             if (vertex instanceof StreetVertex || vertex instanceof TransitStop) {
-                int existing = times.get(vertex);
+                int existing = getTime(vertex);
                 int t = (int) state.getActiveTime();
                 if (existing == UNREACHABLE || existing > t) {
-                    times.put(vertex, t);
+                    setTime(vertex, t);
                 }
             }
         }
+        trim();
         // TODO make this work as either to or from query
         GenericLocation from = spt.getOptions().from;
         this.lon = from.lng;
@@ -100,6 +129,7 @@ public class TimeSurface implements Serializable {
         id = makeUniqueId();
         dateTime = req.fromTime; // FIXME
         routerId = profileRouter.graph.routerId;
+        indexLimit = profileRouter.graph.getVertexIndexLimit();
         cutoffMinutes = profileRouter.MAX_DURATION / 60;
         walkSpeed = profileRouter.request.walkSpeed;
     }
@@ -114,6 +144,7 @@ public class TimeSurface implements Serializable {
         id = makeUniqueId();
         dateTime = req.fromTime; // FIXME
         routerId = profileRouter.graph.routerId;
+        indexLimit = profileRouter.graph.getVertexIndexLimit();
         cutoffMinutes = profileRouter.MAX_DURATION / 60;
         walkSpeed = profileRouter.request.walkSpeed;
     }
@@ -126,6 +157,7 @@ public class TimeSurface implements Serializable {
         id = makeUniqueId();
         dateTime = req.fromTime; // FIXME
         routerId = profileRouter.graph.routerId;
+        indexLimit = profileRouter.graph.getVertexIndexLimit();
     }
 
     public TimeSurface(RepeatedRaptorProfileRouter profileRouter) {
@@ -135,6 +167,7 @@ public class TimeSurface implements Serializable {
         id = makeUniqueId();
         dateTime = req.fromTime; // FIXME
         routerId = profileRouter.graph.routerId;
+        indexLimit = profileRouter.graph.getVertexIndexLimit();
         cutoffMinutes = 120; // FIXME is there any well-defined cutoff? This is needed for generating isochrone curves.
     }
 
@@ -145,10 +178,13 @@ public class TimeSurface implements Serializable {
         for (Map.Entry<Vertex, TimeRange> vtr : profileRouter.propagatedTimes.entrySet()) {
             Vertex v = vtr.getKey();
             TimeRange tr = vtr.getValue();
-            minSurface.times.put(v, tr.min);
-            avgSurface.times.put(v, tr.avg);
-            maxSurface.times.put(v, tr.max);
+            minSurface.setTime(v, tr.min);
+            avgSurface.setTime(v, tr.avg);
+            maxSurface.setTime(v, tr.max);
         }
+        minSurface.trim();
+        avgSurface.trim();
+        maxSurface.trim();
         RangeSet result = new RangeSet();
         minSurface.description = "Travel times assuming best luck (never waiting for a transfer).";
         avgSurface.description = "Expected travel times (average wait for every transfer).";
@@ -166,8 +202,107 @@ public class TimeSurface implements Serializable {
         public TimeSurface max;
     }
 
+    /** @return the travel time in seconds to the given vertex, or UNREACHABLE. */
     public int getTime(Vertex v) {
-        return times.get(v);
+        int index = v.getIndex();
+        if (index >= indexLimit) {
+            return extraTimes == null || !extraTimes.containsKey(index) ? UNREACHABLE : extraTimes.get(index);
+        }
+        int i = index - timesOffset;
+        return i >= 0 && i < times.length ? times[i] : UNREACHABLE;
+    }
+
+    /** Set the travel time in seconds to the given vertex, which must not be UNREACHABLE. */
+    public void setTime(Vertex v, int time) {
+        if (time == UNREACHABLE) {
+            throw new IllegalArgumentException("Vertices cannot be removed from a time surface.");
+        }
+        int index = v.getIndex();
+        if (index >= indexLimit) {
+            if (extraTimes == null) {
+                extraTimes = new TIntIntHashMap();
+            }
+            if (!extraTimes.containsKey(index)) {
+                addVertex(v);
+            }
+            extraTimes.put(index, time);
+            return;
+        }
+        if (index < timesOffset || index >= timesOffset + times.length) {
+            cover(index);
+        }
+        int i = index - timesOffset;
+        if (times[i] == UNREACHABLE) {
+            addVertex(v);
+        }
+        times[i] = time;
+    }
+
+    private void addVertex(Vertex v) {
+        if (vertexCount == vertices.length) {
+            vertices = Arrays.copyOf(vertices, Math.max(16, vertexCount * 2));
+        }
+        vertices[vertexCount++] = v;
+    }
+
+    /** Grow the time array so that it covers the given vertex index, leaving some room to grow further. */
+    private void cover(int index) {
+        int start = timesOffset;
+        int end = timesOffset + times.length;
+        int room = Math.max(16, times.length / 2);
+        int newStart, newEnd;
+        if (times.length == 0) {
+            newStart = index;
+            newEnd = index + room;
+        } else {
+            newStart = index < start ? Math.max(0, index - room) : start;
+            newEnd = index >= end ? index + 1 + room : end;
+        }
+        // never leave room past the graph's own indexes, which are all below the limit
+        newEnd = Math.min(newEnd, indexLimit);
+        int[] newTimes = new int[newEnd - newStart];
+        Arrays.fill(newTimes, UNREACHABLE);
+        if (times.length > 0) {
+            // an empty array has no meaningful offset, and arraycopy rejects a negative position even for no elements
+            System.arraycopy(times, 0, newTimes, start - newStart, times.length);
+        }
+        times = newTimes;
+        timesOffset = newStart;
+    }
+
+    /**
+     * Release the room left for growth once all the times are set. The surface can still be modified afterward.
+     */
+    public void trim() {
+        vertices = Arrays.copyOf(vertices, vertexCount);
+        int first = Integer.MAX_VALUE;
+        int last = Integer.MIN_VALUE;
+        for (int v = 0; v < vertexCount; v++) {
+            int index = vertices[v].getIndex();
+            if (index < indexLimit) {
+                first = Math.min(first, index);
+                last = Math.max(last, index);
+            }
+        }
+        if (last < first) {
+            times = new int[0];
+            timesOffset = 0;
+            return;
+        }
+        times = Arrays.copyOfRange(times, first - timesOffset, last + 1 - timesOffset);
+        timesOffset = first;
+    }
+
+    /** @return the number of vertices that have a travel time in this surface. */
+    public int countReached() {
+        return vertexCount;
+    }
+
+    /** Call the given function with every vertex that has a travel time, and that time. */
+    public void forEachTime(ObjIntConsumer<Vertex> consumer) {
+        for (int v = 0; v < vertexCount; v++) {
+            consumer.accept(vertices[v], getTime(vertices[v]));
+        }
     }
 
     private synchronized int makeUniqueId() {
@@ -210,15 +345,12 @@ public class TimeSurface implements Serializable {
         final double cosLat = FastMath.cos(toRadians(coordinateOrigin.y));
         double dY = Math.toDegrees(gridSizeMeters / SphericalDistanceLibrary.RADIUS_OF_EARTH_IN_M);
         double dX = dY / cosLat;
-        sampleGrid = new SparseMatrixZSampleGrid<WTWD>(16, this.times.size(), dX, dY, coordinateOrigin);
+        sampleGrid = new SparseMatrixZSampleGrid<WTWD>(16, countReached(), dX, dY, coordinateOrigin);
         AccumulativeGridSampler.AccumulativeMetric<WTWD> metric = new SampleGridRenderer.WTWDAccumulativeMetric(cosLat, D0, V0, gridSizeMeters);
         AccumulativeGridSampler<WTWD> sampler = new AccumulativeGridSampler<WTWD>(sampleGrid, metric);
         // Iterate over every vertex in this timesurface, adding it to the ZSampleGrid
         // TODO propagation along street geometries could happen at this stage, rather than when the SPT is still available.
-        for (TObjectIntIterator<Vertex> iter = times.iterator(); iter.hasNext(); ) {
-            iter.advance();
-            Vertex vertex = iter.key();
-            int time = iter.value();
+        forEachTime((vertex, time) -> {
             WTWD z = new WTWD();
             z.w = 1.0;
             z.d = 0.0;
@@ -226,7 +358,7 @@ public class TimeSurface implements Serializable {
             z.wBoardings = 0; // unused
             z.wWalkDist = 0; // unused
             sampler.addSamplingPoint(vertex.getCoordinate(), z, V0);
-        }
+        });
         sampler.close();
         long t1 = System.currentTimeMillis();
         LOG.info("Made scalar SampleGrid from TimeSurface in {} msec.", (int) (t1 - t0));
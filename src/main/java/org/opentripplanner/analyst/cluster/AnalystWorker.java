@@ -11,8 +11,6 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
@@ -34,7 +32,6 @@ import org.opentripplanner.api.model.JodaLocalDateSerializer;
 import org.opentripplanner.api.model.QualifiedModeSetSerializer;
 import org.opentripplanner.api.model.TraverseModeSetSerializer;
 import org.opentripplanner.common.MavenVersion;
-import org.opentripplanner.profile.RaptorWorkerData;
 import org.opentripplanner.profile.RepeatedRaptorProfileRouter;
 import org.opentripplanner.routing.graph.Graph;
 import org.slf4j.Logger;
@@ -113,10 +110,8 @@ public class AnalystWorker implements Runnable {
 
     static final HttpClient httpClient;
 
-    /** Cache RAPTOR data by Job ID */
-    private Cache<String, RaptorWorkerData> workerDataCache = CacheBuilder.newBuilder()
-            .maximumSize(200)
-            .build();
+    /** Cache RAPTOR data across tasks and jobs with the same parameters. Created with the object mapper. */
+    private RaptorWorkerDataCache workerDataCache;
 
     static {
         PoolingHttpClientConnectionManager mgr = new PoolingHttpClientConnectionManager();
@@ -225,6 +220,8 @@ public class AnalystWorker implements Runnable {
 
         objectMapper.registerModule(new GeoJsonModule());
 
+        workerDataCache = new RaptorWorkerDataCache(objectMapper);
+
         instanceType = getInstanceType();
     }
 
@@ -394,13 +391,12 @@ public class AnalystWorker implements Runnable {
             // This is only used for multi-point requests. Single-point requests are assumed to be continually
             // changing, so we create throw-away RAPTOR tables for them.
             // Ideally we'd want this cacheing to happen transparently inside the RepeatedRaptorProfileRouter,
-            // but the RepeatedRaptorProfileRouter doesn't know the job ID or other information from the cluster request.
-            // It would be possible to just supply the cache _key_ as a way of saying that the cache should be used.
-            // But then we'd need to pass in both the cache and the key, which is weird.
+            // but the RepeatedRaptorProfileRouter doesn't know the graph ID or destination point set of the cluster request,
+            // which are part of the cache key along with the request parameters.
             if (transit && !singlePoint) {
                 long dataStart = System.currentTimeMillis();
-                router.raptorWorkerData = workerDataCache.get(clusterRequest.jobId, () -> RepeatedRaptorProfileRouter
-                        .getRaptorWorkerData(clusterRequest.profileRequest, graph, sampleSet, ts));
+                router.raptorWorkerData = workerDataCache.get(clusterRequest.graphId, graph,
+                        clusterRequest.destinationPointsetId, sampleSet, clusterRequest.profileRequest, ts);
                 ts.raptorData = (int) (System.currentTimeMillis() - dataStart);
             } else {
                 // The worker will generate a one-time throw-away table.
@@ -413,6 +409,8 @@ public class AnalystWorker implements Runnable {
             try {
                 // TODO when router runs, if there are no transit modes defined it should just skip the transit work.
                 router.includeTimes = clusterRequest.includeTimes;
+                // Single-point requests are interactive and few at a time, so let each of them use all the cores.
+                router.parallel = singlePoint;
                 envelope = router.route();
                 envelope.id = clusterRequest.id;
                 ts.success = true;
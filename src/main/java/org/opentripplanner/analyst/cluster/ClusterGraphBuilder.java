@@ -3,10 +3,7 @@ package org.opentripplanner.analyst.cluster;
 import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.s3.model.S3Object;
 import org.apache.commons.io.IOUtils;
-import org.opentripplanner.graph_builder.GraphBuilder;
 import org.opentripplanner.routing.graph.Graph;
-import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
-import org.opentripplanner.standalone.CommandLineParameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,9 +26,8 @@ public class ClusterGraphBuilder {
 
     private final String graphBucket;
 
-    String currGraphId = null;
-
-    Graph currGraph = null;
+    /** Graphs built on this worker, in memory and serialized on disk. */
+    private final TieredGraphCache graphCache = new TieredGraphCache(new File(GRAPH_CACHE_DIR, "graphs"));
 
     public ClusterGraphBuilder (String graphBucket) {
         this.graphBucket = graphBucket;
@@ -39,18 +35,13 @@ public class ClusterGraphBuilder {
 
     /**
      * Return the graph for the given unique identifier for graph builder inputs on S3.
-     * If this is the same as the last graph built, just return the pre-built graph.
+     * If this graph is in memory or was serialized to the local disk cache, return it from there.
      * If not, build the graph from the inputs, fetching them from S3 to the local cache as needed.
      */
     public synchronized Graph getGraph(String graphId) {
 
         LOG.info("Finding a graph for ID {}", graphId);
 
-        if (graphId.equals(currGraphId)) {
-            LOG.info("GraphID has not changed. Reusing the last graph that was built.");
-            return currGraph;
-        }
-
         // The location of the inputs that will be used to build this graph
         File graphDataDirectory = new File(GRAPH_CACHE_DIR, graphId);
 
@@ -83,19 +74,8 @@ public class ClusterGraphBuilder {
             LOG.info("Graph input files were found locally. Using these files from the cache.");
         }
 
-        // Now we have a local copy of these graph inputs. Make a graph out of them.
-        CommandLineParameters params = new CommandLineParameters();
-        params.build = new File(GRAPH_CACHE_DIR, graphId);
-        params.inMemory = true;
-        GraphBuilder graphBuilder = GraphBuilder.forDirectory(params, params.build);
-        graphBuilder.run();
-        Graph graph = graphBuilder.getGraph();
-        graph.routerId = graphId;
-        graph.index(new DefaultStreetVertexIndexFactory());
-        graph.index.clusterStopsAsNeeded();
-        this.currGraphId = graphId;
-        this.currGraph = graph;
-        return graph;
+        // Now we have a local copy of these graph inputs. Load or make a graph out of them.
+        return graphCache.get(graphId, graphDataDirectory);
 
     }
 
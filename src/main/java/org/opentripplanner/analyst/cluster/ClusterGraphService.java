@@ -5,16 +5,12 @@ import com.amazonaws.auth.AWSCredentials;
 import com.amazonaws.auth.profile.ProfileCredentialsProvider;
 import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.s3.model.S3Object;
-import com.google.common.collect.Maps;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
-import org.opentripplanner.graph_builder.GraphBuilder;
 import org.opentripplanner.routing.graph.Graph;
-import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
 import org.opentripplanner.routing.services.GraphService;
 import org.opentripplanner.routing.services.GraphSource;
 import org.opentripplanner.routing.services.GraphSource.Factory;
-import org.opentripplanner.standalone.CommandLineParameters;
 import org.opentripplanner.standalone.Router;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,7 +18,6 @@ import org.slf4j.LoggerFactory;
 import java.io.*;
 import java.util.Collection;
 import java.util.Enumeration;
-import java.util.Map;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
@@ -40,52 +35,27 @@ public class ClusterGraphService extends GraphService {
 
 	private static final Logger LOG = LoggerFactory.getLogger(GraphService.class);
 
-	// don't use more than 60% of free memory to cache graphs
-	private Map<String,Router> graphMap = Maps.newConcurrentMap();
+	// built graphs, in memory (using no more than 60% of the heap) and serialized to disk
+	private TieredGraphCache graphCache = new TieredGraphCache(new File(GRAPH_DIR, "serialized"));
 	
 	@Override
 	public synchronized Router getRouter(String graphId) {
 		
 		GRAPH_DIR.mkdirs();
 		
-		if(!graphMap.containsKey(graphId)) {
-			
-			try {
-				if (!bucketCached(graphId)) {
-					if(!workOffline) {
-						downloadGraphSourceFiles(graphId, GRAPH_DIR);
-					}
+		try {
+			if (!bucketCached(graphId)) {
+				if(!workOffline) {
+					downloadGraphSourceFiles(graphId, GRAPH_DIR);
 				}
-			} catch (IOException e) {
-				LOG.error("exception finding graph {}", graphId, e);
 			}
-			
-			CommandLineParameters params = new CommandLineParameters();
-			params.build = new File(GRAPH_DIR, graphId);
-			params.inMemory = true;
-			GraphBuilder gbt = GraphBuilder.forDirectory(params, params.build);
-			gbt.run();
-			
-			Graph g = gbt.getGraph();
-			
-			g.routerId = graphId;
-			
-			g.index(new DefaultStreetVertexIndexFactory());
-
-			g.index.clusterStopsAsNeeded();
-			
-			Router r = new Router(graphId, g);
-			
-			// temporarily disable graph caching so we don't run out of RAM.
-			// Long-term we will use an actual cache for this.
-			//graphMap.put(graphId,r);
-			
-			return r;
-					
-		}
-		else {
-			return graphMap.get(graphId);
+		} catch (IOException e) {
+			LOG.error("exception finding graph {}", graphId, e);
 		}
+		
+		Graph g = graphCache.get(graphId, new File(GRAPH_DIR, graphId));
+		
+		return new Router(graphId, g);
 	}
 
 	public ClusterGraphService(String s3CredentialsFilename, Boolean workOffline, String bucket) {
@@ -307,13 +277,14 @@ public class ClusterGraphService extends GraphService {
 
 	@Override
 	public int evictAll() {
-		graphMap.clear();
-		return 0;
+		int count = graphCache.getGraphIds().size();
+		graphCache.invalidateAll();
+		return count;
 	}
 
 	@Override
 	public Collection<String> getRouterIds() {
-		return graphMap.keySet();
+		return graphCache.getGraphIds();
 	}
 
 	@Override
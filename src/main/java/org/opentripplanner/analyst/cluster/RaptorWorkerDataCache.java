@@ -0,0 +1,132 @@
+package org.opentripplanner.analyst.cluster;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.Hashing;
+import org.opentripplanner.analyst.SampleSet;
+import org.opentripplanner.profile.ProfileRequest;
+import org.opentripplanner.profile.RaptorWorkerData;
+import org.opentripplanner.profile.RepeatedRaptorProfileRouter;
+import org.opentripplanner.routing.graph.Graph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * RAPTOR data tables shared by all the tasks on a worker. Building these tables (filtering every pattern to the time
+ * window, finding transfers and the targets near each stop) is the same for every origin of a job, and for every job
+ * on the same graph, destinations, date, time window, modes and scenario, so they are built once and kept in a
+ * cache weighed by their approximate size in memory.
+ *
+ * The tables refer to vertices and transit stops by index, so they are only valid for the graph object they were
+ * built from: if a graph is evicted from the graph cache and loaded again, its tables are built again.
+ */
+public class RaptorWorkerDataCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RaptorWorkerDataCache.class);
+
+    private final ObjectMapper objectMapper;
+
+    private final Cache<String, Entry> cache;
+
+    /** Use at most 20% of the heap. */
+    public RaptorWorkerDataCache (ObjectMapper objectMapper) {
+        this(objectMapper, (long) (Runtime.getRuntime().maxMemory() * 0.2));
+    }
+
+    public RaptorWorkerDataCache (ObjectMapper objectMapper, long maxMemoryBytes) {
+        this.objectMapper = objectMapper;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(Math.max(1, maxMemoryBytes / 1024))
+                .weigher((String key, Entry entry) -> entry.weightKilobytes)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Return the RAPTOR data for this request, building it if no task with the same parameters has been run before.
+     * Whether this was a hit, and the hit and miss counts of the cache so far, are recorded in the task statistics.
+     */
+    public RaptorWorkerData get (String graphId, Graph graph, String pointSetId, SampleSet sampleSet,
+                                 ProfileRequest request, TaskStatistics ts) {
+        String key = key(graphId, pointSetId, request);
+        if (key == null) {
+            ts.raptorDataCacheHit = false;
+            return RepeatedRaptorProfileRouter.getRaptorWorkerData(request, graph, sampleSet, ts);
+        }
+
+        Entry entry;
+        boolean[] built = new boolean[] { false };
+        try {
+            entry = cache.get(key, () -> {
+                built[0] = true;
+                return new Entry(graph, RepeatedRaptorProfileRouter.getRaptorWorkerData(request, graph, sampleSet, ts));
+            });
+            if (entry.graph.get() != graph) {
+                // Built from an older copy of this graph, whose vertex indexes are not those of the current one.
+                cache.invalidate(key);
+                built[0] = true;
+                entry = new Entry(graph, RepeatedRaptorProfileRouter.getRaptorWorkerData(request, graph, sampleSet, ts));
+                cache.put(key, entry);
+            }
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Could not build RAPTOR data", e.getCause());
+        }
+
+        ts.raptorDataCacheHit = !built[0];
+        if (!built[0]) {
+            // These are normally recorded while building the data.
+            ts.stopCount = entry.data.nStops;
+            ts.patternCount = entry.data.nPatterns;
+            ts.targetCount = entry.data.nTargets;
+        }
+        CacheStats stats = cache.stats();
+        ts.raptorDataCacheHits = stats.hitCount();
+        ts.raptorDataCacheMisses = stats.missCount();
+        return entry.data;
+    }
+
+    /**
+     * @return a key identifying the parameters the RAPTOR data depends on, or null if the request cannot be
+     * identified and its data should not be cached.
+     */
+    String key (String graphId, String pointSetId, ProfileRequest request) {
+        String scenario = "none";
+        if (request.scenario != null) {
+            // Scenario IDs are not guaranteed to change when the modifications are edited, so include their contents.
+            try {
+                String modifications = objectMapper.writeValueAsString(request.scenario.modifications);
+                scenario = request.scenario.id + ":" + Hashing.sha1().hashUnencodedChars(modifications);
+            } catch (JsonProcessingException e) {
+                LOG.warn("Could not serialize scenario {}, RAPTOR data will not be cached.", request.scenario.id, e);
+                return null;
+            }
+        }
+        return String.join("|", graphId, String.valueOf(pointSetId), String.valueOf(request.date),
+                Integer.toString(request.fromTime), Integer.toString(request.toTime),
+                String.valueOf(request.transitModes), String.valueOf(request.boardingAssumption),
+                Float.toString(request.walkSpeed), Integer.toString(request.maxWalkTime), scenario);
+    }
+
+    private static class Entry {
+
+        /** Weak, so that cached tables do not keep a graph evicted from the graph cache in memory. */
+        final WeakReference<Graph> graph;
+
+        final RaptorWorkerData data;
+
+        final int weightKilobytes;
+
+        Entry (Graph graph, RaptorWorkerData data) {
+            this.graph = new WeakReference<>(graph);
+            this.data = data;
+            this.weightKilobytes = (int) Math.min(Integer.MAX_VALUE, Math.max(1, data.estimateSizeBytes() / 1024));
+        }
+    }
+
+}
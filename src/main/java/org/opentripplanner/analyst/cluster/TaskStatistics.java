@@ -37,6 +37,15 @@ public class TaskStatistics implements Serializable{
     /** time to make raptor data (milliseconds) */
     public int raptorData;
 
+    /** were the RAPTOR data reused from an earlier task on this worker */
+    public boolean raptorDataCacheHit;
+
+    /** number of tasks on this worker that reused cached RAPTOR data so far, including this one */
+    public long raptorDataCacheHits;
+
+    /** number of tasks on this worker that had to build RAPTOR data so far, including this one */
+    public long raptorDataCacheMisses;
+
     /** number of discrete times (e.g. minutes) for which a RAPTOR search was performed */
     public int searchCount;
 
@@ -0,0 +1,250 @@
+package org.opentripplanner.analyst.cluster;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.opentripplanner.common.MavenVersion;
+import org.opentripplanner.graph_builder.GraphBuilder;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+import org.opentripplanner.standalone.CommandLineParameters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the graphs used by an Analyst Cluster worker in two tiers, so that a worker switching between projects does
+ * not rebuild a graph every time it switches:
+ *
+ * 1. Built graphs in memory, in a least recently used cache weighed by the size of each graph. Graphs are evicted to
+ *    make room before the next one is loaded or built, so that the cache and the new graph fit in memory together.
+ * 2. Built graphs serialized on local disk, keyed on a hash of the inputs they were built from (and the OTP version,
+ *    since serialized graphs can only be read by the version that wrote them). The least recently used files are
+ *    removed when the directory grows beyond its limit.
+ *
+ * Only when both miss is the graph built from its inputs, after which it is added to both tiers.
+ */
+public class TieredGraphCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TieredGraphCache.class);
+
+    private static final String EXTENSION = ".graph";
+
+    /**
+     * A graph in memory takes roughly this many times the size of its serialized form, or of the inputs it is built
+     * from. Graph sizes are only estimated this way, never measured, and only used to weigh graphs against each other
+     * and against the memory limit.
+     */
+    private static final int IN_MEMORY_EXPANSION = 4;
+
+    private final File directory;
+
+    private final long maxDiskBytes;
+
+    private final long maxMemoryBytes;
+
+    /** Graphs in memory by graph ID, least recently used first. */
+    private final LinkedHashMap<String, CachedGraph> memoryCache = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** The total estimated size of the graphs in memory. */
+    private long memoryBytes = 0;
+
+    /** Hashes of the inputs of each graph ID seen, so they are not read again. Inputs for an ID never change. */
+    private final Map<String, String> inputHashes = new HashMap<>();
+
+    /** Use at most an estimated 60% of the heap for graphs and 20GB of disk for serialized graphs. */
+    public TieredGraphCache (File directory) {
+        this(directory, (long) (Runtime.getRuntime().maxMemory() * 0.6), 20L * 1024 * 1024 * 1024);
+    }
+
+    public TieredGraphCache (File directory, long maxMemoryBytes, long maxDiskBytes) {
+        this.directory = directory;
+        this.maxDiskBytes = maxDiskBytes;
+        this.maxMemoryBytes = maxMemoryBytes;
+    }
+
+    /**
+     * Return the graph for the given ID, built from the inputs in the given directory if it is not found in memory
+     * or on disk. The graph is indexed and its stops are clustered.
+     */
+    public synchronized Graph get (String graphId, File inputDirectory) {
+        CachedGraph cached = memoryCache.get(graphId);
+        if (cached != null) {
+            LOG.info("Graph {} found in memory.", graphId);
+            return cached.graph;
+        }
+
+        directory.mkdirs();
+        String hash = inputHashes.get(graphId);
+        if (hash == null) {
+            try {
+                hash = hashInputs(inputDirectory);
+                inputHashes.put(graphId, hash);
+            } catch (IOException e) {
+                LOG.error("Could not read the inputs of graph {}, it will not be cached on disk.", graphId, e);
+            }
+        }
+        File graphFile = hash == null ? null : new File(directory, hash + EXTENSION);
+
+        Graph graph = null;
+        if (graphFile != null && graphFile.exists()) {
+            evictToFit(graphFile.length() * IN_MEMORY_EXPANSION);
+            graph = load(graphFile);
+        }
+        if (graph == null) {
+            evictToFit(inputDirectory.isDirectory() ?
+                    FileUtils.sizeOfDirectory(inputDirectory) * IN_MEMORY_EXPANSION : 0);
+            graph = build(inputDirectory);
+            // Some graph builder modules leave a partial index behind, so built graphs are always indexed again.
+            // Loaded graphs were already fully indexed by Graph.load.
+            graph.index(new DefaultStreetVertexIndexFactory());
+            if (graphFile != null) {
+                save(graph, graphFile);
+            }
+        }
+        graph.routerId = graphId;
+        graph.index.clusterStopsAsNeeded();
+
+        long serializedBytes = graphFile != null && graphFile.exists() ? graphFile.length() : 0;
+        cached = new CachedGraph(graph, serializedBytes);
+        // Now that the size is known from the serialized graph, make sure the limit is still respected.
+        evictToFit(cached.bytes);
+        memoryCache.put(graphId, cached);
+        memoryBytes += cached.bytes;
+        return graph;
+    }
+
+    /**
+     * Remove the least recently used graphs from memory until a graph of the given size fits with the remaining ones.
+     * The previous graphs must be evicted before the next one is loaded, or peak memory use would be the whole cache
+     * plus the new graph.
+     */
+    private void evictToFit (long bytes) {
+        Iterator<Map.Entry<String, CachedGraph>> entries = memoryCache.entrySet().iterator();
+        while (memoryBytes + bytes > maxMemoryBytes && entries.hasNext()) {
+            Map.Entry<String, CachedGraph> entry = entries.next();
+            memoryBytes -= entry.getValue().bytes;
+            entries.remove();
+            LOG.info("Graph {} removed from memory.", entry.getKey());
+        }
+    }
+
+    /** @return the IDs of the graphs currently held in memory. */
+    public synchronized Collection<String> getGraphIds () {
+        return new ArrayList<>(memoryCache.keySet());
+    }
+
+    /** Drop all graphs from memory. Serialized graphs stay on disk. */
+    public synchronized void invalidateAll () {
+        memoryCache.clear();
+        memoryBytes = 0;
+    }
+
+    private Graph load (File graphFile) {
+        LOG.info("Loading graph from {}.", graphFile);
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(graphFile)))) {
+            Graph graph = Graph.load(in, Graph.LoadLevel.FULL);
+            // Mark this file as recently used, so it is the last one removed from disk.
+            graphFile.setLastModified(System.currentTimeMillis());
+            return graph;
+        } catch (Exception e) {
+            LOG.warn("Could not load cached graph {}, building it again.", graphFile, e);
+            graphFile.delete();
+            return null;
+        }
+    }
+
+    private static Graph build (File inputDirectory) {
+        LOG.info("Building graph from {}.", inputDirectory);
+        CommandLineParameters params = new CommandLineParameters();
+        params.build = inputDirectory;
+        params.inMemory = true;
+        GraphBuilder graphBuilder = GraphBuilder.forDirectory(params, params.build);
+        graphBuilder.run();
+        return graphBuilder.getGraph();
+    }
+
+    /** Write the graph next to its final location then move it there, so other readers never see partial files. */
+    private void save (Graph graph, File graphFile) {
+        File tempFile = new File(directory, graphFile.getName() + ".tmp");
+        try {
+            graph.save(tempFile);
+            if (!tempFile.renameTo(graphFile)) {
+                throw new IOException("Could not rename " + tempFile + " to " + graphFile);
+            }
+        } catch (IOException e) {
+            LOG.error("Could not save graph to disk cache.", e);
+            tempFile.delete();
+            return;
+        }
+        removeLeastRecentlyUsedFiles(graphFile);
+    }
+
+    /** Delete the least recently used graph files until the cache fits on disk, keeping the given file. */
+    private void removeLeastRecentlyUsedFiles (File keep) {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (total <= maxDiskBytes) {
+                break;
+            }
+            if (!file.equals(keep)) {
+                total -= file.length();
+                LOG.info("Removing cached graph {} from disk.", file);
+                file.delete();
+            }
+        }
+    }
+
+    /** A hash of the names and contents of all the files in the given directory, and of the OTP version. */
+    static String hashInputs (File inputDirectory) throws IOException {
+        Hasher hasher = Hashing.sha1().newHasher();
+        hasher.putString(MavenVersion.VERSION.getLongVersionString(), Charsets.UTF_8);
+        List<File> files = new ArrayList<>(FileUtils.listFiles(inputDirectory, null, true));
+        files.sort(Comparator.comparing(File::getPath));
+        for (File file : files) {
+            hasher.putString(inputDirectory.toPath().relativize(file.toPath()).toString(), Charsets.UTF_8);
+            hasher.putBytes(Files.hash(file, Hashing.sha1()).asBytes());
+        }
+        return hasher.hash().toString();
+    }
+
+    private static class CachedGraph {
+
+        final Graph graph;
+
+        /** The estimated size of the graph in memory. */
+        final long bytes;
+
+        CachedGraph (Graph graph, long serializedBytes) {
+            this.graph = graph;
+            this.bytes = serializedBytes > 0 ? serializedBytes * IN_MEMORY_EXPANSION
+                    // Not on disk: fall back on a rough size per edge.
+                    : graph.countEdges() * 512L;
+        }
+    }
+
+}
@@ -25,6 +25,18 @@ public class SlippyTile {
         return("" + zoom + "/" + xtile + "/" + ytile);
     }
 
+    /** Tile column containing a longitude, clamped to the tiles of the zoom level. */
+    public static int lon2tile(final double lon, final int zoom) {
+        int xtile = (int)Math.floor( (lon + 180) / 360 * (1<<zoom) ) ;
+        return Math.max(0, Math.min((1<<zoom) - 1, xtile));
+    }
+
+    /** Tile row containing a latitude, clamped to the tiles of the zoom level. */
+    public static int lat2tile(final double lat, final int zoom) {
+        int ytile = (int)Math.floor( (1 - Math.log(Math.tan(Math.toRadians(lat)) + 1 / Math.cos(Math.toRadians(lat))) / Math.PI) / 2 * (1<<zoom) ) ;
+        return Math.max(0, Math.min((1<<zoom) - 1, ytile));
+    }
+
 
     public static double tile2lon(int x, int z) {
         return x / Math.pow(2.0, z) * 360.0 - 180;
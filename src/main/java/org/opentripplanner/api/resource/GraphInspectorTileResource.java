@@ -13,27 +13,24 @@
 
 package org.opentripplanner.api.resource;
 
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
-
-import javax.imageio.ImageIO;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.CacheControl;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 
-import org.geotools.geometry.Envelope2D;
-import org.opentripplanner.analyst.core.SlippyTile;
-import org.opentripplanner.analyst.request.TileRequest;
 import org.opentripplanner.api.common.RoutingResource;
-import org.opentripplanner.api.parameter.MIMEImageFormat;
 
 import static org.opentripplanner.api.resource.ServerInfo.Q;
 
+import org.opentripplanner.inspector.InspectorTileCache;
+import org.opentripplanner.inspector.InspectorTileCache.CachedTile;
 import org.opentripplanner.inspector.TileRenderer;
 import org.opentripplanner.standalone.OTPServer;
 import org.opentripplanner.standalone.Router;
@@ -53,8 +50,11 @@ import org.opentripplanner.standalone.Router;
  * </pre>
  * 
  * Tile rendering goes through TileRendererManager which select the appropriate renderer for the
- * given layer.
+ * given layer. Rendered tiles are kept in the InspectorTileCache of the router and carry an ETag,
+ * so that clients sending If-None-Match get a 304 instead of the tile. Tiles with a pbf or mvt
+ * extension are vector tiles, with the colors and labels as feature attributes.
  * 
+ * @see InspectorTileCache
  * @see TileRendererManager
  * @see TileRenderer
  * 
@@ -85,24 +85,30 @@ public class GraphInspectorTileResource extends RoutingResource {
     @PathParam("ext")
     String ext;
 
+    @Context
+    private Request request;
+
     @GET @Path("/tile/{layer}/{z}/{x}/{y}.{ext}")
-    @Produces("image/*")
+    @Produces({ "image/*", InspectorTileCache.VECTOR_TILE_MIME_TYPE })
     public Response tileGet() throws Exception {
 
-        // Re-use analyst
-        Envelope2D env = SlippyTile.tile2Envelope(x, y, z);
-        TileRequest tileRequest = new TileRequest(env, 256, 256);
-
         Router router = otpServer.getRouter(routerId);
-        BufferedImage image = router.tileRendererManager.renderTile(tileRequest, layer);
+        CachedTile tile;
+        try {
+            tile = router.inspectorTileCache.getTile(layer, z, x, y, ext);
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
+        }
 
-        MIMEImageFormat format = new MIMEImageFormat("image/" + ext);
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(image.getWidth() * image.getHeight() / 4);
-        ImageIO.write(image, format.type, baos);
         CacheControl cc = new CacheControl();
         cc.setMaxAge(3600);
         cc.setNoCache(false);
-        return Response.ok(baos.toByteArray()).type(format.toString()).cacheControl(cc).build();
+        EntityTag eTag = new EntityTag(tile.eTag);
+        ResponseBuilder notModified = request.evaluatePreconditions(eTag);
+        if (notModified != null) {
+            return notModified.cacheControl(cc).build();
+        }
+        return Response.ok(tile.bytes).type(tile.mimeType).tag(eTag).cacheControl(cc).build();
     }
 
     /**
@@ -888,7 +888,7 @@ public abstract class GraphPathToTripPlanConverter {
                     if (edge instanceof StreetEdge) {
                         // the next edges will be PlainStreetEdges, we hope
                         double angleDiff = getAbsoluteAngleDiff(thisAngle, lastAngle);
-                        for (Edge alternative : backState.getVertex().getOutgoingStreetEdges()) {
+                        for (Edge alternative : getOutgoingStreetEdges(backState, backState.getVertex())) {
                             if (alternative.getName(requestedLocale).equals(streetName)) {
                                 // alternatives that have the same name
                                 // are usually caused by street splits
@@ -907,9 +907,9 @@ public abstract class GraphPathToTripPlanConverter {
                         // FIXME: this code might be wrong with the removal of the edge-based graph
                         State twoStatesBack = backState.getBackState();
                         Vertex backVertex = twoStatesBack.getVertex();
-                        for (Edge alternative : backVertex.getOutgoingStreetEdges()) {
-                            List<Edge> alternatives = alternative.getToVertex()
-                                    .getOutgoingStreetEdges();
+                        for (Edge alternative : getOutgoingStreetEdges(backState, backVertex)) {
+                            List<Edge> alternatives = getOutgoingStreetEdges(backState,
+                                    alternative.getToVertex());
                             if (alternatives.size() == 0) {
                                 continue; // this is not an alternative
                             }
@@ -1051,6 +1051,12 @@ public abstract class GraphPathToTripPlanConverter {
         return edge instanceof StreetEdge && (((StreetEdge)edge).getStreetClass() & StreetEdge.CLASS_LINK) == StreetEdge.CLASS_LINK;
     }
 
+    /** Read edges through the routing context of the path, which also knows the edges kept outside the graph. */
+    private static List<Edge> getOutgoingStreetEdges(State state, Vertex v) {
+        RoutingContext rctx = state.getOptions().rctx;
+        return rctx == null ? v.getOutgoingStreetEdges() : rctx.getOutgoingStreetEdges(v);
+    }
+
     private static double getAbsoluteAngleDiff(double thisAngle, double lastAngle) {
         double angleDiff = thisAngle - lastAngle;
         if (angleDiff < 0) {
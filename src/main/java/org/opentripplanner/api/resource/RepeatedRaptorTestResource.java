@@ -119,8 +119,11 @@ public class RepeatedRaptorTestResource {
         decreased = false;
         TimeSurface.RangeSet timeSurfaces_a = router_a.timeSurfaceRangeSet;
         TimeSurface.RangeSet timeSurfaces_b = router_b.timeSurfaceRangeSet;
-        for (Vertex destVertex : timeSurfaces_a.min.times.keySet()) {
+        for (Vertex destVertex : graph.getVertices()) {
             int min_a = timeSurfaces_a.min.getTime(destVertex);
+            if (min_a == TimeSurface.UNREACHABLE) {
+                continue;
+            }
             int max_a = timeSurfaces_a.max.getTime(destVertex);
             int avg_a = timeSurfaces_a.avg.getTime(destVertex);
             int min_b = timeSurfaces_b.min.getTime(destVertex);
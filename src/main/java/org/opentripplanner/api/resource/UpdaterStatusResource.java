@@ -40,6 +40,17 @@ public class UpdaterStatusResource {
         return Response.status(Response.Status.OK).entity(updaterManager.getUpdaterDescriptions()).build();
     }
 
+    /** Return the depth of the graph write queue and the latency of the writes applied so far. */
+    @GET
+    @Path("/queue")
+    public Response getWriteQueueStatus () {
+        GraphUpdaterManager updaterManager = router.graph.updaterManager;
+        if (updaterManager == null) {
+            return Response.status(Response.Status.NOT_FOUND).entity("No updaters running.").build();
+        }
+        return Response.status(Response.Status.OK).entity(updaterManager.getWriteQueueStatus()).build();
+    }
+
     /** Return status for a specific updater. */
     @GET
     @Path("/{updaterId}")
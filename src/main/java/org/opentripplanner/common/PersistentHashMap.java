@@ -0,0 +1,327 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.common;
+
+import com.google.common.base.Preconditions;
+
+import java.util.function.BiConsumer;
+
+/**
+ * An immutable hash map with structural sharing (a hash array mapped trie). Adding or removing a key returns a new map
+ * which shares all but the O(log32 n) nodes on the path to that key with the original, so a map can be modified and
+ * handed to other threads without copying it, and without the other threads ever seeing a change.
+ *
+ * Keys may not be null, values may be. Iteration order is unspecified.
+ */
+public final class PersistentHashMap<K, V> {
+
+    private static final int BITS = 5;
+
+    private static final int MASK = (1 << BITS) - 1;
+
+    /** Returned by node lookups when the key is absent, since null is a legitimate value. */
+    private static final Object NOT_FOUND = new Object();
+
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(null, 0);
+
+    private final Node root;
+
+    private final int size;
+
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** @return the value for the given key, or null if the key is absent. */
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (root == null || key == null) {
+            return null;
+        }
+        Object value = root.get(key, key.hashCode(), 0);
+        return value == NOT_FOUND ? null : (V) value;
+    }
+
+    public boolean containsKey(Object key) {
+        return root != null && key != null && root.get(key, key.hashCode(), 0) != NOT_FOUND;
+    }
+
+    /** @return a map with the given key associated with the given value, or this map if it is already the case. */
+    public PersistentHashMap<K, V> plus(K key, V value) {
+        Preconditions.checkNotNull(key);
+        boolean[] added = new boolean[1];
+        Node newRoot = (root == null ? BitmapNode.EMPTY : root).plus(key, key.hashCode(), value, 0, added);
+        if (newRoot == root) {
+            return this;
+        }
+        return new PersistentHashMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    /** @return a map without the given key, or this map if the key is absent. */
+    public PersistentHashMap<K, V> minus(Object key) {
+        if (root == null || key == null) {
+            return this;
+        }
+        Node newRoot = root.minus(key, key.hashCode(), 0);
+        if (newRoot == root) {
+            return this;
+        }
+        if (newRoot == null) {
+            return empty();
+        }
+        return new PersistentHashMap<>(newRoot, size - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (root != null) {
+            root.forEach((BiConsumer<Object, Object>) action);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        forEach((k, v) -> sb.append(sb.length() > 1 ? ", " : "").append(k).append('=').append(v));
+        return sb.append('}').toString();
+    }
+
+    private static abstract class Node {
+
+        /** @return the value for the key, or NOT_FOUND. */
+        abstract Object get(Object key, int hash, int shift);
+
+        /** @return this node if nothing changed. added[0] is set if the key was not already present. */
+        abstract Node plus(Object key, int hash, Object value, int shift, boolean[] added);
+
+        /** @return this node if the key is absent, or null if the node became empty. */
+        abstract Node minus(Object key, int hash, int shift);
+
+        abstract void forEach(BiConsumer<Object, Object> action);
+    }
+
+    /**
+     * An interior node holding up to 32 slots, one for each value of the next BITS bits of the hash. Only occupied
+     * slots take up space: array holds a key and value for each of them, in bit order. A null key means the value is
+     * a child node holding several keys whose hashes share these bits.
+     */
+    private static final class BitmapNode extends Node {
+
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        final int bitmap;
+
+        final Object[] array;
+
+        BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        static int bit(int hash, int shift) {
+            return 1 << ((hash >>> shift) & MASK);
+        }
+
+        int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Object get(Object key, int hash, int shift) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return NOT_FOUND;
+            }
+            int i = 2 * index(bit);
+            Object k = array[i];
+            if (k == null) {
+                return ((Node) array[i + 1]).get(key, hash, shift + BITS);
+            }
+            return key.equals(k) ? array[i + 1] : NOT_FOUND;
+        }
+
+        @Override
+        Node plus(Object key, int hash, Object value, int shift, boolean[] added) {
+            int bit = bit(hash, shift);
+            int i = 2 * index(bit);
+            if ((bitmap & bit) == 0) {
+                Object[] newArray = new Object[array.length + 2];
+                System.arraycopy(array, 0, newArray, 0, i);
+                newArray[i] = key;
+                newArray[i + 1] = value;
+                System.arraycopy(array, i, newArray, i + 2, array.length - i);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, newArray);
+            }
+            Object k = array[i];
+            Object v = array[i + 1];
+            if (k == null) {
+                Node child = ((Node) v).plus(key, hash, value, shift + BITS, added);
+                return child == v ? this : withValue(i + 1, child);
+            }
+            if (key.equals(k)) {
+                return v == value ? this : withValue(i + 1, value);
+            }
+            // Two different keys in the same slot, push both of them down into a new child node.
+            added[0] = true;
+            int otherHash = k.hashCode();
+            Node child;
+            if (otherHash == hash) {
+                child = new CollisionNode(hash, new Object[] { k, v, key, value });
+            } else {
+                boolean[] ignored = new boolean[1];
+                child = EMPTY.plus(k, otherHash, v, shift + BITS, ignored)
+                        .plus(key, hash, value, shift + BITS, ignored);
+            }
+            Object[] newArray = array.clone();
+            newArray[i] = null;
+            newArray[i + 1] = child;
+            return new BitmapNode(bitmap, newArray);
+        }
+
+        @Override
+        Node minus(Object key, int hash, int shift) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int i = 2 * index(bit);
+            Object k = array[i];
+            if (k == null) {
+                Node child = ((Node) array[i + 1]).minus(key, hash, shift + BITS);
+                if (child == array[i + 1]) {
+                    return this;
+                }
+                if (child != null) {
+                    return withValue(i + 1, child);
+                }
+            } else if (!key.equals(k)) {
+                return this;
+            }
+            if (bitmap == bit) {
+                return null;
+            }
+            Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, i);
+            System.arraycopy(array, i + 2, newArray, i, array.length - i - 2);
+            return new BitmapNode(bitmap ^ bit, newArray);
+        }
+
+        private BitmapNode withValue(int i, Object value) {
+            Object[] newArray = array.clone();
+            newArray[i] = value;
+            return new BitmapNode(bitmap, newArray);
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (array[i] == null) {
+                    ((Node) array[i + 1]).forEach(action);
+                } else {
+                    action.accept(array[i], array[i + 1]);
+                }
+            }
+        }
+    }
+
+    /** A leaf holding keys that all have exactly the same hash code, as alternating keys and values. */
+    private static final class CollisionNode extends Node {
+
+        final int hash;
+
+        final Object[] array;
+
+        CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        private int find(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        Object get(Object key, int hash, int shift) {
+            int i = hash == this.hash ? find(key) : -1;
+            return i < 0 ? NOT_FOUND : array[i + 1];
+        }
+
+        @Override
+        Node plus(Object key, int hash, Object value, int shift, boolean[] added) {
+            if (hash != this.hash) {
+                // Nest this node under an interior node, which will then make room for the new key.
+                return new BitmapNode(BitmapNode.bit(this.hash, shift), new Object[] { null, this })
+                        .plus(key, hash, value, shift, added);
+            }
+            int i = find(key);
+            if (i >= 0) {
+                if (array[i + 1] == value) {
+                    return this;
+                }
+                Object[] newArray = array.clone();
+                newArray[i + 1] = value;
+                return new CollisionNode(hash, newArray);
+            }
+            Object[] newArray = new Object[array.length + 2];
+            System.arraycopy(array, 0, newArray, 0, array.length);
+            newArray[array.length] = key;
+            newArray[array.length + 1] = value;
+            added[0] = true;
+            return new CollisionNode(hash, newArray);
+        }
+
+        @Override
+        Node minus(Object key, int hash, int shift) {
+            int i = hash == this.hash ? find(key) : -1;
+            if (i < 0) {
+                return this;
+            }
+            if (array.length == 2) {
+                return null;
+            }
+            Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, i);
+            System.arraycopy(array, i + 2, newArray, i, array.length - i - 2);
+            return new CollisionNode(hash, newArray);
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                action.accept(array[i], array[i + 1]);
+            }
+        }
+    }
+
+}
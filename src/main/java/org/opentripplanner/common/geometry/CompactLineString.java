@@ -174,9 +174,60 @@ public final class CompactLineString implements Serializable {
         return out;
     }
 
+    /**
+     * @return the number of points in the line string built from the given compacted coordinates.
+     */
+    public static int numPoints(int[] coords) {
+        return coords == null ? 2 : (coords.length / 2) + 2;
+    }
+
+    /**
+     * Write the points of a compacted line string into an array of alternating x and y values, in the same order as
+     * uncompactLineString would return them, without creating any Coordinate or LineString. This is for code looking
+     * at many geometries in a row, which can reuse the same array for all of them.
+     *
+     * @param xy Array receiving the coordinates, at least twice numPoints(coords) long.
+     * @return The number of points written.
+     */
+    public static int uncompactCoordinates(double xa, double ya, double xb, double yb,
+            int[] coords, boolean reverse, double[] xy) {
+        int size = numPoints(coords);
+        double x0 = reverse ? xb : xa;
+        double y0 = reverse ? yb : ya;
+        double x1 = reverse ? xa : xb;
+        double y1 = reverse ? ya : yb;
+        xy[0] = x0;
+        xy[1] = y0;
+        if (coords != null) {
+            int oix = (int) Math.round(x0 * FIXED_FLOAT_MULT);
+            int oiy = (int) Math.round(y0 * FIXED_FLOAT_MULT);
+            for (int i = 1; i < size - 1; i++) {
+                int ix = oix + coords[(i - 1) * 2];
+                int iy = oiy + coords[(i - 1) * 2 + 1];
+                xy[i * 2] = ix / FIXED_FLOAT_MULT;
+                xy[i * 2 + 1] = iy / FIXED_FLOAT_MULT;
+                oix = ix;
+                oiy = iy;
+            }
+        }
+        xy[size * 2 - 2] = x1;
+        xy[size * 2 - 1] = y1;
+        if (reverse) {
+            for (int i = 0, j = size - 1; i < j; i++, j--) {
+                double x = xy[i * 2];
+                double y = xy[i * 2 + 1];
+                xy[i * 2] = xy[j * 2];
+                xy[i * 2 + 1] = xy[j * 2 + 1];
+                xy[j * 2] = x;
+                xy[j * 2 + 1] = y;
+            }
+        }
+        return size;
+    }
+
     /**
      * Same as the other version, but in a var-len int packed form (Dlugosz coding).
-     * 
+     *
      * @param x0
      * @param y0
      * @param x1
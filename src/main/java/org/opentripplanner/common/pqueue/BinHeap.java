@@ -117,6 +117,20 @@ public class BinHeap<T> {
     	size=0;
     } 
 
+    /**
+     * Empties the queue and drops all references to its elements so they can be garbage collected, keeping the
+     * backing arrays so the queue can be reused without reallocating them. Slots beyond the current size may still
+     * hold elements that were extracted, so the whole array is cleared.
+     */
+    public void clear() {
+        Arrays.fill(elem, null);
+        size = 0;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
     public void insert(T e, double p) {
         int i;
         size += 1;
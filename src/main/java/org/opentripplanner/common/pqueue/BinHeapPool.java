@@ -0,0 +1,74 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.common.pqueue;
+
+import java.util.ArrayDeque;
+
+/**
+ * A per-thread pool of binary heaps, so that searches do not need to allocate (and repeatedly grow) a new priority
+ * queue for every request. Heaps are checked out and returned explicitly rather than simply kept in a ThreadLocal,
+ * because searches can be nested on the same thread (e.g. the bidirectional heuristic runs its own searches while the
+ * main search is in progress).
+ *
+ * Heaps that have grown beyond maxRetainedCapacity are not returned to the pool, to avoid pinning a lot of memory to
+ * idle threads after one exceptionally large search.
+ */
+public class BinHeapPool<T> {
+
+    /** The maximum number of idle heaps kept for each thread. */
+    private static final int MAX_POOLED_PER_THREAD = 4;
+
+    private final int maxRetainedCapacity;
+
+    private final ThreadLocal<ArrayDeque<BinHeap<T>>> pool = new ThreadLocal<ArrayDeque<BinHeap<T>>>() {
+        @Override
+        protected ArrayDeque<BinHeap<T>> initialValue() {
+            return new ArrayDeque<>(MAX_POOLED_PER_THREAD);
+        }
+    };
+
+    public BinHeapPool(int maxRetainedCapacity) {
+        this.maxRetainedCapacity = maxRetainedCapacity;
+    }
+
+    /**
+     * @return an empty heap, reused from this thread's pool if one is available.
+     * @param initialCapacity the capacity of the heap if a new one must be created.
+     */
+    public BinHeap<T> acquire(int initialCapacity) {
+        BinHeap<T> heap = pool.get().pollFirst();
+        if (heap == null) {
+            heap = new BinHeap<>(initialCapacity);
+        }
+        return heap;
+    }
+
+    /** Clear the given heap and make it available to later searches on the calling thread. */
+    public void release(BinHeap<T> heap) {
+        if (heap == null || heap.capacity() > maxRetainedCapacity) {
+            return;
+        }
+        ArrayDeque<BinHeap<T>> heaps = pool.get();
+        if (heaps.size() < MAX_POOLED_PER_THREAD) {
+            heap.clear();
+            heaps.addFirst(heap);
+        }
+    }
+
+    /** @return the number of idle heaps pooled for the calling thread. */
+    public int pooledCount() {
+        return pool.get().size();
+    }
+
+}
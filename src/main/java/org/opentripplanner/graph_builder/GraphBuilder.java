@@ -19,7 +19,10 @@ import org.opentripplanner.graph_builder.model.GtfsBundle;
 import org.opentripplanner.graph_builder.module.DirectTransferGenerator;
 import org.opentripplanner.graph_builder.module.EmbedConfig;
 import org.opentripplanner.graph_builder.module.GtfsModule;
+import org.opentripplanner.graph_builder.module.LandmarkModule;
+import org.opentripplanner.graph_builder.module.StopTreeModule;
 import org.opentripplanner.graph_builder.module.PruneFloatingIslands;
+import org.opentripplanner.graph_builder.module.StreetCompactionModule;
 import org.opentripplanner.graph_builder.module.StreetLinkerModule;
 import org.opentripplanner.graph_builder.module.TransitToTaggedStopsModule;
 import org.opentripplanner.graph_builder.module.map.BusRouteStreetMatcher;
@@ -36,6 +39,7 @@ import org.opentripplanner.openstreetmap.impl.AnyFileBasedOpenStreetMapProviderI
 import org.opentripplanner.openstreetmap.services.OpenStreetMapProvider;
 import org.opentripplanner.reflect.ReflectionLibrary;
 import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.edgetype.StreetEdgeColumns;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.graph.Graph.LoadLevel;
 import org.opentripplanner.standalone.CommandLineParameters;
@@ -79,6 +83,9 @@ public class GraphBuilder implements Runnable {
     /** Should the graph be serialized to disk after being created or not? */
     public boolean serializeGraph = true;
 
+    /** Should street edges be saved in a separate memory-mappable column file? See StreetEdgeColumns. */
+    public boolean columnarStreets = false;
+
     public void addModule(GraphBuilderModule loader) {
         _graphBuilderModules.add(loader);
     }
@@ -159,7 +166,13 @@ public class GraphBuilder implements Runnable {
         graph.summarizeBuilderAnnotations();
         if (serializeGraph) {
             try {
-                graph.save(graphFile);
+                File streetFile = new File(graphFile.getParentFile(), StreetEdgeColumns.FILENAME);
+                if (columnarStreets) {
+                    graph.save(graphFile, streetFile);
+                } else {
+                    graph.save(graphFile);
+                    streetFile.delete(); // left over from an earlier build, would be mistaken for part of this graph
+                }
             } catch (Exception ex) {
                 throw new IllegalStateException(ex);
             }
@@ -305,6 +318,9 @@ public class GraphBuilder implements Runnable {
             GraphBuilderModule elevationBuilder = new ElevationModule(gcf);
             graphBuilder.addModule(elevationBuilder);
         }
+        if (builderParams.compactStreets) {
+            graphBuilder.addModule(new StreetCompactionModule());
+        }
         if ( hasGTFS ) {
             // The stops can be linked to each other once they are already linked to the street network.
             if ( ! builderParams.useTransfersTxt) {
@@ -312,11 +328,19 @@ public class GraphBuilder implements Runnable {
                 graphBuilder.addModule(new DirectTransferGenerator(builderParams.maxTransferDistance));
             }
         }
+        if (hasGTFS && builderParams.stopTrees) {
+            graphBuilder.addModule(new StopTreeModule());
+        }
+        if (builderParams.landmarks > 0) {
+            // Must come after all the modules adding edges, including transfers.
+            graphBuilder.addModule(new LandmarkModule(builderParams.landmarks));
+        }
         graphBuilder.addModule(new EmbedConfig(builderConfig, routerConfig));
         if (builderParams.htmlAnnotations) {
             graphBuilder.addModule(new AnnotationsToHTML(params.build, builderParams.maxHtmlAnnotationsPerFile));
         }
         graphBuilder.serializeGraph = ( ! params.inMemory ) || params.preFlight;
+        graphBuilder.columnarStreets = builderParams.columnarStreets;
         return graphBuilder;
     }
 
@@ -30,6 +30,7 @@ import org.opentripplanner.routing.edgetype.StreetTransitLink;
 import org.opentripplanner.routing.edgetype.TemporaryFreeEdge;
 import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.StreetAttachment;
 import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.routing.location.TemporaryStreetLocation;
 import org.opentripplanner.routing.vertextype.BikeParkVertex;
@@ -47,7 +48,6 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
-import java.util.stream.Collectors;
 
 /**
  * This class links transit stops to streets by splitting the streets (unless the stop is extremely close to the street
@@ -146,8 +146,40 @@ public class SimpleStreetSplitter {
         return link(vertex, TraverseMode.WALK, null);
     }
 
+    /**
+     * Link the vertex of a real-time entity to the closest walkable edge without modifying the graph. Streets are
+     * split with vertices that are not added to the graph, and the original street edges are left in place: the split
+     * vertices and all new edges are recorded in the attachment, which must be open on the calling thread.
+     */
+    public boolean link(StreetAttachment attachment) {
+        if (!destructiveSplitting) {
+            throw new IllegalStateException("Real-time entities are linked with permanent edges.");
+        }
+        if (!attachment.isOpen()) {
+            throw new IllegalStateException("The street attachment is not open on this thread.");
+        }
+        return link(attachment.getVertex(), TraverseMode.WALK, null, attachment);
+    }
+
     /** Link this vertex into the graph */
     public boolean link(Vertex vertex, TraverseMode traverseMode, RoutingRequest options) {
+        return link(vertex, traverseMode, options, null);
+    }
+
+    /** Link this vertex into the graph, or into the given attachment if it is not null */
+    private boolean link(Vertex vertex, TraverseMode traverseMode, RoutingRequest options,
+        StreetAttachment attachment) {
+        LinkingScratch scratch = LinkingScratch.get();
+        try {
+            return link(vertex, traverseMode, options, attachment, scratch);
+        } finally {
+            // Do not keep edges alive on pooled threads once linking is done, as they pin the whole graph.
+            scratch.clear();
+        }
+    }
+
+    private boolean link(Vertex vertex, TraverseMode traverseMode, RoutingRequest options,
+        StreetAttachment attachment, LinkingScratch scratch) {
         // find nearby street edges
         // TODO: we used to use an expanding-envelope search, which is more efficient in
         // dense areas. but first let's see how inefficient this is. I suspect it's not too
@@ -173,21 +205,23 @@ public class SimpleStreetSplitter {
         // This should remove any issues with things coming out of the spatial index in different orders
         // Then we link to everything that is within DUPLICATE_WAY_EPSILON_METERS of of the best distance
         // so that we capture back edges and duplicate ways.
-        List<StreetEdge> candidateEdges = idx.query(env).stream()
-            .filter(streetEdge -> streetEdge instanceof  StreetEdge)
-            .map(edge -> (StreetEdge) edge)
+        // The candidate list and distance map are reused from one call to the next on the same thread.
+        List<StreetEdge> candidateEdges = scratch.candidateEdges;
+        for (Edge edge : idx.query(env)) {
             // note: not filtering by radius here as distance calculation is expensive
             // we do that below.
-            .filter(edge -> edge.canTraverse(traverseModeSet) &&
+            if (edge instanceof StreetEdge && ((StreetEdge) edge).canTraverse(traverseModeSet) &&
                 // only link to edges still in the graph.
-                edge.getToVertex().getIncoming().contains(edge))
-            .collect(Collectors.toList());
+                edge.getToVertex().getIncoming().contains(edge)) {
+                candidateEdges.add((StreetEdge) edge);
+            }
+        }
 
         // make a map of distances
-        final TIntDoubleMap distances = new TIntDoubleHashMap();
+        final TIntDoubleMap distances = scratch.distances;
 
         for (StreetEdge e : candidateEdges) {
-            distances.put(e.getId(), distance(vertex, e, xscale));
+            distances.put(e.getId(), distance(vertex, e, xscale, scratch));
         }
 
         // sort the list
@@ -277,7 +311,7 @@ public class SimpleStreetSplitter {
                     .get(candidateEdges.get(i - 1).getId()) < duplicateDeg);
 
             for (StreetEdge edge : bestEdges) {
-                link(vertex, edge, xscale, options);
+                link(vertex, edge, xscale, options, attachment);
             }
 
             return true;
@@ -285,7 +319,8 @@ public class SimpleStreetSplitter {
     }
 
     /** split the edge and link in the transit stop */
-    private void link(Vertex tstop, StreetEdge edge, double xscale, RoutingRequest options) {
+    private void link(Vertex tstop, StreetEdge edge, double xscale, RoutingRequest options,
+        StreetAttachment attachment) {
         // TODO: we've already built this line string, we should save it
         LineString orig = edge.getGeometry();
         LineString transformed = equirectangularProject(orig, xscale);
@@ -325,7 +360,7 @@ public class SimpleStreetSplitter {
                 options.canSplitEdge(edge);
             }
             // split the edge, get the split vertex
-            SplitterVertex v0 = split(edge, ll, temporaryVertex != null, endVertex);
+            SplitterVertex v0 = split(edge, ll, temporaryVertex != null, endVertex, attachment);
             makeLinkEdges(tstop, v0);
         }
     }
@@ -338,9 +373,11 @@ public class SimpleStreetSplitter {
      * @param ll fraction at which to split the edge
      * @param temporarySplit if true this is temporary split at origin/destinations search and only temporary edges vertices are created
      * @param endVertex if this is temporary edge this is true if this is end vertex otherwise it doesn't matter
+     * @param attachment if not null, the split vertex is kept out of the graph and the original edge is not removed
      * @return Splitter vertex with added new edges
      */
-    private SplitterVertex split (StreetEdge edge, LinearLocation ll, boolean temporarySplit, boolean endVertex) {
+    private SplitterVertex split (StreetEdge edge, LinearLocation ll, boolean temporarySplit, boolean endVertex,
+        StreetAttachment attachment) {
         LineString geometry = edge.getGeometry();
 
         // create the geometries
@@ -356,6 +393,10 @@ public class SimpleStreetSplitter {
             } else {
                 ((TemporarySplitterVertex) v).setWheelchairAccessible(false);
             }
+        } else if (attachment != null) {
+            v = new SplitterVertex(null, "split from " + edge.getId(), splitPoint.x, splitPoint.y,
+                edge);
+            attachment.addVertex(v);
         } else {
             v = new SplitterVertex(graph, "split from " + edge.getId(), splitPoint.x, splitPoint.y,
                 edge);
@@ -366,7 +407,7 @@ public class SimpleStreetSplitter {
         // on edges that have it
         P2<StreetEdge> edges = edge.split(v, !temporarySplit);
 
-        if (destructiveSplitting) {
+        if (destructiveSplitting && attachment == null) {
             // update indices of new edges
             idx.insert(edges.first.getGeometry(), edges.first);
             idx.insert(edges.second.getGeometry(), edges.second);
@@ -457,11 +498,48 @@ public class SimpleStreetSplitter {
         new StreetBikeRentalLink(to, from);
     }
 
-    /** projected distance from stop to edge, in latitude degrees */
-    private static double distance (Vertex tstop, StreetEdge edge, double xscale) {
-        // use JTS internal tools wherever possible
-        LineString transformed = equirectangularProject(edge.getGeometry(), xscale);
-        return transformed.distance(geometryFactory.createPoint(new Coordinate(tstop.getLon() * xscale, tstop.getLat())));
+    /**
+     * projected distance from stop to edge, in latitude degrees. This is called for every candidate edge, so rather
+     * than building a projected LineString it works on the edge coordinates copied into a reusable scratch array.
+     */
+    private static double distance (Vertex tstop, StreetEdge edge, double xscale, LinkingScratch scratch) {
+        double[] xy = scratch.coordinates(edge.getGeometryNumPoints());
+        int n = edge.getGeometryCoordinates(xy);
+        double px = tstop.getLon() * xscale;
+        double py = tstop.getLat();
+        double best = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < n - 1; i++) {
+            double d = segmentDistance(px, py, xy[i * 2] * xscale, xy[i * 2 + 1], xy[i * 2 + 2] * xscale, xy[i * 2 + 3]);
+            if (d < best) {
+                best = d;
+            }
+        }
+        return best;
+    }
+
+    /** distance from point p to segment ab, computed the same way as JTS CGAlgorithms.distancePointLine */
+    private static double segmentDistance (double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double len2 = dx * dx + dy * dy;
+        if (len2 == 0) {
+            return pointDistance(px, py, ax, ay);
+        }
+        double r = ((px - ax) * dx + (py - ay) * dy) / len2;
+        if (r <= 0) {
+            return pointDistance(px, py, ax, ay);
+        }
+        if (r >= 1) {
+            return pointDistance(px, py, bx, by);
+        }
+        double s = ((ay - py) * dx - (ax - px) * dy) / len2;
+        return Math.abs(s) * Math.sqrt(len2);
+    }
+
+    private static double pointDistance (double px, double py, double ax, double ay) {
+        double dx = px - ax;
+        double dy = py - ay;
+        return Math.sqrt(dx * dx + dy * dy);
     }
 
     /** projected distance from stop to edge, in latitude degrees */
@@ -545,4 +623,39 @@ public class SimpleStreetSplitter {
         return closest;
 
     }
+
+    /**
+     * Working storage for linking a vertex, kept per thread since a non-destructive splitter is shared by all the
+     * requests on a graph. Origin and destination linking happens for every request and would otherwise allocate
+     * these afresh each time.
+     */
+    private static class LinkingScratch {
+
+        private static final ThreadLocal<LinkingScratch> scratch = ThreadLocal.withInitial(LinkingScratch::new);
+
+        final List<StreetEdge> candidateEdges = new ArrayList<>();
+
+        final TIntDoubleMap distances = new TIntDoubleHashMap();
+
+        private double[] coordinates = new double[64];
+
+        /** @return the scratch space of the current thread, which is empty outside of a call to link. */
+        static LinkingScratch get() {
+            return scratch.get();
+        }
+
+        /** Empty the candidate list and distance map, keeping their capacity for the next call. */
+        void clear() {
+            candidateEdges.clear();
+            distances.clear();
+        }
+
+        /** @return an array large enough to hold the coordinates of a geometry with the given number of points. */
+        double[] coordinates(int numPoints) {
+            if (coordinates.length < numPoints * 2) {
+                coordinates = new double[Math.max(numPoints * 2, coordinates.length * 2)];
+            }
+            return coordinates;
+        }
+    }
 }
@@ -25,11 +25,14 @@ import org.opentripplanner.routing.vertextype.TransitStop;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * {@link org.opentripplanner.graph_builder.services.GraphBuilderModule} module that links up the stops of a transit network among themselves. This is necessary for
@@ -73,16 +76,35 @@ public class DirectTransferGenerator implements GraphBuilderModule {
             LOG.info("Creating direct transfer edges between stops using straight line distance (not streets)...");
         }
 
-        int nTransfersTotal = 0;
-        int nLinkableStops = 0;
-
+        /* Skip stops that are entrances to stations or whose entrances are coded separately */
+        List<TransitStop> stops = new ArrayList<>();
         for (TransitStop ts0 : Iterables.filter(graph.getVertices(), TransitStop.class)) {
+            if (ts0.isStreetLinkable()) stops.add(ts0);
+        }
 
-            /* Skip stops that are entrances to stations or whose entrances are coded separately */
-            if (!ts0.isStreetLinkable()) continue;
-            if (++nLinkableStops % 1000 == 0) {
-                LOG.info("Linked {} stops", nLinkableStops);
+        /*
+         * Find the nearby stops of every stop in parallel. Each search keeps its state in its own routing request and
+         * shortest path tree, and the graph is not modified until all the searches are done.
+         */
+        AtomicInteger nSearched = new AtomicInteger();
+        @SuppressWarnings("unchecked")
+        List<NearbyStopFinder.StopAtDistance>[] nearbyStops = new List[stops.size()];
+        Arrays.parallelSetAll(nearbyStops, i -> {
+            List<NearbyStopFinder.StopAtDistance> nearby =
+                    new ArrayList<>(nearbyStopFinder.findNearbyStopsConsideringPatterns(stops.get(i)));
+            // Sort so that the transfers are created in the same order on every build.
+            nearby.sort(Comparator.comparingInt((NearbyStopFinder.StopAtDistance sd) -> sd.tstop.getIndex())
+                    .thenComparingDouble(sd -> sd.dist));
+            if (nSearched.incrementAndGet() % 1000 == 0) {
+                LOG.info("Found nearby stops for {} stops", nSearched.get());
             }
+            return nearby;
+        });
+
+        /* Then create the transfers in a single pass, in the order of the stops. */
+        int nTransfersTotal = 0;
+        for (int i = 0; i < stops.size(); i++) {
+            TransitStop ts0 = stops.get(i);
             LOG.debug("Linking stop '{}' {}", ts0.getStop(), ts0);
 
             /* Determine the set of stops that are already reachable via other pathways or transfers */
@@ -98,19 +120,20 @@ public class DirectTransferGenerator implements GraphBuilderModule {
 
             /* Make transfers to each nearby stop that is the closest stop on some trip pattern. */
             int n = 0;
-            for (NearbyStopFinder.StopAtDistance sd : nearbyStopFinder.findNearbyStopsConsideringPatterns(ts0)) {
+            for (NearbyStopFinder.StopAtDistance sd : nearbyStops[i]) {
                 /* Skip the origin stop, loop transfers are not needed. */
                 if (sd.tstop == ts0 || pathwayDestinations.contains(sd.tstop)) continue;
                 new SimpleTransfer(ts0, sd.tstop, sd.dist, sd.geom, sd.edges);
                 n += 1;
             }
+            nearbyStops[i] = null;
             LOG.debug("Linked stop {} to {} nearby stops on other patterns.", ts0.getStop(), n);
             if (n == 0) {
                 LOG.debug(graph.addBuilderAnnotation(new StopNotLinkedForTransfers(ts0)));
             }
             nTransfersTotal += n;
         }
-        LOG.info("Done connecting stops to one another. Created a total of {} transfers from {} stops.", nTransfersTotal, nLinkableStops);
+        LOG.info("Done connecting stops to one another. Created a total of {} transfers from {} stops.", nTransfersTotal, stops.size());
         graph.hasDirectTransfers = true;
     }
 
@@ -17,6 +17,7 @@ import java.awt.*;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -52,8 +53,6 @@ public class GtfsModule implements GraphBuilderModule {
 
     private static final Logger LOG = LoggerFactory.getLogger(GtfsModule.class);
 
-    EntityHandler counter = new EntityCounter();
-
     private FareServiceFactory _fareServiceFactory;
 
     /** will be applied to all bundles which do not have the cacheDirectory property set */
@@ -66,6 +65,12 @@ public class GtfsModule implements GraphBuilderModule {
 
     int nextAgencyId = 1; // used for generating agency IDs to resolve ID conflicts
 
+    /**
+     * How many feeds are read in parallel. Every feed of a batch is held in memory in its own DAO until the whole
+     * batch is added to the graph, so this trades peak build memory for loading time.
+     */
+    private int maxFeedsLoadedAtOnce = Runtime.getRuntime().availableProcessors();
+
     public List<GtfsBundle> gtfsBundles;
 
     public GtfsModule(List<GtfsBundle> bundles) { this.gtfsBundles = bundles; };
@@ -84,6 +89,10 @@ public class GtfsModule implements GraphBuilderModule {
         _fareServiceFactory = factory;
     }
 
+    public void setMaxFeedsLoadedAtOnce(int maxFeedsLoadedAtOnce) {
+        this.maxFeedsLoadedAtOnce = Math.max(1, maxFeedsLoadedAtOnce);
+    }
+
     @Override
     public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
         // we're about to add another agency to the graph, so clear the cached timezone
@@ -97,41 +106,13 @@ public class GtfsModule implements GraphBuilderModule {
         GtfsStopContext stopContext = new GtfsStopContext();
         
         try {
-            for (GtfsBundle gtfsBundle : gtfsBundles) {
-                // apply global defaults to individual GTFSBundles (if globals have been set)
-                if (cacheDirectory != null && gtfsBundle.cacheDirectory == null)
-                    gtfsBundle.cacheDirectory = cacheDirectory;
-                if (useCached != null && gtfsBundle.useCached == null)
-                    gtfsBundle.useCached = useCached;
-                GtfsMutableRelationalDao dao = new GtfsRelationalDaoImpl();
-                GtfsContext context = GtfsLibrary.createContext(gtfsBundle.getFeedId(), dao, service);
-                GTFSPatternHopFactory hf = new GTFSPatternHopFactory(context);
-                hf.setStopContext(stopContext);
-                hf.setFareServiceFactory(_fareServiceFactory);
-                hf.setMaxStopToShapeSnapDistance(gtfsBundle.getMaxStopToShapeSnapDistance());
-
-                loadBundle(gtfsBundle, graph, dao);
-
-                CalendarServiceDataFactoryImpl csfactory = new CalendarServiceDataFactoryImpl();
-                csfactory.setGtfsDao(dao);
-                CalendarServiceData data = csfactory.createData();
-                service.addData(data, dao);
-
-                hf.subwayAccessTime = gtfsBundle.subwayAccessTime;
-                hf.maxInterlineDistance = gtfsBundle.maxInterlineDistance;
-                hf.run(graph);
-
-                if (gtfsBundle.doesTransfersTxtDefineStationPaths()) {
-                    hf.createTransfersTxtTransfers();
-                }
-                if (gtfsBundle.linkStopsToParentStations) {
-                    hf.linkStopsToParentStations(graph);
-                } 
-                if (gtfsBundle.parentStationTransfers) {
-                    hf.createParentStationTransfers();
-                }
+            // Feeds are loaded in batches, and the DAOs of a batch are released once it is in the graph.
+            for (int start = 0; start < gtfsBundles.size(); start += maxFeedsLoadedAtOnce) {
+                List<GtfsBundle> batch = gtfsBundles.subList(start,
+                        Math.min(start + maxFeedsLoadedAtOnce, gtfsBundles.size()));
+                loadBatch(batch, graph, service, stopContext);
             }
-        } catch (IOException e) {
+        } catch (IOException | UncheckedIOException e) {
             throw new RuntimeException(e);
         }
 
@@ -149,85 +130,165 @@ public class GtfsModule implements GraphBuilderModule {
      * Private Methods
      ****/
 
-    private void loadBundle(GtfsBundle gtfsBundle, Graph graph, GtfsMutableRelationalDao dao)
-            throws IOException {
+    /** Read a batch of feeds in parallel, then add them to the graph in order. */
+    private void loadBatch(List<GtfsBundle> batch, Graph graph, MultiCalendarServiceImpl service,
+            GtfsStopContext stopContext) throws IOException {
+        List<FeedLoader> loaders = new ArrayList<>();
+        for (GtfsBundle gtfsBundle : batch) {
+            // apply global defaults to individual GTFSBundles (if globals have been set)
+            if (cacheDirectory != null && gtfsBundle.cacheDirectory == null)
+                gtfsBundle.cacheDirectory = cacheDirectory;
+            if (useCached != null && gtfsBundle.useCached == null)
+                gtfsBundle.useCached = useCached;
+            // Agencies are read feed by feed in order, so conflicting agency IDs are replaced the same way on
+            // every build whatever order the feeds finish loading in.
+            FeedLoader loader = new FeedLoader(gtfsBundle);
+            loader.readAgencies();
+            loaders.add(loader);
+        }
+
+        // Reading the rest of the feeds and their calendars is independent from feed to feed, and takes most
+        // of the time, so it is done in parallel.
+        loaders.parallelStream().forEach(FeedLoader::readRemainingEntities);
+
+        // Adding the feeds to the graph creates vertices and edges, which get their IDs in the order they are
+        // created, so this is done feed by feed in order.
+        for (FeedLoader loader : loaders) {
+            GtfsBundle gtfsBundle = loader.gtfsBundle;
+            GtfsMutableRelationalDao dao = loader.dao;
+            service.addData(loader.calendarData, dao);
+            GtfsContext context = GtfsLibrary.createContext(gtfsBundle.getFeedId(), dao, service);
+            GTFSPatternHopFactory hf = new GTFSPatternHopFactory(context);
+            hf.setStopContext(stopContext);
+            hf.setFareServiceFactory(_fareServiceFactory);
+            hf.setMaxStopToShapeSnapDistance(gtfsBundle.getMaxStopToShapeSnapDistance());
+
+            hf.subwayAccessTime = gtfsBundle.subwayAccessTime;
+            hf.maxInterlineDistance = gtfsBundle.maxInterlineDistance;
+            hf.run(graph);
+
+            if (gtfsBundle.doesTransfersTxtDefineStationPaths()) {
+                hf.createTransfersTxtTransfers();
+            }
+            if (gtfsBundle.linkStopsToParentStations) {
+                hf.linkStopsToParentStations(graph);
+            } 
+            if (gtfsBundle.parentStationTransfers) {
+                hf.createParentStationTransfers();
+            }
+        }
+    }
+
+    /**
+     * Loads one GTFS bundle into its own DAO. Agencies are read first, then the other entities and the calendar
+     * data, which can be done in parallel with other bundles.
+     */
+    private class FeedLoader {
 
-        StoreImpl store = new StoreImpl(dao);
-        store.open();
-        LOG.info("reading {}", gtfsBundle.toString());
+        final GtfsBundle gtfsBundle;
 
-        GtfsFeedId gtfsFeedId = gtfsBundle.getFeedId();
+        final GtfsMutableRelationalDao dao = new GtfsRelationalDaoImpl();
 
-        GtfsReader reader = new GtfsReader();
-        reader.setInputSource(gtfsBundle.getCsvInputSource());
-        reader.setEntityStore(store);
-        reader.setInternStrings(true);
-        reader.setDefaultAgencyId(gtfsFeedId.getId());
+        final StoreImpl store = new StoreImpl(dao);
 
-        if (LOG.isDebugEnabled())
-            reader.addEntityHandler(counter);
+        final GtfsReader reader = new GtfsReader();
 
-        if (gtfsBundle.getDefaultBikesAllowed())
-            reader.addEntityHandler(new EntityBikeability(true));
+        CalendarServiceData calendarData;
+
+        FeedLoader(GtfsBundle gtfsBundle) {
+            this.gtfsBundle = gtfsBundle;
+        }
+
+        void readAgencies() throws IOException {
+            store.open();
+            LOG.info("reading {}", gtfsBundle.toString());
+
+            GtfsFeedId gtfsFeedId = gtfsBundle.getFeedId();
+
+            reader.setInputSource(gtfsBundle.getCsvInputSource());
+            reader.setEntityStore(store);
+            reader.setInternStrings(true);
+            reader.setDefaultAgencyId(gtfsFeedId.getId());
+
+            if (LOG.isDebugEnabled())
+                reader.addEntityHandler(new EntityCounter());
+
+            if (gtfsBundle.getDefaultBikesAllowed())
+                reader.addEntityHandler(new EntityBikeability(true));
 
-        for (Class<?> entityClass : reader.getEntityClasses()) {
-            LOG.info("reading entities: " + entityClass.getName());
-            reader.readEntities(entityClass);
-            store.flush();
             // NOTE that agencies are first in the list and read before all other entity types, so it is effective to
             // set the agencyId here. Each feed ("bundle") is loaded by a separate reader, so there is no risk of
             // agency mappings accumulating.
-            if (entityClass == Agency.class) {
-                for (Agency agency : reader.getAgencies()) {
-                    String agencyId = agency.getId();
-                    LOG.info("This Agency has the ID {}", agencyId);
-                    // Somehow, when the agency's id field is missing, OBA replaces it with the agency's name.
-                    // TODO Figure out how and why this is happening.
-                    if (agencyId == null || agencyIdsSeen.contains(gtfsFeedId.getId() + agencyId)) {
-                        // Loop in case generated name is already in use.
-                        String generatedAgencyId = null;
-                        while (generatedAgencyId == null || agencyIdsSeen.contains(generatedAgencyId)) {
-                            generatedAgencyId = "F" + nextAgencyId;
-                            nextAgencyId++;
-                        }
-                        LOG.warn("The agency ID '{}' was already seen, or I think it's bad. Replacing with '{}'.", agencyId, generatedAgencyId);
-                        reader.addAgencyIdMapping(agencyId, generatedAgencyId); // NULL key should work
-                        agency.setId(generatedAgencyId);
-                        agencyId = generatedAgencyId;
+            LOG.info("reading entities: " + Agency.class.getName());
+            reader.readEntities(Agency.class);
+            store.flush();
+            for (Agency agency : reader.getAgencies()) {
+                String agencyId = agency.getId();
+                LOG.info("This Agency has the ID {}", agencyId);
+                // Somehow, when the agency's id field is missing, OBA replaces it with the agency's name.
+                // TODO Figure out how and why this is happening.
+                if (agencyId == null || agencyIdsSeen.contains(gtfsFeedId.getId() + agencyId)) {
+                    // Loop in case generated name is already in use.
+                    String generatedAgencyId = null;
+                    while (generatedAgencyId == null || agencyIdsSeen.contains(generatedAgencyId)) {
+                        generatedAgencyId = "F" + nextAgencyId;
+                        nextAgencyId++;
                     }
-                    if (agencyId != null) agencyIdsSeen.add(gtfsFeedId.getId() + agencyId);
+                    LOG.warn("The agency ID '{}' was already seen, or I think it's bad. Replacing with '{}'.", agencyId, generatedAgencyId);
+                    reader.addAgencyIdMapping(agencyId, generatedAgencyId); // NULL key should work
+                    agency.setId(generatedAgencyId);
+                    agencyId = generatedAgencyId;
                 }
+                if (agencyId != null) agencyIdsSeen.add(gtfsFeedId.getId() + agencyId);
             }
         }
 
-        for (ShapePoint shapePoint : store.getAllEntitiesForType(ShapePoint.class)) {
-            shapePoint.getShapeId().setAgencyId(reader.getDefaultAgencyId());
-        }
-        for (Route route : store.getAllEntitiesForType(Route.class)) {
-            route.getId().setAgencyId(reader.getDefaultAgencyId());
-            generateRouteColor(route);
-        }
-        for (Stop stop : store.getAllEntitiesForType(Stop.class)) {
-            stop.getId().setAgencyId(reader.getDefaultAgencyId());
-        }
-        for (Trip trip : store.getAllEntitiesForType(Trip.class)) {
-            trip.getId().setAgencyId(reader.getDefaultAgencyId());
-        }
-        for (ServiceCalendar serviceCalendar : store.getAllEntitiesForType(ServiceCalendar.class)) {
-            serviceCalendar.getServiceId().setAgencyId(reader.getDefaultAgencyId());
-        }
-        for (ServiceCalendarDate serviceCalendarDate : store.getAllEntitiesForType(ServiceCalendarDate.class)) {
-            serviceCalendarDate.getServiceId().setAgencyId(reader.getDefaultAgencyId());
-        }
-        for (FareAttribute fareAttribute : store.getAllEntitiesForType(FareAttribute.class)) {
-            fareAttribute.getId().setAgencyId(reader.getDefaultAgencyId());
-        }
-        for (Pathway pathway : store.getAllEntitiesForType(Pathway.class)) {
-            pathway.getId().setAgencyId(reader.getDefaultAgencyId());
-        }
+        void readRemainingEntities() {
+            try {
+                for (Class<?> entityClass : reader.getEntityClasses()) {
+                    if (entityClass == Agency.class) {
+                        continue;
+                    }
+                    LOG.info("reading entities: " + entityClass.getName());
+                    reader.readEntities(entityClass);
+                    store.flush();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
 
-        store.close();
+            for (ShapePoint shapePoint : store.getAllEntitiesForType(ShapePoint.class)) {
+                shapePoint.getShapeId().setAgencyId(reader.getDefaultAgencyId());
+            }
+            for (Route route : store.getAllEntitiesForType(Route.class)) {
+                route.getId().setAgencyId(reader.getDefaultAgencyId());
+                generateRouteColor(route);
+            }
+            for (Stop stop : store.getAllEntitiesForType(Stop.class)) {
+                stop.getId().setAgencyId(reader.getDefaultAgencyId());
+            }
+            for (Trip trip : store.getAllEntitiesForType(Trip.class)) {
+                trip.getId().setAgencyId(reader.getDefaultAgencyId());
+            }
+            for (ServiceCalendar serviceCalendar : store.getAllEntitiesForType(ServiceCalendar.class)) {
+                serviceCalendar.getServiceId().setAgencyId(reader.getDefaultAgencyId());
+            }
+            for (ServiceCalendarDate serviceCalendarDate : store.getAllEntitiesForType(ServiceCalendarDate.class)) {
+                serviceCalendarDate.getServiceId().setAgencyId(reader.getDefaultAgencyId());
+            }
+            for (FareAttribute fareAttribute : store.getAllEntitiesForType(FareAttribute.class)) {
+                fareAttribute.getId().setAgencyId(reader.getDefaultAgencyId());
+            }
+            for (Pathway pathway : store.getAllEntitiesForType(Pathway.class)) {
+                pathway.getId().setAgencyId(reader.getDefaultAgencyId());
+            }
 
+            store.close();
+
+            CalendarServiceDataFactoryImpl csfactory = new CalendarServiceDataFactoryImpl();
+            csfactory.setGtfsDao(dao);
+            calendarData = csfactory.createData();
+        }
     }
 
     /**
@@ -0,0 +1,299 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.graph_builder.module;
+
+import org.opentripplanner.graph_builder.services.GraphBuilderModule;
+import org.opentripplanner.routing.algorithm.strategies.LandmarkDistances;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.TemporaryEdge;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.vertextype.OnboardVertex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.opentripplanner.routing.algorithm.strategies.LandmarkDistances.UNREACHABLE;
+
+/**
+ * Precompute the street distances between every vertex and a few landmarks, for use by the
+ * LandmarkRemainingWeightHeuristic (see {@link LandmarkDistances}). This must run after every module that adds edges
+ * to the graph.
+ *
+ * Landmarks are chosen with the "farthest" strategy: each new landmark is the vertex farthest from all the landmarks
+ * chosen so far, which puts them around the edges of the network where they give the best bounds. The random start
+ * of the selection is seeded, so the same graph always gets the same landmarks. The searches run over a compact
+ * array copy of the graph, and the searches towards the landmarks run in parallel once all landmarks are known.
+ * The table takes 8 bytes per vertex per landmark.
+ */
+public class LandmarkModule implements GraphBuilderModule {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LandmarkModule.class);
+
+    private static final long SEED = 42;
+
+    private final int landmarkCount;
+
+    public LandmarkModule(int landmarkCount) {
+        this.landmarkCount = landmarkCount;
+    }
+
+    public List<String> provides() {
+        return Arrays.asList("landmarks");
+    }
+
+    public List<String> getPrerequisites() {
+        return Arrays.asList("streets");
+    }
+
+    @Override
+    public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
+        List<Vertex> vertexList = new ArrayList<>();
+        for (Vertex v : graph.getVertices()) {
+            if (!(v instanceof OnboardVertex)) {
+                vertexList.add(v);
+            }
+        }
+        if (vertexList.isEmpty()) {
+            return;
+        }
+        // Order vertices by index, so the table (and the landmarks) do not depend on hash map iteration order.
+        Collections.sort(vertexList, Comparator.comparingInt(Vertex::getIndex));
+        Vertex[] vertices = vertexList.toArray(new Vertex[vertexList.size()]);
+        int n = vertices.length;
+
+        int[] positions = new int[Vertex.getMaxIndex()];
+        Arrays.fill(positions, -1);
+        for (int p = 0; p < n; p++) {
+            positions[vertices[p].getIndex()] = p;
+        }
+        Adjacency forward = new Adjacency(vertices, positions, false);
+        Adjacency backward = new Adjacency(vertices, positions, true);
+
+        int[] landmarks = new int[landmarkCount];
+        int[][] fromLandmarks = new int[landmarkCount][];
+        int[] closest = new int[n];
+        Arrays.fill(closest, UNREACHABLE);
+        int start = new Random(SEED).nextInt(n);
+        for (int i = 0; i < n && forward.firstEdge[start] == forward.firstEdge[start + 1]; i++) {
+            start = (start + 1) % n; // skip vertices without outgoing edges, which would not reach anything
+        }
+        int next = farthest(forward.search(start));
+        int found = 0;
+        while (found < landmarkCount && next >= 0) {
+            landmarks[found] = next;
+            int[] distances = forward.search(next);
+            fromLandmarks[found] = distances;
+            found++;
+            for (int p = 0; p < n; p++) {
+                closest[p] = Math.min(closest[p], distances[p]);
+            }
+            next = farthest(closest);
+        }
+        if (found == 0) {
+            LOG.warn("No landmark could be found, the graph will use the Euclidean heuristic.");
+            return;
+        }
+        final int landmarkTotal = found;
+        int[][] toLandmarks = new int[landmarkTotal][];
+        IntStream.range(0, landmarkTotal).parallel().forEach(l -> toLandmarks[l] = backward.search(landmarks[l]));
+
+        int[] fromTable = new int[n * landmarkTotal];
+        int[] toTable = new int[n * landmarkTotal];
+        Vertex[] landmarkVertices = new Vertex[landmarkTotal];
+        for (int l = 0; l < landmarkTotal; l++) {
+            landmarkVertices[l] = vertices[landmarks[l]];
+            for (int p = 0; p < n; p++) {
+                fromTable[p * landmarkTotal + l] = fromLandmarks[l][p];
+                toTable[p * landmarkTotal + l] = toLandmarks[l][p];
+            }
+        }
+        graph.putService(LandmarkDistances.class,
+                new LandmarkDistances(vertices, landmarkVertices, fromTable, toTable));
+        LOG.info("Computed distances from {} vertices to {} landmarks ({} MB).", n, landmarkTotal,
+                2L * n * landmarkTotal * 4 / 1024 / 1024);
+    }
+
+    /** @return the position with the largest reachable, non-zero distance, or -1 if there is none. */
+    private static int farthest(int[] distances) {
+        int farthest = -1;
+        int max = 0;
+        for (int p = 0; p < distances.length; p++) {
+            if (distances[p] != UNREACHABLE && distances[p] > max) {
+                max = distances[p];
+                farthest = p;
+            }
+        }
+        return farthest;
+    }
+
+    @Override
+    public void checkInputs() {
+        //no inputs to check
+    }
+
+    /**
+     * The permanent edges of the graph as compressed adjacency arrays, either in the direction of the edges or
+     * reversed. Edge lengths are in millimeters.
+     */
+    private static class Adjacency {
+
+        final int[] firstEdge;
+
+        final int[] neighbors;
+
+        final int[] lengths;
+
+        Adjacency(Vertex[] vertices, int[] positions, boolean reverse) {
+            int n = vertices.length;
+            firstEdge = new int[n + 1];
+            int count = 0;
+            for (int p = 0; p < n; p++) {
+                firstEdge[p] = count;
+                for (Edge e : reverse ? vertices[p].getIncoming() : vertices[p].getOutgoing()) {
+                    if (neighbor(e, positions, reverse) >= 0) {
+                        count++;
+                    }
+                }
+            }
+            firstEdge[n] = count;
+            neighbors = new int[count];
+            lengths = new int[count];
+            int i = 0;
+            for (int p = 0; p < n; p++) {
+                for (Edge e : reverse ? vertices[p].getIncoming() : vertices[p].getOutgoing()) {
+                    int neighbor = neighbor(e, positions, reverse);
+                    if (neighbor >= 0) {
+                        neighbors[i] = neighbor;
+                        // StreetEdge stores its length in whole millimeters, so this conversion is exact.
+                        lengths[i] = e instanceof StreetEdge ? (int) Math.round(e.getDistance() * 1000) : 0;
+                        i++;
+                    }
+                }
+            }
+        }
+
+        private static int neighbor(Edge e, int[] positions, boolean reverse) {
+            if (e instanceof TemporaryEdge) {
+                return -1;
+            }
+            Vertex v = reverse ? e.getFromVertex() : e.getToVertex();
+            int index = v.getIndex();
+            return index < positions.length ? positions[index] : -1;
+        }
+
+        /** A plain Dijkstra search from the given position, returning the distance to every position. */
+        int[] search(int source) {
+            int n = firstEdge.length - 1;
+            long[] distances = new long[n];
+            Arrays.fill(distances, Long.MAX_VALUE);
+            distances[source] = 0;
+            Heap heap = new Heap();
+            heap.insert(0, source);
+            while (!heap.isEmpty()) {
+                long d = heap.minKey();
+                int p = heap.extractMin();
+                if (d > distances[p]) {
+                    continue; // stale entry, the vertex was reached by a shorter path since it was queued
+                }
+                for (int i = firstEdge[p]; i < firstEdge[p + 1]; i++) {
+                    long nd = d + lengths[i];
+                    int q = neighbors[i];
+                    if (nd < distances[q]) {
+                        distances[q] = nd;
+                        heap.insert(nd, q);
+                    }
+                }
+            }
+            int[] result = new int[n];
+            for (int p = 0; p < n; p++) {
+                result[p] = distances[p] < UNREACHABLE ? (int) distances[p] : UNREACHABLE;
+            }
+            return result;
+        }
+    }
+
+    /** A binary min-heap of positions keyed on distances, without boxing. */
+    private static class Heap {
+
+        private long[] keys = new long[64];
+
+        private int[] values = new int[64];
+
+        private int size = 0;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        long minKey() {
+            return keys[0];
+        }
+
+        void insert(long key, int value) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (keys[parent] <= key) {
+                    break;
+                }
+                keys[i] = keys[parent];
+                values[i] = values[parent];
+                i = parent;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        int extractMin() {
+            int min = values[0];
+            size--;
+            long key = keys[size];
+            int value = values[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && keys[child + 1] < keys[child]) {
+                    child++;
+                }
+                if (keys[child] >= key) {
+                    break;
+                }
+                keys[i] = keys[child];
+                values[i] = values[child];
+                i = child;
+            }
+            keys[i] = key;
+            values[i] = value;
+            return min;
+        }
+    }
+
+}
@@ -35,6 +35,9 @@ import java.util.*;
  * Ideally they could also be used in long distance mode and profile routing for the street segments.
  * For each stop, it finds the closest stops on all other patterns. This reduces the number of transfer edges
  * significantly compared to simple radius-constrained all-to-all stop linkage.
+ *
+ * The searches keep all their state in a new routing request and shortest path tree, so a single NearbyStopFinder can
+ * be used from several threads at once as long as the graph is not modified meanwhile.
  */
 public class NearbyStopFinder {
 
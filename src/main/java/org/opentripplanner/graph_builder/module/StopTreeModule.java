@@ -0,0 +1,63 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.graph_builder.module;
+
+import org.opentripplanner.graph_builder.services.GraphBuilderModule;
+import org.opentripplanner.profile.StopTreeCache;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.GraphIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Compute the distances from every transit stop to the street vertices around it (the {@link StopTreeCache} used by
+ * Analyst) while building the graph, and save them with the graph, so that servers and Analyst workers loading the
+ * graph do not each have to make a street search from every stop. This must run after the stops are linked to the
+ * streets.
+ */
+public class StopTreeModule implements GraphBuilderModule {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StopTreeModule.class);
+
+    public List<String> provides() {
+        return Arrays.asList("stop trees");
+    }
+
+    public List<String> getPrerequisites() {
+        return Arrays.asList("street to transit");
+    }
+
+    @Override
+    public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
+        /* Initialize graph index which is needed to find the stops. */
+        if (graph.index == null) {
+            graph.index = new GraphIndex(graph);
+        }
+        if (graph.index.stopVertexForStop.isEmpty()) {
+            LOG.info("No transit stops, not computing stop trees.");
+            return;
+        }
+        graph.putService(StopTreeCache.class, new StopTreeCache(graph, GraphIndex.MAX_WALK_METERS));
+    }
+
+    @Override
+    public void checkInputs() {
+        //no inputs to check
+    }
+
+}
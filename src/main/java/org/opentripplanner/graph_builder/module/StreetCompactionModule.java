@@ -0,0 +1,70 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.graph_builder.module;
+
+import org.opentripplanner.graph_builder.services.GraphBuilderModule;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetEdgeInterner;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Reduce the memory used by the street network once it is complete, by making all street edges share equal names,
+ * geometries and elevation profiles (see {@link StreetEdgeInterner}). This should run after every module that
+ * creates or splits street edges. The sharing survives serialization, so it also shrinks Graph.obj and the memory
+ * used by the server loading it.
+ */
+public class StreetCompactionModule implements GraphBuilderModule {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StreetCompactionModule.class);
+
+    public List<String> provides() {
+        return Collections.emptyList();
+    }
+
+    public List<String> getPrerequisites() {
+        return Arrays.asList("streets");
+    }
+
+    @Override
+    public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
+        StreetEdgeInterner interner = new StreetEdgeInterner();
+        for (Vertex v : graph.getVertices()) {
+            for (Edge e : v.getOutgoing()) {
+                if (e instanceof StreetEdge) {
+                    interner.intern((StreetEdge) e);
+                }
+            }
+        }
+        LOG.info("Compacted {} street edges: {} distinct names ({} references shared), {} distinct geometries " +
+                "({} shared), {} elevation profiles shared, about {} MB saved on geometries and profiles.",
+                interner.getEdgeCount(), interner.getDistinctNameCount(), interner.getSharedNameCount(),
+                interner.getDistinctGeometryCount(), interner.getSharedGeometryCount(),
+                interner.getSharedProfileCount(), interner.getSavedBytes() / 1024 / 1024);
+    }
+
+    @Override
+    public void checkInputs() {
+        //no inputs to check
+    }
+
+}
@@ -15,6 +15,10 @@ package org.opentripplanner.graph_builder.module.ned;
 
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.coverage.grid.Interpolator2D;
 import org.geotools.geometry.DirectPosition2D;
@@ -42,6 +46,8 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * {@link org.opentripplanner.graph_builder.services.GraphBuilderModule} plugin that applies elevation data to street data that has already
@@ -59,11 +65,19 @@ public class ElevationModule implements GraphBuilderModule {
 
     private ElevationGridCoverageFactory gridCoverageFactory;
 
-    private Coverage coverage;
+    /**
+     * Size in degrees of the cells used to group edges before sampling them. Edges in the same cell are sampled
+     * together by the same thread, so the raster tiles under them are decoded once and stay in cache. This is about
+     * the size of a 512 pixel raster tile of 1/3 arc-second NED data.
+     */
+    private static final double SAMPLING_CELL_DEGREES = 0.05;
+
+    /* Sample cells on several threads. Only turned off to compare with the serial results in tests. */
+    private boolean parallel = true;
 
     // Keep track of the proportion of elevation fetch operations that fail so we can issue warnings.
-    private int nPointsEvaluated = 0;
-    private int nPointsOutsideDEM = 0;
+    private final AtomicLong nPointsEvaluated = new AtomicLong();
+    private final AtomicLong nPointsOutsideDEM = new AtomicLong();
 
     /**
      * The distance between samples in meters. Defaults to 10m, the approximate resolution of 1/3
@@ -93,41 +107,71 @@ public class ElevationModule implements GraphBuilderModule {
         distanceBetweenSamplesM = distance;
     }
 
+    void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
     @Override
     public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
         gridCoverageFactory.setGraph(graph);
         Coverage gridCov = gridCoverageFactory.getGridCoverage();
-
-        // If gridCov is a GridCoverage2D, apply a bilinear interpolator. Otherwise, just use the
-        // coverage as is (note: UnifiedGridCoverages created by NEDGridCoverageFactoryImpl handle
-        // interpolation internally)
-        coverage = (gridCov instanceof GridCoverage2D) ? Interpolator2D.create(
-                (GridCoverage2D) gridCov, new InterpolationBilinear()) : gridCov;
         log.info("Setting street elevation profiles from digital elevation model...");
-        List<StreetEdge> edgesWithElevation = new ArrayList<StreetEdge>();
-        int nProcessed = 0;
-        int nTotal = graph.countEdges();
+        List<StreetWithElevationEdge> edges = new ArrayList<StreetWithElevationEdge>();
         for (Vertex gv : graph.getVertices()) {
             for (Edge ee : gv.getOutgoing()) {
                 if (ee instanceof StreetWithElevationEdge) {
-                    StreetWithElevationEdge edgeWithElevation = (StreetWithElevationEdge) ee;
-                    processEdge(graph, edgeWithElevation);
-                    if (edgeWithElevation.getElevationProfile() != null && !edgeWithElevation.isElevationFlattened()) {
-                        edgesWithElevation.add(edgeWithElevation);
-                    }
-                    nProcessed += 1;
-                    if (nProcessed % 50000 == 0) {
-                        log.info("set elevation on {}/{} edges", nProcessed, nTotal);
-                        double failurePercentage = nPointsOutsideDEM / nPointsEvaluated * 100;
-                        if (failurePercentage > 50) {
-                            log.warn("Fetching elevation failed at {}/{} points ({}%)",
-                                    nPointsOutsideDEM, nPointsEvaluated, failurePercentage);
-                            log.warn("Elevation is missing at a large number of points. DEM may be for the wrong region. " +
-                                    "If it is unprojected, perhaps the axes are not in (longitude, latitude) order.");
-                        }
+                    edges.add((StreetWithElevationEdge) ee);
+                }
+            }
+        }
+
+        // Group the edges by the cell containing their first point, then sample the cells in parallel. Setting the
+        // profile only modifies the edge itself, so it is done on the sampling threads.
+        TLongObjectMap<TIntList> edgesByCell = new TLongObjectHashMap<TIntList>();
+        for (int i = 0; i < edges.size(); i++) {
+            Coordinate c = edges.get(i).getGeometry().getCoordinateN(0);
+            long cell = (((long) Math.floor(c.x / SAMPLING_CELL_DEGREES)) << 32)
+                    | (((long) Math.floor(c.y / SAMPLING_CELL_DEGREES)) & 0xffffffffL);
+            TIntList cellEdges = edgesByCell.get(cell);
+            if (cellEdges == null) {
+                cellEdges = new TIntArrayList();
+                edgesByCell.put(cell, cellEdges);
+            }
+            cellEdges.add(i);
+        }
+        boolean[] flattened = new boolean[edges.size()];
+        AtomicInteger nProcessed = new AtomicInteger();
+        int nTotal = edges.size();
+        List<TIntList> cells = new ArrayList<TIntList>(edgesByCell.valueCollection());
+        (parallel ? cells.parallelStream() : cells.stream()).forEach(cellEdges -> {
+            // Each cell gets its own interpolators, which are released with the cell rather than kept by pool threads.
+            Coverage coverage = newSampler(gridCov);
+            for (int c = 0; c < cellEdges.size(); c++) {
+                int i = cellEdges.get(c);
+                flattened[i] = processEdge(edges.get(i), coverage);
+                int n = nProcessed.incrementAndGet();
+                if (n % 50000 == 0) {
+                    log.info("set elevation on {}/{} edges", n, nTotal);
+                    double failurePercentage = nPointsOutsideDEM.get() * 100.0 / nPointsEvaluated.get();
+                    if (failurePercentage > 50) {
+                        log.warn("Fetching elevation failed at {}/{} points ({}%)",
+                                nPointsOutsideDEM, nPointsEvaluated, failurePercentage);
+                        log.warn("Elevation is missing at a large number of points. DEM may be for the wrong region. " +
+                                "If it is unprojected, perhaps the axes are not in (longitude, latitude) order.");
                     }
                 }
             }
+        });
+        // Record the results in graph order, so the rest of the build does not depend on the order of the threads.
+        List<StreetEdge> edgesWithElevation = new ArrayList<StreetEdge>();
+        for (int i = 0; i < edges.size(); i++) {
+            StreetWithElevationEdge edgeWithElevation = edges.get(i);
+            if (flattened[i]) {
+                log.trace(graph.addBuilderAnnotation(new ElevationFlattened(edgeWithElevation)));
+            }
+            if (edgeWithElevation.getElevationProfile() != null && !edgeWithElevation.isElevationFlattened()) {
+                edgesWithElevation.add(edgeWithElevation);
+            }
         }
 
         @SuppressWarnings("unchecked")
@@ -135,6 +179,20 @@ public class ElevationModule implements GraphBuilderModule {
         assignMissingElevations(graph, edgesWithElevation, extraElevation);
     }
 
+    /**
+     * If the coverage is a GridCoverage2D, apply a bilinear interpolator. Otherwise, just use the coverage as is
+     * (note: UnifiedGridCoverages created by NEDGridCoverageFactoryImpl handle interpolation internally).
+     * Interpolators synchronize on internal buffers, so the sampler must only be used by one thread at a time.
+     */
+    private static Coverage newSampler(Coverage gridCov) {
+        if (gridCov instanceof GridCoverage2D) {
+            return Interpolator2D.create((GridCoverage2D) gridCov, new InterpolationBilinear());
+        } else if (gridCov instanceof UnifiedGridCoverage) {
+            return ((UnifiedGridCoverage) gridCov).withOwnInterpolators();
+        }
+        return gridCov;
+    }
+
     class ElevationRepairState {
         /* This uses an intuitionist approach to elevation inspection */
         public StreetEdge backEdge;
@@ -331,14 +389,16 @@ public class ElevationModule implements GraphBuilderModule {
     }
 
     /**
-     * Processes a single street edge, creating and assigning the elevation profile.
+     * Processes a single street edge, creating and assigning the elevation profile. This is called from several
+     * threads at once, on different edges.
      * 
      * @param ee the street edge
-     * @param graph the graph (used only for error handling)
+     * @param coverage the coverage to sample, used by this thread only
+     * @return true if the elevation profile of the edge was flattened
      */
-    private void processEdge(Graph graph, StreetWithElevationEdge ee) {
+    private boolean processEdge(StreetWithElevationEdge ee, Coverage coverage) {
         if (ee.getElevationProfile() != null) {
-            return; /* already set up */
+            return false; /* already set up */
         }
         Geometry g = ee.getGeometry();
         Coordinate[] coords = g.getCoordinates();
@@ -353,7 +413,7 @@ public class ElevationModule implements GraphBuilderModule {
         }
 
         // initial sample (x = 0)
-        coordList.add(new Coordinate(0, getElevation(coords[0])));
+        coordList.add(new Coordinate(0, getElevation(coverage, coords[0])));
 
         // loop for edge-internal samples
         for (double x = distanceBetweenSamplesM; x < edgeLenM; x += distanceBetweenSamplesM) {
@@ -363,20 +423,18 @@ public class ElevationModule implements GraphBuilderModule {
             }
 
             Coordinate internal = getPointAlongEdge(coords, edgeLenM, x / edgeLenM);
-            coordList.add(new Coordinate(x, getElevation(internal)));
+            coordList.add(new Coordinate(x, getElevation(coverage, internal)));
         }
 
         // final sample (x = edge length)
-        coordList.add(new Coordinate(edgeLenM, getElevation(coords[coords.length - 1])));
+        coordList.add(new Coordinate(edgeLenM, getElevation(coverage, coords[coords.length - 1])));
 
         // construct the PCS
         Coordinate coordArr[] = new Coordinate[coordList.size()];
         PackedCoordinateSequence elevPCS = new PackedCoordinateSequence.Double(
                 coordList.toArray(coordArr));
 
-        if(ee.setElevationProfile(elevPCS, false)) {
-            log.trace(graph.addBuilderAnnotation(new ElevationFlattened(ee)));
-        }
+        return ee.setElevationProfile(elevPCS, false);
     }
 
     /**
@@ -430,8 +488,8 @@ public class ElevationModule implements GraphBuilderModule {
      * @param c the coordinate (NAD83)
      * @return elevation in meters
      */
-    private double getElevation(Coordinate c) {
-        return getElevation(c.x, c.y);
+    private double getElevation(Coverage coverage, Coordinate c) {
+        return getElevation(coverage, c.x, c.y);
     }
 
     /**
@@ -441,7 +499,7 @@ public class ElevationModule implements GraphBuilderModule {
      * @param y the query latitude (NAD83)
      * @return elevation in meters
      */
-    private double getElevation(double x, double y) {
+    private double getElevation(Coverage coverage, double x, double y) {
         double values[] = new double[1];
         try {
             // We specify a CRS here because otherwise the coordinates are assumed to be in the coverage's native CRS.
@@ -451,9 +509,9 @@ public class ElevationModule implements GraphBuilderModule {
             // rasters to also use (long, lat).
             coverage.evaluate(new DirectPosition2D(GeometryUtils.WGS84_XY, x, y), values);
         } catch (org.opengis.coverage.PointOutsideCoverageException e) {
-            nPointsOutsideDEM += 1;
+            nPointsOutsideDEM.incrementAndGet();
         }
-        nPointsEvaluated += 1;
+        nPointsEvaluated.incrementAndGet();
         return values[0];
     }
 
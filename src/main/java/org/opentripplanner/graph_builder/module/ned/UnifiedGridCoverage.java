@@ -15,6 +15,7 @@ package org.opentripplanner.graph_builder.module.ned;
 
 import org.geotools.coverage.AbstractCoverage;
 import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.Interpolator2D;
 import org.geotools.geometry.GeneralEnvelope;
 import org.opengis.coverage.CannotEvaluateException;
 import org.opengis.coverage.Coverage;
@@ -24,13 +25,19 @@ import org.opengis.geometry.DirectPosition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.media.jai.InterpolationBilinear;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * Stitches together multiple elevation maps into a single elevation map,
  * hackily.  This is horrible, but the geotools way of doing things is
  * too slow.   
+ *
+ * The regions are interpolated bilinearly. GeoTools interpolators keep scratch buffers and synchronize on them, so a
+ * coverage must only be evaluated by one thread at a time. Threads sampling in parallel each use their own view from
+ * {@link #withOwnInterpolators()}, which shares the regions.
  * @author novalis
  *
  */
@@ -40,22 +47,52 @@ public class UnifiedGridCoverage extends AbstractCoverage {
 
     private static Logger log = LoggerFactory.getLogger(UnifiedGridCoverage.class);
     
-    private ArrayList<Coverage> regions;
+    private ArrayList<GridCoverage2D> regions;
 
     private List<VerticalDatum> datums;
 
+    /* The interpolators over the regions, in the same order as the regions, created as points fall in them. */
+    private transient Coverage[] interpolators;
+
     /**
      * It would be nice if we could construct this unified coverage with zero sub-coverages and add all sub-coverages
      * in the same way. However, the superclass constructor (AbstractCoverage) needs a coverage to copy properties from.
      * So the first sub-coverage needs to be passed in at construction time.
      */
-    protected UnifiedGridCoverage(CharSequence name, Coverage coverage, List<VerticalDatum> datums) {
+    protected UnifiedGridCoverage(CharSequence name, GridCoverage2D coverage, List<VerticalDatum> datums) {
         super(name, coverage);
-        regions = new ArrayList<Coverage>();
+        regions = new ArrayList<GridCoverage2D>();
         regions.add(coverage);
         this.datums = datums;
     }
 
+    private UnifiedGridCoverage(UnifiedGridCoverage shared) {
+        super(shared.getName(), shared);
+        regions = shared.regions;
+        datums = shared.datums;
+    }
+
+    /**
+     * @return a coverage over the same regions with interpolators of its own, which can be evaluated while other
+     * threads evaluate this one. Its interpolators are released with it.
+     */
+    public UnifiedGridCoverage withOwnInterpolators() {
+        return new UnifiedGridCoverage(this);
+    }
+
+    /** @return the interpolator of a region, creating it if needed. */
+    private Coverage interpolator(int i) {
+        if (interpolators == null) {
+            interpolators = new Coverage[regions.size()];
+        } else if (interpolators.length < regions.size()) {
+            interpolators = Arrays.copyOf(interpolators, regions.size());
+        }
+        if (interpolators[i] == null) {
+            interpolators[i] = Interpolator2D.create(regions.get(i), new InterpolationBilinear());
+        }
+        return interpolators[i];
+    }
+
     @Override
     public Object evaluate(DirectPosition point) throws PointOutsideCoverageException, CannotEvaluateException {
         /* we don't use this function, we use evaluate(DirectPosition point, double[] values) */
@@ -65,9 +102,9 @@ public class UnifiedGridCoverage extends AbstractCoverage {
     public double[] evaluate(DirectPosition point, double[] values)
             throws PointOutsideCoverageException, CannotEvaluateException {
 
-        for (Coverage region : regions) {
+        for (int i = 0; i < regions.size(); i++) {
             // GeneralEnvelope has a contains method, OpenGIS Envelope does not
-            GeneralEnvelope env = ((GeneralEnvelope)region.getEnvelope());
+            GeneralEnvelope env = ((GeneralEnvelope)regions.get(i).getEnvelope());
             // Check envelope to avoid incurring exception construction overhead (PointOutsideCoverageException),
             // especially important when there are many regions.
             if (env.contains(point)) {
@@ -75,7 +112,7 @@ public class UnifiedGridCoverage extends AbstractCoverage {
                 double x = point.getOrdinate(0);
                 double y = point.getOrdinate(1);
                 try {
-                    result = region.evaluate(point, values);
+                    result = interpolator(i).evaluate(point, values);
                     // TODO It might be faster to put all the datums and Coverage regions into a spatial index instead of iterating.
                     for (VerticalDatum datum : datums) {
                         if (datum.covers(x, y)) {
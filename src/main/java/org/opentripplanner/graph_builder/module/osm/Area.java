@@ -17,7 +17,6 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 
 import org.opentripplanner.common.geometry.GeometryUtils;
 import org.opentripplanner.openstreetmap.model.OSMNode;
@@ -26,6 +25,7 @@ import org.opentripplanner.openstreetmap.model.OSMWithTags;
 
 import com.google.common.collect.ArrayListMultimap;
 import com.vividsolutions.jts.geom.MultiPolygon;
+import gnu.trove.map.TLongObjectMap;
 import com.vividsolutions.jts.geom.Polygon;
 
 /**
@@ -47,7 +47,7 @@ class Area {
     private MultiPolygon jtsMultiPolygon;
 
     Area(OSMWithTags parent, List<OSMWay> outerRingWays, List<OSMWay> innerRingWays,
-            Map<Long, OSMNode> _nodes) {
+            TLongObjectMap<OSMNode> _nodes) {
         this.parent = parent;
         // ring assignment
         List<List<Long>> innerRingNodes = constructRings(innerRingWays);
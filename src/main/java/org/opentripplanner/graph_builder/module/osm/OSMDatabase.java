@@ -17,6 +17,10 @@ import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Multimap;
 import com.vividsolutions.jts.geom.*;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
 import org.opentripplanner.common.RepeatingTimePeriod;
 import org.opentripplanner.common.TurnRestrictionType;
 import org.opentripplanner.common.geometry.GeometryUtils;
@@ -30,18 +34,31 @@ import org.opentripplanner.openstreetmap.services.OpenStreetMapContentHandler;
 import org.opentripplanner.routing.core.TraverseMode;
 import org.opentripplanner.routing.core.TraverseModeSet;
 import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
-import org.opentripplanner.util.MapUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
 
+/**
+ * Holds the OSM entities needed to build a street graph while the OSM data is read in three phases (relations, ways,
+ * nodes). Nodes and ways make up nearly all of the data in large extracts, so they are kept in primitive long-keyed
+ * maps and sets rather than maps with boxed Long keys, and tags of nodes that are never used in routing are dropped.
+ */
 public class OSMDatabase implements OpenStreetMapContentHandler {
 
     private static Logger LOG = LoggerFactory.getLogger(OSMDatabase.class);
 
+    /*
+     * Keys (or key prefixes ending in a colon) of node tags that are never used to build the graph. They are attached
+     * to a large share of the nodes in imported data, so they are dropped to save memory.
+     */
+    private static final String[] DISCARDED_NODE_TAGS = {
+            "created_by", "source", "source:", "note", "fixme", "attribution", "converted_by", "odbl", "tiger:",
+            "gnis:", "nhd:", "nhd-shp:", "ksj2:", "yh:", "naptan:", "osak:", "linz:", "lacounty:", "geobase:"
+    };
+
     /* Map of all nodes used in ways/areas keyed by their OSM ID */
-    private Map<Long, OSMNode> nodesById = new HashMap<Long, OSMNode>();
+    private TLongObjectMap<OSMNode> nodesById = new TLongObjectHashMap<OSMNode>();
 
     /* Map of all bike-rental nodes, keyed by their OSM ID */
     private Map<Long, OSMNode> bikeRentalNodes = new HashMap<Long, OSMNode>();
@@ -50,10 +67,10 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
     private Map<Long, OSMNode> bikeParkingNodes = new HashMap<Long, OSMNode>();
 
     /* Map of all non-area ways keyed by their OSM ID */
-    private Map<Long, OSMWay> waysById = new HashMap<Long, OSMWay>();
+    private TLongObjectMap<OSMWay> waysById = new TLongObjectHashMap<OSMWay>();
 
     /* Map of all area ways keyed by their OSM ID */
-    private Map<Long, OSMWay> areaWaysById = new HashMap<Long, OSMWay>();
+    private TLongObjectMap<OSMWay> areaWaysById = new TLongObjectHashMap<OSMWay>();
 
     /* Map of all relations keyed by their OSM ID */
     private Map<Long, OSMRelation> relationsById = new HashMap<Long, OSMRelation>();
@@ -68,7 +85,7 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
     private List<Area> bikeParkingAreas = new ArrayList<Area>();
 
     /* Map of all area OSMWay for a given node */
-    private Map<Long, Set<OSMWay>> areasForNode = new HashMap<Long, Set<OSMWay>>();
+    private TLongObjectMap<Set<OSMWay>> areasForNode = new TLongObjectHashMap<Set<OSMWay>>();
 
     /* Map of all area OSMWay for a given node */
     private List<OSMWay> singleWayAreas = new ArrayList<OSMWay>();
@@ -76,13 +93,13 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
     private Set<OSMWithTags> processedAreas = new HashSet<OSMWithTags>();
 
     /* Set of area way IDs */
-    private Set<Long> areaWayIds = new HashSet<Long>();
+    private TLongSet areaWayIds = new TLongHashSet();
 
     /* Set of all node IDs of kept ways. Needed to mark which nodes to keep in stage 3. */
-    private Set<Long> waysNodeIds = new HashSet<Long>();
+    private TLongSet waysNodeIds = new TLongHashSet();
 
     /* Set of all node IDs of kept areas. Needed to mark which nodes to keep in stage 3. */
-    private Set<Long> areaNodeIds = new HashSet<Long>();
+    private TLongSet areaNodeIds = new TLongHashSet();
 
     /* Track which vertical level each OSM way belongs to, for building elevators etc. */
     private Map<OSMWithTags, OSMLevel> wayLevels = new HashMap<OSMWithTags, OSMLevel>();
@@ -120,7 +137,7 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
     }
 
     public Collection<OSMWay> getWays() {
-        return Collections.unmodifiableCollection(waysById.values());
+        return Collections.unmodifiableCollection(waysById.valueCollection());
     }
 
     public Collection<OSMNode> getBikeRentalNodes() {
@@ -197,6 +214,7 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
         if (nodesById.containsKey(node.getId()))
             return;
 
+        discardUnusedTags(node);
         nodesById.put(node.getId(), node);
 
         if (nodesById.size() % 100000 == 0)
@@ -231,7 +249,7 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
                 areaWaysById.put(wayId, way);
                 areaWayIds.add(wayId);
                 for (Long node : way.getNodeRefs()) {
-                    MapUtils.addToMapSet(areasForNode, node, way);
+                    addAreaForNode(node, way);
                 }
             }
             return;
@@ -294,8 +312,8 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
         // only 2 steps -- ways+relations, followed by used nodes.
         // Ways can be tag-filtered in phase 1.
 
-        markNodesForKeeping(waysById.values(), waysNodeIds);
-        markNodesForKeeping(areaWaysById.values(), areaNodeIds);
+        markNodesForKeeping(waysById.valueCollection(), waysNodeIds);
+        markNodesForKeeping(areaWaysById.valueCollection(), areaNodeIds);
     }
 
     /**
@@ -369,7 +387,7 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
 
         // For each way, intersect with areas
         int nCreatedNodes = 0;
-        for (OSMWay way : waysById.values()) {
+        for (OSMWay way : waysById.valueCollection()) {
             OSMLevel wayLevel = getLevelForWay(way);
 
             // For each segment of the way
@@ -582,17 +600,51 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
         }
     }
 
-    private void markNodesForKeeping(Collection<OSMWay> osmWays, Set<Long> nodeSet) {
+    private void markNodesForKeeping(Collection<OSMWay> osmWays, TLongSet nodeSet) {
         for (Iterator<OSMWay> it = osmWays.iterator(); it.hasNext();) {
             OSMWay way = it.next();
             // Since the way is kept, update nodes-with-neighbors
             List<Long> nodes = way.getNodeRefs();
             if (nodes.size() > 1) {
-                nodeSet.addAll(nodes);
+                for (Long node : nodes) {
+                    nodeSet.add(node);
+                }
             }
         }
     }
 
+    private void addAreaForNode(long nodeId, OSMWay way) {
+        Set<OSMWay> areas = areasForNode.get(nodeId);
+        if (areas == null) {
+            areas = new HashSet<OSMWay>();
+            areasForNode.put(nodeId, areas);
+        }
+        areas.add(way);
+    }
+
+    /**
+     * Remove the tags of a kept node that are never read when building the graph, such as import metadata. Tags
+     * used for routing (barriers, crossings, elevators, stops, levels, names...) are all kept.
+     */
+    private static void discardUnusedTags(OSMNode node) {
+        Map<String, String> tags = node.getTags();
+        if (tags == null) {
+            return;
+        }
+        for (Iterator<String> it = tags.keySet().iterator(); it.hasNext();) {
+            String key = it.next();
+            for (String discarded : DISCARDED_NODE_TAGS) {
+                if (discarded.endsWith(":") ? key.startsWith(discarded) : key.equals(discarded)) {
+                    it.remove();
+                    break;
+                }
+            }
+        }
+        if (tags.isEmpty()) {
+            node.clearTags();
+        }
+    }
+
     /**
      * Create areas from single ways.
      */
@@ -650,7 +702,7 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
                         // the edge of the region, so we will simply not route on it.
                         continue RELATION;
                     }
-                    MapUtils.addToMapSet(areasForNode, nodeId, way);
+                    addAreaForNode(nodeId, way);
                 }
                 if (role.equals("inner")) {
                     innerWays.add(way);
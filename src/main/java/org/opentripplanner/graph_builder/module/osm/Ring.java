@@ -16,7 +16,6 @@ package org.opentripplanner.graph_builder.module.osm;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 
 import org.opentripplanner.common.geometry.GeometryUtils;
 import org.opentripplanner.openstreetmap.model.OSMNode;
@@ -29,6 +28,7 @@ import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.LinearRing;
 import com.vividsolutions.jts.geom.Polygon;
+import gnu.trove.map.TLongObjectMap;
 
 public class Ring {
 
@@ -67,7 +67,7 @@ public class Ring {
         geometry = new VLPolygon(vertices);
     }
 
-    public Ring(List<Long> osmNodes, Map<Long, OSMNode> _nodes) {
+    public Ring(List<Long> osmNodes, TLongObjectMap<OSMNode> _nodes) {
         ArrayList<VLPoint> vertices = new ArrayList<VLPoint>();
         nodes = new ArrayList<OSMNode>(osmNodes.size());
         for (long nodeId : osmNodes) {
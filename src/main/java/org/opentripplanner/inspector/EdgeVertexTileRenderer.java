@@ -24,6 +24,8 @@ import java.awt.Stroke;
 import java.awt.image.BufferedImage;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 
 import org.opentripplanner.common.geometry.GeometryUtils;
@@ -49,9 +51,12 @@ import com.vividsolutions.jts.operation.buffer.OffsetCurveBuilder;
  * A TileRenderer implementation which get all edges/vertex in the bounding box of the tile, and
  * call a EdgeVertexRenderer for getting rendering attributes of each (color, string label...).
  * 
+ * In vector tiles, the color and label are feature attributes, along with the kind of feature
+ * ("edge" or "vertex") and whether the edge has its own geometry.
+ * 
  * @author laurent
  */
-public class EdgeVertexTileRenderer implements TileRenderer {
+public class EdgeVertexTileRenderer implements TileRenderer, VectorTileRenderer {
 
     public class EdgeVisualAttributes {
 
@@ -117,18 +122,7 @@ public class EdgeVertexTileRenderer implements TileRenderer {
 
         Collection<Vertex> vertices = context.graph.streetIndex
                 .getVerticesForEnvelope(bboxWithMargins);
-        Collection<Edge> edges = context.graph.streetIndex.getEdgesForEnvelope(bboxWithMargins);
-        Set<Edge> edgesSet = new HashSet<>(edges);
-
-        /*
-         * Some edges do not have geometry and thus do not get spatial-indexed. Add
-         * outgoing/incoming edges of all vertices. This is not perfect, as if the edge cross a tile
-         * it will not be rendered on it.
-         */
-        for (Vertex vertex : vertices) {
-            edgesSet.addAll(vertex.getIncoming());
-            edgesSet.addAll(vertex.getOutgoing());
-        }
+        Set<Edge> edgesSet = getEdges(context, bboxWithMargins, vertices);
 
         // Note: we do not use the transform inside the shapeWriter, but do it ourselves
         // since it's easier for the offset to work in pixel size.
@@ -167,12 +161,9 @@ public class EdgeVertexTileRenderer implements TileRenderer {
             evAttrs.color = null;
             evAttrs.label = null;
             Geometry edgeGeom = edge.getGeometry();
-            boolean hasGeom = true;
-            if (edgeGeom == null) {
-                Coordinate[] coordinates = new Coordinate[] { edge.getFromVertex().getCoordinate(),
-                        edge.getToVertex().getCoordinate() };
-                edgeGeom = GeometryUtils.getGeometryFactory().createLineString(coordinates);
-                hasGeom = false;
+            boolean hasGeom = edgeGeom != null;
+            if (!hasGeom) {
+                edgeGeom = straightLine(edge);
             }
 
             boolean render = evRenderer.renderEdge(edge, evAttrs);
@@ -242,4 +233,74 @@ public class EdgeVertexTileRenderer implements TileRenderer {
             }
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public void renderVectorTile(TileRenderContext context, VectorTileEncoder encoder) {
+
+        // Enough margin for the edges without geometry that merely touch the tile
+        Envelope bboxWithMargins = context.expandPixels(4.0, 4.0);
+        Collection<Vertex> vertices = context.graph.streetIndex
+                .getVerticesForEnvelope(bboxWithMargins);
+        Set<Edge> edgesSet = getEdges(context, bboxWithMargins, vertices);
+
+        EdgeVisualAttributes evAttrs = new EdgeVisualAttributes();
+        for (Edge edge : edgesSet) {
+            evAttrs.color = null;
+            evAttrs.label = null;
+            if (!evRenderer.renderEdge(edge, evAttrs))
+                continue;
+            Geometry edgeGeom = edge.getGeometry();
+            boolean hasGeom = edgeGeom != null;
+            if (!hasGeom) {
+                edgeGeom = straightLine(edge);
+            }
+            Map<String, String> attributes = new LinkedHashMap<>();
+            attributes.put("type", "edge");
+            attributes.put("color", toHex(evAttrs.color));
+            attributes.put("label", evAttrs.label);
+            attributes.put("geometry", Boolean.toString(hasGeom));
+            encoder.addLineString(edgeGeom.getCoordinates(), attributes);
+        }
+
+        VertexVisualAttributes vvAttrs = new VertexVisualAttributes();
+        for (Vertex vertex : vertices) {
+            vvAttrs.color = null;
+            vvAttrs.label = null;
+            if (!evRenderer.renderVertex(vertex, vvAttrs))
+                continue;
+            Map<String, String> attributes = new LinkedHashMap<>();
+            attributes.put("type", "vertex");
+            attributes.put("color", toHex(vvAttrs.color));
+            attributes.put("label", vvAttrs.label);
+            encoder.addPoint(vertex.getCoordinate(), attributes);
+        }
+    }
+
+    private static Set<Edge> getEdges(TileRenderContext context, Envelope envelope,
+            Collection<Vertex> vertices) {
+        Set<Edge> edgesSet = new HashSet<>(context.graph.streetIndex.getEdgesForEnvelope(envelope));
+
+        /*
+         * Some edges do not have geometry and thus do not get spatial-indexed. Add
+         * outgoing/incoming edges of all vertices. This is not perfect, as if the edge cross a tile
+         * it will not be rendered on it.
+         */
+        for (Vertex vertex : vertices) {
+            edgesSet.addAll(vertex.getIncoming());
+            edgesSet.addAll(vertex.getOutgoing());
+        }
+        return edgesSet;
+    }
+
+    private static Geometry straightLine(Edge edge) {
+        Coordinate[] coordinates = new Coordinate[] { edge.getFromVertex().getCoordinate(),
+                edge.getToVertex().getCoordinate() };
+        return GeometryUtils.getGeometryFactory().createLineString(coordinates);
+    }
+
+    private static String toHex(Color color) {
+        if (color == null)
+            return null;
+        return String.format("#%06x", color.getRGB() & 0xFFFFFF);
+    }
+}
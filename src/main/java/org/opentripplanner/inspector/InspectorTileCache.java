@@ -0,0 +1,359 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.inspector;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+
+import org.opentripplanner.analyst.core.SlippyTile;
+import org.opentripplanner.analyst.request.TileRequest;
+import org.opentripplanner.api.resource.GraphInspectorTileResource;
+import org.opentripplanner.common.MavenVersion;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.util.WorldEnvelope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Cache of encoded inspector tiles, raster or vector, so that map views do not render the same
+ * tiles over and over on the routing threads.
+ * 
+ * Tiles are kept in memory up to a number of bytes and, if a directory is given, on disk up to
+ * another number of bytes. Tiles on disk are stored under the build time of the graph and the
+ * OTP version, so a router that reloads the same graph keeps its tiles, and the tiles of any
+ * other graph of the router are deleted in the background when the cache is created. Tiles which
+ * do not fit on disk anymore, or are rendered before the tiles on disk are counted, are only kept
+ * in memory.
+ * 
+ * Each tile has an ETag derived from its content, so clients can revalidate their copies.
+ * 
+ * @see GraphInspectorTileResource
+ * @see TileRendererManager
+ */
+public class InspectorTileCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InspectorTileCache.class);
+
+    public static final int TILE_SIZE = 256;
+
+    public static final int MAX_ZOOM = 22;
+
+    /* Above this, a seeding request is most probably a configuration mistake. */
+    public static final int MAX_SEED_TILES = 100000;
+
+    public static final String VECTOR_TILE_MIME_TYPE = "application/x-protobuf";
+
+    private final TileRendererManager tileRendererManager;
+
+    /* Directory of the tiles of the current graph, or null to keep tiles in memory only. */
+    private final File directory;
+
+    private final long maxDiskBytes;
+
+    private final AtomicLong diskBytes = new AtomicLong();
+
+    private final LoadingCache<TileKey, CachedTile> tiles;
+
+    /* Also scans the disk before seeding, so that seeded tiles are stored. */
+    private final ExecutorService seeder = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("tile-seeder-%d").build());
+
+    /* Deletes the tiles of other graphs and counts the tiles on disk, or null without a directory. */
+    private final Future<?> diskScan;
+
+    public static class CachedTile {
+
+        public final byte[] bytes;
+
+        public final String mimeType;
+
+        /** Opaque tag, without quotes. */
+        public final String eTag;
+
+        public CachedTile(byte[] bytes, String mimeType) {
+            this.bytes = bytes;
+            this.mimeType = mimeType;
+            this.eTag = Hashing.murmur3_128().hashBytes(bytes).toString();
+        }
+    }
+
+    /**
+     * @param routerDirectory Where to store the tiles of this router, or null to keep the tiles in
+     *        memory only.
+     */
+    public InspectorTileCache(TileRendererManager tileRendererManager, Graph graph,
+            File routerDirectory, long maxMemoryBytes, long maxDiskBytes) {
+        this.tileRendererManager = tileRendererManager;
+        this.maxDiskBytes = maxDiskBytes;
+        if (routerDirectory != null) {
+            String graphVersion = graph.buildTime.getTime() + "-"
+                    + Long.toHexString(MavenVersion.VERSION.getUID());
+            this.directory = new File(routerDirectory, graphVersion);
+            // Scanning a large tile directory must not hold up the startup of the router
+            this.diskScan = seeder.submit(() -> {
+                deleteOtherVersions(routerDirectory, graphVersion);
+                diskBytes.set(sizeOf(directory));
+                LOG.info("Inspector tiles cached in {}, {} bytes on disk.", directory,
+                        diskBytes.get());
+            });
+        } else {
+            this.directory = null;
+            this.diskScan = null;
+        }
+        this.tiles = CacheBuilder.newBuilder()
+                .maximumWeight(maxMemoryBytes)
+                .weigher((TileKey key, CachedTile tile) -> tile.bytes.length)
+                .build(new CacheLoader<TileKey, CachedTile>() {
+                    @Override
+                    public CachedTile load(TileKey key) throws Exception {
+                        return loadTile(key);
+                    }
+                });
+    }
+
+    /**
+     * @param format The file extension: png, gif or jpeg for raster tiles, pbf or mvt for vector
+     *        tiles.
+     * @throws IllegalArgumentException If the layer, format or tile coordinates are invalid, or if
+     *         the layer has no vector tiles and a vector format is asked.
+     */
+    public CachedTile getTile(String layer, int z, int x, int y, String format) throws IOException {
+        TileRenderer renderer = tileRendererManager.getRenderers().get(layer);
+        if (renderer == null)
+            throw new IllegalArgumentException("Unknown layer: " + layer);
+        String mimeType = mimeType(format);
+        if (mimeType == null)
+            throw new IllegalArgumentException("Unsupported tile format: " + format);
+        if (mimeType.equals(VECTOR_TILE_MIME_TYPE) && !(renderer instanceof VectorTileRenderer))
+            throw new IllegalArgumentException("No vector tiles for layer: " + layer);
+        if (z < 0 || z > MAX_ZOOM || x < 0 || y < 0 || x >= (1 << z) || y >= (1 << z))
+            throw new IllegalArgumentException("Invalid tile: " + z + "/" + x + "/" + y);
+        try {
+            return tiles.get(new TileKey(layer, z, x, y, format));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Render in the background all the tiles of the given layers and formats which cover the
+     * graph, between two zoom levels. Tiles which are already cached are not rendered again.
+     * Zoom levels which would bring the total above {@link #MAX_SEED_TILES} are skipped.
+     */
+    public void seed(Graph graph, Collection<String> layers, Collection<String> formats,
+            int minZoom, int maxZoom) {
+        WorldEnvelope envelope = graph.getEnvelope();
+        if (envelope == null)
+            return;
+        seeder.execute(() -> {
+            int nTiles = 0;
+            for (int z = minZoom; z <= Math.min(maxZoom, MAX_ZOOM); z++) {
+                int minX = SlippyTile.lon2tile(envelope.getLowerLeftLongitude(), z);
+                int maxX = SlippyTile.lon2tile(envelope.getUpperRightLongitude(), z);
+                int minY = SlippyTile.lat2tile(envelope.getUpperRightLatitude(), z);
+                int maxY = SlippyTile.lat2tile(envelope.getLowerLeftLatitude(), z);
+                long nZoomTiles = (long) (maxX - minX + 1) * (maxY - minY + 1) * layers.size()
+                        * formats.size();
+                if (nTiles + nZoomTiles > MAX_SEED_TILES) {
+                    LOG.warn("Not seeding inspector tiles from zoom level {}, too many tiles.", z);
+                    break;
+                }
+                for (int x = minX; x <= maxX; x++) {
+                    for (int y = minY; y <= maxY; y++) {
+                        for (String layer : layers) {
+                            for (String format : formats) {
+                                if (Thread.currentThread().isInterrupted())
+                                    return;
+                                try {
+                                    getTile(layer, z, x, y, format);
+                                } catch (Exception e) {
+                                    LOG.warn("Could not seed inspector tile {} {}/{}/{}.{}: {}",
+                                            layer, z, x, y, format, e.getMessage());
+                                    return;
+                                }
+                            }
+                        }
+                    }
+                }
+                nTiles += nZoomTiles;
+            }
+            LOG.info("Seeded {} inspector tiles.", nTiles);
+        });
+    }
+
+    /**
+     * Stop seeding and forget the tiles kept in memory. Called when the router is shut down, for
+     * instance because its graph is reloaded. The tiles on disk are kept for the next graph, which
+     * deletes them if it is not the same graph.
+     */
+    public void shutdown() {
+        seeder.shutdownNow();
+        tiles.invalidateAll();
+    }
+
+    /** Wait until the tiles of other graphs are deleted and the tiles on disk are counted. */
+    void awaitDiskScan() throws InterruptedException, ExecutionException {
+        if (diskScan != null)
+            diskScan.get();
+    }
+
+    /** @return The MIME type of a tile format, or null if the format is not supported. */
+    public static String mimeType(String format) {
+        switch (format) {
+        case "png":
+        case "gif":
+        case "jpeg":
+            return "image/" + format;
+        case "pbf":
+        case "mvt":
+            return VECTOR_TILE_MIME_TYPE;
+        default:
+            return null;
+        }
+    }
+
+    private CachedTile loadTile(TileKey key) throws IOException {
+        String mimeType = mimeType(key.format);
+        File file = directory == null ? null : new File(directory, key.path());
+        if (file != null && file.isFile()) {
+            return new CachedTile(Files.readAllBytes(file.toPath()), mimeType);
+        }
+        TileRequest tileRequest = new TileRequest(SlippyTile.tile2Envelope(key.x, key.y, key.z),
+                TILE_SIZE, TILE_SIZE);
+        byte[] bytes;
+        if (mimeType.equals(VECTOR_TILE_MIME_TYPE)) {
+            bytes = tileRendererManager.renderVectorTile(tileRequest, key.layer);
+        } else {
+            BufferedImage image = tileRendererManager.renderTile(tileRequest, key.layer);
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(image.getWidth()
+                    * image.getHeight() / 4);
+            if (!ImageIO.write(image, key.format, baos))
+                throw new IOException("Can't write " + key.format + " tiles for layer " + key.layer);
+            bytes = baos.toByteArray();
+        }
+        if (file != null) {
+            store(file, bytes);
+        }
+        return new CachedTile(bytes, mimeType);
+    }
+
+    private void store(File file, byte[] bytes) throws IOException {
+        if (!diskScan.isDone())
+            return;
+        if (diskBytes.addAndGet(bytes.length) > maxDiskBytes) {
+            diskBytes.addAndGet(-bytes.length);
+            return;
+        }
+        file.getParentFile().mkdirs();
+        // Write to a temporary file first, so that a partial tile is never read back.
+        File temp = File.createTempFile("tile", ".tmp", file.getParentFile());
+        try {
+            Files.write(temp.toPath(), bytes);
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            temp.delete();
+        }
+    }
+
+    private static void deleteOtherVersions(File routerDirectory, String graphVersion) {
+        File[] versions = routerDirectory.listFiles();
+        if (versions == null)
+            return;
+        for (File version : versions) {
+            if (!version.getName().equals(graphVersion)) {
+                LOG.info("Deleting inspector tiles of another graph in {}.", version);
+                delete(version);
+            }
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static long sizeOf(File file) {
+        File[] children = file.listFiles();
+        if (children == null)
+            return file.isFile() ? file.length() : 0;
+        long size = 0;
+        for (File child : children) {
+            size += sizeOf(child);
+        }
+        return size;
+    }
+
+    private static class TileKey {
+
+        final String layer;
+
+        final int z, x, y;
+
+        final String format;
+
+        TileKey(String layer, int z, int x, int y, String format) {
+            this.layer = layer;
+            this.z = z;
+            this.x = x;
+            this.y = y;
+            this.format = format;
+        }
+
+        String path() {
+            return layer + File.separator + z + File.separator + x + File.separator + y + "."
+                    + format;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TileKey))
+                return false;
+            TileKey other = (TileKey) o;
+            return z == other.z && x == other.x && y == other.y && layer.equals(other.layer)
+                    && format.equals(other.format);
+        }
+
+        @Override
+        public int hashCode() {
+            return (((layer.hashCode() * 31 + format.hashCode()) * 31 + z) * 31 + x) * 31 + y;
+        }
+    }
+}
@@ -64,38 +64,21 @@ public class TileRendererManager {
 
     public BufferedImage renderTile(final TileRequest tileRequest, String layer) {
 
-        TileRenderContext context = new TileRenderContext() {
-            @Override
-            public Envelope expandPixels(double marginXPixels, double marginYPixels) {
-                Envelope retval = new Envelope(bbox);
-                retval.expandBy(
-                        marginXPixels / tileRequest.width * (bbox.getMaxX() - bbox.getMinX()),
-                        marginYPixels / tileRequest.height * (bbox.getMaxY() - bbox.getMinY()));
-                return retval;
-            }
-        };
-
-        context.graph = graph;
-
         TileRenderer renderer = renderers.get(layer);
         if (renderer == null)
             throw new IllegalArgumentException("Unknown layer: " + layer);
 
-        // The best place for caching tiles may be here
+        TileRenderContext context = createContext(tileRequest);
         BufferedImage image = new BufferedImage(tileRequest.width, tileRequest.height,
                 renderer.getColorModel());
         context.graphics = image.createGraphics();
         Envelope2D trbb = tileRequest.bbox;
-        context.bbox = new Envelope(trbb.x, trbb.x + trbb.width, trbb.y, trbb.y + trbb.height);
         context.transform = new AffineTransformation();
         double xScale = tileRequest.width / trbb.width;
         double yScale = tileRequest.height / trbb.height;
 
         context.transform.translate(-trbb.x, -trbb.y - trbb.height);
         context.transform.scale(xScale, -yScale);
-        context.metersPerPixel = Math.toRadians(trbb.height) * 6371000 / tileRequest.height;
-        context.tileWidth = tileRequest.width;
-        context.tileHeight = tileRequest.height;
 
         long start = System.currentTimeMillis();
         renderer.renderTile(context);
@@ -104,6 +87,53 @@ public class TileRendererManager {
         return image;
     }
 
+    /**
+     * Render a tile of the given layer as a vector tile. The size of the tile request is only used
+     * for the margins, the features are encoded with the default extent.
+     * 
+     * @return The encoded vector tile.
+     */
+    public byte[] renderVectorTile(final TileRequest tileRequest, String layer) {
+
+        TileRenderer renderer = renderers.get(layer);
+        if (renderer == null)
+            throw new IllegalArgumentException("Unknown layer: " + layer);
+        if (!(renderer instanceof VectorTileRenderer))
+            throw new IllegalArgumentException("No vector tiles for layer: " + layer);
+
+        TileRenderContext context = createContext(tileRequest);
+        VectorTileEncoder encoder = new VectorTileEncoder(layer, context.bbox,
+                VectorTileEncoder.DEFAULT_EXTENT);
+
+        long start = System.currentTimeMillis();
+        ((VectorTileRenderer) renderer).renderVectorTile(context, encoder);
+        LOG.debug("Rendered vector tile at {},{} in {} ms", tileRequest.bbox.y,
+                tileRequest.bbox.x, System.currentTimeMillis() - start);
+        return encoder.encode();
+    }
+
+    private TileRenderContext createContext(final TileRequest tileRequest) {
+
+        TileRenderContext context = new TileRenderContext() {
+            @Override
+            public Envelope expandPixels(double marginXPixels, double marginYPixels) {
+                Envelope retval = new Envelope(bbox);
+                retval.expandBy(
+                        marginXPixels / tileRequest.width * (bbox.getMaxX() - bbox.getMinX()),
+                        marginYPixels / tileRequest.height * (bbox.getMaxY() - bbox.getMinY()));
+                return retval;
+            }
+        };
+
+        context.graph = graph;
+        Envelope2D trbb = tileRequest.bbox;
+        context.bbox = new Envelope(trbb.x, trbb.x + trbb.width, trbb.y, trbb.y + trbb.height);
+        context.metersPerPixel = Math.toRadians(trbb.height) * 6371000 / tileRequest.height;
+        context.tileWidth = tileRequest.width;
+        context.tileHeight = tileRequest.height;
+        return context;
+    }
+
     /**
      * Gets all renderers
      * 
@@ -0,0 +1,212 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.inspector;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Encode the features of a single layer as a vector tile, following version 2 of the Mapbox
+ * vector tile specification. Coordinates are given in WGS84 and are scaled linearly to the tile
+ * extent, as the raster tiles are. All attributes are strings.
+ * 
+ * The protocol buffer messages are written by hand, so no generated classes or extra library are
+ * needed for this single message type.
+ * 
+ * @see https://github.com/mapbox/vector-tile-spec/tree/master/2.1
+ */
+public class VectorTileEncoder {
+
+    public static final int DEFAULT_EXTENT = 4096;
+
+    private static final int GEOM_POINT = 1;
+
+    private static final int GEOM_LINESTRING = 2;
+
+    private static final int CMD_MOVE_TO = 1;
+
+    private static final int CMD_LINE_TO = 2;
+
+    private final String layerName;
+
+    private final Envelope bbox;
+
+    private final int extent;
+
+    private final List<ByteString> features = new ArrayList<ByteString>();
+
+    private final Map<String, Integer> keys = new LinkedHashMap<String, Integer>();
+
+    private final Map<String, Integer> values = new LinkedHashMap<String, Integer>();
+
+    public VectorTileEncoder(String layerName, Envelope bbox, int extent) {
+        this.layerName = layerName;
+        this.bbox = bbox;
+        this.extent = extent;
+    }
+
+    /**
+     * Add a line. Points closer than one tile unit to the previous one are dropped.
+     * @return False if the line is reduced to a single point in tile units and was not added.
+     */
+    public boolean addLineString(Coordinate[] coordinates, Map<String, String> attributes) {
+        TIntList geometry = new TIntArrayList(coordinates.length * 2 + 2);
+        int lastX = 0, lastY = 0, nPoints = 0;
+        for (Coordinate c : coordinates) {
+            int x = tileX(c), y = tileY(c);
+            if (nPoints > 0 && x == lastX && y == lastY)
+                continue;
+            if (nPoints == 0) {
+                geometry.add(command(CMD_MOVE_TO, 1));
+            } else if (nPoints == 1) {
+                geometry.add(0); // LineTo command, its count is known at the end
+            }
+            geometry.add(zigZag(x - lastX));
+            geometry.add(zigZag(y - lastY));
+            lastX = x;
+            lastY = y;
+            nPoints++;
+        }
+        if (nPoints < 2)
+            return false;
+        geometry.set(3, command(CMD_LINE_TO, nPoints - 1));
+        features.add(feature(GEOM_LINESTRING, geometry, attributes));
+        return true;
+    }
+
+    /**
+     * Add a point. Points outside of the tile are not added, so that they are not duplicated in
+     * the neighbouring tiles.
+     * @return False if the point is outside the tile and was not added.
+     */
+    public boolean addPoint(Coordinate coordinate, Map<String, String> attributes) {
+        if (!bbox.contains(coordinate))
+            return false;
+        TIntList geometry = new TIntArrayList(3);
+        geometry.add(command(CMD_MOVE_TO, 1));
+        geometry.add(zigZag(tileX(coordinate)));
+        geometry.add(zigZag(tileY(coordinate)));
+        features.add(feature(GEOM_POINT, geometry, attributes));
+        return true;
+    }
+
+    public boolean isEmpty() {
+        return features.isEmpty();
+    }
+
+    /** @return The encoded tile, containing a single layer. */
+    public byte[] encode() {
+        try {
+            ByteString.Output layer = ByteString.newOutput();
+            CodedOutputStream out = CodedOutputStream.newInstance(layer);
+            out.writeUInt32(15, 2); // version
+            out.writeString(1, layerName);
+            for (ByteString feature : features) {
+                out.writeBytes(2, feature);
+            }
+            for (String key : keys.keySet()) {
+                out.writeString(3, key);
+            }
+            for (String value : values.keySet()) {
+                ByteString.Output valueMessage = ByteString.newOutput();
+                CodedOutputStream valueOut = CodedOutputStream.newInstance(valueMessage);
+                valueOut.writeString(1, value);
+                valueOut.flush();
+                out.writeBytes(4, valueMessage.toByteString());
+            }
+            out.writeUInt32(5, extent);
+            out.flush();
+
+            ByteString.Output tile = ByteString.newOutput();
+            out = CodedOutputStream.newInstance(tile);
+            out.writeBytes(3, layer.toByteString());
+            out.flush();
+            return tile.toByteString().toByteArray();
+        } catch (IOException e) {
+            // Can't happen, we only write to memory
+            throw new RuntimeException(e);
+        }
+    }
+
+    private ByteString feature(int type, TIntList geometry, Map<String, String> attributes) {
+        TIntList tags = new TIntArrayList(attributes.size() * 2);
+        for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+            if (attribute.getValue() == null)
+                continue;
+            tags.add(index(keys, attribute.getKey()));
+            tags.add(index(values, attribute.getValue()));
+        }
+        try {
+            ByteString.Output feature = ByteString.newOutput();
+            CodedOutputStream out = CodedOutputStream.newInstance(feature);
+            out.writeUInt64(1, features.size() + 1);
+            if (!tags.isEmpty()) {
+                out.writeBytes(2, packed(tags));
+            }
+            out.writeEnum(3, type);
+            out.writeBytes(4, packed(geometry));
+            out.flush();
+            return feature.toByteString();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static ByteString packed(TIntList ints) throws IOException {
+        ByteString.Output bytes = ByteString.newOutput();
+        CodedOutputStream out = CodedOutputStream.newInstance(bytes);
+        for (int i = 0; i < ints.size(); i++) {
+            out.writeUInt32NoTag(ints.get(i));
+        }
+        out.flush();
+        return bytes.toByteString();
+    }
+
+    private static int index(Map<String, Integer> table, String s) {
+        Integer index = table.get(s);
+        if (index == null) {
+            index = table.size();
+            table.put(s, index);
+        }
+        return index;
+    }
+
+    private int tileX(Coordinate c) {
+        return (int) Math.round((c.x - bbox.getMinX()) / bbox.getWidth() * extent);
+    }
+
+    private int tileY(Coordinate c) {
+        // Tile Y axis points down
+        return (int) Math.round((bbox.getMaxY() - c.y) / bbox.getHeight() * extent);
+    }
+
+    private static int command(int id, int count) {
+        return (id & 0x7) | (count << 3);
+    }
+
+    private static int zigZag(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+}
@@ -0,0 +1,31 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.inspector;
+
+import org.opentripplanner.inspector.TileRenderer.TileRenderContext;
+
+/**
+ * A tile renderer which can also produce vector tiles, letting the client do the styling.
+ * 
+ * @see VectorTileEncoder
+ */
+public interface VectorTileRenderer {
+
+    /**
+     * Add the features of the tile to the encoder. The graphics and transform of the context are
+     * not set.
+     */
+    public abstract void renderVectorTile(TileRenderContext context, VectorTileEncoder encoder);
+
+}
@@ -17,13 +17,12 @@ import org.opentripplanner.openstreetmap.services.OpenStreetMapContentHandler;
 import org.opentripplanner.openstreetmap.services.OpenStreetMapProvider;
 
 import java.io.File;
-import java.io.FileInputStream;
-
-import crosby.binary.file.BlockInputStream;
 
 /**
  * Parser for the OpenStreetMap PBF format. Parses files in three passes:
  * First the relations, then the ways, then the nodes are also loaded.
+ * Blocks are decoded on several threads, and the ways and nodes passes skip the blocks that do not contain them
+ * (see ParallelBinaryOpenStreetMapReader).
  *
  * @see http://wiki.openstreetmap.org/wiki/PBF_Format
  * @see org.opentripplanner.openstreetmap.services.graph_builder.services.osm.OpenStreetMapContentHandler#biPhase
@@ -34,25 +33,15 @@ public class BinaryFileBasedOpenStreetMapProviderImpl implements OpenStreetMapPr
     private File _path;
 
     public void readOSM(OpenStreetMapContentHandler handler) {
-        try {
-            BinaryOpenStreetMapParser parser = new BinaryOpenStreetMapParser(handler);
-
-            FileInputStream input = new FileInputStream(_path);
-            parser.setParseNodes(false);
-            parser.setParseWays(false);
-            (new BlockInputStream(input, parser)).process();
+        int nThreads = Runtime.getRuntime().availableProcessors();
+        try (ParallelBinaryOpenStreetMapReader reader = new ParallelBinaryOpenStreetMapReader(_path, nThreads)) {
+            reader.read(handler, false, false, true);
             handler.doneFirstPhaseRelations();
 
-            input = new FileInputStream(_path);
-            parser.setParseRelations(false);
-            parser.setParseWays(true);
-            (new BlockInputStream(input, parser)).process();
+            reader.read(handler, false, true, false);
             handler.doneSecondPhaseWays();
 
-            input = new FileInputStream(_path);
-            parser.setParseNodes(true);
-            parser.setParseWays(false);
-            (new BlockInputStream(input, parser)).process();
+            reader.read(handler, true, false, false);
             handler.doneThirdPhaseNodes();
         } catch (Exception ex) {
             throw new IllegalStateException("error loading OSM from path " + _path, ex);        }
@@ -0,0 +1,294 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.openstreetmap.impl;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import crosby.binary.Fileformat;
+import crosby.binary.Osmformat;
+import gnu.trove.list.TByteList;
+import gnu.trove.list.array.TByteArrayList;
+import org.opentripplanner.openstreetmap.model.OSMNode;
+import org.opentripplanner.openstreetmap.model.OSMRelation;
+import org.opentripplanner.openstreetmap.model.OSMWay;
+import org.opentripplanner.openstreetmap.model.OSMWithTags;
+import org.opentripplanner.openstreetmap.services.OpenStreetMapContentHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a PBF file, decompressing and decoding its blocks on a pool of worker threads. The blocks are read from disk
+ * on the calling thread, and the entities they contain are passed to the content handler on the calling thread in
+ * the order of the file, so the handler does not need to be thread safe and sees the same entities in the same order
+ * as when the file is read on a single thread.
+ *
+ * The types of entities in each block are recorded during the first pass over the file. Later passes skip the blocks
+ * that cannot contain the entity types they are looking for without decompressing them. In files sorted by type,
+ * which is the usual case, the ways pass only decodes the way blocks and the nodes pass only the node blocks.
+ *
+ * @see http://wiki.openstreetmap.org/wiki/PBF_Format
+ */
+public class ParallelBinaryOpenStreetMapReader implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelBinaryOpenStreetMapReader.class);
+
+    private static final byte NODES = 1;
+
+    private static final byte WAYS = 2;
+
+    private static final byte RELATIONS = 4;
+
+    /* Limits from the PBF specification, to fail cleanly on corrupt files rather than allocate huge arrays. */
+    private static final int MAX_BLOB_HEADER_SIZE = 64 * 1024;
+
+    private static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+
+    private final File path;
+
+    private final ExecutorService executor;
+
+    /* Bounds the number of decoded blocks held in memory while waiting to be passed to the handler. */
+    private final int maxPendingBlocks;
+
+    /* Shared by the parsers of all blocks, so that each distinct tag string is only kept once. */
+    private final Map<String, String> stringTable = new ConcurrentHashMap<String, String>();
+
+    /* Entity types found in each data block of the file, in file order. Null until a first pass has completed. */
+    private TByteList blockTypes;
+
+    public ParallelBinaryOpenStreetMapReader(File path, int nThreads) {
+        this.path = path;
+        this.maxPendingBlocks = nThreads * 4;
+        this.executor = Executors.newFixedThreadPool(nThreads, new ThreadFactoryBuilder()
+                .setDaemon(true).setNameFormat("pbf-decoder-%d").build());
+    }
+
+    /**
+     * Read the whole file once, passing the entities of the requested types to the handler. This does not call the
+     * done*Phase methods of the handler, which are left to the caller.
+     */
+    public void read(OpenStreetMapContentHandler handler, boolean parseNodes, boolean parseWays,
+            boolean parseRelations) throws IOException {
+        final byte wanted = (byte) ((parseNodes ? NODES : 0) | (parseWays ? WAYS : 0)
+                | (parseRelations ? RELATIONS : 0));
+        TByteList types = blockTypes == null ? new TByteArrayList() : null;
+        Deque<Future<DecodedBlock>> pending = new ArrayDeque<Future<DecodedBlock>>();
+        int nBlocks = 0;
+        int nSkipped = 0;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            while (true) {
+                int headerSize;
+                try {
+                    headerSize = input.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (headerSize < 0 || headerSize > MAX_BLOB_HEADER_SIZE) {
+                    throw new IOException("Invalid PBF blob header size " + headerSize);
+                }
+                byte[] headerBytes = new byte[headerSize];
+                input.readFully(headerBytes);
+                Fileformat.BlobHeader header = Fileformat.BlobHeader.parseFrom(headerBytes);
+                int dataSize = header.getDatasize();
+                if (dataSize < 0 || dataSize > MAX_BLOB_SIZE) {
+                    throw new IOException("Invalid PBF blob size " + dataSize);
+                }
+                if ("OSMHeader".equals(header.getType())) {
+                    byte[] blob = new byte[dataSize];
+                    input.readFully(blob);
+                    new BinaryOpenStreetMapParser(handler).parse(Osmformat.HeaderBlock.parseFrom(inflate(blob)));
+                    continue;
+                }
+                if (!"OSMData".equals(header.getType())) {
+                    // Unknown blob types must be skipped according to the specification.
+                    skipFully(input, dataSize);
+                    continue;
+                }
+                int block = nBlocks++;
+                if (blockTypes != null && (blockTypes.get(block) & wanted) == 0) {
+                    skipFully(input, dataSize);
+                    nSkipped++;
+                    continue;
+                }
+                final byte[] blob = new byte[dataSize];
+                input.readFully(blob);
+                pending.add(executor.submit(() -> decode(blob, wanted)));
+                if (pending.size() >= maxPendingBlocks) {
+                    deliver(pending.remove(), handler, types);
+                }
+            }
+            while (!pending.isEmpty()) {
+                deliver(pending.remove(), handler, types);
+            }
+        } finally {
+            for (Future<DecodedBlock> future : pending) {
+                future.cancel(true);
+            }
+        }
+        if (types != null) {
+            blockTypes = types;
+        }
+        LOG.debug("Read {} PBF blocks from {}, skipped {}.", nBlocks, path, nSkipped);
+    }
+
+    /** Wait for a block to be decoded, then pass its entities to the handler. */
+    private static void deliver(Future<DecodedBlock> future, OpenStreetMapContentHandler handler,
+            TByteList types) throws IOException {
+        DecodedBlock block;
+        try {
+            block = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while decoding PBF blocks", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+        if (types != null) {
+            types.add(block.types);
+        }
+        for (OSMWithTags entity : block.entities) {
+            if (entity instanceof OSMNode) {
+                handler.addNode((OSMNode) entity);
+            } else if (entity instanceof OSMWay) {
+                handler.addWay((OSMWay) entity);
+            } else {
+                handler.addRelation((OSMRelation) entity);
+            }
+        }
+    }
+
+    /** Decompress and decode one data block, on a worker thread. */
+    private DecodedBlock decode(byte[] blob, byte wanted) throws IOException {
+        Osmformat.PrimitiveBlock primitiveBlock = Osmformat.PrimitiveBlock.parseFrom(inflate(blob));
+        byte types = 0;
+        for (Osmformat.PrimitiveGroup group : primitiveBlock.getPrimitivegroupList()) {
+            if (group.hasDense() || group.getNodesCount() > 0)
+                types |= NODES;
+            if (group.getWaysCount() > 0)
+                types |= WAYS;
+            if (group.getRelationsCount() > 0)
+                types |= RELATIONS;
+        }
+        DecodedBlock decoded = new DecodedBlock(types);
+        if ((types & wanted) != 0) {
+            // The parser keeps the string table and coordinate offsets of the block, so each block needs its own.
+            BinaryOpenStreetMapParser parser = new BinaryOpenStreetMapParser(decoded, stringTable);
+            parser.setParseNodes((wanted & NODES) != 0);
+            parser.setParseWays((wanted & WAYS) != 0);
+            parser.setParseRelations((wanted & RELATIONS) != 0);
+            parser.parse(primitiveBlock);
+        }
+        return decoded;
+    }
+
+    private static byte[] inflate(byte[] bytes) throws IOException {
+        Fileformat.Blob blob = Fileformat.Blob.parseFrom(bytes);
+        if (blob.hasRaw()) {
+            return blob.getRaw().toByteArray();
+        }
+        if (!blob.hasZlibData()) {
+            throw new IOException("Unsupported PBF blob compression");
+        }
+        byte[] raw = new byte[blob.getRawSize()];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(blob.getZlibData().toByteArray());
+            inflater.inflate(raw);
+            if (!inflater.finished()) {
+                throw new IOException("PBF blob is larger than its declared size");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt PBF blob", e);
+        } finally {
+            inflater.end();
+        }
+        return raw;
+    }
+
+    private static void skipFully(DataInputStream input, int n) throws IOException {
+        while (n > 0) {
+            int skipped = input.skipBytes(n);
+            if (skipped <= 0) {
+                throw new EOFException("Truncated PBF file");
+            }
+            n -= skipped;
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /** The entities of one block, in the order they appear in the file. */
+    private static class DecodedBlock implements OpenStreetMapContentHandler {
+
+        final byte types;
+
+        final List<OSMWithTags> entities = new ArrayList<OSMWithTags>();
+
+        DecodedBlock(byte types) {
+            this.types = types;
+        }
+
+        @Override
+        public void addNode(OSMNode node) {
+            entities.add(node);
+        }
+
+        @Override
+        public void addWay(OSMWay way) {
+            entities.add(way);
+        }
+
+        @Override
+        public void addRelation(OSMRelation relation) {
+            entities.add(relation);
+        }
+
+        @Override
+        public void doneFirstPhaseRelations() {
+        }
+
+        @Override
+        public void doneSecondPhaseWays() {
+        }
+
+        @Override
+        public void doneThirdPhaseNodes() {
+        }
+    }
+}
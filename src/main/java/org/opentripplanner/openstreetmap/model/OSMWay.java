@@ -16,12 +16,16 @@
 
 package org.opentripplanner.openstreetmap.model;
 
-import java.util.ArrayList;
+import gnu.trove.decorator.TLongListDecorator;
+import gnu.trove.list.TLongList;
+import gnu.trove.list.array.TLongArrayList;
+
 import java.util.List;
 
 public class OSMWay extends OSMWithTags {
 
-    private List<Long> _nodes = new ArrayList<Long>();
+    /* Node IDs are kept unboxed, as ways hold most of the references in large OSM extracts. */
+    private TLongList _nodes = new TLongArrayList(4);
 
     public void addNodeRef(OSMNodeRef nodeRef) {
         _nodes.add(nodeRef.getRef());
@@ -36,7 +40,7 @@ public class OSMWay extends OSMWithTags {
     }
 
     public List<Long> getNodeRefs() {
-        return _nodes;
+        return new TLongListDecorator(_nodes);
     }
 
     public String toString() {
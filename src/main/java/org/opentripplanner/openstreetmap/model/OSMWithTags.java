@@ -73,6 +73,13 @@ public class OSMWithTags {
         _tags.put(key.toLowerCase(), value);
     }
 
+    /**
+     * Removes all the tags, releasing the memory they used.
+     */
+    public void clearTags() {
+        _tags = null;
+    }
+
     /**
      * The tags of an entity.
      */
@@ -28,6 +28,11 @@ public class FrequencyRandomOffsets {
                 });
     }
 
+    /** Restart the random sequence, to make the following draws reproducible. */
+    public void setSeed (long seed) {
+        mt.setSeed(seed);
+    }
+
     public void randomize () {
         for (TIntObjectIterator<int[]> it = offsets.iterator(); it.hasNext();) {
             it.advance();
@@ -129,6 +129,12 @@ public class ProfileRequest implements Serializable, Cloneable {
     /** What assumption should be used when boarding frequency vehicles? */
     public RaptorWorkerTimetable.BoardingAssumption boardingAssumption = RaptorWorkerTimetable.BoardingAssumption.RANDOM;
 
+    /**
+     * Seed for the random offsets of frequency trips. If set, repeated requests give the same results, including in
+     * parallel RAPTOR searches. If null, the offsets are different each time.
+     */
+    public Long randomSeed;
+
     /* The relative importance of different factors when biking */
     /** The relative importance of maximizing safety when cycling */
     public int bikeSafe;
@@ -592,24 +592,27 @@ public class ProfileRouter {
                     int propagated_min = ride.dlb + egressWalkTimeSeconds;
                     int propagated_max = ride.dub + egressWalkTimeSeconds;
                     int propagated_avg = (int)(((long) propagated_min + propagated_max) / 2); // FIXME HACK
-                    int existing_min = minSurface.times.get(vertex);
-                    int existing_max = maxSurface.times.get(vertex);
-                    int existing_avg = avgSurface.times.get(vertex);
+                    int existing_min = minSurface.getTime(vertex);
+                    int existing_max = maxSurface.getTime(vertex);
+                    int existing_avg = avgSurface.getTime(vertex);
                     // FIXME this is taking the least lower bound and the least upper bound
                     // which is not necessarily wrong but it's a crude way to perform the combination
                     if (existing_min == TimeSurface.UNREACHABLE || existing_min > propagated_min) {
-                        minSurface.times.put(vertex, propagated_min);
+                        minSurface.setTime(vertex, propagated_min);
                     }
                     if (existing_max == TimeSurface.UNREACHABLE || existing_max > propagated_max) {
-                        maxSurface.times.put(vertex, propagated_max);
+                        maxSurface.setTime(vertex, propagated_max);
                     }
                     if (existing_avg == TimeSurface.UNREACHABLE || existing_avg > propagated_avg) {
-                        avgSurface.times.put(vertex, propagated_avg);
+                        avgSurface.setTime(vertex, propagated_avg);
                     }
                 }
             }
         }
         LOG.info("Done with propagation.");
+        minSurface.trim();
+        avgSurface.trim();
+        maxSurface.trim();
         /* Store the results in a field in the router object. */
         timeSurfaceRangeSet = new TimeSurface.RangeSet();
         timeSurfaceRangeSet.min = minSurface;
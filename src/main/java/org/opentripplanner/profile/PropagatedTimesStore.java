@@ -248,10 +248,13 @@ public class PropagatedTimesStore {
             if (avg == Integer.MAX_VALUE)
                 continue;
             // Count is positive, extrema and sum must also be present
-            rangeSet.min.times.put(vertex, min);
-            rangeSet.max.times.put(vertex, max);
-            rangeSet.avg.times.put(vertex, avg);
+            rangeSet.min.setTime(vertex, min);
+            rangeSet.max.setTime(vertex, max);
+            rangeSet.avg.setTime(vertex, avg);
         }
+        rangeSet.min.trim();
+        rangeSet.max.trim();
+        rangeSet.avg.trim();
         return rangeSet;
     }
 
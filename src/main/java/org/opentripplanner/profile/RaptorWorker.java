@@ -62,6 +62,9 @@ public class RaptorWorker {
     /** If there are no schedules, the number of Monte Carlo draws to take */
     public static final int TOTAL_MONTE_CARLO_COUNT = 99;
 
+    /** The number of departure minutes searched by each task in parallel mode. */
+    public static final int MINUTES_PER_TASK = 15;
+
     int max_time = 0;
     int round = 0;
     List<int[]> timesPerStopPerRound;
@@ -113,6 +116,19 @@ public class RaptorWorker {
 
     private FrequencyRandomOffsets offsets;
 
+    /**
+     * The boarding assumption of the frequency search under way. This is the one requested, except during the
+     * best and worst case searches. It is kept here rather than changed on the request, which workers share.
+     */
+    private RaptorWorkerTimetable.BoardingAssumption boardingAssumption;
+
+    /**
+     * If true, split the departure minutes into blocks of MINUTES_PER_TASK and search the blocks on all cores. This
+     * is worthwhile for single requests on an otherwise idle machine. Each block starts range-raptor afresh, so it
+     * costs one full search per block more than the sequential loop.
+     */
+    public boolean parallel = false;
+
     public RaptorWorker(RaptorWorkerData data, ProfileRequest req) {
         this.data = data;
         // these should only reflect the results of the (deterministic) scheduled search
@@ -124,6 +140,7 @@ public class RaptorWorker {
         stopsTouched = new BitSet(data.nStops);
         patternsTouched = new BitSet(data.nPatterns);
         this.req = req; 
+        this.boardingAssumption = req.boardingAssumption;
         Arrays.fill(bestTimes, UNREACHED); // initialize once here and reuse on subsequent iterations.
         Arrays.fill(bestNonTransferTimes, UNREACHED);
         offsets = new FrequencyRandomOffsets(data);
@@ -164,8 +181,11 @@ public class RaptorWorker {
             monteCarloDraws = TOTAL_MONTE_CARLO_COUNT;
         }
 
+        // FIXME this should be changed to tolerate a zero-width time range
+        int minutes = (req.toTime - fromTime - 60) / 60 + 1;
+
         // if no frequencies, don't run Monte Carlo
-        int iterations = (req.toTime - fromTime - 60) / 60 + 1;
+        int iterations = minutes;
 
         // if we do Monte Carlo, we do more iterations. But we only do monte carlo when we have frequencies.
         // So only update the number of iterations when we're actually going to use all of them, to
@@ -178,7 +198,7 @@ public class RaptorWorker {
         ts.searchCount = iterations;
 
         // Iterate backward through minutes (range-raptor) taking a snapshot of router state after each call
-        int[][] timesAtTargetsEachIteration = new int[iterations][data.nTargets];
+        int[][] timesAtTargetsEachIteration = new int[iterations][];
 
         // for each iteration, whether it is the result of a schedule or Monte Carlo search, or whether it is an extrema.
         // extrema are not included in averages.
@@ -188,19 +208,84 @@ public class RaptorWorker {
         // TODO don't hardwire timestep below
         ts.timeStep = 60;
 
+        long searchTime;
+        if (parallel && minutes > MINUTES_PER_TASK) {
+            // Each block of minutes gets its own worker, hence its own scratch arrays and random offsets. The blocks
+            // are the same whatever the number of cores, so the results do not depend on the machine.
+            int tasks = (minutes + MINUTES_PER_TASK - 1) / MINUTES_PER_TASK;
+            RaptorWorker[] workers = new RaptorWorker[tasks];
+            long[] taskTimes = new long[tasks];
+            final int draws = monteCarloDraws;
+            IntStream.range(0, tasks).parallel().forEach(t -> {
+                long taskStart = System.currentTimeMillis();
+                RaptorWorker worker = t == 0 ? this : new RaptorWorker(data, req);
+                workers[t] = worker;
+                worker.runMinutes(initialStops, nonTransitTimes, t * MINUTES_PER_TASK,
+                        Math.min(minutes, (t + 1) * MINUTES_PER_TASK), draws,
+                        timesAtTargetsEachIteration, includeIterationInAverages);
+                taskTimes[t] = System.currentTimeMillis() - taskStart;
+            });
+            // Times are summed over all threads rather than measured on the clock.
+            searchTime = 0;
+            for (int t = 0; t < tasks; t++) {
+                searchTime += taskTimes[t];
+                if (workers[t] != this) {
+                    totalPropagationTime += workers[t].totalPropagationTime;
+                }
+            }
+            LOG.info("ran {} blocks of departure minutes in parallel", tasks);
+        } else {
+            runMinutes(initialStops, nonTransitTimes, 0, minutes, monteCarloDraws, timesAtTargetsEachIteration,
+                    includeIterationInAverages);
+            searchTime = System.currentTimeMillis() - beginCalcTime;
+        }
+
+        // make sure we filled the array, otherwise results are garbage.
+        // This implies a bug in OTP, but it has happened in the past when we did
+        // not set the number of iterations correctly.
+        for (int[] timesAtTargets : timesAtTargetsEachIteration) {
+            if (timesAtTargets == null)
+                throw new IllegalStateException("Iterations did not completely fill output array");
+        }
+
+        long calcTime = System.currentTimeMillis() - beginCalcTime;
+        LOG.info("calc time {}sec", calcTime / 1000.0);
+        LOG.info("  propagation {}sec", totalPropagationTime / 1000.0);
+        LOG.info("  raptor {}sec", (searchTime - totalPropagationTime) / 1000.0);
+        ts.propagation = (int) totalPropagationTime;
+        ts.transitSearch = (int) (searchTime - totalPropagationTime);
+        //dumpVariableByte(timesAtTargetsEachMinute);
+        // we can use min_max here as we've also run it once with best case and worst case board,
+        // so the best and worst cases are meaningful.
+        propagatedTimesStore.setFromArray(timesAtTargetsEachIteration, includeIterationInAverages,
+                PropagatedTimesStore.ConfidenceCalculationMethod.MIN_MAX);
+        return propagatedTimesStore;
+    }
+
+    /**
+     * Run the searches for departure minutes firstMinute (inclusive) to endMinute (exclusive), counting minutes
+     * backward from the end of the time window, and store their results at the matching positions of the
+     * per-iteration arrays. Range-raptor state is carried from one minute to the next, so a worker must only run
+     * one block of minutes.
+     */
+    private void runMinutes (TIntIntMap initialStops, int[] nonTransitTimes, int firstMinute, int endMinute,
+                             int monteCarloDraws, int[][] timesAtTargetsEachIteration,
+                             boolean[] includeIterationInAverages) {
+        int iterationsPerMinute = data.hasFrequencies ? monteCarloDraws + 2 : 1;
+
         // times at targets from scheduled search
         int[] scheduledTimesAtTargets = new int[data.nTargets];
         Arrays.fill(scheduledTimesAtTargets, UNREACHED);
 
-        // current iteration
-        int iteration = 0;
-
-        // FIXME this should be changed to tolerate a zero-width time range
-        for (int departureTime = req.toTime - 60, n = 0; departureTime >= fromTime; departureTime -= 60, n++) {
+        for (int n = firstMinute; n < endMinute; n++) {
+            int departureTime = req.toTime - 60 - n * 60;
             if (n % 15 == 0) {
                 LOG.info("minute {}", n);
             }
 
+            // current iteration
+            int iteration = n * iterationsPerMinute;
+
             // run the scheduled search
             this.runRaptorScheduled(initialStops, departureTime);
             this.doPropagation(bestNonTransferTimes, scheduledTimesAtTargets, departureTime);
@@ -214,6 +299,12 @@ public class RaptorWorker {
 
             // run the frequency searches
             if (data.hasFrequencies) {
+                // With a fixed seed, the draws of a minute only depend on the minute, not on the draws before it,
+                // so they are the same whichever worker runs the minute.
+                if (req.randomSeed != null) {
+                    offsets.setSeed(req.randomSeed + n);
+                }
+
                 for (int i = 0; i < monteCarloDraws + 2; i++) {
                     // make copies for just this search. We need copies because we can't use dynamic
                     // programming/range-raptor with randomized schedules
@@ -226,19 +317,17 @@ public class RaptorWorker {
                     // special cases: calculate the best and the worst cases as well
                     // Note that this (intentionally) does not affect searches where the user has requested
                     // an assumption other than RANDOM, or stops with transfer rules.
-                    RaptorWorkerTimetable.BoardingAssumption requestedBoardingAssumption = req.boardingAssumption;
-
                     if (i == 0 && req.boardingAssumption == RaptorWorkerTimetable.BoardingAssumption.RANDOM) {
-                        req.boardingAssumption = RaptorWorkerTimetable.BoardingAssumption.WORST_CASE;
+                        boardingAssumption = RaptorWorkerTimetable.BoardingAssumption.WORST_CASE;
                         // don't include extrema in averages
                         includeIterationInAverages[iteration] = false;
                     }
                     else if (i == 1 && req.boardingAssumption == RaptorWorkerTimetable.BoardingAssumption.RANDOM) {
-                        req.boardingAssumption = RaptorWorkerTimetable.BoardingAssumption.BEST_CASE;
+                        boardingAssumption = RaptorWorkerTimetable.BoardingAssumption.BEST_CASE;
                         // don't include extrema in averages
                         includeIterationInAverages[iteration] = false;
                     }
-                    else if (requestedBoardingAssumption == RaptorWorkerTimetable.BoardingAssumption.RANDOM)
+                    else if (req.boardingAssumption == RaptorWorkerTimetable.BoardingAssumption.RANDOM)
                         // use a new Monte Carlo draw each time
                         // included in averages by default
                         offsets.randomize();
@@ -246,12 +335,12 @@ public class RaptorWorker {
                     this.runRaptorFrequency(departureTime, bestTimesCopy, bestNonTransferTimesCopy,
                             previousPatternsCopy);
 
-                    req.boardingAssumption = requestedBoardingAssumption;
+                    boardingAssumption = req.boardingAssumption;
 
                     // do propagation
-                    int[] frequencyTimesAtTargets = timesAtTargetsEachIteration[iteration++];
-                    System.arraycopy(scheduledTimesAtTargets, 0, frequencyTimesAtTargets, 0,
+                    int[] frequencyTimesAtTargets = Arrays.copyOf(scheduledTimesAtTargets,
                             scheduledTimesAtTargets.length);
+                    timesAtTargetsEachIteration[iteration++] = frequencyTimesAtTargets;
                     // updates timesAtTargetsEachIteration directly because it has a reference into the array.
                     this.doPropagation(bestNonTransferTimesCopy, frequencyTimesAtTargets,
                             departureTime);
@@ -264,31 +353,11 @@ public class RaptorWorker {
                 }
             } else {
                 final int dt = departureTime;
-                timesAtTargetsEachIteration[iteration++] = IntStream.of(scheduledTimesAtTargets)
+                timesAtTargetsEachIteration[iteration] = IntStream.of(scheduledTimesAtTargets)
                         .map(i -> i != UNREACHED ? i - dt : i)
                         .toArray();
             }
         }
-
-        // make sure we filled the array, otherwise results are garbage.
-        // This implies a bug in OTP, but it has happened in the past when we did
-        // not set the number of iterations correctly.
-        // iteration should be incremented past end of array by ++ in assignment above
-        if (iteration != iterations)
-            throw new IllegalStateException("Iterations did not completely fill output array");
-
-        long calcTime = System.currentTimeMillis() - beginCalcTime;
-        LOG.info("calc time {}sec", calcTime / 1000.0);
-        LOG.info("  propagation {}sec", totalPropagationTime / 1000.0);
-        LOG.info("  raptor {}sec", (calcTime - totalPropagationTime) / 1000.0);
-        ts.propagation = (int) totalPropagationTime;
-        ts.transitSearch = (int) (calcTime - totalPropagationTime);
-        //dumpVariableByte(timesAtTargetsEachMinute);
-        // we can use min_max here as we've also run it once with best case and worst case board,
-        // so the best and worst cases are meaningful.
-        propagatedTimesStore.setFromArray(timesAtTargetsEachIteration, includeIterationInAverages,
-                PropagatedTimesStore.ConfidenceCalculationMethod.MIN_MAX);
-        return propagatedTimesStore;
     }
 
     public void dumpVariableByte(int[][] array) {
@@ -391,7 +460,7 @@ public class RaptorWorker {
                         for (int trip = 0; trip < timetable.getFrequencyTripCount(); trip++) {
                             int boardTime = timetable
                                     .getFrequencyDeparture(trip, stopPositionInPattern,
-                                            bestTimes[stopIndex], previousPatterns[stopIndex], offsets, req.boardingAssumption);
+                                            bestTimes[stopIndex], previousPatterns[stopIndex], offsets, boardingAssumption);
 
                             if (boardTime != -1 && boardTime < remainOnBoardTime) {
                                 // make sure we board the best frequency entry at a stop
@@ -460,7 +460,7 @@ public class RaptorWorkerData implements Serializable {
                 Vertex tstop = graph.getVertexById(stop);
                 boolean isPermanentStop = tstop != null && TransitStop.class.isInstance(tstop);
                 // convert distance to time
-                int[] distancesForStop = isPermanentStop ? stc.distancesForStop.get(tstop) : temporaryStopTreeCache.get(stop);
+                int[] distancesForStop = isPermanentStop ? stc.getDistancesForStop((TransitStop) tstop) : temporaryStopTreeCache.get(stop);
                 TIntList timesForStop = new TIntArrayList();
 
                 for (int i = 0; i < distancesForStop.length; i += 2) {
@@ -544,7 +544,7 @@ public class RaptorWorkerData implements Serializable {
                 Vertex tstop = graph.getVertexById(stop);
                 if (tstop != null && TransitStop.class.isInstance(tstop))
                     // permanent stop
-                    distancesForStop = stc.distancesForStop.get(tstop);
+                    distancesForStop = stc.getDistancesForStop((TransitStop) tstop);
                 else
                     // temporary stop
                     distancesForStop = temporaryStopTreeCache.get(stop);
@@ -673,6 +673,34 @@ public class RaptorWorkerData implements Serializable {
         return accessTimes;
     }
 
+    /**
+     * @return a rough estimate of the memory used by these tables in bytes, counting only the large arrays. This is
+     * used to weigh cached RAPTOR data, not to measure it exactly.
+     */
+    public long estimateSizeBytes () {
+        long bytes = sizeOf(transfersForStop) + sizeOf(patternsForStop) + sizeOf(targetsForStop);
+        for (RaptorWorkerTimetable timetable : timetablesForPattern) {
+            bytes += sizeOf(timetable.stopIndices) + sizeOf(timetable.headwaySecs) + sizeOf(timetable.startTimes)
+                    + sizeOf(timetable.endTimes);
+            if (timetable.timesPerTrip != null) bytes += sizeOf(Arrays.asList(timetable.timesPerTrip));
+            if (timetable.frequencyTrips != null) bytes += sizeOf(Arrays.asList(timetable.frequencyTrips));
+        }
+        return bytes;
+    }
+
+    private static long sizeOf (List<int[]> arrays) {
+        long bytes = 0;
+        for (int[] array : arrays) {
+            bytes += sizeOf(array);
+        }
+        return bytes;
+    }
+
+    /** An int array takes 4 bytes per element plus a 16 byte header. */
+    private static long sizeOf (int[] array) {
+        return array == null ? 0 : 16 + 4L * array.length;
+    }
+
     /** half a sample: the index in the sample set, and the distance to one of the vertices */
     private static class HalfSample {
         public HalfSample(int index, float distance) {
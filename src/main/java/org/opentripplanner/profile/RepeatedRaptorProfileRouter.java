@@ -89,6 +89,9 @@ public class RepeatedRaptorProfileRouter {
     // Set this field to true before routing if you want the full travel times included in your response.
     public boolean includeTimes = false;
 
+    // Set this field to true before routing to search the departure minutes of the time window on all cores.
+    public boolean parallel = false;
+
     /**
      * Make a router to use for making time surfaces only.
      *
@@ -177,6 +180,7 @@ public class RepeatedRaptorProfileRouter {
 
         if (transit) {
             RaptorWorker worker = new RaptorWorker(raptorWorkerData, request);
+            worker.parallel = parallel;
             propagatedTimesStore = worker.runRaptor(graph, transitStopAccessTimes, nonTransitTimes, ts);
             ts.initialStopCount = transitStopAccessTimes.size();
         } else {
@@ -1,7 +1,7 @@
 package org.opentripplanner.profile;
 
-import com.beust.jcommander.internal.Maps;
-
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
 import org.opentripplanner.routing.algorithm.AStar;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.State;
@@ -14,25 +14,55 @@ import org.opentripplanner.routing.vertextype.TransitStop;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Map;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Keeps travel distances from all transit stops in a particular Graph to their nearby street nodes.
  * This allows us to propagate travel times out from transit to streets much faster in one-to-many analyst queries.
  * The StopTreeCache has a fixed distance cutoff, so will be unable to provide distance information for vertices beyond
  * that cutoff distance.
+ *
+ * Building the cache means a street search from every transit stop, which takes a long time on large graphs. It can
+ * therefore be built by the graph builder (see StopTreeModule) and saved with the graph as a service. Vertex indexes
+ * change when a graph is loaded, so the trees refer to vertices by their position in a table of all the vertices
+ * reached, and the current vertex indexes are looked up once, the first time the cache is used.
  */
-public class StopTreeCache {
+public class StopTreeCache implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private static final Logger LOG = LoggerFactory.getLogger(StopTreeCache.class);
+
     final int maxWalkMeters;
-    // Flattened 2D array of (streetVertexIndex, distanceFromStop) for each TransitStop
-    public final Map<TransitStop, int[]> distancesForStop = Maps.newHashMap();
+
+    /** The transit stops, in the order of their trees. */
+    private final TransitStop[] stops;
+
+    /** The tree of stop s is in pairs from entries[offsets[s]] to entries[offsets[s + 1]] (exclusive). */
+    private final int[] offsets;
+
+    /** Flattened 2D array of (vertex position in the vertices table, distanceFromStop) for each TransitStop. */
+    private final int[] entries;
+
+    /** All the street vertices reached from any stop. */
+    private final Vertex[] vertices;
+
+    /** The current index of each vertex in the vertices table, built on first use. */
+    private transient volatile int[] vertexIndexes;
+
+    /** Position of each stop in the stops table keyed on its current vertex index, built on first use. */
+    private transient TIntIntMap stopPositions;
 
     public StopTreeCache (Graph graph, int maxWalkMeters) {
         this.maxWalkMeters = maxWalkMeters;
         LOG.info("Caching distances to nearby street intersections from each transit stop...");
-        graph.index.stopVertexForStop.values().parallelStream().forEach(tstop -> {
+        stops = graph.index.stopVertexForStop.values().toArray(new TransitStop[0]);
+        int[][] trees = new int[stops.length][];
+        // Each search only writes its own slot of the array, so they can run in parallel without locking.
+        Arrays.parallelSetAll(trees, s -> {
+            TransitStop tstop = stops[s];
             RoutingRequest rr = new RoutingRequest(TraverseMode.WALK);
             rr.batch = (true);
             rr.setRoutingContext(graph, tstop, tstop);
@@ -54,21 +84,107 @@ public class StopTreeCache {
             int i = 0;
             for (Vertex vertex : spt.getVertices()) {
                 State state = spt.getState(vertex);
-                
+
                 if (state == null)
                     continue;
-                
+
                 distances[i++] = vertex.getIndex();
                 distances[i++] = (int) state.getWalkDistance();
             }
 
             rr.cleanup();
+            return i == distances.length ? distances : Arrays.copyOf(distances, i);
+        });
 
-            synchronized (distancesForStop) {
-                distancesForStop.put(tstop, distances);
+        // Pack the trees into one array, replacing vertex indexes with positions in a table of the vertices reached.
+        offsets = new int[stops.length + 1];
+        for (int s = 0; s < stops.length; s++) {
+            offsets[s + 1] = offsets[s] + trees[s].length;
+        }
+        entries = new int[offsets[stops.length]];
+        TIntIntMap positionForIndex = new TIntIntHashMap(1000, 0.5f, -1, -1);
+        int[] indexes = new int[1000];
+        for (int s = 0; s < stops.length; s++) {
+            int[] tree = trees[s];
+            for (int i = 0; i < tree.length; i += 2) {
+                int position = positionForIndex.get(tree[i]);
+                if (position == -1) {
+                    position = positionForIndex.size();
+                    positionForIndex.put(tree[i], position);
+                    if (position == indexes.length) {
+                        indexes = Arrays.copyOf(indexes, indexes.length * 2);
+                    }
+                    indexes[position] = tree[i];
+                }
+                entries[offsets[s] + i] = position;
+                entries[offsets[s] + i + 1] = tree[i + 1];
             }
-        });
-        LOG.info("Done caching distances to nearby street intersections from each transit stop.");
+            trees[s] = null;
+        }
+        // The vertex ID map of the graph may not be up to date while the graph is being built, so make one.
+        Vertex[] vertexForIndex = new Vertex[Vertex.getMaxIndex()];
+        for (Vertex v : graph.getVertices()) {
+            vertexForIndex[v.getIndex()] = v;
+        }
+        vertices = new Vertex[positionForIndex.size()];
+        for (int p = 0; p < vertices.length; p++) {
+            vertices[p] = vertexForIndex[indexes[p]];
+        }
+        LOG.info("Done caching distances to {} street intersections from {} transit stops.", vertices.length,
+                stops.length);
+    }
+
+    /** Look up the current vertex indexes, which are only known once the graph is fully loaded. */
+    private int[] vertexIndexes () {
+        int[] indexes = vertexIndexes;
+        if (indexes == null) {
+            synchronized (this) {
+                indexes = vertexIndexes;
+                if (indexes == null) {
+                    TIntIntMap positions = new TIntIntHashMap(stops.length, 0.5f, -1, -1);
+                    for (int s = 0; s < stops.length; s++) {
+                        positions.put(stops[s].getIndex(), s);
+                    }
+                    stopPositions = positions;
+                    indexes = new int[vertices.length];
+                    for (int p = 0; p < vertices.length; p++) {
+                        indexes[p] = vertices[p].getIndex();
+                    }
+                    // Written last, so other threads that see it also see the stop positions.
+                    vertexIndexes = indexes;
+                }
+            }
+        }
+        return indexes;
+    }
+
+    /** @return the position of this stop in the stops table, or -1 if it is not in the cache. */
+    private int position (TransitStop transitStop) {
+        vertexIndexes();
+        return stopPositions.get(transitStop.getIndex());
+    }
+
+    /** @return the transit stops in this cache. */
+    public List<TransitStop> getStops () {
+        return Arrays.asList(stops);
+    }
+
+    /**
+     * @return a flattened 2D array of (streetVertexIndex, distanceFromStop) for each street vertex near this stop,
+     * or null if this stop is not in the cache.
+     */
+    public int[] getDistancesForStop (TransitStop transitStop) {
+        int s = position(transitStop);
+        if (s == -1) {
+            return null;
+        }
+        int[] indexes = vertexIndexes();
+        int[] distances = new int[offsets[s + 1] - offsets[s]];
+        for (int i = 0, e = offsets[s]; i < distances.length; i += 2, e += 2) {
+            distances[i] = indexes[entries[e]];
+            distances[i + 1] = entries[e + 1];
+        }
+        return distances;
     }
 
     /**
@@ -79,12 +195,13 @@ public class StopTreeCache {
     public void propagateStop(TransitStop transitStop, int baseTimeSeconds, double walkSpeed, int[] targetArray) {
         // Iterate over street intersections in the vicinity of this particular transit stop.
         // Shift the time range at this transit stop, merging it into that for all reachable street intersections.
-        int[] distances = distancesForStop.get(transitStop);
-        int v = 0;
-        while (v < distances.length) {
+        int s = position(transitStop);
+        int[] indexes = vertexIndexes();
+        int e = offsets[s];
+        while (e < offsets[s + 1]) {
             // Unravel flattened 2D array
-            int vertexIndex = distances[v++];
-            int distance = distances[v++];
+            int vertexIndex = indexes[entries[e++]];
+            int distance = entries[e++];
             // distance in meters over walkspeed in meters per second --> seconds
             int egressWalkTimeSeconds = (int) (distance / walkSpeed);
             int propagated_time = baseTimeSeconds + egressWalkTimeSeconds;
@@ -19,6 +19,7 @@ import java.util.LinkedList;
 import java.util.List;
 
 import org.opentripplanner.common.pqueue.BinHeap;
+import org.opentripplanner.common.pqueue.BinHeapPool;
 import org.opentripplanner.routing.algorithm.strategies.RemainingWeightHeuristic;
 import org.opentripplanner.routing.algorithm.strategies.SearchTerminationStrategy;
 import org.opentripplanner.routing.algorithm.strategies.TrivialRemainingWeightHeuristic;
@@ -50,6 +51,9 @@ public class AStar {
     private static final MonitoringStore store = MonitoringStoreFactory.getStore();
     private static final double OVERSEARCH_MULTIPLIER = 4.0;
 
+    /** Priority queues reused by indexed searches. Queues that grew past a million entries are not kept. */
+    private static final BinHeapPool<State> queuePool = new BinHeapPool<>(1000000);
+
     private boolean verbose = false;
 
     private TraverseVisitor traverseVisitor;
@@ -134,7 +138,7 @@ public class AStar {
         // before reaching its target.
         int initialSize = runState.rctx.graph.getVertices().size();
         initialSize = (int) Math.ceil(2 * (Math.sqrt((double) initialSize + 1)));
-        runState.pq = new BinHeap<>(initialSize);
+        runState.pq = options.indexedSearch ? queuePool.acquire(initialSize) : new BinHeap<State>(initialSize);
         runState.nVisited = 0;
         runState.targetAcceptedStates = Lists.newArrayList();
         
@@ -177,7 +181,8 @@ public class AStar {
 
         runState.nVisited += 1;
         
-        Collection<Edge> edges = runState.options.arriveBy ? runState.u_vertex.getIncoming() : runState.u_vertex.getOutgoing();
+        Collection<Edge> edges = runState.options.arriveBy ?
+                runState.rctx.getIncoming(runState.u_vertex) : runState.rctx.getOutgoing(runState.u_vertex);
         for (Edge edge : edges) {
 
             // Iterate over traversal results. When an edge leads nowhere (as indicated by
@@ -309,6 +314,7 @@ public class AStar {
         if (runState != null) {
             runSearch(abortTime);
             spt = runState.spt;
+            releaseQueue();
         }
         
         storeMemory();
@@ -334,11 +340,20 @@ public class AStar {
             
             runSearch(abortTime);
             spt = runState.spt;
+            releaseQueue();
         }
         
         return spt;
     }
 
+    /** Return a pooled priority queue once the search is finished, so the next search on this thread can reuse it. */
+    private void releaseQueue() {
+        if (runState.options.indexedSearch) {
+            queuePool.release(runState.pq);
+            runState.pq = null;
+        }
+    }
+
     private void storeMemory() {
         if (store.isMonitoring("memoryUsed")) {
             System.gc();
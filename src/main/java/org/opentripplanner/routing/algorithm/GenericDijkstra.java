@@ -13,6 +13,8 @@
 
 package org.opentripplanner.routing.algorithm;
 
+import java.util.Collection;
+
 import org.opentripplanner.routing.algorithm.strategies.RemainingWeightHeuristic;
 import org.opentripplanner.routing.algorithm.strategies.SearchTerminationStrategy;
 import org.opentripplanner.routing.algorithm.strategies.SkipEdgeStrategy;
@@ -97,7 +99,14 @@ public class GenericDijkstra {
                 break;
             }
 
-            for (Edge edge : options.arriveBy ? u_vertex.getIncoming() : u_vertex.getOutgoing()) {
+            // Ask the routing context, which also knows the edges kept outside the graph for this request.
+            Collection<Edge> edges;
+            if (options.rctx == null) {
+                edges = options.arriveBy ? u_vertex.getIncoming() : u_vertex.getOutgoing();
+            } else {
+                edges = options.arriveBy ? options.rctx.getIncoming(u_vertex) : options.rctx.getOutgoing(u_vertex);
+            }
+            for (Edge edge : edges) {
                 if (skipEdgeStrategy != null &&
                     skipEdgeStrategy.shouldSkipEdge(initialState.getVertex(), null, u, edge, spt, options)) {
                     continue;
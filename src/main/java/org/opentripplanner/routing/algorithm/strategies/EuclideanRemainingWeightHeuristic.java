@@ -28,6 +28,8 @@ import org.opentripplanner.routing.vertextype.TransitStationStop;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
+
 /**
  * A Euclidean remaining weight strategy that takes into account transit boarding costs where applicable.
  * 
@@ -53,8 +55,9 @@ public class EuclideanRemainingWeightHeuristic implements RemainingWeightHeurist
         maxStreetSpeed = req.getStreetSpeedUpperBound();
         maxTransitSpeed = req.getTransitSpeedUpperBound();
 
-        if (target.getDegreeIn() == 1) {
-            Edge edge = Iterables.getOnlyElement(target.getIncoming());
+        Collection<Edge> incoming = req.rctx.getIncoming(target);
+        if (incoming.size() == 1) {
+            Edge edge = Iterables.getOnlyElement(incoming);
             if (edge instanceof FreeEdge) {
                 target = edge.getFromVertex();
             }
@@ -80,8 +83,7 @@ public class EuclideanRemainingWeightHeuristic implements RemainingWeightHeurist
      */
     @Override
     public double estimateRemainingWeight (State s) {
-        Vertex sv = s.getVertex();
-        double euclideanDistance = SphericalDistanceLibrary.fastDistance(sv.getLat(), sv.getLon(), lat, lon);
+        double euclideanDistance = distanceToTarget(s.getVertex());
         if (transit) {
             if (euclideanDistance < requiredWalkDistance) {
                 return walkReluctance * euclideanDistance / maxStreetSpeed;
@@ -96,6 +98,11 @@ public class EuclideanRemainingWeightHeuristic implements RemainingWeightHeurist
         }
     }
 
+    /** @return the straight-line distance in meters from the given vertex to the target of the search. */
+    double distanceToTarget(Vertex v) {
+        return SphericalDistanceLibrary.fastDistance(v.getLat(), v.getLon(), lat, lon);
+    }
+
     /**
      * Figure out the minimum amount of walking to reach the destination from transit.
      * This is done by doing a Dijkstra search for the first reachable transit stop.
@@ -13,8 +13,12 @@
 
 package org.opentripplanner.routing.algorithm.strategies;
 
-import gnu.trove.map.TObjectDoubleMap;
-import gnu.trove.map.hash.TObjectDoubleHashMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import gnu.trove.impl.Constants;
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
 import org.opentripplanner.common.pqueue.BinHeap;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.State;
@@ -30,7 +34,11 @@ import org.opentripplanner.routing.vertextype.TransitStop;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * This the goal direction heuristic used for transit searches.
@@ -58,8 +66,14 @@ import java.util.Set;
  * heuristic across an edge that were greater in magnitude than the weight of that edge. This has been solved by
  * creating two separate distance maps, one pre-transit and one post-transit.
  *
- * Note that the backward search does not happen in a separate thread. It is interleaved with the main search in a
- * ratio of N:1 iterations.
+ * By default the backward search does not happen in a separate thread. It is interleaved with the main search in a
+ * ratio of N:1 iterations. When RoutingRequest.concurrentHeuristic is set, the backward search through the transit
+ * network instead runs on another core as soon as the street searches are done, and the main search reads whatever
+ * lower bounds it has published so far. The bounds are then kept in an array of ints indexed on the graph's vertex
+ * indexes, written only by the background search. The highest weight it has closed (maxWeightSeen) is volatile and written before each new
+ * bound, so any reader that sees a given maxWeightSeen also sees every bound closed before it, and an unreached vertex
+ * can never have a weight below the maxWeightSeen read before it. The heuristic therefore stays admissible without
+ * locking, even though it improves while the main search is running.
  */
 public class InterleavedBidirectionalHeuristic implements RemainingWeightHeuristic {
 
@@ -67,6 +81,16 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
 
     private static Logger LOG = LoggerFactory.getLogger(InterleavedBidirectionalHeuristic.class);
 
+    /** Weight of vertices that have not been reached by the street or transit searches. */
+    private static final int UNREACHED = Integer.MAX_VALUE;
+
+    /** Check the abort time of background searches every this many steps. */
+    private static final int STEPS_PER_ABORT_CHECK = 1000;
+
+    /** Threads for background searches, which must not keep the JVM alive. */
+    private static final ExecutorService backgroundSearches = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("BidirectionalHeuristic-%d").setDaemon(true).build());
+
     // For each step in the main search, how many steps should the reverse search proceed?
     private static final int HEURISTIC_STEPS_PER_MAIN_STEP = 8; // TODO determine a good value empirically
 
@@ -76,15 +100,27 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
     /** The vertex that the main search is working towards. */
     Vertex target;
 
-    /** All vertices within walking distance of the origin (the vertex at which the main search begins). */
-    Set<Vertex> preTransitVertices;
+    /** The indexes of all vertices within walking distance of the origin (where the main search begins). */
+    TIntSet preTransitVertices;
 
     /**
      * A lower bound on the weight of the lowest-cost path to the target (the vertex at which the main search ends)
-     * from each vertex within walking distance of the target. As the heuristic progressively improves, this map will
-     * include lower bounds on path weights for an increasing number of vertices on board transit.
+     * from each vertex within walking distance of the target, by vertex index. Vertices not yet reached are missing.
+     * As the heuristic progressively improves, this will include lower bounds on path weights for an increasing
+     * number of vertices on board transit.
+     *
+     * The interleaved searches only reach a small part of the graph, so the bounds are kept in this map. In
+     * concurrent mode the map only holds vertices outside the graph (e.g. the temporary vertices around the target),
+     * written by the street search before the background search starts, and the other bounds are in
+     * postBoardingWeightArray.
+     */
+    TIntIntMap postBoardingWeights;
+
+    /**
+     * In concurrent mode, the bounds of the graph's own vertices indexed on vertex index, holding UNREACHED for
+     * vertices not yet reached. This is null in interleaved mode.
      */
-    TObjectDoubleMap<Vertex> postBoardingWeights;
+    int[] postBoardingWeightArray;
 
     Graph graph;
 
@@ -92,13 +128,24 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
 
     // The maximum weight yet seen at a closed node in the reverse search. The priority queue head has a uniformly
     // increasing weight, so any unreached transit node must have greater weight than this.
-    double maxWeightSeen = 0;
+    // Volatile because it also publishes the weights written before it to the main search in concurrent mode.
+    volatile double maxWeightSeen = 0;
 
     // The priority queue for the interleaved backward search through the transit network.
+    // In concurrent mode, it is only used by the background thread once the street searches are done.
     BinHeap<Vertex> transitQueue;
 
     // True when the entire transit network has been explored by the reverse search.
-    boolean finished = false;
+    volatile boolean finished = false;
+
+    // True once the backward search has been handed to a background thread, which the main search must not help.
+    boolean concurrent = false;
+
+    // Set to make the background search give up, when no search will use this heuristic anymore.
+    volatile boolean stopped = false;
+
+    // The background search, if any, which must be over before this heuristic is initialized for another target.
+    transient Future<?> backgroundSearch;
 
     /**
      * Before the main search begins, the heuristic must search on the streets around the origin and destination.
@@ -113,6 +160,7 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
             return;
         }
         LOG.debug("Initializing heuristic computation.");
+        stopBackgroundSearch();
         this.graph = request.rctx.graph;
         long start = System.currentTimeMillis();
         this.target = target;
@@ -120,15 +168,22 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
         request.softWalkLimiting = false;
         request.softPreTransitLimiting = false;
         transitQueue = new BinHeap<>();
+        preTransitVertices = new TIntHashSet();
+        postBoardingWeights = new TIntIntHashMap(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR,
+                -1, UNREACHED);
+        // Only the background search needs an array that the main search can read while it is written.
+        if (request.concurrentHeuristic) {
+            postBoardingWeightArray = new int[graph.getVertexIndexLimit()];
+            Arrays.fill(postBoardingWeightArray, UNREACHED);
+        } else {
+            postBoardingWeightArray = null;
+        }
         // Forward street search first, mark street vertices around the origin so H evaluates to 0
-        TObjectDoubleMap<Vertex> forwardStreetSearchResults = streetSearch(request, false, abortTime);
-        if (forwardStreetSearchResults == null) {
+        if (!streetSearch(request, false, abortTime)) {
             return; // Search timed out
         }
-        preTransitVertices = forwardStreetSearchResults.keySet();
         LOG.debug("end forward street search {} ms", System.currentTimeMillis() - start);
-        postBoardingWeights = streetSearch(request, true, abortTime);
-        if (postBoardingWeights == null) {
+        if (!streetSearch(request, true, abortTime)) {
             return; // Search timed out
         }
         LOG.debug("end backward street search {} ms", System.currentTimeMillis() - start);
@@ -137,6 +192,11 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
         // for trips near the cutoff
         request.setMaxWalkDistance(Double.POSITIVE_INFINITY);
         request.setMaxPreTransitTime(Integer.MAX_VALUE);
+        // The background search reads the request, so only start it once the request is no longer modified.
+        concurrent = request.concurrentHeuristic;
+        if (concurrent) {
+            backgroundSearch = backgroundSearches.submit(() -> searchTransit(abortTime));
+        }
         LOG.debug("initialized SSSP");
         request.rctx.debugOutput.finishedPrecalculating();
     }
@@ -156,15 +216,16 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
             // Zero is always an underestimate.
             return 0;
         }
+        final int index = v.getIndex();
         if (v instanceof StreetVertex) {
             // The main search is on the streets, not on transit.
             if (s.isEverBoarded()) {
-                // If we have already ridden transit we must be near the destination. If not the map returns INF.
-                return postBoardingWeights.get(v);
+                // If we have already ridden transit we must be near the destination. If not, return INF.
+                return weight(index);
             } else {
                 // We have not boarded transit yet. We have no idea what the weight to the target is so return zero.
                 // We could also use a Euclidean heuristic here.
-                if (preTransitVertices.contains(v)) {
+                if (preTransitVertices.contains(index)) {
                     return 0;
                 } else {
                     return Double.POSITIVE_INFINITY;
@@ -174,68 +235,151 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
             // The main search is not currently on a street vertex, it's probably on transit.
             // If the current part of the transit network has been explored, then return the stored lower bound.
             // Otherwise return the highest lower bound yet seen -- this location must have a higher cost than that.
-            double h = postBoardingWeights.get(v);
+            // Read the highest lower bound first: in concurrent mode, a vertex still unreached after that read has
+            // a weight at least this high.
+            double max = maxWeightSeen;
+            double h = weight(index);
             if (h == Double.POSITIVE_INFINITY) {
-                return maxWeightSeen;
+                return max;
             } else {
                 return h;
             }
         }
     }
 
+    /** The lower bound on the weight from the vertex with the given index to the target, or INF if unknown. */
+    private double weight (int index) {
+        int weight = postBoardingWeight(index);
+        return weight == UNREACHED ? Double.POSITIVE_INFINITY : weight;
+    }
+
+    private int postBoardingWeight (int index) {
+        int[] weights = postBoardingWeightArray;
+        if (weights != null && index < weights.length) {
+            return weights[index];
+        }
+        return postBoardingWeights.get(index);
+    }
+
+    private void setPostBoardingWeight (int index, int weight) {
+        int[] weights = postBoardingWeightArray;
+        if (weights != null && index < weights.length) {
+            weights[index] = weight;
+        } else {
+            postBoardingWeights.put(index, weight);
+        }
+    }
+
     @Override
     public void reset() { }
 
+    /** Stop the background search, if any. The bounds found so far remain valid. */
+    @Override
+    public void close() {
+        stopped = true;
+    }
+
+    /** Stop the background search and wait until it no longer touches the queue and weights. */
+    private void stopBackgroundSearch () {
+        if (backgroundSearch != null) {
+            stopped = true;
+            try {
+                backgroundSearch.get();
+            } catch (InterruptedException | ExecutionException e) {
+                LOG.warn("Background heuristic search failed.", e);
+            }
+            backgroundSearch = null;
+        }
+        stopped = false;
+        finished = false;
+        maxWeightSeen = 0;
+    }
+
     /**
      * Move backward N steps through the transit network.
      * This improves the heuristic's knowledge of the transit network as seen from the target,
      * making its lower bounds on path weight progressively more accurate.
+     * This does nothing when the backward search is running on a background thread.
      */
     @Override
     public void doSomeWork() {
-        if (finished) return;
+        if (finished || concurrent) return;
         for (int i = 0; i < HEURISTIC_STEPS_PER_MAIN_STEP; ++i) {
-            if (transitQueue.empty()) {
+            if (!step()) {
                 finished = true;
                 break;
             }
-            int uWeight = (int) transitQueue.peek_min_key();
-            Vertex u = transitQueue.extract_min();
-            // The weight of the queue head is uniformly increasing.
-            // This is the highest weight ever seen for a closed vertex.
-            maxWeightSeen = uWeight;
-            // Now that this vertex is closed, we can store its weight for use as a lower bound / heuristic value.
-            // We don't implement decrease-key operations though, so check whether a smaller value is already known.
-            double uWeightOld = postBoardingWeights.get(u);
-            if (uWeight < uWeightOld) {
-                // Including when uWeightOld is infinite because the vertex is not yet closed.
-                postBoardingWeights.put(u, uWeight);
-            } else {
-                // The vertex was already closed. This time it necessarily has a higher weight, so skip it.
+        }
+    }
+
+    /**
+     * Run the whole backward search through the transit network, on a background thread while the main search runs.
+     * Give up at the abort time of the main search, or once no search uses this heuristic anymore.
+     */
+    private void searchTransit (long abortTime) {
+        long start = System.currentTimeMillis();
+        int steps = 0;
+        while (!stopped && step()) {
+            if (++steps % STEPS_PER_ABORT_CHECK == 0 && abortTime < Long.MAX_VALUE
+                    && System.currentTimeMillis() > abortTime) {
+                LOG.debug("Background heuristic search timed out after {} steps.", steps);
+                return;
+            }
+        }
+        finished = transitQueue.empty();
+        LOG.debug("Background heuristic search ran {} steps in {} ms.", steps, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Close the vertex at the head of the transit queue and queue its neighbors.
+     * @return false if the queue was empty, meaning the whole transit network has been explored.
+     */
+    private boolean step () {
+        if (transitQueue.empty()) {
+            return false;
+        }
+        int uWeight = (int) transitQueue.peek_min_key();
+        Vertex u = transitQueue.extract_min();
+        // The weight of the queue head is uniformly increasing.
+        // This is the highest weight ever seen for a closed vertex.
+        // It must be written before the weight of u, see the class comment.
+        maxWeightSeen = uWeight;
+        // Now that this vertex is closed, we can store its weight for use as a lower bound / heuristic value.
+        // We don't implement decrease-key operations though, so check whether a smaller value is already known.
+        int uIndex = u.getIndex();
+        if (postBoardingWeightArray != null && uIndex >= postBoardingWeightArray.length) {
+            // The map is not written once the background search has started. Transit vertices are all in the graph.
+            return true;
+        }
+        if (uWeight < postBoardingWeight(uIndex)) {
+            // Including when the old weight is UNREACHED because the vertex is not yet closed.
+            setPostBoardingWeight(uIndex, uWeight);
+        } else {
+            // The vertex was already closed. This time it necessarily has a higher weight, so skip it.
+            return true;
+        }
+        // This search is proceeding backward relative to the main search.
+        // When the main search is arriveBy the heuristic search looks at OUTgoing edges.
+        for (Edge e : routingRequest.arriveBy ?
+                routingRequest.rctx.getOutgoing(u) : routingRequest.rctx.getIncoming(u)) {
+            // Do not enter streets in this phase, which should only touch transit.
+            if (e instanceof StreetTransitLink) {
                 continue;
             }
-            // This search is proceeding backward relative to the main search.
-            // When the main search is arriveBy the heuristic search looks at OUTgoing edges.
-            for (Edge e : routingRequest.arriveBy ? u.getOutgoing() : u.getIncoming()) {
-                // Do not enter streets in this phase, which should only touch transit.
-                if (e instanceof StreetTransitLink) {
-                    continue;
-                }
-                Vertex v = routingRequest.arriveBy ? e.getToVertex() : e.getFromVertex();
-                double edgeWeight = e.weightLowerBound(routingRequest);
-                // INF heuristic value indicates unreachable (e.g. non-running transit service)
-                // this saves time by not reverse-exploring those routes and avoids maxFound of INF.
-                if (Double.isInfinite(edgeWeight)) {
-                    continue;
-                }
-                double vWeight = uWeight + edgeWeight;
-                double vWeightOld = postBoardingWeights.get(v);
-                if (vWeight < vWeightOld) {
-                    // Should only happen when vWeightOld is infinite because it is not yet closed.
-                    transitQueue.insert(v, vWeight);
-                }
+            Vertex v = routingRequest.arriveBy ? e.getToVertex() : e.getFromVertex();
+            double edgeWeight = e.weightLowerBound(routingRequest);
+            // INF heuristic value indicates unreachable (e.g. non-running transit service)
+            // this saves time by not reverse-exploring those routes and avoids maxFound of INF.
+            if (Double.isInfinite(edgeWeight)) {
+                continue;
+            }
+            double vWeight = uWeight + edgeWeight;
+            if (vWeight < weight(v.getIndex())) {
+                // Should only happen when the old weight is infinite because it is not yet closed.
+                transitQueue.insert(v, vWeight);
             }
         }
+        return true;
     }
 
     /**
@@ -263,15 +407,19 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
      * only walk within that distance. This would avoid needing to call the main traversal functions.
      *
      * TODO what if the egress segment is by bicycle or car mode? This is no longer admissible.
+     *
+     * The vertices reached around the origin are recorded in preTransitVertices, and the weights of those reached
+     * around the target in the post-boarding weights.
+     *
+     * @return false if the search timed out.
      */
-    private TObjectDoubleMap<Vertex> streetSearch (RoutingRequest rr, boolean fromTarget, long abortTime) {
+    private boolean streetSearch (RoutingRequest rr, boolean fromTarget, long abortTime) {
         LOG.debug("Heuristic street search around the {}.", fromTarget ? "target" : "origin");
         rr = rr.clone();
         if (fromTarget) {
             rr.setArriveBy(!rr.arriveBy);
         }
-        // Create a map that returns Infinity when it does not contain a vertex.
-        TObjectDoubleMap<Vertex> vertices = new TObjectDoubleHashMap<>(100, 0.5f, Double.POSITIVE_INFINITY);
+        int reached = 0;
         ShortestPathTree spt = new DominanceFunction.MinimumWeight().getNewShortestPathTree(rr);
         // TODO use normal OTP search for this.
         BinHeap<State> pq = new BinHeap<State>();
@@ -280,7 +428,7 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
         pq.insert(initState, 0);
         while ( ! pq.empty()) {
             if (abortTime < Long.MAX_VALUE  && System.currentTimeMillis() > abortTime) {
-                return null;
+                return false;
             }
             State s = pq.extract_min();
             Vertex v = s.getVertex();
@@ -301,10 +449,16 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
             // We don't test whether we're on an instanceof StreetVertex here because some other vertex types
             // (park and ride or bike rental related) that should also be explored and marked as usable.
             // Record the cost to reach this vertex.
-            if (!vertices.containsKey(v)) {
-                vertices.put(v, (int) s.getWeight()); // FIXME time or weight? is RR using right mode?
+            int index = v.getIndex();
+            if (fromTarget) {
+                if (postBoardingWeight(index) == UNREACHED) {
+                    setPostBoardingWeight(index, (int) s.getWeight()); // FIXME time or weight? is RR using right mode?
+                    reached++;
+                }
+            } else if (preTransitVertices.add(index)) {
+                reached++;
             }
-            for (Edge e : rr.arriveBy ? v.getIncoming() : v.getOutgoing()) {
+            for (Edge e : rr.arriveBy ? rr.rctx.getIncoming(v) : rr.rctx.getOutgoing(v)) {
                 // arriveBy has been set to match actual directional behavior in this subsearch.
                 // Walk cutoff will happen in the street edge traversal method.
                 State s1 = e.traverse(s);
@@ -316,9 +470,9 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
                 }
             }
         }
-        LOG.debug("Heuristric street search hit {} vertices.", vertices.size());
+        LOG.debug("Heuristric street search hit {} vertices.", reached);
         LOG.debug("Heuristric street search hit {} transit stops.", transitQueue.size());
-        return vertices;
+        return true;
     }
  
 }
@@ -0,0 +1,174 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.algorithm.strategies;
+
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Vertex;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Street network distances between every vertex of a graph and a small set of landmark vertices, precomputed by
+ * the LandmarkModule and stored as a graph service. By the triangle inequality, the difference between the distances
+ * of two vertices to the same landmark is a lower bound on the distance between them, and it is usually much
+ * tighter than the straight-line distance where the street network is not a grid (rivers, highways, hills).
+ * This is the "ALT" technique (A*, Landmarks, Triangle inequality) of Goldberg and Harrelson.
+ *
+ * Distances are in millimeters, the unit StreetEdge lengths are stored in, so the sums are exact. Only street edge
+ * lengths are counted, every other edge (links, elevators, transfers...) has length zero and edges to or from
+ * vertices onboard transit vehicles are left out, which keeps the bounds valid for every street mode. Edges added to
+ * the graph after the table was built (e.g. by real-time bike rental updates) are not known to it.
+ */
+public class LandmarkDistances implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Distance recorded between vertices that cannot reach each other, or whose distance does not fit in an int. */
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    /** The vertices covered by the table, in the order of their rows. */
+    private final Vertex[] vertices;
+
+    private final Vertex[] landmarks;
+
+    /** Distance from landmark l to the vertex at position p is fromLandmarks[p * landmarks.length + l]. */
+    private final int[] fromLandmarks;
+
+    /** Distance from the vertex at position p to landmark l is toLandmarks[p * landmarks.length + l]. */
+    private final int[] toLandmarks;
+
+    /**
+     * Maps vertex indexes to positions in the table. Vertex indexes change when a graph is reloaded, so this is
+     * rebuilt lazily rather than serialized.
+     */
+    private transient volatile int[] positions;
+
+    /**
+     * The lowest bicycle safety factor and the highest car speed of the street edges in the table, which bound the
+     * weight of a millimeter of street. Computed on first use rather than serialized, like the positions.
+     */
+    private transient volatile float[] streetBounds;
+
+    public LandmarkDistances(Vertex[] vertices, Vertex[] landmarks, int[] fromLandmarks, int[] toLandmarks) {
+        if (fromLandmarks.length != vertices.length * landmarks.length
+                || toLandmarks.length != vertices.length * landmarks.length) {
+            throw new IllegalArgumentException("Landmark distance tables do not match the number of vertices.");
+        }
+        this.vertices = vertices;
+        this.landmarks = landmarks;
+        this.fromLandmarks = fromLandmarks;
+        this.toLandmarks = toLandmarks;
+    }
+
+    public int getVertexCount() {
+        return vertices.length;
+    }
+
+    public int getLandmarkCount() {
+        return landmarks.length;
+    }
+
+    public Vertex getLandmark(int l) {
+        return landmarks[l];
+    }
+
+    /** @return the position of the given vertex in the table, or -1 if the vertex was not part of the graph. */
+    public int getPosition(Vertex vertex) {
+        int[] positions = this.positions;
+        if (positions == null) {
+            positions = indexPositions();
+        }
+        int index = vertex.getIndex();
+        if (index < 0 || index >= positions.length) {
+            return -1;
+        }
+        int position = positions[index];
+        return position >= 0 && vertices[position] == vertex ? position : -1;
+    }
+
+    private synchronized int[] indexPositions() {
+        if (positions == null) {
+            int maxIndex = 0;
+            for (Vertex v : vertices) {
+                maxIndex = Math.max(maxIndex, v.getIndex());
+            }
+            int[] positions = new int[maxIndex + 1];
+            Arrays.fill(positions, -1);
+            for (int p = 0; p < vertices.length; p++) {
+                positions[vertices[p].getIndex()] = p;
+            }
+            this.positions = positions;
+        }
+        return positions;
+    }
+
+    /** @return the lowest bicycle safety factor of the street edges leaving the vertices in the table, at most 1. */
+    public float getMinBicycleSafetyFactor() {
+        float[] bounds = this.streetBounds;
+        return (bounds == null ? computeStreetBounds() : bounds)[0];
+    }
+
+    /** @return the highest car speed of the street edges leaving the vertices in the table, in meters per second. */
+    public float getMaxCarSpeed() {
+        float[] bounds = this.streetBounds;
+        return (bounds == null ? computeStreetBounds() : bounds)[1];
+    }
+
+    private synchronized float[] computeStreetBounds() {
+        if (streetBounds == null) {
+            float minSafetyFactor = 1;
+            float maxCarSpeed = 0;
+            for (Vertex v : vertices) {
+                for (Edge e : v.getOutgoing()) {
+                    if (e instanceof StreetEdge) {
+                        StreetEdge se = (StreetEdge) e;
+                        minSafetyFactor = Math.min(minSafetyFactor, se.getBicycleSafetyFactor());
+                        maxCarSpeed = Math.max(maxCarSpeed, se.getCarSpeed());
+                    }
+                }
+            }
+            streetBounds = new float[] { minSafetyFactor, maxCarSpeed };
+        }
+        return streetBounds;
+    }
+
+    /**
+     * @return a lower bound on the street distance in millimeters from the vertex at position <code>from</code> to
+     * the vertex at position <code>to</code>, which is zero when the landmarks tell nothing about the two vertices.
+     */
+    public int lowerBound(int from, int to) {
+        int n = landmarks.length;
+        int fromRow = from * n;
+        int toRow = to * n;
+        int bound = 0;
+        for (int l = 0; l < n; l++) {
+            // d(from, to) >= d(L, to) - d(L, from)
+            int landmarkToTarget = fromLandmarks[toRow + l];
+            int landmarkToSource = fromLandmarks[fromRow + l];
+            if (landmarkToTarget != UNREACHABLE && landmarkToSource != UNREACHABLE) {
+                bound = Math.max(bound, landmarkToTarget - landmarkToSource);
+            }
+            // d(from, to) >= d(from, L) - d(to, L)
+            int sourceToLandmark = toLandmarks[fromRow + l];
+            int targetToLandmark = toLandmarks[toRow + l];
+            if (sourceToLandmark != UNREACHABLE && targetToLandmark != UNREACHABLE) {
+                bound = Math.max(bound, sourceToLandmark - targetToLandmark);
+            }
+        }
+        return bound;
+    }
+
+}
@@ -0,0 +1,170 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.algorithm.strategies;
+
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import org.opentripplanner.routing.core.RoutingContext;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.vertextype.TemporaryVertex;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * A goal direction heuristic for street-only searches using the precomputed landmark distances of the graph
+ * (see {@link LandmarkDistances}). The remaining distance is the larger of the straight-line distance and the
+ * landmark bound, converted to a weight with the lowest weight a meter of street can have for the modes of the
+ * request. Searches return the same paths as without a heuristic while visiting far fewer vertices when the street
+ * network makes detours. Like the Euclidean heuristic, this ignores slopes, which can make a downhill street slightly
+ * cheaper than its length.
+ *
+ * The origin and destination of a request are temporary vertices which are not in the landmark table. Every path to
+ * the target leaves the permanent graph at one of the few permanent vertices the temporary edges around the target
+ * are attached to, so the remaining distance is bounded by the minimum of the landmark bounds to those vertices.
+ * States at temporary vertices only get the straight-line distance.
+ */
+public class LandmarkRemainingWeightHeuristic implements RemainingWeightHeuristic {
+
+    private static final long serialVersionUID = 1L;
+
+    private final LandmarkDistances landmarks;
+
+    private final EuclideanRemainingWeightHeuristic euclidean = new EuclideanRemainingWeightHeuristic();
+
+    private boolean arriveBy;
+
+    private double weightPerMeter;
+
+    /** Table positions of the permanent vertices through which the target is reached, or null if there are none. */
+    private int[] targets;
+
+    public LandmarkRemainingWeightHeuristic(LandmarkDistances landmarks) {
+        this.landmarks = landmarks;
+    }
+
+    @Override
+    public void initialize(RoutingRequest options, long abortTime) {
+        euclidean.initialize(options, abortTime);
+        arriveBy = options.arriveBy;
+        weightPerMeter = minWeightPerMeter(options, landmarks);
+        targets = findTargets(options.rctx);
+    }
+
+    /**
+     * @return a lower bound on the weight of a meter of street for the modes of the request (see the weights in
+     * StreetEdge.doTraverse). Walking costs the walk or stairs reluctance per second. Cycling costs can be lowered by
+     * the safety factor of the street, and driving runs at the speed of the street rather than the requested one.
+     */
+    static double minWeightPerMeter(RoutingRequest options, LandmarkDistances landmarks) {
+        TraverseModeSet modes = options.modes;
+        double reluctance = Math.min(options.walkReluctance, options.stairsReluctance);
+        double weight = Double.POSITIVE_INFINITY;
+        if (modes.getWalk() || modes.getBicycle()) {
+            // bicycles can also be walked, which is slower and more reluctant than walking
+            weight = reluctance / options.walkSpeed;
+        }
+        if (modes.getBicycle()) {
+            double safety = landmarks.getMinBicycleSafetyFactor();
+            double factor;
+            switch (options.optimize) {
+            case SAFE:
+                factor = safety;
+                break;
+            case GREENWAYS:
+                factor = safety * 0.66;
+                break;
+            case TRIANGLE:
+                factor = options.triangleTimeFactor + options.triangleSafetyFactor * safety;
+                break;
+            default:
+                factor = 1;
+            }
+            weight = Math.min(weight, Math.min(1, factor) * Math.min(1, reluctance) / options.bikeSpeed);
+        }
+        if (modes.getCar()) {
+            double speed = Math.max(options.carSpeed, landmarks.getMaxCarSpeed());
+            weight = Math.min(weight, Math.min(1, reluctance) / speed);
+        }
+        return weight == Double.POSITIVE_INFINITY ? 0 : weight;
+    }
+
+    /**
+     * Walk back from the target through temporary vertices, against the direction of the search, to find the
+     * permanent vertices the search has to pass through. A permanent vertex missing from the table (i.e. added after
+     * the table was built) could be a shortcut the landmarks know nothing about, so landmarks are not used at all
+     * in that case.
+     */
+    private int[] findTargets(RoutingContext rctx) {
+        TIntList positions = new TIntArrayList();
+        Set<Vertex> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Vertex> queue = new ArrayDeque<>();
+        queue.add(rctx.target);
+        seen.add(rctx.target);
+        while (!queue.isEmpty()) {
+            Vertex v = queue.poll();
+            if (!(v instanceof TemporaryVertex)) {
+                int position = landmarks.getPosition(v);
+                if (position < 0) {
+                    return null;
+                }
+                positions.add(position);
+                continue;
+            }
+            for (Edge e : arriveBy ? rctx.getOutgoing(v) : rctx.getIncoming(v)) {
+                Vertex next = arriveBy ? e.getToVertex() : e.getFromVertex();
+                if (seen.add(next)) {
+                    queue.add(next);
+                }
+            }
+        }
+        return positions.isEmpty() ? null : positions.toArray();
+    }
+
+    @Override
+    public double estimateRemainingWeight(State s) {
+        double meters = euclidean.distanceToTarget(s.getVertex());
+        if (targets == null) {
+            return meters * weightPerMeter;
+        }
+        int position = landmarks.getPosition(s.getVertex());
+        if (position < 0) {
+            return meters * weightPerMeter;
+        }
+        int bound = Integer.MAX_VALUE;
+        for (int target : targets) {
+            int b = arriveBy ? landmarks.lowerBound(target, position) : landmarks.lowerBound(position, target);
+            if (b < bound) {
+                bound = b;
+            }
+        }
+        return Math.max(meters, bound / 1000.0) * weightPerMeter;
+    }
+
+    @Override
+    public void reset() {
+        euclidean.reset();
+    }
+
+    @Override
+    public void doSomeWork() {}
+
+}
@@ -44,6 +44,9 @@ public interface RemainingWeightHeuristic extends Serializable {
      * estimate. Avoids thread synchronization evil by interleaving forward and backward searches. 
      */
     public void doSomeWork();
+
+    /** Release any resources, such as background threads, once no more searches will use this heuristic. */
+    public default void close() { }
     
 }
 
@@ -22,6 +22,7 @@ import org.onebusaway.gtfs.model.calendar.ServiceDate;
 import org.onebusaway.gtfs.services.calendar.CalendarService;
 import org.opentripplanner.api.resource.DebugOutput;
 import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.common.model.GenericLocation;
 import org.opentripplanner.routing.algorithm.strategies.EuclideanRemainingWeightHeuristic;
 import org.opentripplanner.routing.algorithm.strategies.RemainingWeightHeuristic;
 import org.opentripplanner.routing.algorithm.strategies.TrivialRemainingWeightHeuristic;
@@ -33,6 +34,8 @@ import org.opentripplanner.routing.error.TransitTimesException;
 import org.opentripplanner.routing.error.VertexNotFoundException;
 import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.RealtimeStreetOverlay;
+import org.opentripplanner.routing.graph.TemporaryEdgeOverlay;
 import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.routing.location.StreetLocation;
 import org.opentripplanner.routing.location.TemporaryStreetLocation;
@@ -47,9 +50,11 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -126,20 +131,38 @@ public class RoutingContext implements Cloneable {
     /** Indicates that a maximum slope constraint was specified but was removed during routing to produce a result. */
     public boolean slopeRestrictionRemoved = false;
 
+    /**
+     * The temporary edges of this request that touch permanent vertices, when they are kept out of the graph
+     * (see {@link RoutingRequest#requestScopedLinking}). Null if temporary edges were added to the graph itself.
+     */
+    public final TemporaryEdgeOverlay temporaryEdges;
+
+    /** The real-time entities attached to the streets (bike rental stations, bike parks) when this context was created. */
+    public final RealtimeStreetOverlay realtimeStreets;
+
     /* CONSTRUCTORS */
 
     /**
      * Constructor that automatically computes origin/target from RoutingRequest.
      */
     public RoutingContext(RoutingRequest routingRequest, Graph graph) {
-        this(routingRequest, graph, null, null, true);
+        this(routingRequest, graph, null, null, true, null);
     }
 
     /**
      * Constructor that takes to/from vertices as input.
      */
     public RoutingContext(RoutingRequest routingRequest, Graph graph, Vertex from, Vertex to) {
-        this(routingRequest, graph, from, to, false);
+        this(routingRequest, graph, from, to, false, null);
+    }
+
+    /**
+     * Constructor that takes to/from vertices found by another routing context, for example to search back over a
+     * path found by that context. The temporary edges and real-time street entities of the other context are shared,
+     * so that its temporary origin and destination remain reachable.
+     */
+    public RoutingContext(RoutingRequest routingRequest, Graph graph, Vertex from, Vertex to, RoutingContext shared) {
+        this(routingRequest, graph, from, to, false, shared);
     }
 
     /**
@@ -172,6 +195,22 @@ public class RoutingContext implements Cloneable {
         return overlap;
     }
 
+    /**
+     * Find or create the vertex for the given location, keeping any temporary edges created to link it in the
+     * temporary edge overlay of this context if there is one.
+     */
+    private Vertex getVertexForLocation(GenericLocation location, boolean endVertex) {
+        if (temporaryEdges == null) {
+            return graph.streetIndex.getVertexForLocation(location, opt, endVertex);
+        }
+        temporaryEdges.open();
+        try {
+            return graph.streetIndex.getVertexForLocation(location, opt, endVertex);
+        } finally {
+            temporaryEdges.close();
+        }
+    }
+
     /**
      * Creates a PartialStreetEdge along the input StreetEdge iff its direction makes this possible.
      */
@@ -202,15 +241,25 @@ public class RoutingContext implements Cloneable {
      * TODO(flamholz): delete this flexible constructor and move the logic to constructors above appropriately.
      * 
      * @param findPlaces if true, compute origin and target from RoutingRequest using spatial indices.
+     * @param shared if not null, the context whose temporary edges and real-time street entities are reused.
      */
     private RoutingContext(RoutingRequest routingRequest, Graph graph, Vertex from, Vertex to,
-            boolean findPlaces) {
+            boolean findPlaces, RoutingContext shared) {
         if (graph == null) {
             throw new GraphNotFoundException();
         }
         this.opt = routingRequest;
         this.graph = graph;
         this.debugOutput.startedCalculating();
+        if (shared != null) {
+            this.temporaryEdges = shared.temporaryEdges;
+            this.realtimeStreets = shared.realtimeStreets;
+        } else {
+            this.temporaryEdges = findPlaces && opt.requestScopedLinking && !opt.batch ?
+                    new TemporaryEdgeOverlay() : null;
+            // Like the timetable snapshot, keep the same real-time entities throughout the search.
+            this.realtimeStreets = graph.getRealtimeStreetOverlay();
+        }
 
         // The following block contains potentially resource-intensive things that are only relevant for transit.
         // In normal searches the impact is low, because the routing context is only constructed once at the beginning
@@ -264,7 +313,7 @@ public class RoutingContext implements Cloneable {
 
             else {
                 // normal mode, search for vertices based RoutingRequest and split streets
-                toVertex = graph.streetIndex.getVertexForLocation(opt.to, opt, true);
+                toVertex = getVertexForLocation(opt.to, true);
                 if (opt.to.hasEdgeId()) {
                     toBackEdge = graph.getEdgeById(opt.to.edgeId);
                 }
@@ -276,7 +325,7 @@ public class RoutingContext implements Cloneable {
                         throw new UnsupportedOperationException("Missing OnBoardDepartService");
                     fromVertex = onBoardDepartService.setupDepartOnBoard(this);
                 } else {
-                    fromVertex = graph.streetIndex.getVertexForLocation(opt.from, opt, false);
+                    fromVertex = getVertexForLocation(opt.from, false);
                     if (opt.from.hasEdgeId()) {
                         fromBackEdge = graph.getEdgeById(opt.from.edgeId);
                     }
@@ -412,10 +461,44 @@ public class RoutingContext implements Cloneable {
     }
 
     /**
-     * Tear down this routing context, removing any temporary edges.
+     * @return the edges leaving the given vertex in this context, including real-time and temporary edges kept out of
+     * the graph.
+     */
+    public Collection<Edge> getOutgoing(Vertex v) {
+        Collection<Edge> edges = realtimeStreets.getOutgoing(v, v.getOutgoing());
+        return temporaryEdges == null ? edges : temporaryEdges.getOutgoing(v, edges);
+    }
+
+    /** @return the street edges leaving the given vertex in this context, like {@link Vertex#getOutgoingStreetEdges()}. */
+    public List<Edge> getOutgoingStreetEdges(Vertex v) {
+        List<Edge> result = new ArrayList<Edge>();
+        for (Edge out : getOutgoing(v)) {
+            if (out instanceof StreetEdge) {
+                result.add(out);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the edges entering the given vertex in this context, including real-time and temporary edges kept out of
+     * the graph.
+     */
+    public Collection<Edge> getIncoming(Vertex v) {
+        Collection<Edge> edges = realtimeStreets.getIncoming(v, v.getIncoming());
+        return temporaryEdges == null ? edges : temporaryEdges.getIncoming(v, edges);
+    }
+
+    /**
+     * Tear down this routing context, removing any temporary edges. Street locations linked through the temporary
+     * edge overlay left the graph untouched, so there is nothing to remove for them.
      */
     public void destroy() {
-        if (origin instanceof TemporaryVertex) ((TemporaryVertex) origin).dispose();
-        if (target instanceof TemporaryVertex) ((TemporaryVertex) target).dispose();
+        if (origin instanceof TemporaryVertex && !isInOverlay(origin)) ((TemporaryVertex) origin).dispose();
+        if (target instanceof TemporaryVertex && !isInOverlay(target)) ((TemporaryVertex) target).dispose();
+    }
+
+    private boolean isInOverlay(Vertex v) {
+        return temporaryEdges != null && v instanceof TemporaryStreetLocation;
     }
 }
@@ -381,6 +381,12 @@ public class RoutingRequest implements Cloneable, Serializable {
      */
     public boolean disableRemainingWeightHeuristic = false;
 
+    /**
+     * If true, the backward search of the bidirectional transit heuristic runs on another thread while the main search
+     * proceeds, instead of being interleaved with it. This lowers response times on machines with idle cores.
+     */
+    public boolean concurrentHeuristic = false;
+
     /**
      * The routing context used to actually carry out this search. It is important to build States from TraverseOptions
      * rather than RoutingContexts,and just keep a reference to the context in the TraverseOptions, rather than using
@@ -432,6 +438,18 @@ public class RoutingRequest implements Cloneable, Serializable {
     /** The function that compares paths converging on the same vertex to decide which ones continue to be explored. */
     public DominanceFunction dominanceFunction = new DominanceFunction.Pareto();
 
+    /**
+     * Store search states in arrays indexed by vertex index and reuse per-thread priority queues rather than
+     * allocating hash maps, lists and queues for every search. This produces the same paths with much less garbage.
+     */
+    public boolean indexedSearch = false;
+
+    /**
+     * Keep the temporary edges linking the origin and destination to the street network in the routing context
+     * instead of adding them to the shared graph, so that they need not be removed again after the search.
+     */
+    public boolean requestScopedLinking = false;
+
     /** Accept only paths that use transit (no street-only paths). */
     public boolean onlyTransitTrips = false;
 
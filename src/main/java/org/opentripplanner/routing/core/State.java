@@ -14,6 +14,7 @@
 package org.opentripplanner.routing.core;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 import java.util.Set;
 
@@ -572,10 +573,16 @@ public class State implements Cloneable {
         return stateData.lastTransitWalk;
     }
 
+    /** Read edges through the routing context, which also knows the edges kept outside the graph for the request. */
+    private Collection<Edge> getOutgoing(Vertex v) {
+        RoutingContext rctx = getOptions().rctx;
+        return rctx == null ? v.getOutgoing() : rctx.getOutgoing(v);
+    }
+
     public boolean multipleOptionsBefore() {
         boolean foundAlternatePaths = false;
         TraverseMode requestedMode = getNonTransitMode();
-        for (Edge out : backState.vertex.getOutgoing()) {
+        for (Edge out : getOutgoing(backState.vertex)) {
             if (out == backEdge) {
                 continue;
             }
@@ -597,7 +604,7 @@ public class State implements Cloneable {
             //now, from here, try a continuing path.
             Vertex tov = outState.getVertex();
             boolean found = false;
-            for (Edge out2 : tov.getOutgoing()) {
+            for (Edge out2 : getOutgoing(tov)) {
                 State outState2 = out2.traverse(outState);
                 if (outState2 != null && !outState2.getBackMode().equals(requestedMode)) {
                     // walking a bike, so, not really an exit
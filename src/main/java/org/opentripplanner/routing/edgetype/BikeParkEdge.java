@@ -18,6 +18,7 @@ import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.core.StateEditor;
 import org.opentripplanner.routing.core.TraverseMode;
 import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.RealtimeStreetOverlay;
 import org.opentripplanner.routing.vertextype.BikeParkVertex;
 
 import com.vividsolutions.jts.geom.LineString;
@@ -84,7 +85,10 @@ public class BikeParkEdge extends Edge {
                 || s0.isBikeRenting() || s0.isBikeParked())
             return null;
         BikeParkVertex bikeParkVertex = (BikeParkVertex) tov;
-        if (bikeParkVertex.getSpacesAvailable() == 0) {
+        // Spaces of updated parks are read from the snapshot the search started with
+        RealtimeStreetOverlay realtimeStreets = options.rctx == null ? RealtimeStreetOverlay.EMPTY
+                : options.rctx.realtimeStreets;
+        if (bikeParkVertex.getSpacesAvailable(realtimeStreets) == 0) {
             return null;
         }
 
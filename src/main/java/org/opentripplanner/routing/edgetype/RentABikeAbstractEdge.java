@@ -20,6 +20,7 @@ import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.core.StateEditor;
 import org.opentripplanner.routing.core.TraverseMode;
 import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.RealtimeStreetOverlay;
 import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.routing.vertextype.BikeRentalStationVertex;
 
@@ -58,7 +59,8 @@ public abstract class RentABikeAbstractEdge extends Edge {
             return null;
 
         BikeRentalStationVertex dropoff = (BikeRentalStationVertex) tov;
-        if (options.useBikeRentalAvailabilityInformation && dropoff.getBikesAvailable() == 0) {
+        if (options.useBikeRentalAvailabilityInformation
+                && dropoff.getBikesAvailable(realtimeStreets(options)) == 0) {
             return null;
         }
 
@@ -82,7 +84,8 @@ public abstract class RentABikeAbstractEdge extends Edge {
         if (!s0.isBikeRenting() || !hasCompatibleNetworks(networks, s0.getBikeRentalNetworks()))
             return null;
         BikeRentalStationVertex pickup = (BikeRentalStationVertex) tov;
-        if (options.useBikeRentalAvailabilityInformation && pickup.getSpacesAvailable() == 0) {
+        if (options.useBikeRentalAvailabilityInformation
+                && pickup.getSpacesAvailable(realtimeStreets(options)) == 0) {
             return null;
         }
 
@@ -122,6 +125,11 @@ public abstract class RentABikeAbstractEdge extends Edge {
         return false;
     }
 
+    /** The availability of updated stations is read from the snapshot the search started with. */
+    private static RealtimeStreetOverlay realtimeStreets(RoutingRequest options) {
+        return options.rctx == null ? RealtimeStreetOverlay.EMPTY : options.rctx.realtimeStreets;
+    }
+
     /**
      * @param stationNetworks The station where we want to drop the bike off.
      * @param rentedNetworks The set of networks of the station we rented the bike from.
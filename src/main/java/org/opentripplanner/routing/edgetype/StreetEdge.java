@@ -171,6 +171,45 @@ public class StreetEdge extends Edge implements Cloneable {
     }
 
 
+    /** Restore a street edge from the given row of a column file, see {@link StreetEdgeColumns}. */
+    StreetEdge(StreetVertex v1, StreetVertex v2, StreetEdgeColumns columns, int row) {
+        super(v1, v2, columns.getInt(StreetEdgeColumns.ID, row));
+        this.flags = columns.getByte(StreetEdgeColumns.FLAGS, row);
+        this.length_mm = columns.getInt(StreetEdgeColumns.LENGTH_MM, row);
+        this.bicycleSafetyFactor = columns.getFloat(StreetEdgeColumns.BICYCLE_SAFETY_FACTOR, row);
+        this.compactGeometry = columns.getGeometry(row);
+        this.name = columns.getName(row);
+        this.permission = StreetTraversalPermission.get(columns.getByte(StreetEdgeColumns.PERMISSION, row));
+        this.wayId = columns.getLong(StreetEdgeColumns.WAY_ID, row);
+        this.streetClass = columns.getInt(StreetEdgeColumns.STREET_CLASS, row);
+        this.carSpeed = columns.getFloat(StreetEdgeColumns.CAR_SPEED, row);
+        this.inAngle = columns.getByte(StreetEdgeColumns.IN_ANGLE, row);
+        this.outAngle = columns.getByte(StreetEdgeColumns.OUT_ANGLE, row);
+    }
+
+    /** Store the fields of this edge in the given row of a column file, see {@link StreetEdgeColumns}. */
+    void writeColumns(StreetEdgeColumns columns, int row) {
+        columns.putInt(StreetEdgeColumns.ID, row, getId());
+        columns.putByte(StreetEdgeColumns.KIND, row, StreetEdgeColumns.KIND_STREET);
+        columns.putByte(StreetEdgeColumns.FLAGS, row, flags);
+        columns.putInt(StreetEdgeColumns.LENGTH_MM, row, length_mm);
+        columns.putFloat(StreetEdgeColumns.BICYCLE_SAFETY_FACTOR, row, bicycleSafetyFactor);
+        columns.putGeometry(row, compactGeometry);
+        columns.putName(row, name);
+        columns.putByte(StreetEdgeColumns.PERMISSION, row, (byte) permission.code);
+        columns.putLong(StreetEdgeColumns.WAY_ID, row, wayId);
+        columns.putInt(StreetEdgeColumns.STREET_CLASS, row, streetClass);
+        columns.putFloat(StreetEdgeColumns.CAR_SPEED, row, carSpeed);
+        columns.putByte(StreetEdgeColumns.IN_ANGLE, row, inAngle);
+        columns.putByte(StreetEdgeColumns.OUT_ANGLE, row, outAngle);
+    }
+
+    /** Replace the name and geometry of this edge with equal instances shared with other edges. */
+    void intern(StreetEdgeInterner interner) {
+        name = interner.intern(name);
+        compactGeometry = interner.intern(compactGeometry);
+    }
+
     /**
      * Checks permissions of the street edge if specified modes are allowed to travel.
      *
@@ -408,7 +447,8 @@ public class StreetEdge extends Edge implements Cloneable {
             if (s1.hasEnteredNoThroughTrafficArea()) {
                 // Only Edges are marked as no-thru, but really we need to avoid creating dominant, pruned states
                 // on thru _Vertices_. This could certainly be improved somehow.
-                for (StreetEdge se : Iterables.filter(s1.getVertex().getOutgoing(), StreetEdge.class)) {
+                for (StreetEdge se : Iterables.filter(s1.getOptions().rctx.getOutgoing(s1.getVertex()),
+                        StreetEdge.class)) {
                     if (!se.isNoThruTraffic()) {
                         // This vertex has at least one through-traffic edge. We can't dominate it with a no-thru state.
                         return null;
@@ -668,6 +708,20 @@ public class StreetEdge extends Edge implements Cloneable {
 		return CompactLineString.uncompactLineString(fromv.getLon(), fromv.getLat(), tov.getLon(), tov.getLat(), compactGeometry, isBack());
 	}
 
+	/** @return the number of points in the geometry of this edge, without building it. */
+	public int getGeometryNumPoints() {
+		return CompactLineString.numPoints(compactGeometry);
+	}
+
+	/**
+	 * Copy the points of the geometry of this edge into an array of alternating x and y values, without building a
+	 * LineString. The array must hold at least twice getGeometryNumPoints() values.
+	 * @return the number of points written.
+	 */
+	public int getGeometryCoordinates(double[] xy) {
+		return CompactLineString.uncompactCoordinates(fromv.getLon(), fromv.getLat(), tov.getLon(), tov.getLat(), compactGeometry, isBack(), xy);
+	}
+
 	private void setGeometry(LineString geometry) {
 		this.compactGeometry = CompactLineString.compactLineString(fromv.getLon(), fromv.getLat(), tov.getLon(), tov.getLat(), isBack() ? (LineString)geometry.reverse() : geometry, isBack());
 	}
@@ -0,0 +1,432 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.edgetype;
+
+import gnu.trove.list.array.TIntArrayList;
+import org.opentripplanner.common.MavenVersion;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.vertextype.StreetVertex;
+import org.opentripplanner.util.I18NString;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A columnar, memory-mappable store for plain street edges (exactly StreetEdge and StreetWithElevationEdge), which
+ * make up the vast majority of the edges in a graph. Java serialization of these edges is what makes loading a large
+ * Graph.obj slow and memory hungry: every edge is a separate object in the stream, with its own handle, and the
+ * stream keeps a reference to all of them until it is closed.
+ *
+ * Instead each field of these edges is stored as one flat column of fixed-width values in a separate file, and the
+ * file is mapped into memory when the graph is loaded. Edge endpoints are stored as positions in the list of vertices,
+ * which is still Java-serialized in Graph.obj together with all the other edges (see {@link Manifest}). Geometries and
+ * elevation profiles that were shared between edges are stored only once, and stay shared after loading.
+ *
+ * The file starts with a header holding a magic number, a format version, the id of the Graph.obj it belongs to, the
+ * number of edges and the offset and length of each column. All values are big-endian.
+ */
+public class StreetEdgeColumns {
+
+    /** The name of the street edge file in a graph directory, next to Graph.obj. */
+    public static final String FILENAME = "Graph.streets";
+
+    private static final int MAGIC = 0x4f545053; // OTPS
+
+    /** Increment this whenever the layout of the file changes. */
+    private static final int VERSION = 1;
+
+    /* Column numbers. Per-edge columns have one element per edge, the others are referenced from per-edge columns. */
+    static final int ID = 0;
+    static final int FROM = 1;
+    static final int TO = 2;
+    static final int KIND = 3;
+    static final int FLAGS = 4;
+    static final int LENGTH_MM = 5;
+    static final int BICYCLE_SAFETY_FACTOR = 6;
+    static final int CAR_SPEED = 7;
+    static final int STREET_CLASS = 8;
+    static final int PERMISSION = 9;
+    static final int WAY_ID = 10;
+    static final int IN_ANGLE = 11;
+    static final int OUT_ANGLE = 12;
+    static final int NAME = 13;
+    static final int GEOMETRY = 14;
+    static final int ELEVATION = 15;
+    static final int SLOPE_SPEED_FACTOR = 16;
+    static final int SLOPE_WORK_FACTOR = 17;
+    static final int MAX_SLOPE = 18;
+    static final int FLATTENED = 19;
+    private static final int GEOMETRY_OFFSETS = 20;
+    private static final int GEOMETRY_VALUES = 21;
+    private static final int ELEVATION_OFFSETS = 22;
+    private static final int ELEVATION_VALUES = 23;
+    private static final int N_COLUMNS = 24;
+
+    /** The number of per-edge columns, which all come before the variable length ones. */
+    private static final int N_EDGE_COLUMNS = 20;
+
+    /** The size in bytes of one element of each column. */
+    private static final int[] WIDTH = {
+            4, 4, 4, 1, 1, 4, 4, 4, 4, 1, 8, 1, 1, 4, 4, 4, 4, 4, 4, 1, // per-edge columns
+            4, 4, 4, 1 // geometry offsets and coordinates, elevation offsets and packed profiles
+    };
+
+    private static final int HEADER_SIZE = 24 + N_COLUMNS * 16;
+
+    /** Values of the KIND column. */
+    static final byte KIND_STREET = 0;
+    static final byte KIND_STREET_WITH_ELEVATION = 1;
+
+    /** Value of the NAME, GEOMETRY and ELEVATION columns when the edge has no such data. */
+    private static final int NONE = -1;
+
+    private final ByteBuffer[] columns = new ByteBuffer[N_COLUMNS];
+
+    private final List<I18NString> names;
+
+    /* Used while writing, to store shared objects only once. */
+
+    private final Map<I18NString, Integer> nameIds = new IdentityHashMap<>();
+
+    private final Map<int[], Integer> geometryIds = new IdentityHashMap<>();
+
+    private final TIntArrayList geometryOffsets = new TIntArrayList();
+
+    private final TIntArrayList geometryValues = new TIntArrayList();
+
+    private final Map<byte[], Integer> elevationIds = new IdentityHashMap<>();
+
+    private final TIntArrayList elevationOffsets = new TIntArrayList();
+
+    private final ByteArrayOutputStream elevationValues = new ByteArrayOutputStream();
+
+    /* Used while reading, so that objects that were shared are shared again. */
+
+    private int[][] geometries;
+
+    private byte[][] elevations;
+
+    private StreetEdgeColumns(List<I18NString> names) {
+        this.names = names;
+    }
+
+    /**
+     * @return true if the given object is a street edge that can be stored in columns. Subclasses of the two plain
+     *         street edge types (area edges for instance) carry more fields and are left to Java serialization.
+     */
+    public static boolean canStore(Object o) {
+        return o != null && (o.getClass() == StreetEdge.class || o.getClass() == StreetWithElevationEdge.class);
+    }
+
+    /**
+     * Write the given street edges to a column file.
+     *
+     * @param bundleId identifies the Graph.obj this file belongs to, it is stored in both.
+     * @param vertices all the vertices of the graph, in the order in which they are serialized in Graph.obj.
+     * @return the distinct names of the edges, which must be serialized in Graph.obj and passed back to read().
+     */
+    public static List<I18NString> write(File file, long bundleId, List<StreetEdge> edges, List<Vertex> vertices)
+            throws IOException {
+        Map<Vertex, Integer> vertexPositions = new IdentityHashMap<>(vertices.size());
+        for (int i = 0; i < vertices.size(); i++) {
+            vertexPositions.put(vertices.get(i), i);
+        }
+        StreetEdgeColumns columns = new StreetEdgeColumns(new ArrayList<I18NString>());
+        for (int c = 0; c < N_EDGE_COLUMNS; c++) {
+            columns.columns[c] = ByteBuffer.allocate(edges.size() * WIDTH[c]);
+        }
+        for (int row = 0; row < edges.size(); row++) {
+            StreetEdge edge = edges.get(row);
+            columns.putInt(FROM, row, vertexPositions.get(edge.getFromVertex()));
+            columns.putInt(TO, row, vertexPositions.get(edge.getToVertex()));
+            columns.putInt(ELEVATION, row, NONE);
+            edge.writeColumns(columns, row);
+        }
+        columns.finishVariableLengthColumns();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(bundleId).putInt(edges.size()).putInt(N_COLUMNS);
+            long offset = HEADER_SIZE;
+            for (ByteBuffer column : columns.columns) {
+                header.putLong(offset).putLong(column.capacity());
+                offset += column.capacity();
+            }
+            header.flip();
+            writeFully(channel, header);
+            for (ByteBuffer column : columns.columns) {
+                column.clear();
+                writeFully(channel, column);
+            }
+        }
+        return columns.names;
+    }
+
+    /**
+     * Map a column file into memory and recreate its street edges, which are attached to their vertices as they are
+     * created.
+     *
+     * @param bundleId the id recorded in the Graph.obj being loaded, which must match the one in the file.
+     * @param vertices all the vertices of the graph, in the order in which they were serialized.
+     * @param names the list returned by write() when the file was created.
+     * @return the number of edges created.
+     */
+    public static int read(File file, long bundleId, List<Vertex> vertices, List<I18NString> names)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException(file + " is not a street edge file.");
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC) {
+                throw new IOException(file + " is not a street edge file.");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IllegalStateException(String.format(
+                        "Street edge file version %d is not supported, expected %d. Please rebuild the graph.",
+                        version, VERSION));
+            }
+            if (header.getLong() != bundleId) {
+                throw new IllegalStateException(file + " does not belong to this graph. Please rebuild the graph.");
+            }
+            int edgeCount = header.getInt();
+            if (header.getInt() != N_COLUMNS) {
+                throw new IOException(file + " has an unexpected number of columns.");
+            }
+            StreetEdgeColumns columns = new StreetEdgeColumns(names);
+            for (int c = 0; c < N_COLUMNS; c++) {
+                long offset = header.getLong();
+                long length = header.getLong();
+                columns.columns[c] = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+            }
+            columns.geometries = new int[columns.columns[GEOMETRY_OFFSETS].capacity() / 4][];
+            columns.elevations = new byte[columns.columns[ELEVATION_OFFSETS].capacity() / 4][];
+            for (int row = 0; row < edgeCount; row++) {
+                StreetVertex from = (StreetVertex) vertices.get(columns.getInt(FROM, row));
+                StreetVertex to = (StreetVertex) vertices.get(columns.getInt(TO, row));
+                if (columns.getByte(KIND, row) == KIND_STREET_WITH_ELEVATION) {
+                    new StreetWithElevationEdge(from, to, columns, row);
+                } else {
+                    new StreetEdge(from, to, columns, row);
+                }
+            }
+            return edgeCount;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /** Copy the variable length data gathered while writing edges into their columns. */
+    private void finishVariableLengthColumns() {
+        geometryOffsets.add(geometryValues.size());
+        elevationOffsets.add(elevationValues.size());
+        columns[GEOMETRY_OFFSETS] = toBuffer(geometryOffsets);
+        columns[GEOMETRY_VALUES] = toBuffer(geometryValues);
+        columns[ELEVATION_OFFSETS] = toBuffer(elevationOffsets);
+        columns[ELEVATION_VALUES] = ByteBuffer.wrap(elevationValues.toByteArray());
+    }
+
+    private static ByteBuffer toBuffer(TIntArrayList values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.size() * 4);
+        buffer.asIntBuffer().put(values.toArray());
+        return buffer;
+    }
+
+    /* Accessors used by the street edge classes to store and restore their fields. */
+
+    byte getByte(int column, int row) {
+        return columns[column].get(row);
+    }
+
+    int getInt(int column, int row) {
+        return columns[column].getInt(row * 4);
+    }
+
+    long getLong(int column, int row) {
+        return columns[column].getLong(row * 8);
+    }
+
+    float getFloat(int column, int row) {
+        return columns[column].getFloat(row * 4);
+    }
+
+    void putByte(int column, int row, byte value) {
+        columns[column].put(row, value);
+    }
+
+    void putInt(int column, int row, int value) {
+        columns[column].putInt(row * 4, value);
+    }
+
+    void putLong(int column, int row, long value) {
+        columns[column].putLong(row * 8, value);
+    }
+
+    void putFloat(int column, int row, float value) {
+        columns[column].putFloat(row * 4, value);
+    }
+
+    I18NString getName(int row) {
+        int id = getInt(NAME, row);
+        return id == NONE ? null : names.get(id);
+    }
+
+    void putName(int row, I18NString name) {
+        int id = NONE;
+        if (name != null) {
+            Integer existing = nameIds.get(name);
+            if (existing == null) {
+                existing = names.size();
+                nameIds.put(name, existing);
+                names.add(name);
+            }
+            id = existing;
+        }
+        putInt(NAME, row, id);
+    }
+
+    int[] getGeometry(int row) {
+        int id = getInt(GEOMETRY, row);
+        if (id == NONE) {
+            return null;
+        }
+        if (geometries[id] == null) {
+            int start = getInt(GEOMETRY_OFFSETS, id);
+            int[] geometry = new int[getInt(GEOMETRY_OFFSETS, id + 1) - start];
+            for (int i = 0; i < geometry.length; i++) {
+                geometry[i] = getInt(GEOMETRY_VALUES, start + i);
+            }
+            geometries[id] = geometry;
+        }
+        return geometries[id];
+    }
+
+    void putGeometry(int row, int[] geometry) {
+        int id = NONE;
+        if (geometry != null) {
+            Integer existing = geometryIds.get(geometry);
+            if (existing == null) {
+                existing = geometryOffsets.size();
+                geometryIds.put(geometry, existing);
+                geometryOffsets.add(geometryValues.size());
+                geometryValues.add(geometry);
+            }
+            id = existing;
+        }
+        putInt(GEOMETRY, row, id);
+    }
+
+    byte[] getElevation(int row) {
+        int id = getInt(ELEVATION, row);
+        if (id == NONE) {
+            return null;
+        }
+        if (elevations[id] == null) {
+            int start = getInt(ELEVATION_OFFSETS, id);
+            byte[] profile = new byte[getInt(ELEVATION_OFFSETS, id + 1) - start];
+            for (int i = 0; i < profile.length; i++) {
+                profile[i] = getByte(ELEVATION_VALUES, start + i);
+            }
+            elevations[id] = profile;
+        }
+        return elevations[id];
+    }
+
+    void putElevation(int row, byte[] profile) {
+        int id = NONE;
+        if (profile != null) {
+            Integer existing = elevationIds.get(profile);
+            if (existing == null) {
+                existing = elevationOffsets.size();
+                elevationIds.put(profile, existing);
+                elevationOffsets.add(elevationValues.size());
+                elevationValues.write(profile, 0, profile.length);
+            }
+            id = existing;
+        }
+        putInt(ELEVATION, row, id);
+    }
+
+    /**
+     * The part of a graph with columnar street edges that is still Java-serialized in Graph.obj, in place of the list
+     * of all edges. Since only some edges are serialized, the vertices must be serialized explicitly.
+     */
+    public static class Manifest implements Serializable {
+
+        private static final long serialVersionUID = MavenVersion.VERSION.getUID();
+
+        /** Matches the id in the header of the street edge file. */
+        public final long bundleId;
+
+        public final ArrayList<Vertex> vertices;
+
+        /** All edges that are not stored in columns. */
+        public final ArrayList<Edge> otherEdges;
+
+        public Manifest(long bundleId, ArrayList<Vertex> vertices, ArrayList<Edge> otherEdges) {
+            this.bundleId = bundleId;
+            this.vertices = vertices;
+            this.otherEdges = otherEdges;
+        }
+    }
+
+    /**
+     * An ObjectOutputStream that records which storable street edges it serializes. Street edges that are reached
+     * while serializing the rest of the graph (the keys of turn restrictions or alert patches for example) must stay in
+     * the object stream, so that they are still the same objects as the edges attached to the vertices after loading.
+     */
+    public static class TrackingObjectOutputStream extends ObjectOutputStream {
+
+        private final Set<StreetEdge> serializedEdges =
+                Collections.newSetFromMap(new IdentityHashMap<StreetEdge, Boolean>());
+
+        public TrackingObjectOutputStream(OutputStream out) throws IOException {
+            super(out);
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object obj) {
+            if (canStore(obj)) {
+                serializedEdges.add((StreetEdge) obj);
+            }
+            return obj;
+        }
+
+        public Set<StreetEdge> getSerializedEdges() {
+            return serializedEdges;
+        }
+    }
+
+}
@@ -0,0 +1,165 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.edgetype;
+
+import org.opentripplanner.util.I18NString;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Makes street edges with equal names, geometries and elevation profiles share a single instance of each, the way
+ * String.intern() does for strings. Beyond their fixed-size fields, these objects are most of the memory used by the
+ * street network: the OSM loader creates a name for every way and a geometry array for every edge, even though a
+ * street keeps the same name over many ways, and many short edges have exactly the same shape relative to their
+ * endpoints. None of these objects are modified once created, so sharing them is invisible to the rest of OTP.
+ *
+ * An interner should be used for all the edges of a graph, then dropped.
+ */
+public class StreetEdgeInterner {
+
+    /** Rough size of an object header plus array length, used to report the memory saved. */
+    private static final int ARRAY_OVERHEAD = 16;
+
+    private final Map<I18NString, I18NString> names = new HashMap<>();
+
+    private final Map<ArrayKey, int[]> geometries = new HashMap<>();
+
+    private final Map<ArrayKey, byte[]> elevationProfiles = new HashMap<>();
+
+    private int edgeCount;
+
+    private int sharedNameCount;
+
+    private int sharedGeometryCount;
+
+    private int sharedProfileCount;
+
+    private long savedBytes;
+
+    /** Replace the name, geometry and elevation profile of the given edge with shared instances. */
+    public void intern(StreetEdge edge) {
+        edge.intern(this);
+        edgeCount++;
+    }
+
+    I18NString intern(I18NString name) {
+        if (name == null) {
+            return null;
+        }
+        I18NString existing = names.putIfAbsent(name, name);
+        if (existing == null) {
+            return name;
+        }
+        if (existing != name) {
+            sharedNameCount++;
+        }
+        return existing;
+    }
+
+    int[] intern(int[] geometry) {
+        if (geometry == null || geometry.length == 0) {
+            // Straight lines already share a single empty array.
+            return geometry;
+        }
+        int[] existing = geometries.putIfAbsent(new ArrayKey(geometry, Arrays.hashCode(geometry)), geometry);
+        if (existing == null) {
+            return geometry;
+        }
+        if (existing != geometry) {
+            sharedGeometryCount++;
+            savedBytes += ARRAY_OVERHEAD + geometry.length * 4;
+        }
+        return existing;
+    }
+
+    byte[] intern(byte[] profile) {
+        if (profile == null) {
+            return null;
+        }
+        byte[] existing = elevationProfiles.putIfAbsent(new ArrayKey(profile, Arrays.hashCode(profile)), profile);
+        if (existing == null) {
+            return profile;
+        }
+        if (existing != profile) {
+            sharedProfileCount++;
+            savedBytes += ARRAY_OVERHEAD + profile.length;
+        }
+        return existing;
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    public int getDistinctNameCount() {
+        return names.size();
+    }
+
+    public int getSharedNameCount() {
+        return sharedNameCount;
+    }
+
+    public int getDistinctGeometryCount() {
+        return geometries.size();
+    }
+
+    public int getSharedGeometryCount() {
+        return sharedGeometryCount;
+    }
+
+    public int getSharedProfileCount() {
+        return sharedProfileCount;
+    }
+
+    /** @return an estimate of the memory freed by sharing geometries and elevation profiles, not counting names. */
+    public long getSavedBytes() {
+        return savedBytes;
+    }
+
+    /** Wraps an int[] or byte[] to compare it by contents in a hash map. */
+    private static final class ArrayKey {
+
+        final Object array;
+
+        final int hash;
+
+        ArrayKey(Object array, int hash) {
+            this.array = array;
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ArrayKey)) {
+                return false;
+            }
+            Object other = ((ArrayKey) o).array;
+            if (array instanceof int[] && other instanceof int[]) {
+                return Arrays.equals((int[]) array, (int[]) other);
+            }
+            if (array instanceof byte[] && other instanceof byte[]) {
+                return Arrays.equals((byte[]) array, (byte[]) other);
+            }
+            return false;
+        }
+    }
+
+}
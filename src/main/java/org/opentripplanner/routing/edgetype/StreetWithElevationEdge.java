@@ -52,6 +52,32 @@ public class StreetWithElevationEdge extends StreetEdge {
         super(v1, v2, geometry, new NonLocalizedString(name), length, permission, back);
     }
 
+    StreetWithElevationEdge(StreetVertex v1, StreetVertex v2, StreetEdgeColumns columns, int row) {
+        super(v1, v2, columns, row);
+        packedElevationProfile = columns.getElevation(row);
+        slopeSpeedFactor = columns.getFloat(StreetEdgeColumns.SLOPE_SPEED_FACTOR, row);
+        slopeWorkFactor = columns.getFloat(StreetEdgeColumns.SLOPE_WORK_FACTOR, row);
+        maxSlope = columns.getFloat(StreetEdgeColumns.MAX_SLOPE, row);
+        flattened = columns.getByte(StreetEdgeColumns.FLATTENED, row) != 0;
+    }
+
+    @Override
+    void writeColumns(StreetEdgeColumns columns, int row) {
+        super.writeColumns(columns, row);
+        columns.putByte(StreetEdgeColumns.KIND, row, StreetEdgeColumns.KIND_STREET_WITH_ELEVATION);
+        columns.putElevation(row, packedElevationProfile);
+        columns.putFloat(StreetEdgeColumns.SLOPE_SPEED_FACTOR, row, slopeSpeedFactor);
+        columns.putFloat(StreetEdgeColumns.SLOPE_WORK_FACTOR, row, slopeWorkFactor);
+        columns.putFloat(StreetEdgeColumns.MAX_SLOPE, row, maxSlope);
+        columns.putByte(StreetEdgeColumns.FLATTENED, row, (byte) (flattened ? 1 : 0));
+    }
+
+    @Override
+    void intern(StreetEdgeInterner interner) {
+        super.intern(interner);
+        packedElevationProfile = interner.intern(packedElevationProfile);
+    }
+
     @Override
     public StreetWithElevationEdge clone() {
         return (StreetWithElevationEdge) super.clone();
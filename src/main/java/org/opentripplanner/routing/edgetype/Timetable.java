@@ -87,6 +87,24 @@ public class Timetable implements Serializable {
      * Helps determine whether a particular pattern is worth searching for departures at a given time. 
      */
     private transient int minTime, maxTime;
+
+    /**
+     * Timetables with fewer scheduled trips than this are not indexed, a linear scan is just as fast for them.
+     */
+    private static final int MIN_TRIPS_FOR_INDEX = 16;
+
+    /**
+     * For each stop, the indexes into tripTimes sorted by departure time at that stop (ties broken by trip index).
+     * Consecutive stops where trips do not overtake one another share the same array. This is built by finish()
+     * and is null when the timetable is too small to be worth indexing or has been modified since it was finished.
+     */
+    private transient int[][] departureOrder;
+
+    /**
+     * For each stop, the indexes into tripTimes sorted by arrival time at that stop. Among trips arriving at the same
+     * time, higher trip indexes come first, so that a backward scan sees them in the same order as a linear scan.
+     */
+    private transient int[][] arrivalOrder;
     
     /** Construct an empty Timetable. */
     public Timetable(TripPattern pattern) {
@@ -146,37 +164,45 @@ public class Timetable implements Serializable {
         }
         TripTimes bestTrip = null;
         Stop currentStop = pattern.getStop(stopIndex);
-        // Linear search through the timetable looking for the best departure.
-        // We no longer use a binary search on Timetables because:
-        // 1. we allow combining trips from different service IDs on the same tripPattern.
-        // 2. We mix frequency-based and one-off TripTimes together on tripPatterns.
-        // 3. Stoptimes may change with realtime updates, and we cannot count on them being sorted.
-        //    The complexity of keeping sorted indexes up to date does not appear to be worth the
-        //    apparently minor speed improvement.
         int bestTime = boarding ? Integer.MAX_VALUE : Integer.MIN_VALUE;
-        // Hoping JVM JIT will distribute the loop over the if clauses as needed.
-        // We could invert this and skip some service days based on schedule overlap as in RRRR.
-        for (TripTimes tt : tripTimes) {
-            if (tt.isCanceled()) continue;
-            if ( ! serviceDay.serviceRunning(tt.serviceCode)) continue; // TODO merge into call on next line
-            if ( ! tt.tripAcceptable(s0, stopIndex)) continue;
-            int adjustedTime = adjustTimeForTransfer(s0, currentStop, tt.trip, boarding, serviceDay, time);
-            if (adjustedTime == -1) continue;
-            if (boarding) {
-                int depTime = tt.getDepartureTime(stopIndex);
-                if (depTime < 0) continue; // negative values were previously used for canceled trips/passed stops/skipped stops, but
-                                           // now its not sure if this check should be still in place because there is a boolean field
-                                           // for canceled trips
-                if (depTime >= adjustedTime && depTime < bestTime) {
-                    bestTrip = tt;
-                    bestTime = depTime;
-                }
-            } else {
-                int arvTime = tt.getArrivalTime(stopIndex);
-                if (arvTime < 0) continue;
-                if (arvTime <= adjustedTime && arvTime > bestTime) {
-                    bestTrip = tt;
-                    bestTime = arvTime;
+        int[][] tripOrder = boarding ? departureOrder : arrivalOrder;
+        if (tripOrder != null) {
+            // The timetable is indexed: binary search for the first trip departing at or after (arriving at or before)
+            // the search time, then scan forward (backward) until a trip passes all the other checks.
+            // Transfer rules can only push the boarding time later (the alighting time earlier), so no trip
+            // skipped by the binary search could have been acceptable.
+            bestTrip = boarding ? firstIndexedDeparture(s0, serviceDay, stopIndex, currentStop, time)
+                                : lastIndexedArrival(s0, serviceDay, stopIndex, currentStop, time);
+            if (bestTrip != null) {
+                bestTime = boarding ? bestTrip.getDepartureTime(stopIndex) : bestTrip.getArrivalTime(stopIndex);
+            }
+        } else {
+            // Linear search through the timetable looking for the best departure. This is used for small timetables
+            // and for timetables that have been modified by realtime updates but not yet finished.
+            // Hoping JVM JIT will distribute the loop over the if clauses as needed.
+            // We could invert this and skip some service days based on schedule overlap as in RRRR.
+            for (TripTimes tt : tripTimes) {
+                if (tt.isCanceled()) continue;
+                if ( ! serviceDay.serviceRunning(tt.serviceCode)) continue; // TODO merge into call on next line
+                if ( ! tt.tripAcceptable(s0, stopIndex)) continue;
+                int adjustedTime = adjustTimeForTransfer(s0, currentStop, tt.trip, boarding, serviceDay, time);
+                if (adjustedTime == -1) continue;
+                if (boarding) {
+                    int depTime = tt.getDepartureTime(stopIndex);
+                    if (depTime < 0) continue; // negative values were previously used for canceled trips/passed stops/skipped stops, but
+                                               // now its not sure if this check should be still in place because there is a boolean field
+                                               // for canceled trips
+                    if (depTime >= adjustedTime && depTime < bestTime) {
+                        bestTrip = tt;
+                        bestTime = depTime;
+                    }
+                } else {
+                    int arvTime = tt.getArrivalTime(stopIndex);
+                    if (arvTime < 0) continue;
+                    if (arvTime <= adjustedTime && arvTime > bestTime) {
+                        bestTrip = tt;
+                        bestTime = arvTime;
+                    }
                 }
             }
         }
@@ -215,6 +241,68 @@ public class Timetable implements Serializable {
         return bestTrip;
     }
 
+    /**
+     * @return the trip with the earliest departure at or after the given time at the given stop that can be boarded,
+     * according to the departure time index.
+     */
+    private TripTimes firstIndexedDeparture(State s0, ServiceDay serviceDay, int stopIndex, Stop currentStop, int time) {
+        int[] order = departureOrder[stopIndex];
+        // Binary search for the first departure at or after the search time.
+        int low = 0;
+        int high = order.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (tripTimes.get(order[mid]).getDepartureTime(stopIndex) < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < order.length; i++) {
+            TripTimes tt = tripTimes.get(order[i]);
+            if (tt.isCanceled()) continue;
+            if ( ! serviceDay.serviceRunning(tt.serviceCode)) continue;
+            if ( ! tt.tripAcceptable(s0, stopIndex)) continue;
+            int adjustedTime = adjustTimeForTransfer(s0, currentStop, tt.trip, true, serviceDay, time);
+            if (adjustedTime == -1) continue;
+            int depTime = tt.getDepartureTime(stopIndex);
+            if (depTime < 0) continue;
+            if (depTime >= adjustedTime) return tt;
+        }
+        return null;
+    }
+
+    /**
+     * @return the trip with the latest arrival at or before the given time at the given stop that can be alighted
+     * from, according to the arrival time index.
+     */
+    private TripTimes lastIndexedArrival(State s0, ServiceDay serviceDay, int stopIndex, Stop currentStop, int time) {
+        int[] order = arrivalOrder[stopIndex];
+        // Binary search for the first arrival after the search time.
+        int low = 0;
+        int high = order.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (tripTimes.get(order[mid]).getArrivalTime(stopIndex) <= time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low - 1; i >= 0; i--) {
+            TripTimes tt = tripTimes.get(order[i]);
+            if (tt.isCanceled()) continue;
+            if ( ! serviceDay.serviceRunning(tt.serviceCode)) continue;
+            if ( ! tt.tripAcceptable(s0, stopIndex)) continue;
+            int adjustedTime = adjustTimeForTransfer(s0, currentStop, tt.trip, false, serviceDay, time);
+            if (adjustedTime == -1) continue;
+            int arvTime = tt.getArrivalTime(stopIndex);
+            if (arvTime < 0) return null; // all remaining arrivals are negative as well
+            if (arvTime <= adjustedTime) return tt;
+        }
+        return null;
+    }
+
     /**
      * Check transfer table rules. Given the last alight time from the State,
      * return the boarding time t0 adjusted for this particular trip's minimum transfer time,
@@ -295,6 +383,54 @@ public class Timetable implements Serializable {
             minTime = Math.min(minTime, freq.getMinDeparture());
             maxTime = Math.max(maxTime, freq.getMaxArrival());
         }
+        indexTrips(nStops);
+    }
+
+    /**
+     * Build the per-stop departure and arrival orderings used to binary search for trips in getNextTrip.
+     * Each ordering is built by sorting packed (time, trip index) longs, which avoids boxing and comparators.
+     */
+    private void indexTrips(int nStops) {
+        departureOrder = null;
+        arrivalOrder = null;
+        int nTrips = tripTimes.size();
+        if (nTrips < MIN_TRIPS_FOR_INDEX) return;
+        int[][] departures = new int[nStops][];
+        int[][] arrivals = new int[nStops][];
+        long[] keys = new long[nTrips];
+        for (int s = 0; s < nStops; s++) {
+            for (int t = 0; t < nTrips; t++) {
+                keys[t] = ((long) tripTimes.get(t).getDepartureTime(s) << 32) | t;
+            }
+            departures[s] = sortedTripIndexes(keys, false, s > 0 ? departures[s - 1] : null);
+            for (int t = 0; t < nTrips; t++) {
+                // Store the complement of the trip index, so that higher trip indexes sort first among equal times.
+                keys[t] = ((long) tripTimes.get(t).getArrivalTime(s) << 32) | (Integer.MAX_VALUE - t);
+            }
+            arrivals[s] = sortedTripIndexes(keys, true, s > 0 ? arrivals[s - 1] : departures[s]);
+        }
+        departureOrder = departures;
+        arrivalOrder = arrivals;
+    }
+
+    /**
+     * Sort the packed keys and extract the trip indexes. If the resulting order is the same as the previous one,
+     * the previous array is returned so that stops where no trips overtake one another share the same array.
+     */
+    private static int[] sortedTripIndexes(long[] keys, boolean complemented, int[] previous) {
+        Arrays.sort(keys);
+        int[] order = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            int low = (int) keys[i];
+            order[i] = complemented ? Integer.MAX_VALUE - low : low;
+        }
+        return Arrays.equals(order, previous) ? previous : order;
+    }
+
+    /** Drop the trip time index because the trips have changed. It will be rebuilt when the timetable is finished. */
+    private void invalidateTripIndex() {
+        departureOrder = null;
+        arrivalOrder = null;
     }
 
     /** @return the index of TripTimes for this trip ID in this particular Timetable */
@@ -338,6 +474,7 @@ public class Timetable implements Serializable {
      * @return old trip times of trip
      */
     public TripTimes setTripTimes(int tripIndex, TripTimes tt) {
+        invalidateTripIndex();
         return tripTimes.set(tripIndex, tt);
     }
 
@@ -518,6 +655,7 @@ public class Timetable implements Serializable {
      * Here we don't know if it's a scheduled trip or a realtime-added trip.
      */
     public void addTripTimes(TripTimes tt) {
+        invalidateTripIndex();
         tripTimes.add(tt);
     }
 
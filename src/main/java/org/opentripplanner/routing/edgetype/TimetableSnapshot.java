@@ -14,9 +14,9 @@
 package org.opentripplanner.routing.edgetype;
 
 import java.util.*;
-import java.util.Map.Entry;
 
 import org.onebusaway.gtfs.model.calendar.ServiceDate;
+import org.opentripplanner.common.PersistentHashMap;
 import org.opentripplanner.routing.trippattern.TripTimes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -96,12 +96,9 @@ public class TimetableSnapshot {
 
     private static final Logger LOG = LoggerFactory.getLogger(TimetableSnapshot.class);
     
-    // Use HashMap not Map so we can clone.
-    // if this turns out to be slow/spacious we can use an array with integer pattern indexes
-    // The SortedSet members are copy-on-write
-    // FIXME: this could be made into a flat hashtable with compound keys.
-    private HashMap<TripPattern, SortedSet<Timetable>> timetables =
-            new HashMap<TripPattern, SortedSet<Timetable>>();
+    // A persistent map, so that committed snapshots can share it with the buffer instead of copying it: each
+    // update replaces only the path to the changed pattern. The SortedSet members are copy-on-write.
+    private PersistentHashMap<TripPattern, SortedSet<Timetable>> timetables = PersistentHashMap.empty();
 
     /**
      * <p>
@@ -110,10 +107,10 @@ public class TimetableSnapshot {
      * with trip times of a trip that didn't exist yet in the trip pattern.
      * </p>
      * <p>
-     * This is a HashMap and not a Map so the clone function is available.
+     * This is a persistent map so that it can be shared with committed snapshots without copying.
      * </p>
      */
-    private HashMap<TripIdAndServiceDate, TripPattern> lastAddedTripPattern = new HashMap<>();
+    private PersistentHashMap<TripIdAndServiceDate, TripPattern> lastAddedTripPattern = PersistentHashMap.empty();
     
     /**
      * Boolean value indicating that timetable snapshot is read only if true. Once it is true, it shouldn't
@@ -204,7 +201,7 @@ public class TimetableSnapshot {
             if(old.serviceDate != null)
                 sortedTimetables.remove(old);
             sortedTimetables.add(tt);
-            timetables.put(pattern, sortedTimetables);
+            timetables = timetables.plus(pattern, sortedTimetables);
             dirtyTimetables.add(tt);
             dirty = true;
         }
@@ -218,7 +215,7 @@ public class TimetableSnapshot {
             // Remember this pattern for the added trip id and service date
             String tripId = updatedTripTimes.trip.getId().getId();
             TripIdAndServiceDate tripIdAndServiceDate = new TripIdAndServiceDate(feedId, tripId, serviceDate);
-            lastAddedTripPattern.put(tripIdAndServiceDate, pattern);
+            lastAddedTripPattern = lastAddedTripPattern.plus(tripIdAndServiceDate, pattern);
         } else {
             // Set updated trip times of trip
             tt.setTripTimes(tripIndex, updatedTripTimes);
@@ -230,20 +227,18 @@ public class TimetableSnapshot {
     }
 
     /**
-     * This produces a small delay of typically around 50ms, which is almost entirely due to
-     * the indexing step. Cloning the map is much faster (2ms).
-     * It is perhaps better to index timetables as they are changed to avoid experiencing all
-     * this lag at once, but we want to avoid re-indexing when receiving multiple updates for
-     * the same timetable in rapid succession. This compromise is expressed by the
-     * maxSnapshotFrequency property of StoptimeUpdater. The indexing could be made much more
-     * efficient as well.
+     * The cost of a commit is proportional to the number of timetables changed since the last
+     * one: only those timetables are indexed, and the maps are persistent so they are shared
+     * with the returned snapshot rather than copied.
+     * We still avoid re-indexing when receiving multiple updates for the same timetable in rapid
+     * succession. This compromise is expressed by the maxSnapshotFrequency property of
+     * StoptimeUpdater.
      * @return an immutable copy of this TimetableSnapshot with all updates applied
      */
     public TimetableSnapshot commit() {
         return commit(false);
     }
 
-    @SuppressWarnings("unchecked")
     public TimetableSnapshot commit(boolean force) {
         if (readOnly) {
             throw new ConcurrentModificationException("This TimetableSnapshot is read-only.");
@@ -254,9 +249,8 @@ public class TimetableSnapshot {
         for (Timetable tt : dirtyTimetables) {
             tt.finish(); // summarize, index, etc. the new timetables
         }
-        ret.timetables = (HashMap<TripPattern, SortedSet<Timetable>>) this.timetables.clone();
-        ret.lastAddedTripPattern = (HashMap<TripIdAndServiceDate, TripPattern>)
-                this.lastAddedTripPattern.clone();
+        ret.timetables = this.timetables;
+        ret.lastAddedTripPattern = this.lastAddedTripPattern;
         this.dirtyTimetables.clear();
         this.dirty = false;
 
@@ -290,7 +284,13 @@ public class TimetableSnapshot {
      * @return true if the timetable changed as a result of the call
      */
     protected boolean clearTimetable(String feedId) {
-        return timetables.keySet().removeIf(tripPattern -> feedId.equals(tripPattern.getFeedId()));
+        PersistentHashMap<TripPattern, SortedSet<Timetable>> original = timetables;
+        original.forEach((tripPattern, sortedTimetables) -> {
+            if (feedId.equals(tripPattern.getFeedId())) {
+                timetables = timetables.minus(tripPattern);
+            }
+        });
+        return timetables != original;
     }
 
     /**
@@ -300,7 +300,13 @@ public class TimetableSnapshot {
      * @return true if the lastAddedTripPattern changed as a result of the call
      */
     protected boolean clearLastAddedTripPattern(String feedId) {
-        return lastAddedTripPattern.keySet().removeIf(lastAddedTripPattern -> feedId.equals(lastAddedTripPattern.getFeedId()));
+        PersistentHashMap<TripIdAndServiceDate, TripPattern> original = lastAddedTripPattern;
+        original.forEach((tripIdAndServiceDate, pattern) -> {
+            if (feedId.equals(tripIdAndServiceDate.getFeedId())) {
+                lastAddedTripPattern = lastAddedTripPattern.minus(tripIdAndServiceDate);
+            }
+        });
+        return lastAddedTripPattern != original;
     }
 
     /**
@@ -311,38 +317,32 @@ public class TimetableSnapshot {
             throw new ConcurrentModificationException("This TimetableSnapshot is read-only.");
         }
 
-        boolean modified = false;
-        for (Iterator<TripPattern> it = timetables.keySet().iterator(); it.hasNext();){
-            TripPattern pattern = it.next();
-            SortedSet<Timetable> sortedTimetables = timetables.get(pattern);
+        PersistentHashMap<TripPattern, SortedSet<Timetable>> originalTimetables = timetables;
+        originalTimetables.forEach((pattern, sortedTimetables) -> {
             SortedSet<Timetable> toKeepTimetables =
                     new TreeSet<Timetable>(new SortedTimetableComparator());
             for(Timetable timetable : sortedTimetables) {
                 if(serviceDate.compareTo(timetable.serviceDate) < 0) {
                     toKeepTimetables.add(timetable);
-                } else {
-                    modified = true;
                 }
             }
 
             if(toKeepTimetables.isEmpty()) {
-                it.remove();
-            } else {
-                timetables.put(pattern, toKeepTimetables);
+                timetables = timetables.minus(pattern);
+            } else if (toKeepTimetables.size() < sortedTimetables.size()) {
+                timetables = timetables.plus(pattern, toKeepTimetables);
             }
-        }
+        });
         
         // Also remove last added trip pattern for days that are purged
-        for (Iterator<Entry<TripIdAndServiceDate, TripPattern>> iterator = lastAddedTripPattern
-                .entrySet().iterator(); iterator.hasNext();) {
-            TripIdAndServiceDate tripIdAndServiceDate = iterator.next().getKey();
+        PersistentHashMap<TripIdAndServiceDate, TripPattern> originalLastAdded = lastAddedTripPattern;
+        originalLastAdded.forEach((tripIdAndServiceDate, pattern) -> {
             if (serviceDate.compareTo(tripIdAndServiceDate.getServiceDate()) >= 0) {
-                iterator.remove();
-                modified = true;
+                lastAddedTripPattern = lastAddedTripPattern.minus(tripIdAndServiceDate);
             }
-        }
+        });
 
-        return modified;
+        return timetables != originalTimetables || lastAddedTripPattern != originalLastAdded;
     }
 
     public boolean isDirty() {
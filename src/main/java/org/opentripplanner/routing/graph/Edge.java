@@ -51,6 +51,14 @@ public abstract class Edge implements Serializable {
     protected Vertex tov;
 
     protected Edge(Vertex v1, Vertex v2) {
+        this(v1, v2, -1);
+    }
+
+    /**
+     * Create an edge with the given id, for edges restored from a stored graph by other means than Java
+     * serialization. A negative id means a new one is taken from the id generator.
+     */
+    protected Edge(Vertex v1, Vertex v2, int id) {
         if (v1 == null || v2 == null) {
             String err = String.format("%s constructed with null vertex : %s %s", this.getClass(),
                     v1, v2);
@@ -59,15 +67,20 @@ public abstract class Edge implements Serializable {
 
         this.fromv = v1;
         this.tov = v2;
-        this.id = idGenerator.getId(this);
+        this.id = id < 0 ? idGenerator.getId(this) : id;
 
         // if (! vertexTypesValid()) {
         // throw new IllegalStateException(this.getClass() +
         // " constructed with bad vertex types");
         // }
 
-        fromv.addOutgoing(this);
-        tov.addIncoming(this);
+        TemporaryEdgeOverlay overlay = TemporaryEdgeOverlay.current();
+        if (overlay != null && overlay.records(this)) {
+            overlay.attach(this);
+        } else {
+            fromv.addOutgoing(this);
+            tov.addIncoming(this);
+        }
     }
 
     public Vertex getFromVertex() {
@@ -45,6 +45,7 @@ import org.opentripplanner.routing.core.TransferTable;
 import org.opentripplanner.routing.core.TraverseMode;
 import org.opentripplanner.routing.edgetype.EdgeWithCleanup;
 import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetEdgeColumns;
 import org.opentripplanner.routing.edgetype.TripPattern;
 import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
 import org.opentripplanner.routing.services.StreetVertexIndexFactory;
@@ -58,13 +59,17 @@ import org.opentripplanner.traffic.StreetSpeedSnapshotSource;
 import org.opentripplanner.updater.GraphUpdaterConfigurator;
 import org.opentripplanner.updater.GraphUpdaterManager;
 import org.opentripplanner.updater.stoptime.TimetableSnapshotSource;
+import org.opentripplanner.util.I18NString;
 import org.opentripplanner.util.WorldEnvelope;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.prefs.Preferences;
 /**
  * A graph is really just one or more indexes into a set of vertexes. It used to keep edgelists for each vertex, but those are in the vertex now.
@@ -109,6 +114,9 @@ public class Graph implements Serializable {
 
     private transient Map<Integer, Edge> edgeById;
 
+    /* One more than the largest vertex index in this graph when it was last indexed, 0 if not computed yet. */
+    private transient volatile int vertexIndexLimit;
+
     public transient StreetVertexIndexService streetIndex;
 
     public transient GraphIndex index;
@@ -202,6 +210,9 @@ public class Graph implements Serializable {
 
     /** A speed source for traffic data */
     public transient StreetSpeedSnapshotSource streetSpeedSource;
+
+    /** Real-time entities attached to the street network outside the graph, such as bike rental stations. */
+    private transient volatile RealtimeStreetOverlay realtimeStreetOverlay = RealtimeStreetOverlay.EMPTY;
     
     /** How should we cluster stops? */
     public String stopClusterMode = "proximity";
@@ -463,6 +474,32 @@ public class Graph implements Serializable {
         return (v != null) && vertices.get(v.getLabel()) == v;
     }
 
+    /** @return the current snapshot of real-time entities attached to the street network. */
+    public RealtimeStreetOverlay getRealtimeStreetOverlay() {
+        // the field is transient, and so null after deserialization until the first update
+        RealtimeStreetOverlay overlay = realtimeStreetOverlay;
+        return overlay == null ? RealtimeStreetOverlay.EMPTY : overlay;
+    }
+
+    /**
+     * Replace all the street attachments provided by the given source (usually an updater) in one step. Requests
+     * started before this call keep using the previous snapshot.
+     */
+    public synchronized void setStreetAttachments(Object source, Collection<StreetAttachment> attachments) {
+        realtimeStreetOverlay = getRealtimeStreetOverlay().withAttachments(source, attachments);
+    }
+
+    /**
+     * Replace all the street attachments provided by the given source, and the states of the entities they attach,
+     * in one step.
+     *
+     * @see RealtimeStreetOverlay#getState(Vertex)
+     */
+    public synchronized void setStreetAttachments(Object source, Collection<StreetAttachment> attachments,
+            Map<Vertex, ?> states) {
+        realtimeStreetOverlay = getRealtimeStreetOverlay().withAttachments(source, attachments, states);
+    }
+
     @SuppressWarnings("unchecked")
     public <T> T putService(Class<T> serviceType, T service) {
         return (T) _services.put(serviceType, service);
@@ -588,16 +625,6 @@ public class Graph implements Serializable {
         return ne;
     }
 
-    /**
-     * Add a collection of edges from the edgesById index.
-     * @param es
-     */
-    private void addEdgesToIndex(Collection<Edge> es) {
-        for (Edge e : es) {
-            this.edgeById.put(e.getId(), e);
-        }
-    }
-    
     /**
      * Rebuilds any indices on the basis of current vertex and edge IDs.
      * 
@@ -609,23 +636,57 @@ public class Graph implements Serializable {
      * before the Vertex has any edges, so updating indices on addVertex is insufficient.
      */
     public void rebuildVertexAndEdgeIndices() {
-        this.vertexById = new HashMap<Integer, Vertex>(Vertex.getMaxIndex());
-        Collection<Vertex> vertices = getVertices();
-        for (Vertex v : vertices) {
+        this.vertexById = buildVertexById();
+        this.edgeById = buildEdgeById();
+    }
+
+    /** Create map from vertex ids to vertices, without publishing it on the graph. */
+    private Map<Integer, Vertex> buildVertexById() {
+        Map<Integer, Vertex> vertexById = new HashMap<Integer, Vertex>(vertices.size());
+        for (Vertex v : getVertices()) {
             vertexById.put(v.getIndex(), v);
         }
+        return vertexById;
+    }
 
-        // Create map from edge ids to edges.
-        this.edgeById = new HashMap<Integer, Edge>();
-        for (Vertex v : vertices) {
+    /** Create map from edge ids to edges, without publishing it on the graph. */
+    private Map<Integer, Edge> buildEdgeById() {
+        Map<Integer, Edge> edgeById = new HashMap<Integer, Edge>();
+        for (Vertex v : getVertices()) {
             // TODO(flamholz): this check seems superfluous.
             if (v == null) {
                 continue;
             }
 
             // Assumes that all the edges appear in at least one outgoing edge list.
-            addEdgesToIndex(v.getOutgoing());
+            for (Edge e : v.getOutgoing()) {
+                edgeById.put(e.getId(), e);
+            }
         }
+        return edgeById;
+    }
+
+    /**
+     * One more than the largest index of the vertices of this graph, as of the last time the graph was indexed.
+     * Vertices created afterwards, like the temporary vertices of requests, have larger indices. Per-search arrays
+     * indexed on vertex index should be sized with this and keep those vertices aside, rather than be sized with
+     * Vertex.getMaxIndex(), which keeps growing for the life of the server.
+     */
+    public int getVertexIndexLimit() {
+        int limit = vertexIndexLimit;
+        if (limit == 0) {
+            limit = computeVertexIndexLimit();
+            vertexIndexLimit = limit;
+        }
+        return limit;
+    }
+
+    private int computeVertexIndexLimit() {
+        int limit = 0;
+        for (Vertex v : getVertices()) {
+            limit = Math.max(limit, v.getIndex() + 1);
+        }
+        return limit;
     }
 
     private void readObject(ObjectInputStream inputStream) throws ClassNotFoundException,
@@ -674,7 +735,8 @@ public class Graph implements Serializable {
         LOG.info("Reading graph " + file.getAbsolutePath() + " ...");
         // cannot use getClassLoader() in static context
         ObjectInputStream in = new ObjectInputStream(new FileInputStream(file));
-        return load(in, level);
+        File streetFile = new File(file.getParentFile(), StreetEdgeColumns.FILENAME);
+        return load(in, level, new DefaultStreetVertexIndexFactory(), streetFile.exists() ? streetFile : null);
     }
 
     public static Graph load(ClassLoader classLoader, File file, LoadLevel level)
@@ -682,7 +744,8 @@ public class Graph implements Serializable {
         LOG.info("Reading graph " + file.getAbsolutePath() + " with alternate classloader ...");
         ObjectInputStream in = new GraphObjectInputStream(new BufferedInputStream(
                 new FileInputStream(file)), classLoader);
-        return load(in, level);
+        File streetFile = new File(file.getParentFile(), StreetEdgeColumns.FILENAME);
+        return load(in, level, new DefaultStreetVertexIndexFactory(), streetFile.exists() ? streetFile : null);
     }
 
     public static Graph load(InputStream is, LoadLevel level) throws ClassNotFoundException,
@@ -709,21 +772,57 @@ public class Graph implements Serializable {
      * allows passing graphs from graphbuilder to server in memory, without a round trip through
      * serialization. 
      * TODO: do we really need a factory for different street vertex indexes?
+     *
+     * The stages below only read the vertices and edges of the graph and each build their own
+     * structures, so they are run concurrently on the common fork-join pool. The structures are only
+     * assigned to the graph once all of them have finished. The timetables stage finishes the
+     * scheduled timetables of the patterns in place, which nothing else reads during indexing.
      */
     public void index(StreetVertexIndexFactory indexFactory) {
-        streetIndex = indexFactory.newIndex(this);
-        LOG.debug("street index built.");
-        LOG.debug("Rebuilding edge and vertex indices.");
-        rebuildVertexAndEdgeIndices();
-        Set<TripPattern> tableTripPatterns = Sets.newHashSet();
-        for (PatternArriveVertex pav : Iterables.filter(this.getVertices(), PatternArriveVertex.class)) {
-            tableTripPatterns.add(pav.getTripPattern());
-        }
-        for (TripPattern ttp : tableTripPatterns) {
-            if (ttp != null) ttp.scheduledTimetable.finish(); // skip frequency-based patterns with no table (null)
-        }
+        long startTime = System.currentTimeMillis();
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        ForkJoinTask<StreetVertexIndexService> streetIndexTask = pool.submit(
+                timedIndexStage("street index", () -> indexFactory.newIndex(this)));
+        ForkJoinTask<Map<Integer, Vertex>> vertexByIdTask = pool.submit(
+                timedIndexStage("vertex ids", this::buildVertexById));
+        ForkJoinTask<Map<Integer, Edge>> edgeByIdTask = pool.submit(
+                timedIndexStage("edge ids", this::buildEdgeById));
+        ForkJoinTask<Object> timetablesTask = pool.submit(timedIndexStage("timetables", () -> {
+            Set<TripPattern> tableTripPatterns = Sets.newHashSet();
+            for (PatternArriveVertex pav : Iterables.filter(this.getVertices(), PatternArriveVertex.class)) {
+                tableTripPatterns.add(pav.getTripPattern());
+            }
+            // skip frequency-based patterns with no table (null)
+            tableTripPatterns.parallelStream().filter(Objects::nonNull)
+                    .forEach(ttp -> ttp.scheduledTimetable.finish());
+            return null;
+        }));
         // TODO: Move this ^ stuff into the graph index
-        this.index = new GraphIndex(this);
+        ForkJoinTask<GraphIndex> graphIndexTask = pool.submit(
+                timedIndexStage("graph index", () -> new GraphIndex(this)));
+
+        StreetVertexIndexService newStreetIndex = streetIndexTask.join();
+        Map<Integer, Vertex> newVertexById = vertexByIdTask.join();
+        Map<Integer, Edge> newEdgeById = edgeByIdTask.join();
+        timetablesTask.join();
+        GraphIndex newIndex = graphIndexTask.join();
+
+        streetIndex = newStreetIndex;
+        vertexById = newVertexById;
+        edgeById = newEdgeById;
+        this.index = newIndex;
+        vertexIndexLimit = computeVertexIndexLimit();
+        LOG.info("Graph indexed in {} msec.", System.currentTimeMillis() - startTime);
+    }
+
+    /** Wrap one stage of graph indexing so that it reports how long it took. */
+    private static <T> Callable<T> timedIndexStage(String name, Callable<T> stage) {
+        return () -> {
+            long startTime = System.currentTimeMillis();
+            T result = stage.call();
+            LOG.info("Indexing stage '{}' took {} msec.", name, System.currentTimeMillis() - startTime);
+            return result;
+        };
     }
     
     /**
@@ -735,9 +834,19 @@ public class Graph implements Serializable {
      * @throws IOException
      * @throws ClassNotFoundException
      */
-    @SuppressWarnings("unchecked")
     public static Graph load(ObjectInputStream in, LoadLevel level,
             StreetVertexIndexFactory indexFactory) throws IOException, ClassNotFoundException {
+        return load(in, level, indexFactory, null);
+    }
+
+    /**
+     * Load a graph whose street edges may be stored in a separate column file, as written by save(File, File).
+     * @param streetFile the street edge file, or null if there is none. Graphs whose edges are all in the object stream
+     *                   ignore it.
+     */
+    @SuppressWarnings("unchecked")
+    public static Graph load(ObjectInputStream in, LoadLevel level, StreetVertexIndexFactory indexFactory,
+            File streetFile) throws IOException, ClassNotFoundException {
         try {
             Graph graph = (Graph) in.readObject();
             LOG.debug("Basic graph info read.");
@@ -748,12 +857,22 @@ public class Graph implements Serializable {
             // vertex edge lists are transient to avoid excessive recursion depth
             // vertex list is transient because it can be reconstructed from edges
             LOG.debug("Loading edges...");
-            List<Edge> edges = (ArrayList<Edge>) in.readObject();
+            Object edgeData = in.readObject();
             graph.vertices = new HashMap<String, Vertex>();
-            
-            for (Edge e : edges) {
-                graph.vertices.put(e.getFromVertex().getLabel(), e.getFromVertex());
-                graph.vertices.put(e.getToVertex().getLabel(), e.getToVertex());
+            List<GraphBuilderAnnotation> annotations = null;
+            boolean columnar = edgeData instanceof StreetEdgeColumns.Manifest;
+            if (columnar) {
+                // In this layout the debug data comes before the street edges, read it now even if it's not wanted.
+                if (graph.debugData) {
+                    annotations = (List<GraphBuilderAnnotation>) in.readObject();
+                }
+                graph.loadStreetColumns((StreetEdgeColumns.Manifest) edgeData, in, streetFile);
+            } else {
+                List<Edge> edges = (ArrayList<Edge>) edgeData;
+                for (Edge e : edges) {
+                    graph.vertices.put(e.getFromVertex().getLabel(), e.getFromVertex());
+                    graph.vertices.put(e.getToVertex().getLabel(), e.getToVertex());
+                }
             }
 
             LOG.info("Main graph read. |V|={} |E|={}", graph.countVertices(), graph.countEdges());
@@ -764,7 +883,8 @@ public class Graph implements Serializable {
             }
             
             if (graph.debugData) {
-                graph.graphBuilderAnnotations = (List<GraphBuilderAnnotation>) in.readObject();
+                graph.graphBuilderAnnotations = columnar ? annotations
+                        : (List<GraphBuilderAnnotation>) in.readObject();
                 LOG.debug("Debug info read.");
             } else {
                 LOG.warn("Graph file does not contain debug data.");
@@ -776,6 +896,31 @@ public class Graph implements Serializable {
         }
     }
 
+    /**
+     * Read the rest of a graph saved by save(File, File) and recreate its street edges from the memory-mapped column
+     * file. All edges that are still Java-serialized reattach themselves to their vertices while being read.
+     */
+    @SuppressWarnings("unchecked")
+    private void loadStreetColumns(StreetEdgeColumns.Manifest manifest, ObjectInputStream in, File streetFile)
+            throws IOException, ClassNotFoundException {
+        if (streetFile == null) {
+            throw new IllegalStateException("This graph keeps its street edges in a separate "
+                    + StreetEdgeColumns.FILENAME + " file, which was not found. Please copy it next to the graph.");
+        }
+        in.readObject(); // street edges that are referenced from elsewhere in the graph, kept in the object stream
+        List<I18NString> names = (List<I18NString>) in.readObject();
+        long startTime = System.currentTimeMillis();
+        int nEdges = StreetEdgeColumns.read(streetFile, manifest.bundleId, manifest.vertices, names);
+        LOG.info("Mapped {} street edges from {} in {} msec.", nEdges, streetFile,
+                System.currentTimeMillis() - startTime);
+        for (Vertex v : manifest.vertices) {
+            // vertices without edges would not survive the usual serialization either
+            if (v.getDegreeOut() + v.getDegreeIn() > 0) {
+                vertices.put(v.getLabel(), v);
+            }
+        }
+    }
+
     /**
      * Compares the OTP version number stored in the graph with that of the currently running instance. Logs warnings explaining that mismatched
      * versions can cause problems.
@@ -852,6 +997,67 @@ public class Graph implements Serializable {
         LOG.info("Graph written.");
     }
 
+    /**
+     * Save this graph with its plain street edges in a separate column file that is memory-mapped when the graph is
+     * loaded, instead of Java-serializing them in the graph file. Everything else (transit, timetables, services...)
+     * is still Java-serialized. See {@link StreetEdgeColumns}.
+     */
+    public void save(File file, File streetFile) throws IOException {
+        LOG.info("Main graph size: |V|={} |E|={}", this.countVertices(), this.countEdges());
+        LOG.info("Writing graph " + file.getAbsolutePath() + " with street edges in " + streetFile.getName() + " ...");
+        StreetEdgeColumns.TrackingObjectOutputStream out = new StreetEdgeColumns.TrackingObjectOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            writeWithStreetColumns(out, streetFile);
+            out.close();
+        } catch (RuntimeException e) {
+            out.close();
+            file.delete(); // remove half-written files
+            streetFile.delete();
+            throw e;
+        }
+    }
+
+    private void writeWithStreetColumns(StreetEdgeColumns.TrackingObjectOutputStream out, File streetFile)
+            throws IOException {
+        LOG.debug("Consolidating edges...");
+        ArrayList<Vertex> vertexList = new ArrayList<Vertex>(getVertices());
+        ArrayList<Edge> otherEdges = new ArrayList<Edge>();
+        List<StreetEdge> streetEdges = new ArrayList<StreetEdge>(this.countEdges());
+        for (Vertex v : vertexList) {
+            for (Edge e : v.getOutgoing()) {
+                if (StreetEdgeColumns.canStore(e)) {
+                    streetEdges.add((StreetEdge) e);
+                } else {
+                    otherEdges.add(e);
+                }
+            }
+        }
+        LOG.debug("Assigning vertex/edge ID numbers...");
+        this.rebuildVertexAndEdgeIndices();
+        long bundleId = new Random().nextLong();
+        out.writeObject(this);
+        out.writeObject(new StreetEdgeColumns.Manifest(bundleId, vertexList, otherEdges));
+        if (debugData) {
+            // The vertex and edge maps are not written, they would drag all the street edges into the object stream.
+            LOG.debug("Writing debug data...");
+            out.writeObject(this.graphBuilderAnnotations);
+        }
+        // Street edges that were reached while writing the rest of the graph must stay in the object stream.
+        Set<StreetEdge> serializedEdges = out.getSerializedEdges();
+        List<StreetEdge> columnEdges = new ArrayList<StreetEdge>(streetEdges.size());
+        for (StreetEdge e : streetEdges) {
+            if (!serializedEdges.contains(e)) {
+                columnEdges.add(e);
+            }
+        }
+        LOG.debug("Writing {} street edges to columns...", columnEdges.size());
+        List<I18NString> names = StreetEdgeColumns.write(streetFile, bundleId, columnEdges, vertexList);
+        out.writeObject(new ArrayList<Edge>(serializedEdges));
+        out.writeObject(new ArrayList<I18NString>(names));
+        LOG.info("Graph written, {} street edges in columns.", columnEdges.size());
+    }
+
     /* deserialization for org.opentripplanner.customize */
     private static class GraphObjectInputStream extends ObjectInputStream {
         ClassLoader classLoader;
@@ -530,12 +530,20 @@ public class GraphIndex {
         return ret;
     }
 
-    /** Fetch a cache of nearby intersection distances for every transit stop in this graph, lazy-building as needed. */
+    /**
+     * Fetch a cache of nearby intersection distances for every transit stop in this graph, lazy-building as needed.
+     * If the cache was built with the graph, it is used as long as it still has a tree for every stop.
+     */
     public StopTreeCache getStopTreeCache() {
         if (stopTreeCache == null) {
             synchronized (this) {
                 if (stopTreeCache == null) {
-                    stopTreeCache = new StopTreeCache(graph, MAX_WALK_METERS); // TODO make this max-distance variable
+                    StopTreeCache saved = graph.getService(StopTreeCache.class);
+                    if (saved != null && new HashSet<>(saved.getStops()).containsAll(stopVertexForStop.values())) {
+                        stopTreeCache = saved;
+                    } else {
+                        stopTreeCache = new StopTreeCache(graph, MAX_WALK_METERS); // TODO make this max-distance variable
+                    }
                 }
             }
         }
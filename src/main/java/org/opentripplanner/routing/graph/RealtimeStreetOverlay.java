@@ -0,0 +1,128 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.graph;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable snapshot of the real-time entities attached to the street network, grouped by the updater providing
+ * them. Updaters link new or moved entities off the graph in {@link StreetAttachment}s and publish a new snapshot
+ * with {@link Graph#setStreetAttachments(Object, Collection)}, which replaces the previous one with a single reference
+ * write. Each routing context keeps the snapshot that was current when it was created, so searches never see an
+ * update half applied, and updates never wait for searches to finish.
+ *
+ * Alongside its attachments, each source publishes the current state of its entities (such as the bikes available at
+ * a station), keyed on their vertices. The state changes far more often than the position of an entity, so it is
+ * kept out of the attachments, which are only linked again when an entity moves.
+ */
+public class RealtimeStreetOverlay {
+
+    public static final RealtimeStreetOverlay EMPTY = new RealtimeStreetOverlay(Collections.emptyMap(),
+            Collections.emptyMap());
+
+    private final Map<Object, List<StreetAttachment>> attachments;
+
+    private final Map<Object, Map<Vertex, Object>> sourceStates;
+
+    /* The states of all sources, by entity vertex. */
+    private final Map<Vertex, Object> states = new IdentityHashMap<>();
+
+    /* The edges of all attachments, merged by permanent vertex. */
+    private final Map<Vertex, List<Edge>> outgoing = new IdentityHashMap<>();
+
+    private final Map<Vertex, List<Edge>> incoming = new IdentityHashMap<>();
+
+    private RealtimeStreetOverlay(Map<Object, List<StreetAttachment>> attachments,
+            Map<Object, Map<Vertex, Object>> sourceStates) {
+        this.attachments = attachments;
+        this.sourceStates = sourceStates;
+        for (List<StreetAttachment> sourceAttachments : attachments.values()) {
+            for (StreetAttachment attachment : sourceAttachments) {
+                merge(attachment.outgoing, outgoing);
+                merge(attachment.incoming, incoming);
+            }
+        }
+        for (Map<Vertex, Object> entityStates : sourceStates.values()) {
+            states.putAll(entityStates);
+        }
+    }
+
+    private static void merge(Map<Vertex, List<Edge>> edges, Map<Vertex, List<Edge>> merged) {
+        for (Map.Entry<Vertex, List<Edge>> entry : edges.entrySet()) {
+            merged.computeIfAbsent(entry.getKey(), v -> new ArrayList<>(2)).addAll(entry.getValue());
+        }
+    }
+
+    /**
+     * @return a new snapshot in which the attachments of the given source are replaced, leaving those of the other
+     * sources untouched. This snapshot is not modified.
+     */
+    public RealtimeStreetOverlay withAttachments(Object source, Collection<StreetAttachment> sourceAttachments) {
+        return withAttachments(source, sourceAttachments, Collections.emptyMap());
+    }
+
+    /**
+     * @return a new snapshot in which the attachments of the given source and the states of its entities are
+     * replaced, leaving those of the other sources untouched. This snapshot is not modified, and neither are the given
+     * states after this call.
+     */
+    public RealtimeStreetOverlay withAttachments(Object source, Collection<StreetAttachment> sourceAttachments,
+            Map<Vertex, ?> entityStates) {
+        Map<Object, List<StreetAttachment>> updated = new HashMap<>(attachments);
+        if (sourceAttachments.isEmpty()) {
+            updated.remove(source);
+        } else {
+            updated.put(source, Collections.unmodifiableList(new ArrayList<>(sourceAttachments)));
+        }
+        Map<Object, Map<Vertex, Object>> updatedStates = new HashMap<>(sourceStates);
+        if (entityStates.isEmpty()) {
+            updatedStates.remove(source);
+        } else {
+            updatedStates.put(source, new IdentityHashMap<>(entityStates));
+        }
+        return new RealtimeStreetOverlay(updated, updatedStates);
+    }
+
+    /** @return the attachments of the given source in this snapshot, which may be empty. */
+    public List<StreetAttachment> getAttachments(Object source) {
+        List<StreetAttachment> sourceAttachments = attachments.get(source);
+        return sourceAttachments == null ? Collections.emptyList() : sourceAttachments;
+    }
+
+    /** @return the given outgoing edges of a vertex, plus any edges of attached entities leaving it. */
+    public Collection<Edge> getOutgoing(Vertex v, Collection<Edge> edges) {
+        return TemporaryEdgeOverlay.combine(edges, outgoing.get(v));
+    }
+
+    /** @return the given incoming edges of a vertex, plus any edges of attached entities entering it. */
+    public Collection<Edge> getIncoming(Vertex v, Collection<Edge> edges) {
+        return TemporaryEdgeOverlay.combine(edges, incoming.get(v));
+    }
+
+    /** @return the state published for the entity represented by the given vertex, or null if there is none. */
+    public Object getState(Vertex v) {
+        return states.get(v);
+    }
+
+    public boolean isEmpty() {
+        return attachments.isEmpty();
+    }
+
+}
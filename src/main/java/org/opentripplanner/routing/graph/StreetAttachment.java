@@ -0,0 +1,62 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.graph;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * The vertices and edges connecting one real-time entity (a bike rental station, a bike park...) to the street
+ * network, kept out of the graph. While an attachment is open on a thread, every edge constructed on that thread is
+ * recorded here for the permanent vertices it touches instead of being added to their edge lists, so linking the
+ * entity does not modify the graph. The vertices created for the entity are not added to the graph, and hold their
+ * own edges as usual.
+ *
+ * Attachments become visible to searches when they are published in a {@link RealtimeStreetOverlay}, and must not be
+ * modified after that. They can be reused in the following overlays for as long as the entity does not move.
+ */
+public class StreetAttachment extends TemporaryEdgeOverlay {
+
+    private final Vertex vertex;
+
+    private final Set<Vertex> vertices = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /** @param vertex the vertex representing the entity, which must not be in the graph. */
+    public StreetAttachment(Vertex vertex) {
+        this.vertex = vertex;
+        this.vertices.add(vertex);
+    }
+
+    /** @return the vertex representing the entity. */
+    public Vertex getVertex() {
+        return vertex;
+    }
+
+    /** Add a vertex created for this entity outside the graph, such as a vertex splitting a street. */
+    public void addVertex(Vertex v) {
+        vertices.add(v);
+    }
+
+    @Override
+    boolean records(Edge edge) {
+        return true;
+    }
+
+    @Override
+    boolean holdsOwnEdges(Vertex v) {
+        return vertices.contains(v) || super.holdsOwnEdges(v);
+    }
+
+}
@@ -0,0 +1,130 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.graph;
+
+import org.opentripplanner.routing.edgetype.TemporaryEdge;
+import org.opentripplanner.routing.vertextype.TemporaryVertex;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds the temporary edges created for a single request (origin and destination links, partial street edges) on the
+ * side of the graph, instead of adding them to the edge lists of the permanent vertices they touch. The shared graph
+ * is never modified, so concurrent requests cannot see each other's temporary edges and nothing needs to be removed
+ * once the request is finished: the overlay is simply dropped along with the routing context.
+ *
+ * While an overlay is open on a thread, every {@link TemporaryEdge} constructed on that thread is recorded here for
+ * its permanent endpoints. Temporary vertices still hold their own edges as usual. Searches must then look up edges
+ * through {@link #getOutgoing(Vertex)} and {@link #getIncoming(Vertex)} rather than asking the vertex directly.
+ *
+ * Subclasses can record other kinds of edges, and let other vertices hold their own edges (see
+ * {@link StreetAttachment}).
+ */
+public class TemporaryEdgeOverlay {
+
+    private static final ThreadLocal<TemporaryEdgeOverlay> current = new ThreadLocal<>();
+
+    final Map<Vertex, List<Edge>> outgoing = new IdentityHashMap<>();
+
+    final Map<Vertex, List<Edge>> incoming = new IdentityHashMap<>();
+
+    /** Record temporary edges created by the current thread in this overlay, until {@link #close()} is called. */
+    public void open() {
+        if (current.get() != null) {
+            throw new IllegalStateException("A temporary edge overlay is already open on this thread.");
+        }
+        current.set(this);
+    }
+
+    /** Stop recording temporary edges in this overlay. The edges already recorded remain visible through it. */
+    public void close() {
+        if (current.get() != this) {
+            throw new IllegalStateException("This temporary edge overlay is not open on this thread.");
+        }
+        current.remove();
+    }
+
+    /** @return the overlay open on the current thread, or null if temporary edges should be added to the graph. */
+    static TemporaryEdgeOverlay current() {
+        return current.get();
+    }
+
+    /** @return true if this overlay is open on the current thread. */
+    public boolean isOpen() {
+        return current.get() == this;
+    }
+
+    /** @return true if the given edge, constructed while this overlay is open, should be recorded in it. */
+    boolean records(Edge edge) {
+        return edge instanceof TemporaryEdge;
+    }
+
+    /** @return true if the given vertex holds its own edges, rather than having them recorded in this overlay. */
+    boolean holdsOwnEdges(Vertex v) {
+        return v instanceof TemporaryVertex;
+    }
+
+    /** Attach a newly created temporary edge to its temporary endpoints, and record it here for the others. */
+    void attach(Edge edge) {
+        if (holdsOwnEdges(edge.fromv)) {
+            edge.fromv.addOutgoing(edge);
+        } else {
+            outgoing.computeIfAbsent(edge.fromv, v -> new ArrayList<>(2)).add(edge);
+        }
+        if (holdsOwnEdges(edge.tov)) {
+            edge.tov.addIncoming(edge);
+        } else {
+            incoming.computeIfAbsent(edge.tov, v -> new ArrayList<>(2)).add(edge);
+        }
+    }
+
+    /** @return the outgoing edges of the given vertex, including any temporary edges of this request. */
+    public Collection<Edge> getOutgoing(Vertex v) {
+        return getOutgoing(v, v.getOutgoing());
+    }
+
+    /** @return the given outgoing edges of a vertex, plus any temporary edges of this request leaving it. */
+    public Collection<Edge> getOutgoing(Vertex v, Collection<Edge> edges) {
+        return combine(edges, outgoing.get(v));
+    }
+
+    /** @return the incoming edges of the given vertex, including any temporary edges of this request. */
+    public Collection<Edge> getIncoming(Vertex v) {
+        return getIncoming(v, v.getIncoming());
+    }
+
+    /** @return the given incoming edges of a vertex, plus any temporary edges of this request entering it. */
+    public Collection<Edge> getIncoming(Vertex v, Collection<Edge> edges) {
+        return combine(edges, incoming.get(v));
+    }
+
+    public boolean isEmpty() {
+        return outgoing.isEmpty() && incoming.isEmpty();
+    }
+
+    static Collection<Edge> combine(Collection<Edge> edges, List<Edge> extra) {
+        if (extra == null) {
+            return edges;
+        }
+        List<Edge> combined = new ArrayList<>(edges.size() + extra.size());
+        combined.addAll(edges);
+        combined.addAll(extra);
+        return combined;
+    }
+
+}
@@ -20,8 +20,11 @@ import org.opentripplanner.common.model.GenericLocation;
 import org.opentripplanner.routing.algorithm.AStar;
 import org.opentripplanner.routing.algorithm.strategies.EuclideanRemainingWeightHeuristic;
 import org.opentripplanner.routing.algorithm.strategies.InterleavedBidirectionalHeuristic;
+import org.opentripplanner.routing.algorithm.strategies.LandmarkDistances;
+import org.opentripplanner.routing.algorithm.strategies.LandmarkRemainingWeightHeuristic;
 import org.opentripplanner.routing.algorithm.strategies.RemainingWeightHeuristic;
 import org.opentripplanner.routing.algorithm.strategies.TrivialRemainingWeightHeuristic;
+import org.opentripplanner.routing.core.RoutingContext;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.edgetype.LegSwitchingEdge;
@@ -118,6 +121,11 @@ public class GraphPathFinder {
             // Use a simplistic heuristic until BiDi heuristic is improved, see #2153
             heuristic = new InterleavedBidirectionalHeuristic();
             reversedSearchHeuristic = new InterleavedBidirectionalHeuristic();
+        } else if (router.graph.getService(LandmarkDistances.class) != null) {
+            // Street-only search on a graph with precomputed landmarks, which give much tighter bounds.
+            LandmarkDistances landmarks = router.graph.getService(LandmarkDistances.class);
+            heuristic = new LandmarkRemainingWeightHeuristic(landmarks);
+            reversedSearchHeuristic = new LandmarkRemainingWeightHeuristic(landmarks);
         } else {
             heuristic = new EuclideanRemainingWeightHeuristic();
             reversedSearchHeuristic = new EuclideanRemainingWeightHeuristic();
@@ -200,6 +208,9 @@ public class GraphPathFinder {
 
             LOG.debug("we have {} paths", paths.size());
         }
+        // Stop any background work of the heuristics, which will not be used again.
+        heuristic.close();
+        reversedSearchHeuristic.close();
         LOG.debug("END SEARCH ({} msec)", System.currentTimeMillis() - searchBeginTime);
         Collections.sort(paths, new PathComparator(options.arriveBy));
         return paths;
@@ -327,7 +338,8 @@ public class GraphPathFinder {
         RoutingRequest reversedOptions = originalReq.clone();
         reversedOptions.dateTime = dateTime;
         reversedOptions.setArriveBy(!originalReq.arriveBy);
-        reversedOptions.setRoutingContext(router.graph, fromVertex, toVertex);
+        // Share the temporary edges of the forward search, which may link its origin and destination.
+        reversedOptions.rctx = new RoutingContext(reversedOptions, router.graph, fromVertex, toVertex, options.rctx);
         reversedOptions.dominanceFunction = new DominanceFunction.MinimumWeight();
         reversedOptions.rctx.remainingWeightHeuristic = remainingWeightHeuristic;
         reversedOptions.maxTransfers = 4;
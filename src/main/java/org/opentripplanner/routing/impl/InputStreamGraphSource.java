@@ -18,6 +18,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.MissingNode;
 import com.google.common.io.ByteStreams;
+import org.opentripplanner.routing.edgetype.StreetEdgeColumns;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.graph.Graph.LoadLevel;
 import org.opentripplanner.routing.services.GraphSource;
@@ -207,7 +208,7 @@ public class InputStreamGraphSource implements GraphSource {
             LOG.info("Loading graph...");
             try {
                 newGraph = Graph.load(new ObjectInputStream(is), loadLevel,
-                        streetVertexIndexFactory);
+                        streetVertexIndexFactory, streams.getStreetFile());
             } catch (Exception ex) {
                 LOG.error("Exception while loading graph '{}'.", routerId, ex);
                 return null;
@@ -254,6 +255,9 @@ public class InputStreamGraphSource implements GraphSource {
         public abstract InputStream getConfigInputStream() throws IOException;
 
         public abstract long getLastModified();
+
+        /** @return the memory-mappable street edge file next to the graph, or null if there is none. */
+        public abstract File getStreetFile();
     }
 
     private static class FileStreams implements Streams {
@@ -287,6 +291,12 @@ public class InputStreamGraphSource implements GraphSource {
             // Note: this returns 0L if the file does not exists
             return new File(path, GRAPH_FILENAME).lastModified();
         }
+
+        @Override
+        public File getStreetFile() {
+            File streetFile = new File(path, StreetEdgeColumns.FILENAME);
+            return streetFile.exists() ? streetFile : null;
+        }
     }
 
     private static class ClasspathStreams implements Streams {
@@ -321,6 +331,12 @@ public class InputStreamGraphSource implements GraphSource {
         public long getLastModified() {
             return 0L;
         }
+
+        /** Resources inside a jar cannot be memory-mapped, graphs on the classpath must keep all their edges. */
+        @Override
+        public File getStreetFile() {
+            return null;
+        }
     }
 
     /**
@@ -0,0 +1,257 @@
+/* This program is free software: you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public License
+as published by the Free Software Foundation, either version 3 of
+the License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.spt;
+
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.graph.Vertex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A ShortestPathTree that stores the states at each vertex in arrays indexed by Vertex.getIndex() rather than in
+ * an IdentityHashMap of ArrayLists. It applies exactly the same dominance logic in the same order as the map-based
+ * implementation, so searches produce identical paths, but it avoids allocating a map entry and a list per vertex.
+ *
+ * Most vertices only ever hold one state, so each vertex gets a small State array that is only grown when several
+ * co-dominant states coexist there. The states of a vertex are the leading non-null elements of its array.
+ *
+ * The vertices of the graph are split into pages of consecutive indices, and a page is only allocated once a state
+ * reaches one of its vertices, so a short search does not pay for the whole graph. Vertices created after the graph
+ * was indexed (temporary vertices for instance) are kept in a small map instead, so that their ever-growing indices
+ * do not make the tree grow with the life of the server.
+ */
+public class IndexedShortestPathTree extends ShortestPathTree {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IndexedShortestPathTree.class);
+
+    /** Initial size of the per-vertex state arrays. Almost all vertices have one or two states. */
+    private static final int INITIAL_STATES_PER_VERTEX = 2;
+
+    private static final int PAGE_BITS = 10;
+
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    /** Vertices with an index below this are stored in pages, the others in extraStates. */
+    private final int pagedIndexLimit;
+
+    /** The states at each vertex, by page then by index within the page. Pages are null until used. */
+    private final State[][][] pages;
+
+    /** The states at the vertices that are not in the graph's index range, keyed on vertex index. */
+    private final TIntObjectMap<State[]> extraStates = new TIntObjectHashMap<State[]>();
+
+    /** The number of vertices that have at least one state. */
+    private int vertexCount = 0;
+
+    public IndexedShortestPathTree(RoutingRequest options, DominanceFunction dominanceFunction) {
+        super(options, dominanceFunction);
+        pagedIndexLimit = options.rctx == null || options.rctx.graph == null ? 0
+                : options.rctx.graph.getVertexIndexLimit();
+        pages = new State[(pagedIndexLimit + PAGE_SIZE - 1) >>> PAGE_BITS][][];
+    }
+
+    private State[] getVertexStates(int index) {
+        if (index < pagedIndexLimit) {
+            State[][] page = pages[index >>> PAGE_BITS];
+            return page == null ? null : page[index & (PAGE_SIZE - 1)];
+        }
+        return extraStates.get(index);
+    }
+
+    private void setVertexStates(int index, State[] vertexStates) {
+        if (index < pagedIndexLimit) {
+            State[][] page = pages[index >>> PAGE_BITS];
+            if (page == null) {
+                page = new State[PAGE_SIZE][];
+                pages[index >>> PAGE_BITS] = page;
+            }
+            page[index & (PAGE_SIZE - 1)] = vertexStates;
+        } else {
+            extraStates.put(index, vertexStates);
+        }
+    }
+
+    /** @return the number of states at a vertex, which are the leading non-null elements of its array. */
+    private static int count(State[] vertexStates) {
+        if (vertexStates == null) {
+            return 0;
+        }
+        int count = 0;
+        while (count < vertexStates.length && vertexStates[count] != null) {
+            count++;
+        }
+        return count;
+    }
+
+    /** @return the state arrays of all the vertices reached so far, in no particular order. */
+    private List<State[]> allVertexStates() {
+        List<State[]> all = new ArrayList<State[]>(vertexCount);
+        for (State[][] page : pages) {
+            if (page == null) continue;
+            for (State[] vertexStates : page) {
+                if (count(vertexStates) > 0) {
+                    all.add(vertexStates);
+                }
+            }
+        }
+        for (State[] vertexStates : extraStates.valueCollection()) {
+            if (count(vertexStates) > 0) {
+                all.add(vertexStates);
+            }
+        }
+        return all;
+    }
+
+    @Override
+    public boolean add(State newState) {
+        int index = newState.getVertex().getIndex();
+        State[] vertexStates = getVertexStates(index);
+        int count = count(vertexStates);
+
+        // if the vertex has no states, add one and return
+        if (count == 0) {
+            if (vertexStates == null) {
+                vertexStates = new State[INITIAL_STATES_PER_VERTEX];
+                setVertexStates(index, vertexStates);
+            }
+            vertexStates[0] = newState;
+            vertexCount += 1;
+            return true;
+        }
+
+        // if the vertex has any states that dominate the new state, don't add the state
+        // if the new state dominates any old states, remove them, preserving the order of the remaining states.
+        // States are compacted in place as we go, exactly like removal through the list iterator.
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            State oldState = vertexStates[i];
+            // order is important, because in the case of a tie
+            // we want to reject the new state
+            if (dominanceFunction.betterOrEqualAndComparable(oldState, newState)) {
+                // States removed before this point stay removed, shift the unexamined ones down over the gap.
+                if (kept < i) {
+                    System.arraycopy(vertexStates, i, vertexStates, kept, count - i);
+                    Arrays.fill(vertexStates, kept + count - i, count, null);
+                }
+                return false;
+            }
+            if (!dominanceFunction.betterOrEqualAndComparable(newState, oldState)) {
+                vertexStates[kept++] = oldState;
+            }
+        }
+        Arrays.fill(vertexStates, kept, count, null);
+
+        // any states remaining are co-dominant with the new state
+        if (kept == vertexStates.length) {
+            vertexStates = Arrays.copyOf(vertexStates, vertexStates.length * 2);
+            setVertexStates(index, vertexStates);
+        }
+        vertexStates[kept] = newState;
+        return true;
+    }
+
+    @Override
+    public State getState(Vertex dest) {
+        State[] vertexStates = getVertexStates(dest.getIndex());
+        State ret = null;
+        for (int i = 0; i < count(vertexStates); i++) {
+            State s = vertexStates[i];
+            if ((ret == null || s.weight < ret.weight) && s.isFinal()) {
+                ret = s;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * The returned list is a read-only snapshot. Unlike the map-based implementation, modifying it does not affect
+     * the contents of this tree.
+     */
+    @Override
+    public List<State> getStates(Vertex dest) {
+        State[] vertexStates = getVertexStates(dest.getIndex());
+        int count = count(vertexStates);
+        if (count == 0) {
+            return null;
+        }
+        return Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(vertexStates, count)));
+    }
+
+    @Override
+    public boolean visit(State state) {
+        State[] vertexStates = getVertexStates(state.getVertex().getIndex());
+        for (int i = 0; i < count(vertexStates); i++) {
+            if (vertexStates[i] == state) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Set<Vertex> getVertices() {
+        Set<Vertex> vertices = Collections.newSetFromMap(new IdentityHashMap<Vertex, Boolean>(vertexCount));
+        for (State[] vertexStates : allVertexStates()) {
+            vertices.add(vertexStates[0].getVertex());
+        }
+        return vertices;
+    }
+
+    @Override
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    @Override
+    public Collection<State> getAllStates() {
+        ArrayList<State> allStates = new ArrayList<State>();
+        for (State[] vertexStates : allVertexStates()) {
+            allStates.addAll(Arrays.asList(vertexStates).subList(0, count(vertexStates)));
+        }
+        return allStates;
+    }
+
+    @Override
+    public void dump() {
+        int statesCount = 0;
+        int maxSize = 0;
+        for (State[] vertexStates : allVertexStates()) {
+            int count = count(vertexStates);
+            statesCount += count;
+            if (count > maxSize) {
+                maxSize = count;
+            }
+        }
+        LOG.info("SPT: vertices: " + vertexCount + " states: total: "
+                + statesCount + " per vertex max: " + maxSize + " avg: "
+                + (statesCount * 1.0 / vertexCount));
+    }
+
+    @Override
+    public String toString() {
+        return "IndexedShortestPathTree(" + vertexCount + " vertices)";
+    }
+
+}
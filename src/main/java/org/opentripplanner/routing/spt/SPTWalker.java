@@ -82,7 +82,7 @@ public class SPTWalker {
             State s0 = spt.getState(v);
             if (s0 == null || !s0.isFinal())
                 continue;
-            for (Edge e : s0.getVertex().getIncoming()) {
+            for (Edge e : spt.getOptions().rctx.getIncoming(s0.getVertex())) {
                 // Take only street
                 if (e != null && visitor.accept(e)) {
                     State s1 = spt.getState(e.getFromVertex());
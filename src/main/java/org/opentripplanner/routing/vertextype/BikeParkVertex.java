@@ -16,6 +16,7 @@ package org.opentripplanner.routing.vertextype;
 import org.opentripplanner.common.MavenVersion;
 import org.opentripplanner.routing.bike_park.BikePark;
 import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.RealtimeStreetOverlay;
 import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.util.NonLocalizedString;
 
@@ -51,6 +52,12 @@ public class BikeParkVertex extends Vertex {
         return spacesAvailable;
     }
 
+    /** @return the spaces available in the given snapshot, or when the park was created if it has none. */
+    public int getSpacesAvailable(RealtimeStreetOverlay snapshot) {
+        Object state = snapshot.getState(this);
+        return state instanceof BikePark ? ((BikePark) state).spacesAvailable : spacesAvailable;
+    }
+
     public void setSpacesAvailable(int spaces) {
         this.spacesAvailable = spaces;
     }
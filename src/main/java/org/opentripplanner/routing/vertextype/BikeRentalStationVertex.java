@@ -16,6 +16,7 @@ package org.opentripplanner.routing.vertextype;
 import org.opentripplanner.common.MavenVersion;
 import org.opentripplanner.routing.bike_rental.BikeRentalStation;
 import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.RealtimeStreetOverlay;
 import org.opentripplanner.routing.graph.Vertex;
 
 /**
@@ -53,6 +54,18 @@ public class BikeRentalStationVertex extends Vertex {
         return spacesAvailable;
     }
 
+    /** @return the bikes available in the given snapshot, or when the station was created if it has none. */
+    public int getBikesAvailable(RealtimeStreetOverlay snapshot) {
+        Object state = snapshot.getState(this);
+        return state instanceof BikeRentalStation ? ((BikeRentalStation) state).bikesAvailable : bikesAvailable;
+    }
+
+    /** @return the spaces available in the given snapshot, or when the station was created if it has none. */
+    public int getSpacesAvailable(RealtimeStreetOverlay snapshot) {
+        Object state = snapshot.getState(this);
+        return state instanceof BikeRentalStation ? ((BikeRentalStation) state).spacesAvailable : spacesAvailable;
+    }
+
     public void setBikesAvailable(int bikes) {
         this.bikesAvailable = bikes;
     }
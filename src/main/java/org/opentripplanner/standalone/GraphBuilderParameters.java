@@ -157,6 +157,30 @@ public class GraphBuilderParameters {
      */
     public final double maxTransferDistance;
 
+    /**
+     * Store plain street edges in a separate memory-mapped column file (Graph.streets) next to Graph.obj, which is
+     * much faster to load than Java serialization. Both files must then be kept together.
+     */
+    public final boolean columnarStreets;
+
+    /**
+     * Make street edges share equal names, geometries and elevation profiles once the street network is built,
+     * which reduces the memory needed to hold large graphs.
+     */
+    public final boolean compactStreets;
+
+    /**
+     * Number of landmarks to precompute street distances to, for goal direction in street-only searches. Each
+     * landmark takes 8 bytes per vertex in the graph. Zero (the default) disables landmarks.
+     */
+    public final int landmarks;
+
+    /**
+     * Compute the distances from each transit stop to nearby street intersections while building the graph and save
+     * them with the graph, rather than on every server or Analyst worker that first needs them.
+     */
+    public final boolean stopTrees;
+
     /**
      * Set all parameters from the given Jackson JSON tree, applying defaults.
      * Supplying MissingNode.getInstance() will cause all the defaults to be applied.
@@ -190,6 +214,10 @@ public class GraphBuilderParameters {
         banDiscouragedWalking = config.path("banDiscouragedWalking").asBoolean(false);
         banDiscouragedBiking = config.path("banDiscouragedBiking").asBoolean(false);
         maxTransferDistance = config.path("maxTransferDistance").asDouble(2000);
+        columnarStreets = config.path("columnarStreets").asBoolean(false);
+        compactStreets = config.path("compactStreets").asBoolean(false);
+        landmarks = config.path("landmarks").asInt(0);
+        stopTrees = config.path("stopTrees").asBoolean(false);
     }
 
 }
@@ -9,6 +9,7 @@ import ch.qos.logback.core.FileAppender;
 import com.fasterxml.jackson.databind.JsonNode;
 import org.opentripplanner.analyst.request.*;
 import org.opentripplanner.analyst.scenario.ScenarioStore;
+import org.opentripplanner.inspector.InspectorTileCache;
 import org.opentripplanner.inspector.TileRendererManager;
 import org.opentripplanner.reflect.ReflectiveInitializer;
 import org.opentripplanner.routing.core.RoutingRequest;
@@ -20,7 +21,10 @@ import org.opentripplanner.util.WorldEnvelope;
 import org.opentripplanner.visualizer.GraphVisualizer;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.EnumMap;
+import java.util.List;
 
 /**
  * Represents the configuration of a single router (a single graph for a specific geographic area)
@@ -46,6 +50,7 @@ public class Router {
 
     // Inspector/debug services
     public TileRendererManager tileRendererManager;
+    public InspectorTileCache inspectorTileCache;
 
     // Analyst services
     public TileCache tileCache;
@@ -81,6 +86,7 @@ public class Router {
     public void startup(JsonNode config) {
 
         this.tileRendererManager = new TileRendererManager(this.graph);
+        this.inspectorTileCache = createInspectorTileCache(config.get("inspectorTiles"));
 
         // Analyst Modules FIXME make these optional based on JSON?
         {
@@ -179,6 +185,58 @@ public class Router {
     /** Shut down this router when evicted or (auto-)reloaded. Stop any real-time updater threads. */
     public void shutdown() {
         GraphUpdaterConfigurator.shutdownGraph(this.graph);
+        if (inspectorTileCache != null) {
+            inspectorTileCache.shutdown();
+        }
+    }
+
+    /**
+     * Create the cache of inspector tiles from the optional inspectorTiles section of the router
+     * config, for example:
+     * <pre>
+     * "inspectorTiles": {
+     *   "cacheDirectory": "/var/otp/tiles",
+     *   "maxMemoryMegabytes": 32,
+     *   "maxDiskMegabytes": 1024,
+     *   "seed": { "layers": ["bike-safety"], "formats": ["png"], "minZoom": 12, "maxZoom": 15 }
+     * }
+     * </pre>
+     * Without a cache directory the tiles are only kept in memory. Tiles are seeded in the
+     * background, so the router can serve requests in the meantime.
+     */
+    private InspectorTileCache createInspectorTileCache(JsonNode config) {
+        File directory = null;
+        long maxMemoryMegabytes = 32;
+        long maxDiskMegabytes = 1024;
+        if (config != null) {
+            if (config.has("cacheDirectory")) {
+                directory = new File(config.get("cacheDirectory").asText(), this.id);
+            }
+            maxMemoryMegabytes = config.path("maxMemoryMegabytes").asLong(maxMemoryMegabytes);
+            maxDiskMegabytes = config.path("maxDiskMegabytes").asLong(maxDiskMegabytes);
+        }
+        InspectorTileCache cache = new InspectorTileCache(this.tileRendererManager, this.graph,
+                directory, maxMemoryMegabytes * 1024 * 1024, maxDiskMegabytes * 1024 * 1024);
+        JsonNode seed = config == null ? null : config.get("seed");
+        if (seed != null) {
+            List<String> layers = new ArrayList<>();
+            for (JsonNode layer : seed.path("layers")) {
+                layers.add(layer.asText());
+            }
+            List<String> formats = new ArrayList<>();
+            for (JsonNode format : seed.path("formats")) {
+                formats.add(format.asText());
+            }
+            if (formats.isEmpty()) {
+                formats.add("png");
+            }
+            int minZoom = seed.path("minZoom").asInt(12);
+            int maxZoom = seed.path("maxZoom").asInt(15);
+            LOG.info("Seeding inspector tiles of layers {} ({}) from zoom {} to {}.", layers, formats,
+                    minZoom, maxZoom);
+            cache.seed(this.graph, layers, formats, minZoom, maxZoom);
+        }
+        return cache;
     }
 
     /**
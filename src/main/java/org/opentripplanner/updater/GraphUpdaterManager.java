@@ -17,12 +17,15 @@ import com.beust.jcommander.internal.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
@@ -41,6 +44,11 @@ import org.slf4j.LoggerFactory;
  * Each updater will run in its own thread. When changes to the graph have to be made by these
  * updaters, this should be done via the execute method of this manager to prevent race conditions
  * between graph write operations.
+ *
+ * Writes waiting for the writer thread are run highest priority first, so that a slow or bursty
+ * updater does not hold up more urgent ones (see {@link GraphWriterRunnable#getPriority()}). A write
+ * submitted while an earlier write with the same coalescing key is still waiting is merged into it,
+ * for instance to apply only the latest full dataset of a feed.
  * 
  */
 public class GraphUpdaterManager {
@@ -66,6 +74,32 @@ public class GraphUpdaterManager {
      */
     private ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
 
+    /**
+     * Writes waiting to be run by the scheduler. Each write submitted to the scheduler runs the first
+     * write of this queue, which is not necessarily itself.
+     */
+    private final PriorityBlockingQueue<QueuedWrite> writeQueue = new PriorityBlockingQueue<QueuedWrite>();
+
+    /** The queued writes that later writes can still be merged into, by coalescing key. Guarded by writeQueue. */
+    private final Map<Object, QueuedWrite> coalescableWrites = new HashMap<Object, QueuedWrite>();
+
+    /* Write statistics, guarded by writeQueue. */
+    private long writeSequence = 0;
+
+    private long writesApplied = 0;
+
+    private long writesCoalesced = 0;
+
+    private long writesFailed = 0;
+
+    private long totalLatencyNanos = 0;
+
+    private long maxLatencyNanos = 0;
+
+    private long lastLatencyNanos = 0;
+
+    private long totalRunNanos = 0;
+
     /**
      * Pool with updaters
      */
@@ -187,18 +221,90 @@ public class GraphUpdaterManager {
 
     private Future<?> executeReturningFuture(final GraphWriterRunnable runnable) {
         // TODO: check for high water mark?
-        Future<?> future = scheduler.submit(new Runnable() {
+        QueuedWrite write;
+        synchronized (writeQueue) {
+            Object key = runnable.getCoalescingKey();
+            if (key != null) {
+                write = coalescableWrites.get(key);
+                if (write != null) {
+                    GraphWriterRunnable merged = write.runnable.coalesce(runnable);
+                    if (merged != null) {
+                        write.runnable = merged;
+                        writesCoalesced++;
+                        return write.future;
+                    }
+                }
+            }
+            write = new QueuedWrite(runnable, key, writeSequence++);
+            if (key != null) {
+                coalescableWrites.put(key, write);
+            }
+            writeQueue.add(write);
+        }
+        scheduler.submit(new Runnable() {
             @Override
             public void run() {
-                try {
-                    runnable.run(graph);
-                } catch (Exception e) {
-                    LOG.error("Error while running graph writer {}:", runnable.getClass().getName(),
-                            e);
-                }
+                runNextWrite();
             }
         });
-        return future;
+        return write.future;
+    }
+
+    /** Run the most urgent queued write, on the scheduler thread. */
+    private void runNextWrite() {
+        QueuedWrite write;
+        synchronized (writeQueue) {
+            write = writeQueue.poll();
+            if (write == null) {
+                return;
+            }
+            if (write.key != null && coalescableWrites.get(write.key) == write) {
+                coalescableWrites.remove(write.key);
+            }
+        }
+        long start = System.nanoTime();
+        boolean failed = false;
+        try {
+            write.runnable.run(graph);
+        } catch (Exception e) {
+            failed = true;
+            LOG.error("Error while running graph writer {}:", write.runnable.getClass().getName(), e);
+        } finally {
+            long end = System.nanoTime();
+            synchronized (writeQueue) {
+                writesApplied++;
+                if (failed) {
+                    writesFailed++;
+                }
+                lastLatencyNanos = end - write.queuedNanos;
+                totalLatencyNanos += lastLatencyNanos;
+                maxLatencyNanos = Math.max(maxLatencyNanos, lastLatencyNanos);
+                totalRunNanos += end - start;
+            }
+            write.future.complete(null);
+        }
+    }
+
+    /** @return the current depth of the write queue and statistics about the writes run so far. */
+    public WriteQueueStatus getWriteQueueStatus() {
+        WriteQueueStatus status = new WriteQueueStatus();
+        synchronized (writeQueue) {
+            status.queueDepth = writeQueue.size();
+            for (QueuedWrite write : writeQueue) {
+                Integer depth = status.queueDepthByPriority.get(write.priority);
+                status.queueDepthByPriority.put(write.priority, depth == null ? 1 : depth + 1);
+            }
+            status.applied = writesApplied;
+            status.coalesced = writesCoalesced;
+            status.failed = writesFailed;
+            if (writesApplied > 0) {
+                status.meanLatencyMillis = totalLatencyNanos / writesApplied / 1e6;
+                status.meanRunMillis = totalRunNanos / writesApplied / 1e6;
+            }
+            status.maxLatencyMillis = maxLatencyNanos / 1e6;
+            status.lastLatencyMillis = lastLatencyNanos / 1e6;
+        }
+        return status;
     }
 
     public int size() {
@@ -226,4 +332,63 @@ public class GraphUpdaterManager {
         if (id >= updaterList.size()) return null;
         return updaterList.get(id);
     }
+
+    /** A write waiting in the queue, ordered by decreasing priority then submission order. */
+    private static class QueuedWrite implements Comparable<QueuedWrite> {
+
+        /* Replaced when a later write is merged into this one. */
+        GraphWriterRunnable runnable;
+
+        final Object key;
+
+        final int priority;
+
+        final long sequence;
+
+        final long queuedNanos = System.nanoTime();
+
+        final CompletableFuture<Void> future = new CompletableFuture<Void>();
+
+        QueuedWrite(GraphWriterRunnable runnable, Object key, long sequence) {
+            this.runnable = runnable;
+            this.key = key;
+            this.priority = runnable.getPriority();
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(QueuedWrite other) {
+            if (priority != other.priority) {
+                return priority > other.priority ? -1 : 1;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /**
+     * Depth of the write queue and statistics about the writes run so far, for monitoring. The latency of a write is
+     * the time from its submission until it has been run, including the time spent waiting in the queue.
+     */
+    public static class WriteQueueStatus {
+
+        public int queueDepth;
+
+        public Map<Integer, Integer> queueDepthByPriority = Maps.newTreeMap();
+
+        public long applied;
+
+        /** Writes merged into an earlier write that was still waiting in the queue. */
+        public long coalesced;
+
+        public long failed;
+
+        public double meanLatencyMillis;
+
+        public double maxLatencyMillis;
+
+        public double lastLatencyMillis;
+
+        /** Mean time spent running a write, excluding the time spent waiting in the queue. */
+        public double meanRunMillis;
+    }
 }
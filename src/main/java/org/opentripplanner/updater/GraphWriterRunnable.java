@@ -28,8 +28,42 @@ import org.opentripplanner.routing.graph.Graph;
  */
 public interface GraphWriterRunnable {
 
+    /** Priority of writes that should reach the graph as soon as possible, such as real-time trip updates. */
+    public static final int HIGH_PRIORITY = 10;
+
+    public static final int NORMAL_PRIORITY = 0;
+
+    /** Priority of writes that can wait, such as bike rental station updates. */
+    public static final int LOW_PRIORITY = -10;
+
     /**
      * This function is executed to modify the graph.
      */
     public void run(Graph graph);
+
+    /**
+     * Queued writes with a higher priority are run first. Writes with the same priority are run in the order they
+     * were submitted.
+     */
+    public default int getPriority() {
+        return NORMAL_PRIORITY;
+    }
+
+    /**
+     * Writes with the same non-null key, typically coming from the same feed, may be merged while they are waiting
+     * in the queue (see {@link #coalesce(GraphWriterRunnable)}).
+     */
+    public default Object getCoalescingKey() {
+        return null;
+    }
+
+    /**
+     * Merge a write with the same coalescing key, submitted after this one, into a single write. This is only called
+     * while this write is still waiting in the queue.
+     *
+     * @return a write with the same effect as running this one then the later one, or null if they cannot be merged.
+     */
+    public default GraphWriterRunnable coalesce(GraphWriterRunnable later) {
+        return null;
+    }
 }
@@ -11,7 +11,12 @@ import org.opentripplanner.routing.graph.GraphIndex;
 import org.opentripplanner.routing.trippattern.TripTimes;
 
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * This class is used for matching TripDescriptors without trip_ids to scheduled GTFS data and to
@@ -19,11 +24,28 @@ import java.util.BitSet;
  *
  * The class should only be used if we know that the feed producer is unable to produce trip_ids
  * in the GTFS-RT feed.
+ *
+ * The scheduled trips of the graph index are indexed by route, direction and start time the first
+ * time a trip is looked up, so that matching a TripDescriptor does not scan all the trips of its
+ * route. Trips added by real-time updates are not in the graph index, and cannot be matched.
  */
 public class GtfsRealtimeFuzzyTripMatcher {
 
+    /* Number of service dates whose running services are kept, feeds rarely span more than a few. */
+    private static final int MAX_CACHED_DATES = 8;
+
     private GraphIndex index;
 
+    /* Candidate trips for each route, direction and start time, in pattern order. Built once, never modified. */
+    private volatile Map<TripKey, List<TripTimes>> tripsForKey;
+
+    private final Map<ServiceDate, BitSet> servicesForDate = new LinkedHashMap<ServiceDate, BitSet>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ServiceDate, BitSet> eldest) {
+            return size() > MAX_CACHED_DATES;
+        }
+    };
+
     public GtfsRealtimeFuzzyTripMatcher(GraphIndex index) {
         this.index = index;
     }
@@ -74,16 +96,84 @@ public class GtfsRealtimeFuzzyTripMatcher {
 
     public Trip getTrip (Route route, int direction,
                           int startTime, ServiceDate date) {
-        BitSet services = index.servicesRunning(date);
-        for (TripPattern pattern : index.patternsForRoute.get(route)) {
-            if (pattern.directionId != direction) continue;
-            for (TripTimes times : pattern.scheduledTimetable.tripTimes) {
-                if (times.getScheduledDepartureTime(0) == startTime &&
-                        services.get(times.serviceCode)) {
-                    return times.trip;
-                }
+        List<TripTimes> candidates = getTripsForKey().get(new TripKey(route, direction, startTime));
+        if (candidates == null) {
+            return null;
+        }
+        BitSet services = servicesRunning(date);
+        for (TripTimes times : candidates) {
+            if (services.get(times.serviceCode)) {
+                return times.trip;
             }
         }
         return null;
     }
+
+    private Map<TripKey, List<TripTimes>> getTripsForKey() {
+        Map<TripKey, List<TripTimes>> trips = tripsForKey;
+        if (trips == null) {
+            synchronized (this) {
+                trips = tripsForKey;
+                if (trips == null) {
+                    trips = new HashMap<>();
+                    for (TripPattern pattern : index.patternsForRoute.values()) {
+                        indexPattern(pattern, trips);
+                    }
+                    tripsForKey = trips;
+                }
+            }
+        }
+        return trips;
+    }
+
+    private static void indexPattern(TripPattern pattern, Map<TripKey, List<TripTimes>> trips) {
+        for (TripTimes times : pattern.scheduledTimetable.tripTimes) {
+            TripKey key = new TripKey(pattern.route, pattern.directionId, times.getScheduledDepartureTime(0));
+            List<TripTimes> candidates = trips.get(key);
+            List<TripTimes> updated = new ArrayList<>(candidates == null ? 1 : candidates.size() + 1);
+            if (candidates != null) {
+                updated.addAll(candidates);
+            }
+            updated.add(times);
+            trips.put(key, updated);
+        }
+    }
+
+    private BitSet servicesRunning (ServiceDate date) {
+        synchronized (servicesForDate) {
+            BitSet services = servicesForDate.get(date);
+            if (services == null) {
+                services = index.servicesRunning(date);
+                servicesForDate.put(date, services);
+            }
+            return services;
+        }
+    }
+
+    private static class TripKey {
+
+        final Route route;
+
+        final int direction;
+
+        final int startTime;
+
+        TripKey(Route route, int direction, int startTime) {
+            this.route = route;
+            this.direction = direction;
+            this.startTime = startTime;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TripKey)) return false;
+            TripKey other = (TripKey) o;
+            return route.equals(other.route) && direction == other.direction && startTime == other.startTime;
+        }
+
+        @Override
+        public int hashCode() {
+            return (route.hashCode() * 31 + direction) * 31 + startTime;
+        }
+    }
 }
@@ -17,9 +17,9 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.prefs.Preferences;
@@ -30,6 +30,8 @@ import org.opentripplanner.routing.bike_park.BikePark;
 import org.opentripplanner.routing.bike_rental.BikeRentalStationService;
 import org.opentripplanner.routing.edgetype.BikeParkEdge;
 import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.StreetAttachment;
+import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.routing.vertextype.BikeParkVertex;
 import org.opentripplanner.updater.GraphUpdaterManager;
 import org.opentripplanner.updater.GraphWriterRunnable;
@@ -62,7 +64,11 @@ public class BikeParkUpdater extends PollingGraphUpdater {
 
     private GraphUpdaterManager updaterManager;
 
-    Map<BikePark, BikeParkVertex> verticesByPark = new HashMap<BikePark, BikeParkVertex>();
+    /* The parks of the last update, linked to the streets outside the graph. Only used by the polling thread. */
+    private Map<BikePark, StreetAttachment> attachmentsByPark = new LinkedHashMap<>();
+
+    /* The parks last added to the bike rental service. Only used by the graph writer. */
+    private Set<BikePark> parksInService = new HashSet<BikePark>();
 
     private BikeParkDataSource source;
 
@@ -126,11 +132,48 @@ public class BikeParkUpdater extends PollingGraphUpdater {
         }
         List<BikePark> bikeParks = source.getBikeParks();
 
+        // Link the new and changed parks here, outside the graph, so that the graph writer only has to publish them.
+        // Published attachments may be in use by searches and are never modified: a park that moved gets a new
+        // vertex, linked again. The spaces available are published with the attachments instead.
+        Map<BikePark, StreetAttachment> attachments = new LinkedHashMap<>();
+        Map<Vertex, BikePark> states = new HashMap<>();
+        for (BikePark bikePark : bikeParks) {
+            StreetAttachment attachment = attachmentsByPark.get(bikePark);
+            if (attachment == null || hasMoved(attachment.getVertex(), bikePark)) {
+                attachment = attach(bikePark);
+            }
+            attachments.put(bikePark, attachment);
+            states.put(attachment.getVertex(), bikePark);
+        }
+        attachmentsByPark = attachments;
+
         // Create graph writer runnable to apply these stations to the graph
-        BikeParkGraphWriterRunnable graphWriterRunnable = new BikeParkGraphWriterRunnable(bikeParks);
+        BikeParkGraphWriterRunnable graphWriterRunnable = new BikeParkGraphWriterRunnable(bikeParks,
+                new ArrayList<StreetAttachment>(attachments.values()), states);
         updaterManager.execute(graphWriterRunnable);
     }
 
+    private static boolean hasMoved(Vertex vertex, BikePark bikePark) {
+        return vertex.getX() != bikePark.x || vertex.getY() != bikePark.y;
+    }
+
+    /** Create a vertex for the park and link it to the streets, without modifying the graph. */
+    private StreetAttachment attach(BikePark bikePark) {
+        BikeParkVertex bikeParkVertex = new BikeParkVertex(null, bikePark);
+        StreetAttachment attachment = new StreetAttachment(bikeParkVertex);
+        attachment.open();
+        try {
+            if (!linker.link(attachment)) {
+                // the toString includes the text "Bike park"
+                LOG.warn("{} not near any streets; it will not be usable.", bikePark);
+            }
+            new BikeParkEdge(bikeParkVertex);
+        } finally {
+            attachment.close();
+        }
+        return attachment;
+    }
+
     @Override
     public void teardown() {
     }
@@ -139,49 +182,50 @@ public class BikeParkUpdater extends PollingGraphUpdater {
 
         private List<BikePark> bikeParks;
 
-        private BikeParkGraphWriterRunnable(List<BikePark> bikeParks) {
+        private List<StreetAttachment> attachments;
+
+        private Map<Vertex, BikePark> states;
+
+        private BikeParkGraphWriterRunnable(List<BikePark> bikeParks,
+                List<StreetAttachment> attachments, Map<Vertex, BikePark> states) {
             this.bikeParks = bikeParks;
+            this.attachments = attachments;
+            this.states = states;
         }
 
         @Override
         public void run(Graph graph) {
-            // Apply stations to graph
-            Set<BikePark> bikeParkSet = new HashSet<BikePark>();
             /* Add any new park and update space available for existing parks */
+            Set<BikePark> bikeParkSet = new HashSet<BikePark>();
             for (BikePark bikePark : bikeParks) {
                 bikeService.addBikePark(bikePark);
                 bikeParkSet.add(bikePark);
-                BikeParkVertex bikeParkVertex = verticesByPark.get(bikePark);
-                if (bikeParkVertex == null) {
-                    bikeParkVertex = new BikeParkVertex(graph, bikePark);
-                    if (!linker.link(bikeParkVertex)) {
-                        // the toString includes the text "Bike park"
-                        LOG.warn("{} not near any streets; it will not be usable.", bikePark);
-                    }
-                    verticesByPark.put(bikePark, bikeParkVertex);
-                    new BikeParkEdge(bikeParkVertex);
-                } else {
-                    bikeParkVertex.setSpacesAvailable(bikePark.spacesAvailable);
-                }
             }
             /* Remove existing parks that were not present in the update */
-            List<BikePark> toRemove = new ArrayList<BikePark>();
-            for (Entry<BikePark, BikeParkVertex> entry : verticesByPark.entrySet()) {
-                BikePark bikePark = entry.getKey();
-                if (bikeParkSet.contains(bikePark))
-                    continue;
-                BikeParkVertex vertex = entry.getValue();
-                if (graph.containsVertex(vertex)) {
-                    graph.removeVertexAndEdges(vertex);
+            for (BikePark bikePark : parksInService) {
+                if (!bikeParkSet.contains(bikePark)) {
+                    bikeService.removeBikePark(bikePark);
                 }
-                toRemove.add(bikePark);
-                bikeService.removeBikePark(bikePark);
-                // TODO: need to unsplit any streets that were split
-            }
-            for (BikePark bikePark : toRemove) {
-                // post-iteration removal to avoid concurrent modification
-                verticesByPark.remove(bikePark);
             }
+            parksInService = bikeParkSet;
+            // The parks are swapped in one step: searches already running keep the previous ones.
+            graph.setStreetAttachments(BikeParkUpdater.this, attachments, states);
+        }
+
+        @Override
+        public int getPriority() {
+            return LOW_PRIORITY;
+        }
+
+        @Override
+        public Object getCoalescingKey() {
+            return BikeParkUpdater.this;
+        }
+
+        /** Each update holds all the parks, so it replaces any update still waiting to be applied. */
+        @Override
+        public GraphWriterRunnable coalesce(GraphWriterRunnable later) {
+            return later;
         }
     }
 }
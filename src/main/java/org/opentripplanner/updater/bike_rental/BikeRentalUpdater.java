@@ -17,9 +17,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import com.fasterxml.jackson.databind.JsonNode;
@@ -29,6 +29,8 @@ import org.opentripplanner.routing.bike_rental.BikeRentalStationService;
 import org.opentripplanner.routing.edgetype.RentABikeOffEdge;
 import org.opentripplanner.routing.edgetype.RentABikeOnEdge;
 import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.StreetAttachment;
+import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.routing.vertextype.BikeRentalStationVertex;
 import org.opentripplanner.updater.GraphUpdaterManager;
 import org.opentripplanner.updater.GraphWriterRunnable;
@@ -60,7 +62,11 @@ public class BikeRentalUpdater extends PollingGraphUpdater {
 
     private static final String DEFAULT_NETWORK_LIST = "default";
 
-    Map<BikeRentalStation, BikeRentalStationVertex> verticesByStation = new HashMap<BikeRentalStation, BikeRentalStationVertex>();
+    /* The stations of the last update, linked to the streets outside the graph. Only used by the polling thread. */
+    private Map<BikeRentalStation, StreetAttachment> attachmentsByStation = new LinkedHashMap<>();
+
+    /* The stations last added to the bike rental service. Only used by the graph writer. */
+    private Set<BikeRentalStation> stationsInService = new HashSet<BikeRentalStation>();
 
     private BikeRentalDataSource source;
 
@@ -154,11 +160,55 @@ public class BikeRentalUpdater extends PollingGraphUpdater {
         }
         List<BikeRentalStation> stations = source.getStations();
 
+        // Link the new and changed stations here, outside the graph, so that the graph writer only has to publish them.
+        // Published attachments may be in use by searches and are never modified: a station that moved gets a new
+        // vertex, linked again. The bikes and spaces available are published with the attachments instead.
+        Set<String> defaultNetworks = new HashSet<String>(Arrays.asList(network));
+        Map<BikeRentalStation, StreetAttachment> attachments = new LinkedHashMap<>();
+        Map<Vertex, BikeRentalStation> states = new HashMap<>();
+        for (BikeRentalStation station : stations) {
+            if (station.networks == null) {
+                /* API did not provide a network list, use default */
+                station.networks = defaultNetworks;
+            }
+            StreetAttachment attachment = attachmentsByStation.get(station);
+            if (attachment == null || hasMoved(attachment.getVertex(), station)) {
+                attachment = attach(station);
+            }
+            attachments.put(station, attachment);
+            states.put(attachment.getVertex(), station);
+        }
+        attachmentsByStation = attachments;
+
         // Create graph writer runnable to apply these stations to the graph
-        BikeRentalGraphWriterRunnable graphWriterRunnable = new BikeRentalGraphWriterRunnable(stations);
+        BikeRentalGraphWriterRunnable graphWriterRunnable = new BikeRentalGraphWriterRunnable(stations,
+                new ArrayList<StreetAttachment>(attachments.values()), states);
         updaterManager.execute(graphWriterRunnable);
     }
 
+    private static boolean hasMoved(Vertex vertex, BikeRentalStation station) {
+        return vertex.getX() != station.x || vertex.getY() != station.y;
+    }
+
+    /** Create a vertex for the station and link it to the streets, without modifying the graph. */
+    private StreetAttachment attach(BikeRentalStation station) {
+        BikeRentalStationVertex vertex = new BikeRentalStationVertex(null, station);
+        StreetAttachment attachment = new StreetAttachment(vertex);
+        attachment.open();
+        try {
+            if (!linker.link(attachment)) {
+                // the toString includes the text "Bike rental station"
+                LOG.warn("{} not near any streets; it will not be usable.", station);
+            }
+            new RentABikeOnEdge(vertex, vertex, station.networks);
+            if (station.allowDropoff)
+                new RentABikeOffEdge(vertex, vertex, station.networks);
+        } finally {
+            attachment.close();
+        }
+        return attachment;
+    }
+
     @Override
     public void teardown() {
     }
@@ -167,57 +217,50 @@ public class BikeRentalUpdater extends PollingGraphUpdater {
 
         private List<BikeRentalStation> stations;
 
-        public BikeRentalGraphWriterRunnable(List<BikeRentalStation> stations) {
+        private List<StreetAttachment> attachments;
+
+        private Map<Vertex, BikeRentalStation> states;
+
+        public BikeRentalGraphWriterRunnable(List<BikeRentalStation> stations,
+                List<StreetAttachment> attachments, Map<Vertex, BikeRentalStation> states) {
             this.stations = stations;
+            this.attachments = attachments;
+            this.states = states;
         }
 
-		@Override
+        @Override
         public void run(Graph graph) {
-            // Apply stations to graph
-            Set<BikeRentalStation> stationSet = new HashSet<BikeRentalStation>();
-            Set<String> defaultNetworks = new HashSet<String>(Arrays.asList(network));
             /* add any new stations and update bike counts for existing stations */
+            Set<BikeRentalStation> stationSet = new HashSet<BikeRentalStation>();
             for (BikeRentalStation station : stations) {
-                if (station.networks == null) {
-                    /* API did not provide a network list, use default */
-                    station.networks = defaultNetworks;
-                }
                 service.addBikeRentalStation(station);
                 stationSet.add(station);
-                BikeRentalStationVertex vertex = verticesByStation.get(station);
-                if (vertex == null) {
-                    vertex = new BikeRentalStationVertex(graph, station);
-                    if (!linker.link(vertex)) {
-                        // the toString includes the text "Bike rental station"
-                        LOG.warn("{} not near any streets; it will not be usable.", station);
-                    }
-                    verticesByStation.put(station, vertex);
-                    new RentABikeOnEdge(vertex, vertex, station.networks);
-                    if (station.allowDropoff)
-                        new RentABikeOffEdge(vertex, vertex, station.networks);
-                } else {
-                    vertex.setBikesAvailable(station.bikesAvailable);
-                    vertex.setSpacesAvailable(station.spacesAvailable);
-                }
             }
             /* remove existing stations that were not present in the update */
-            List<BikeRentalStation> toRemove = new ArrayList<BikeRentalStation>();
-            for (Entry<BikeRentalStation, BikeRentalStationVertex> entry : verticesByStation.entrySet()) {
-                BikeRentalStation station = entry.getKey();
-                if (stationSet.contains(station))
-                    continue;
-                BikeRentalStationVertex vertex = entry.getValue();
-                if (graph.containsVertex(vertex)) {
-                    graph.removeVertexAndEdges(vertex);
+            for (BikeRentalStation station : stationsInService) {
+                if (!stationSet.contains(station)) {
+                    service.removeBikeRentalStation(station);
                 }
-                toRemove.add(station);
-                service.removeBikeRentalStation(station);
-                // TODO: need to unsplit any streets that were split
-            }
-            for (BikeRentalStation station : toRemove) {
-                // post-iteration removal to avoid concurrent modification
-                verticesByStation.remove(station);
             }
+            stationsInService = stationSet;
+            // The stations are swapped in one step: searches already running keep the previous ones.
+            graph.setStreetAttachments(BikeRentalUpdater.this, attachments, states);
+        }
+
+        @Override
+        public int getPriority() {
+            return LOW_PRIORITY;
+        }
+
+        @Override
+        public Object getCoalescingKey() {
+            return BikeRentalUpdater.this;
+        }
+
+        /** Each update holds all the stations, so it replaces any update still waiting to be applied. */
+        @Override
+        public GraphWriterRunnable coalesce(GraphWriterRunnable later) {
+            return later;
         }
     }
 }
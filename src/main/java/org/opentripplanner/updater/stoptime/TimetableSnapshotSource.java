@@ -17,10 +17,13 @@ import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Calendar;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.onebusaway.gtfs.model.Agency;
@@ -30,6 +33,7 @@ import org.onebusaway.gtfs.model.Stop;
 import org.onebusaway.gtfs.model.StopTime;
 import org.onebusaway.gtfs.model.Trip;
 import org.onebusaway.gtfs.model.calendar.ServiceDate;
+import org.opentripplanner.common.model.T2;
 import org.opentripplanner.model.StopPattern;
 import org.opentripplanner.routing.edgetype.Timetable;
 import org.opentripplanner.routing.edgetype.TimetableSnapshot;
@@ -80,8 +84,9 @@ public class TimetableSnapshotSource {
     /**
      * The last committed snapshot that was handed off to a routing thread. This snapshot may be
      * given to more than one routing thread if the maximum snapshot frequency is exceeded.
+     * Routing threads read it without locking; it is only replaced once a commit is complete.
      */
-    private volatile TimetableSnapshot snapshot = null;
+    private final AtomicReference<TimetableSnapshot> snapshot = new AtomicReference<>();
 
     /**
      * The working copy of the timetable snapshot. Should not be visible to routing threads. Should
@@ -91,7 +96,7 @@ public class TimetableSnapshotSource {
     private final TimetableSnapshot buffer = new TimetableSnapshot();
 
     /**
-     * Lock to indicate that buffer is in use
+     * Lock to indicate that buffer is in use. Routing threads never wait on it.
      */
     private final ReentrantLock bufferLock = new ReentrantLock(true);
 
@@ -105,7 +110,7 @@ public class TimetableSnapshotSource {
 
     protected ServiceDate lastPurgeDate = null;
 
-    protected long lastSnapshotTime = -1;
+    protected volatile long lastSnapshotTime = -1;
 
     private final TimeZone timeZone;
 
@@ -115,6 +120,13 @@ public class TimetableSnapshotSource {
 
     public GtfsRealtimeFuzzyTripMatcher fuzzyTripMatcher;
 
+    /**
+     * For each feed, the last update applied to each trip and service date, so that the trips which did not change
+     * from one full dataset to the next do not need to be applied again. Only modified while holding the bufferLock.
+     * A feed is missing when its next full dataset has to be applied from scratch.
+     */
+    private final Map<String, Map<T2<String, ServiceDate>, AppliedTripUpdate>> appliedTripUpdates = new HashMap<>();
+
     public TimetableSnapshotSource(final Graph graph) {
         timeZone = graph.getTimeZone();
         graphIndex = graph.index;
@@ -132,23 +144,20 @@ public class TimetableSnapshotSource {
      *         release its reference to the snapshot to release resources.
      */
     public TimetableSnapshot getTimetableSnapshot() {
-        TimetableSnapshot snapshotToReturn;
-
-        // Try to get a lock on the buffer
-        if (bufferLock.tryLock()) {
-            // Make a new snapshot if necessary
+        // Only try to publish pending updates when they have been held back by the maximum
+        // snapshot frequency, otherwise the current snapshot is already up to date.
+        if (System.currentTimeMillis() - lastSnapshotTime > maxSnapshotFrequency
+                && bufferLock.tryLock()) {
+            // Committing is cheap as it only touches the timetables changed since the last commit
             try {
-                snapshotToReturn = getTimetableSnapshot(false);
+                return getTimetableSnapshot(false);
             } finally {
                 bufferLock.unlock();
             }
-        } else {
-            // No lock could be obtained because there is either a snapshot commit busy or updates
-            // are applied at this moment, just return the current snapshot
-            snapshotToReturn = snapshot;
         }
-
-        return snapshotToReturn;
+        // Either updates are being applied at this moment, or there is nothing new to publish:
+        // just return the current snapshot, which always reflects complete update messages.
+        return snapshot.get();
     }
 
     private TimetableSnapshot getTimetableSnapshot(final boolean force) {
@@ -156,15 +165,15 @@ public class TimetableSnapshotSource {
         if (force || now - lastSnapshotTime > maxSnapshotFrequency) {
             if (force || buffer.isDirty()) {
                 LOG.debug("Committing {}", buffer.toString());
-                snapshot = buffer.commit(force);
+                snapshot.set(buffer.commit(force));
             } else {
                 LOG.debug("Buffer was unchanged, keeping old snapshot.");
             }
             lastSnapshotTime = System.currentTimeMillis();
         } else {
-            LOG.debug("Snapshot frequency exceeded. Reusing snapshot {}", snapshot);
+            LOG.debug("Snapshot frequency exceeded. Reusing snapshot {}", snapshot.get());
         }
-        return snapshot;
+        return snapshot.get();
     }
 
     /**
@@ -194,13 +203,8 @@ public class TimetableSnapshotSource {
         bufferLock.lock();
 
         try {
-            if (fullDataset) {
-                // Remove all updates from the buffer
-                buffer.clear(feedId);
-            }
-
-            LOG.debug("message contains {} trip updates", updates.size());
-            int uIndex = 0;
+            // Match the trips first, so that updates can be compared trip by trip.
+            List<TripUpdate> matchedUpdates = new ArrayList<TripUpdate>(updates.size());
             for (TripUpdate tripUpdate : updates) {
                 if (fuzzyTripMatcher != null && tripUpdate.hasTrip()) {
                     final TripDescriptor trip = fuzzyTripMatcher.match(feedId, tripUpdate.getTrip());
@@ -211,7 +215,28 @@ public class TimetableSnapshotSource {
                     LOG.warn("Missing TripDescriptor in gtfs-rt trip update: \n{}", tripUpdate);
                     continue;
                 }
+                matchedUpdates.add(tripUpdate);
+            }
 
+            List<TripUpdate> changedUpdates;
+            if (fullDataset) {
+                changedUpdates = resetChangedTrips(feedId, matchedUpdates);
+                if (changedUpdates == null) {
+                    // Remove all updates from the buffer
+                    buffer.clear(feedId);
+                    changedUpdates = matchedUpdates;
+                } else {
+                    LOG.debug("{} of {} trip updates changed since the previous full dataset",
+                            changedUpdates.size(), matchedUpdates.size());
+                }
+            } else {
+                recordDifferentialTripUpdates(feedId, matchedUpdates);
+                changedUpdates = matchedUpdates;
+            }
+
+            LOG.debug("message contains {} trip updates", updates.size());
+            int uIndex = 0;
+            for (TripUpdate tripUpdate : changedUpdates) {
                 ServiceDate serviceDate = new ServiceDate();
                 final TripDescriptor tripDescriptor = tripUpdate.getTrip();
 
@@ -282,6 +307,120 @@ public class TimetableSnapshotSource {
         }
     }
 
+    /**
+     * Compare a full dataset with the previous full dataset of the same feed, and reset the trips that disappeared
+     * from the feed or whose update changed to their scheduled times. Updates are compared without their timestamp,
+     * which many feeds refresh on every message. Only updates of scheduled trips are handled trip by trip: added,
+     * modified or canceled trips can affect other patterns and trips, so any change to them causes the whole feed to
+     * be cleared and applied again, as before.
+     *
+     * @return the updates that still need to be applied, or null if the whole feed has to be cleared and applied.
+     */
+    private List<TripUpdate> resetChangedTrips(final String feedId, final List<TripUpdate> updates) {
+        final Map<T2<String, ServiceDate>, AppliedTripUpdate> previous = appliedTripUpdates.remove(feedId);
+        final Map<T2<String, ServiceDate>, AppliedTripUpdate> current =
+                new LinkedHashMap<T2<String, ServiceDate>, AppliedTripUpdate>();
+        for (TripUpdate tripUpdate : updates) {
+            final T2<String, ServiceDate> key = tripKey(tripUpdate);
+            if (key == null || current.containsKey(key)) {
+                // Updates that cannot be told apart must be applied in order on a cleared feed.
+                return null;
+            }
+            if (tripUpdate.hasTimestamp()) {
+                tripUpdate = tripUpdate.toBuilder().clearTimestamp().build();
+            }
+            final boolean scheduled = determineTripScheduleRelationship(tripUpdate)
+                    == TripDescriptor.ScheduleRelationship.SCHEDULED;
+            current.put(key, new AppliedTripUpdate(tripUpdate, scheduled));
+        }
+        // Whether or not the feed is applied from scratch, these are the updates in the buffer after this message.
+        appliedTripUpdates.put(feedId, current);
+        if (previous == null) {
+            return null;
+        }
+
+        final List<TripUpdate> changed = new ArrayList<TripUpdate>();
+        final List<T2<String, ServiceDate>> reset = new ArrayList<T2<String, ServiceDate>>();
+        for (Map.Entry<T2<String, ServiceDate>, AppliedTripUpdate> entry : current.entrySet()) {
+            final AppliedTripUpdate before = previous.get(entry.getKey());
+            final AppliedTripUpdate after = entry.getValue();
+            if (before != null && before.tripUpdate != null && before.tripUpdate.equals(after.tripUpdate)) {
+                continue;
+            }
+            if (!after.scheduled || (before != null && !before.scheduled)) {
+                return null;
+            }
+            if (before != null) {
+                reset.add(entry.getKey());
+            }
+            changed.add(after.tripUpdate);
+        }
+        for (Map.Entry<T2<String, ServiceDate>, AppliedTripUpdate> entry : previous.entrySet()) {
+            if (!current.containsKey(entry.getKey())) {
+                if (!entry.getValue().scheduled) {
+                    return null;
+                }
+                reset.add(entry.getKey());
+            }
+        }
+        for (T2<String, ServiceDate> key : reset) {
+            resetToScheduledTrip(feedId, key.first, key.second);
+        }
+        return changed;
+    }
+
+    /**
+     * Remember the trips changed by a differential update, so that they are applied again or reset by the next full
+     * dataset even if their update in that dataset is the same as in the previous one.
+     */
+    private void recordDifferentialTripUpdates(final String feedId, final List<TripUpdate> updates) {
+        final Map<T2<String, ServiceDate>, AppliedTripUpdate> applied = appliedTripUpdates.get(feedId);
+        if (applied == null) {
+            return;
+        }
+        for (TripUpdate tripUpdate : updates) {
+            final T2<String, ServiceDate> key = tripKey(tripUpdate);
+            if (key == null) {
+                appliedTripUpdates.remove(feedId);
+                return;
+            }
+            final AppliedTripUpdate before = applied.get(key);
+            final boolean scheduled = determineTripScheduleRelationship(tripUpdate)
+                    == TripDescriptor.ScheduleRelationship.SCHEDULED && (before == null || before.scheduled);
+            applied.put(key, new AppliedTripUpdate(null, scheduled));
+        }
+    }
+
+    /** @return the trip id and service date of a trip update, or null if they cannot be determined. */
+    private T2<String, ServiceDate> tripKey(final TripUpdate tripUpdate) {
+        final TripDescriptor tripDescriptor = tripUpdate.getTrip();
+        if (!tripDescriptor.hasTripId()) {
+            return null;
+        }
+        ServiceDate serviceDate = new ServiceDate();
+        if (tripDescriptor.hasStartDate()) {
+            try {
+                serviceDate = ServiceDate.parseString(tripDescriptor.getStartDate());
+            } catch (final ParseException e) {
+                return null;
+            }
+        }
+        return new T2<String, ServiceDate>(tripDescriptor.getTripId(), serviceDate);
+    }
+
+    /** Put the scheduled trip times of a trip back in the buffer, undoing any update applied to it. */
+    private void resetToScheduledTrip(final String feedId, final String tripId, final ServiceDate serviceDate) {
+        final TripPattern pattern = getPatternForTripId(feedId, tripId);
+        if (pattern == null) {
+            return;
+        }
+        final Timetable timetable = pattern.scheduledTimetable;
+        final int tripIndex = timetable.getTripIndex(tripId);
+        if (tripIndex != -1) {
+            buffer.update(feedId, pattern, timetable.getTripTimes(tripIndex), serviceDate);
+        }
+    }
+
     /**
      * Determine how the trip update should be handled.
      *
@@ -934,6 +1073,10 @@ public class TimetableSnapshotSource {
 
         lastPurgeDate = previously;
 
+        for (Map<T2<String, ServiceDate>, AppliedTripUpdate> applied : appliedTripUpdates.values()) {
+            applied.keySet().removeIf(key -> previously.compareTo(key.second) >= 0);
+        }
+
         return buffer.purgeExpiredData(previously);
     }
 
@@ -986,4 +1129,19 @@ public class TimetableSnapshotSource {
         return stop;
     }
 
+
+    /** The last update applied to a trip on a service date, see {@link #appliedTripUpdates}. */
+    private static class AppliedTripUpdate {
+
+        /** The update from the last full dataset, without timestamp, or null if changed by a differential update. */
+        final TripUpdate tripUpdate;
+
+        /** True if only updates of a scheduled trip were applied, so it can be reset to its scheduled times. */
+        final boolean scheduled;
+
+        AppliedTripUpdate(final TripUpdate tripUpdate, final boolean scheduled) {
+            this.tripUpdate = tripUpdate;
+            this.scheduled = scheduled;
+        }
+    }
 }
@@ -13,6 +13,7 @@
 
 package org.opentripplanner.updater.stoptime;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.opentripplanner.routing.graph.Graph;
@@ -62,4 +63,37 @@ public class TripUpdateGraphWriterRunnable implements GraphWriterRunnable {
                     + " The following updates are not applied: {}", updates);
         }
     }
+
+    @Override
+    public int getPriority() {
+        return HIGH_PRIORITY;
+    }
+
+    /** Updates of the same feed can be merged while they wait for the graph writer. */
+    @Override
+    public Object getCoalescingKey() {
+        return "trip updates " + feedId;
+    }
+
+    /**
+     * A later full dataset replaces everything before it. Differential updates are appended to this write, so that
+     * a burst of small messages is applied in a single step.
+     */
+    @Override
+    public GraphWriterRunnable coalesce(GraphWriterRunnable later) {
+        if (!(later instanceof TripUpdateGraphWriterRunnable)) {
+            return null;
+        }
+        TripUpdateGraphWriterRunnable laterUpdates = (TripUpdateGraphWriterRunnable) later;
+        if (!feedId.equals(laterUpdates.feedId)) {
+            return null;
+        }
+        if (laterUpdates.fullDataset) {
+            return laterUpdates;
+        }
+        List<TripUpdate> merged = new ArrayList<TripUpdate>(updates.size() + laterUpdates.updates.size());
+        merged.addAll(updates);
+        merged.addAll(laterUpdates.updates);
+        return new TripUpdateGraphWriterRunnable(fullDataset, merged, feedId);
+    }
 }
@@ -129,6 +129,11 @@ public class LocalizedString implements I18NString, Serializable {
                 Arrays.equals(params, ((LocalizedString) other).params);
     }
 
+    @Override
+    public int hashCode() {
+        return key.hashCode() * 31 + Arrays.hashCode(params);
+    }
+
     /**
      * Returns translated string in default locale
      * with tag_names replaced with values
@@ -0,0 +1,100 @@
+package org.opentripplanner.analyst;
+
+import junit.framework.TestCase;
+import org.opentripplanner.profile.ProfileRequest;
+import org.opentripplanner.profile.RepeatedRaptorProfileRouter;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class TimeSurfaceTest extends TestCase {
+
+    /** Times set in any order of vertex indexes must be read back, and unknown vertices must be unreachable. */
+    public void testIndexedTimes() {
+        Graph graph = new Graph();
+        Vertex[] vertices = new Vertex[100];
+        for (int i = 0; i < vertices.length; i++) {
+            vertices[i] = new IntersectionVertex(graph, "v" + i, -122 + i * 0.001, 45);
+        }
+        TimeSurface surface = new TimeSurface(new RepeatedRaptorProfileRouter(graph, new ProfileRequest(), null));
+
+        // Start in the middle so the array has to grow in both directions.
+        int[] order = new int[] { 50, 51, 20, 90, 49, 3, 70 };
+        for (int i : order) {
+            surface.setTime(vertices[i], i * 10);
+        }
+        surface.setTime(vertices[20], 5);
+        assertEquals(order.length, surface.countReached());
+
+        surface.trim();
+        for (int i = 0; i < vertices.length; i++) {
+            int expected = TimeSurface.UNREACHABLE;
+            if (i == 20) {
+                expected = 5;
+            } else {
+                for (int j : order) {
+                    if (i == j) expected = i * 10;
+                }
+            }
+            assertEquals(expected, surface.getTime(vertices[i]));
+        }
+
+        Map<Vertex, Integer> visited = new HashMap<>();
+        surface.forEachTime((v, t) -> visited.put(v, t));
+        assertEquals(order.length, visited.size());
+        assertEquals(5, (int) visited.get(vertices[20]));
+        assertEquals(900, (int) visited.get(vertices[90]));
+
+        // The surface can still be modified after trimming.
+        surface.setTime(vertices[99], 990);
+        assertEquals(990, surface.getTime(vertices[99]));
+        assertEquals(500, surface.getTime(vertices[50]));
+    }
+
+    /** The first time set, here on the highest index of the graph, must not depend on the initial empty range. */
+    public void testHighIndexFirst() {
+        Graph graph = new Graph();
+        Vertex[] vertices = new Vertex[40];
+        for (int i = 0; i < vertices.length; i++) {
+            vertices[i] = new IntersectionVertex(graph, "v" + i, -122 + i * 0.001, 45);
+        }
+        TimeSurface surface = new TimeSurface(new RepeatedRaptorProfileRouter(graph, new ProfileRequest(), null));
+        surface.setTime(vertices[39], 390);
+        surface.setTime(vertices[0], 0);
+        assertEquals(390, surface.getTime(vertices[39]));
+        assertEquals(0, surface.getTime(vertices[0]));
+        assertEquals(TimeSurface.UNREACHABLE, surface.getTime(vertices[20]));
+
+        // Emptied by trimming, then set again from a high index.
+        TimeSurface empty = new TimeSurface(new RepeatedRaptorProfileRouter(graph, new ProfileRequest(), null));
+        empty.trim();
+        empty.setTime(vertices[30], 300);
+        assertEquals(300, empty.getTime(vertices[30]));
+    }
+
+    /** Vertices outside the graph, whose indexes keep growing, are kept aside from the graph's own vertices. */
+    public void testVerticesOutsideGraph() {
+        Graph graph = new Graph();
+        Vertex inGraph = new IntersectionVertex(graph, "a", -122, 45);
+        TimeSurface surface = new TimeSurface(new RepeatedRaptorProfileRouter(graph, new ProfileRequest(), null));
+        Vertex outside = new IntersectionVertex(null, "b", -122.001, 45);
+        assertTrue(outside.getIndex() >= graph.getVertexIndexLimit());
+
+        surface.setTime(outside, 60);
+        surface.setTime(inGraph, 30);
+        surface.setTime(outside, 50);
+        assertEquals(2, surface.countReached());
+        surface.trim();
+        assertEquals(30, surface.getTime(inGraph));
+        assertEquals(50, surface.getTime(outside));
+        assertEquals(TimeSurface.UNREACHABLE, surface.getTime(new IntersectionVertex(null, "c", -122.002, 45)));
+
+        Map<Vertex, Integer> visited = new HashMap<>();
+        surface.forEachTime((v, t) -> visited.put(v, t));
+        assertEquals(50, (int) visited.get(outside));
+    }
+
+}
@@ -0,0 +1,98 @@
+package org.opentripplanner.analyst.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import junit.framework.TestCase;
+import org.joda.time.LocalDate;
+import org.opentripplanner.analyst.scenario.ConvertToFrequency;
+import org.opentripplanner.analyst.scenario.Scenario;
+import org.opentripplanner.api.parameter.QualifiedModeSet;
+import org.opentripplanner.profile.ProfileRequest;
+import org.opentripplanner.profile.RaptorWorkerData;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+
+import java.util.Arrays;
+
+import static org.opentripplanner.graph_builder.module.FakeGraph.*;
+
+public class RaptorWorkerDataCacheTest extends TestCase {
+
+    public void testKey () throws Exception {
+        RaptorWorkerDataCache cache = new RaptorWorkerDataCache(new ObjectMapper());
+        String key = cache.key("graph", "points", request());
+        assertEquals(key, cache.key("graph", "points", request()));
+        assertFalse(key.equals(cache.key("other graph", "points", request())));
+        assertFalse(key.equals(cache.key("graph", null, request())));
+
+        ProfileRequest laterWindow = request();
+        laterWindow.toTime += 60;
+        assertFalse(key.equals(cache.key("graph", "points", laterWindow)));
+
+        // Editing a scenario without changing its ID must not reuse the old data.
+        ProfileRequest scenario1 = request();
+        scenario1.scenario = scenario("route1");
+        ProfileRequest scenario2 = request();
+        scenario2.scenario = scenario("route2");
+        assertFalse(cache.key("graph", "points", scenario1).equals(cache.key("graph", "points", scenario2)));
+        scenario2.scenario = scenario("route1");
+        assertEquals(cache.key("graph", "points", scenario1), cache.key("graph", "points", scenario2));
+    }
+
+    public void testReuse () throws Exception {
+        Graph graph = buildGraphNoTransit();
+        addTransit(graph);
+        link(graph);
+        graph.index(new DefaultStreetVertexIndexFactory());
+
+        RaptorWorkerDataCache cache = new RaptorWorkerDataCache(new ObjectMapper());
+        TaskStatistics ts1 = new TaskStatistics();
+        RaptorWorkerData data1 = cache.get("graph", graph, null, null, request(), ts1);
+        assertFalse(ts1.raptorDataCacheHit);
+        assertEquals(0, ts1.raptorDataCacheHits);
+        assertEquals(1, ts1.raptorDataCacheMisses);
+
+        // Another origin of the same job.
+        ProfileRequest request2 = request();
+        request2.fromLat += 0.01;
+        TaskStatistics ts2 = new TaskStatistics();
+        RaptorWorkerData data2 = cache.get("graph", graph, null, null, request2, ts2);
+        assertSame(data1, data2);
+        assertTrue(ts2.raptorDataCacheHit);
+        assertEquals(1, ts2.raptorDataCacheHits);
+        assertEquals(data1.nPatterns, ts2.patternCount);
+
+        // The same graph ID loaded again has different vertex indexes, so its data is built again.
+        Graph reloaded = buildGraphNoTransit();
+        addTransit(reloaded);
+        link(reloaded);
+        reloaded.index(new DefaultStreetVertexIndexFactory());
+        TaskStatistics ts3 = new TaskStatistics();
+        assertNotSame(data1, cache.get("graph", reloaded, null, null, request(), ts3));
+        assertFalse(ts3.raptorDataCacheHit);
+    }
+
+    private static ProfileRequest request () {
+        ProfileRequest request = new ProfileRequest();
+        request.date = new LocalDate(2015, 6, 10);
+        request.fromTime = 7 * 3600;
+        request.toTime = 9 * 3600;
+        request.fromLat = request.toLat = 39.9621;
+        request.fromLon = request.toLon = -83.0007;
+        request.walkSpeed = 1.3f;
+        request.maxWalkTime = 20;
+        request.accessModes = request.egressModes = request.directModes = new QualifiedModeSet("WALK");
+        request.transitModes = new TraverseModeSet("TRANSIT");
+        return request;
+    }
+
+    private static Scenario scenario (String routeId) {
+        ConvertToFrequency ctf = new ConvertToFrequency();
+        ctf.groupBy = ConvertToFrequency.ConversionGroup.ROUTE_DIRECTION;
+        ctf.routeId = new String[] { routeId };
+        Scenario scenario = new Scenario(1);
+        scenario.modifications = Arrays.asList(ctf);
+        return scenario;
+    }
+
+}
@@ -0,0 +1,114 @@
+package org.opentripplanner.analyst.cluster;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.opentripplanner.ConstantsForTests;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+
+import java.io.File;
+
+public class TieredGraphCacheTest extends TestCase {
+
+    /** Serialized graphs are keyed on their inputs, so copies of the same inputs must share a key. */
+    public void testInputHash () throws Exception {
+        File a = Files.createTempDir();
+        File b = Files.createTempDir();
+        try {
+            Files.write("osm", new File(a, "city.osm.pbf"), Charsets.UTF_8);
+            Files.write("gtfs", new File(a, "feed.zip"), Charsets.UTF_8);
+            FileUtils.copyDirectory(a, b);
+            assertEquals(TieredGraphCache.hashInputs(a), TieredGraphCache.hashInputs(b));
+
+            Files.write("other gtfs", new File(b, "feed.zip"), Charsets.UTF_8);
+            assertFalse(TieredGraphCache.hashInputs(a).equals(TieredGraphCache.hashInputs(b)));
+
+            // Same contents under another name.
+            Files.write("gtfs", new File(b, "feed.zip"), Charsets.UTF_8);
+            assertTrue(new File(b, "feed.zip").renameTo(new File(b, "feed2.zip")));
+            assertFalse(TieredGraphCache.hashInputs(a).equals(TieredGraphCache.hashInputs(b)));
+        } finally {
+            FileUtils.deleteDirectory(a);
+            FileUtils.deleteDirectory(b);
+        }
+    }
+
+    /**
+     * Graphs evicted from memory must be loaded again from disk rather than built. The memory limit only fits one
+     * graph here, so each new graph evicts the previous one.
+     */
+    public void testMemoryToDiskFallback () throws Exception {
+        File cacheDirectory = Files.createTempDir();
+        File a = Files.createTempDir();
+        File b = Files.createTempDir();
+        try {
+            Files.write("a", new File(a, "city.osm.pbf"), Charsets.UTF_8);
+            Files.write("b", new File(b, "city.osm.pbf"), Charsets.UTF_8);
+            // Serialize the graphs where the cache expects them, so the test never needs to build a graph.
+            File fileA = new File(cacheDirectory, TieredGraphCache.hashInputs(a) + ".graph");
+            File fileB = new File(cacheDirectory, TieredGraphCache.hashInputs(b) + ".graph");
+            makeGraph().save(fileA);
+            makeGraph().save(fileB);
+            long graphBytes = Math.max(fileA.length(), fileB.length()) * 4;
+
+            TieredGraphCache cache = new TieredGraphCache(cacheDirectory, graphBytes * 3 / 2, Long.MAX_VALUE);
+            Graph graphA = cache.get("a", a);
+            assertEquals(2, graphA.countVertices());
+            assertSame(graphA, cache.get("a", a));
+            assertEquals("a", graphA.routerId);
+
+            Graph graphB = cache.get("b", b);
+            assertEquals(2, graphB.countVertices());
+            assertEquals(1, cache.getGraphIds().size());
+            assertTrue(cache.getGraphIds().contains("b"));
+
+            Graph graphAAgain = cache.get("a", a);
+            assertNotSame(graphA, graphAAgain);
+            assertEquals(2, graphAAgain.countVertices());
+            assertTrue(cache.getGraphIds().contains("a"));
+            assertFalse(cache.getGraphIds().contains("b"));
+            assertTrue(fileA.exists() && fileB.exists());
+
+            cache.invalidateAll();
+            assertTrue(cache.getGraphIds().isEmpty());
+        } finally {
+            FileUtils.deleteDirectory(cacheDirectory);
+            FileUtils.deleteDirectory(a);
+            FileUtils.deleteDirectory(b);
+        }
+    }
+
+    /** Built graphs must be fully indexed, even when a graph builder module already set a partial index. */
+    public void testBuiltGraphIsIndexed () throws Exception {
+        File cacheDirectory = Files.createTempDir();
+        File inputs = Files.createTempDir();
+        try {
+            Files.copy(new File(ConstantsForTests.FAKE_GTFS), new File(inputs, "gtfs.zip"));
+            TieredGraphCache cache = new TieredGraphCache(cacheDirectory, Long.MAX_VALUE, Long.MAX_VALUE);
+            Graph graph = cache.get("built", inputs);
+            assertEquals("built", graph.routerId);
+            assertNotNull(graph.streetIndex);
+            assertFalse(graph.index.stopForId.isEmpty());
+            assertFalse(graph.index.vertexForId.isEmpty());
+            assertTrue(new File(cacheDirectory, TieredGraphCache.hashInputs(inputs) + ".graph").exists());
+        } finally {
+            FileUtils.deleteDirectory(cacheDirectory);
+            FileUtils.deleteDirectory(inputs);
+        }
+    }
+
+    private static Graph makeGraph () {
+        Graph graph = new Graph();
+        IntersectionVertex v1 = new IntersectionVertex(graph, "v1", -122.00, 45.00);
+        IntersectionVertex v2 = new IntersectionVertex(graph, "v2", -122.01, 45.00);
+        new StreetEdge(v1, v2, GeometryUtils.makeLineString(-122.00, 45.00, -122.01, 45.00),
+                "Main Street", 790, StreetTraversalPermission.ALL, false);
+        return graph;
+    }
+
+}
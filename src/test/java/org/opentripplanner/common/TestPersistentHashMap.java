@@ -0,0 +1,124 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.common;
+
+import junit.framework.TestCase;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class TestPersistentHashMap extends TestCase {
+
+    /** A key with a deliberately poor hash function, to exercise collisions at every level of the trie. */
+    private static class Key {
+        final int id;
+        final int hash;
+
+        Key(int id, int hash) {
+            this.id = id;
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).id == id;
+        }
+
+        @Override
+        public String toString() {
+            return "Key(" + id + ")";
+        }
+    }
+
+    public void testSimple() {
+        PersistentHashMap<String, Integer> empty = PersistentHashMap.empty();
+        PersistentHashMap<String, Integer> one = empty.plus("one", 1);
+        PersistentHashMap<String, Integer> two = one.plus("two", 2);
+        assertEquals(0, empty.size());
+        assertNull(empty.get("one"));
+        assertEquals(1, one.size());
+        assertNull(one.get("two"));
+        assertEquals(2, two.size());
+        assertEquals(Integer.valueOf(1), two.get("one"));
+        assertEquals(Integer.valueOf(2), two.get("two"));
+
+        assertSame(two, two.plus("two", two.get("two")));
+        assertSame(two, two.minus("three"));
+        PersistentHashMap<String, Integer> replaced = two.plus("two", 22);
+        assertEquals(2, replaced.size());
+        assertEquals(Integer.valueOf(22), replaced.get("two"));
+        assertEquals(Integer.valueOf(2), two.get("two"));
+
+        assertTrue(two.minus("one").minus("two").isEmpty());
+        assertEquals(2, two.size());
+    }
+
+    public void testNullValues() {
+        PersistentHashMap<String, Integer> map = PersistentHashMap.<String, Integer>empty().plus("a", null);
+        assertTrue(map.containsKey("a"));
+        assertFalse(map.containsKey("b"));
+        assertNull(map.get("a"));
+        assertEquals(1, map.size());
+    }
+
+    /** Compare against a HashMap through a random sequence of operations, checking older versions stay unchanged. */
+    public void testRandomOperations() {
+        Random random = new Random(42);
+        for (int hashRange : new int[] { 4, 100, Integer.MAX_VALUE }) {
+            PersistentHashMap<Key, Integer> map = PersistentHashMap.empty();
+            Map<Integer, Key> keys = new HashMap<>();
+            Map<Key, Integer> expected = new HashMap<>();
+            PersistentHashMap<Key, Integer> oldMap = map;
+            Map<Key, Integer> oldExpected = new HashMap<>();
+            for (int i = 0; i < 5000; i++) {
+                int id = random.nextInt(500);
+                Key key = keys.computeIfAbsent(id, k -> new Key(k, random.nextInt(hashRange)));
+                if (random.nextInt(3) == 0) {
+                    map = map.minus(key);
+                    expected.remove(key);
+                } else {
+                    map = map.plus(key, i);
+                    expected.put(key, i);
+                }
+                if (i % 250 == 0) {
+                    assertSameContents(oldExpected, oldMap);
+                    oldMap = map;
+                    oldExpected = new HashMap<>(expected);
+                }
+            }
+            assertSameContents(expected, map);
+            for (Key key : keys.values()) {
+                map = map.minus(key);
+            }
+            assertTrue(map.isEmpty());
+        }
+    }
+
+    private static void assertSameContents(Map<Key, Integer> expected, PersistentHashMap<Key, Integer> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (Map.Entry<Key, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), actual.get(entry.getKey()));
+        }
+        Map<Key, Integer> iterated = new HashMap<>();
+        actual.forEach(iterated::put);
+        assertEquals(expected, iterated);
+    }
+
+}
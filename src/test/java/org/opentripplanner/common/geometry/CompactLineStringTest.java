@@ -84,6 +84,18 @@ public class CompactLineStringTest extends TestCase {
         assertTrue(lsi.equalsExact(ls2, 0.00000015));
         ls3 = CompactLineString.uncompackLineString(x1, y1, x0, y0, packedCoords, true);
         assertTrue(lsi.equalsExact(ls2, 0.00000015));
+
+        // Test uncompacting into a plain coordinate array, in both directions
+        double[] xy = new double[2 * CompactLineString.numPoints(coords) + 4];
+        for (boolean reverse : new boolean[] { false, true }) {
+            LineString expected = CompactLineString.uncompactLineString(x0, y0, x1, y1, coords, reverse);
+            int n = CompactLineString.uncompactCoordinates(x0, y0, x1, y1, coords, reverse, xy);
+            assertEquals(expected.getNumPoints(), n);
+            for (int i = 0; i < n; i++) {
+                assertEquals(expected.getCoordinateN(i).x, xy[i * 2], 0.0);
+                assertEquals(expected.getCoordinateN(i).y, xy[i * 2 + 1], 0.0);
+            }
+        }
     }
 
     @Test
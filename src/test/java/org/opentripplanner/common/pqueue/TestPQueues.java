@@ -143,4 +143,32 @@ public class TestPQueues extends TestCase {
 
         }
     }    
+
+    public void testPooledHeapIsClearedAndReused() {
+        BinHeapPool<Integer> pool = new BinHeapPool<Integer>(100);
+        BinHeap<Integer> bh = pool.acquire(20);
+        for (int i = 0; i < 50; i++) {
+            bh.insert(i, i);
+        }
+        pool.release(bh);
+        assertEquals(1, pool.pooledCount());
+
+        // the same heap comes back out of the pool, empty
+        BinHeap<Integer> reused = pool.acquire(20);
+        assertSame(bh, reused);
+        assertTrue(reused.empty());
+        assertNull(reused.peek_min());
+        assertEquals(0, pool.pooledCount());
+
+        // nested acquisitions on the same thread must get distinct heaps
+        BinHeap<Integer> nested = pool.acquire(20);
+        assertNotSame(reused, nested);
+
+        // heaps that grew too large are dropped rather than pooled
+        for (int i = 0; i < 500; i++) {
+            nested.insert(i, i);
+        }
+        pool.release(nested);
+        assertEquals(0, pool.pooledCount());
+    }
 }
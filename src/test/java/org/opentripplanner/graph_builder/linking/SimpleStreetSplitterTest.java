@@ -3,12 +3,29 @@ package org.opentripplanner.graph_builder.linking;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.opentripplanner.common.geometry.GeometryUtils;
 import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.routing.bike_rental.BikeRentalStation;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.edgetype.TemporaryFreeEdge;
 import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.RealtimeStreetOverlay;
+import org.opentripplanner.routing.graph.StreetAttachment;
+import org.opentripplanner.routing.graph.TemporaryEdgeOverlay;
 import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.location.TemporaryStreetLocation;
+import org.opentripplanner.routing.vertextype.BikeRentalStationVertex;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
 
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.spy;
@@ -40,4 +57,97 @@ public class SimpleStreetSplitterTest {
         spySimpleStreetSplitter.getClosestVertex(genericLocation, routingRequest, true);
         verify(spySimpleStreetSplitter).link(any(Vertex.class), eq(TraverseMode.WALK), eq(routingRequest));
     }
+
+    /**
+     * Tests that linking an origin and destination while a temporary edge overlay is open does not add anything to
+     * the permanent vertices, and that the overlay makes the new edges visible from them.
+     */
+    @Test
+    public void testLinkingInOverlayLeavesGraphUntouched() {
+        Graph graph = new Graph();
+        IntersectionVertex a = new IntersectionVertex(graph, "a", -122.00, 45.00);
+        IntersectionVertex b = new IntersectionVertex(graph, "b", -122.01, 45.00);
+        new StreetEdge(a, b, GeometryUtils.makeLineString(-122.00, 45.00, -122.01, 45.00),
+                "Main Street", 790, StreetTraversalPermission.ALL, false);
+        new StreetEdge(b, a, GeometryUtils.makeLineString(-122.01, 45.00, -122.00, 45.00),
+                "Main Street", 790, StreetTraversalPermission.ALL, true);
+        SimpleStreetSplitter splitter = new SimpleStreetSplitter(graph, null, null, false);
+
+        TemporaryEdgeOverlay overlay = new TemporaryEdgeOverlay();
+        Vertex origin;
+        Vertex destination;
+        overlay.open();
+        try {
+            origin = splitter.getClosestVertex(new GenericLocation(45.0001, -122.003), null, false);
+            destination = splitter.getClosestVertex(new GenericLocation(45.0001, -122.007), null, true);
+        } finally {
+            overlay.close();
+        }
+
+        for (Vertex v : new Vertex[] { a, b }) {
+            assertEquals(1, v.getDegreeOut());
+            assertEquals(1, v.getDegreeIn());
+        }
+        assertFalse(origin.getOutgoing().isEmpty());
+        assertFalse(destination.getIncoming().isEmpty());
+        assertFalse(overlay.isEmpty());
+        // Both streets are split at the origin, leading on to a and b, and at the destination, coming from a and b.
+        assertTrue(overlay.getIncoming(a).size() > 1 && overlay.getIncoming(b).size() > 1);
+        assertTrue(overlay.getOutgoing(a).size() > 1 && overlay.getOutgoing(b).size() > 1);
+
+        // Temporary edges created once the overlay is closed go back to being added to the graph.
+        new TemporaryFreeEdge(a, (TemporaryStreetLocation) destination);
+        assertEquals(2, a.getDegreeOut());
+    }
+
+    /**
+     * Tests that a bike rental station linked in a street attachment leaves the graph untouched, and only becomes
+     * visible to the snapshots published after it.
+     */
+    @Test
+    public void testLinkingStreetAttachmentLeavesGraphUntouched() {
+        Graph graph = new Graph();
+        IntersectionVertex a = new IntersectionVertex(graph, "a", -122.00, 45.00);
+        IntersectionVertex b = new IntersectionVertex(graph, "b", -122.01, 45.00);
+        new StreetEdge(a, b, GeometryUtils.makeLineString(-122.00, 45.00, -122.01, 45.00),
+                "Main Street", 790, StreetTraversalPermission.ALL, false);
+        new StreetEdge(b, a, GeometryUtils.makeLineString(-122.01, 45.00, -122.00, 45.00),
+                "Main Street", 790, StreetTraversalPermission.ALL, true);
+        SimpleStreetSplitter splitter = new SimpleStreetSplitter(graph);
+
+        BikeRentalStation station = new BikeRentalStation();
+        station.id = "1";
+        station.x = -122.005;
+        station.y = 45.0001;
+        BikeRentalStationVertex vertex = new BikeRentalStationVertex(null, station);
+        StreetAttachment attachment = new StreetAttachment(vertex);
+        attachment.open();
+        try {
+            assertTrue(splitter.link(attachment));
+        } finally {
+            attachment.close();
+        }
+
+        assertEquals(2, graph.getVertices().size());
+        assertEquals(2, graph.getEdges().size());
+        for (Vertex v : new Vertex[] { a, b }) {
+            assertEquals(1, v.getDegreeOut());
+            assertEquals(1, v.getDegreeIn());
+        }
+        // The station is linked to a split vertex on each of the two streets.
+        assertEquals(2, vertex.getDegreeOut());
+        assertEquals(2, vertex.getDegreeIn());
+
+        RealtimeStreetOverlay before = graph.getRealtimeStreetOverlay();
+        graph.setStreetAttachments(this, Collections.singletonList(attachment));
+        RealtimeStreetOverlay after = graph.getRealtimeStreetOverlay();
+        assertEquals(1, before.getOutgoing(a, a.getOutgoing()).size());
+        assertEquals(2, after.getOutgoing(a, a.getOutgoing()).size());
+        assertEquals(2, after.getIncoming(b, b.getIncoming()).size());
+        assertSame(attachment, after.getAttachments(this).get(0));
+
+        graph.setStreetAttachments(this, Collections.<StreetAttachment>emptyList());
+        assertTrue(graph.getRealtimeStreetOverlay().isEmpty());
+        assertEquals(2, after.getOutgoing(a, a.getOutgoing()).size());
+    }
 }
@@ -0,0 +1,46 @@
+package org.opentripplanner.graph_builder.module;
+
+import junit.framework.TestCase;
+import org.opentripplanner.routing.edgetype.SimpleTransfer;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.vertextype.TransitStop;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.opentripplanner.graph_builder.module.FakeGraph.*;
+
+public class DirectTransferGeneratorTest extends TestCase {
+
+    /** The searches run in parallel, but the transfers must be the same, created in the same order, on every build. */
+    public void testTransfersAreDeterministic () throws Exception {
+        List<String> transfers = buildTransfers();
+        assertFalse(transfers.isEmpty());
+        assertEquals(transfers, buildTransfers());
+    }
+
+    private static List<String> buildTransfers () throws Exception {
+        Graph graph = buildGraphNoTransit();
+        addTransitMultipleLines(graph);
+        link(graph);
+        new DirectTransferGenerator(1000).buildGraph(graph, new HashMap<>());
+        assertTrue(graph.hasDirectTransfers);
+
+        List<String> transfers = new ArrayList<>();
+        for (Vertex v : graph.getVertices()) {
+            if (!(v instanceof TransitStop)) continue;
+            for (Edge e : v.getOutgoing()) {
+                if (e instanceof SimpleTransfer) {
+                    assertNotSame(e.getFromVertex(), e.getToVertex());
+                    transfers.add(e.getFromVertex().getLabel() + " " + e.getToVertex().getLabel() + " "
+                            + Math.round(e.getDistance()));
+                }
+            }
+        }
+        return transfers;
+    }
+
+}
@@ -17,6 +17,8 @@ import static org.junit.Assert.assertEquals;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 
@@ -29,7 +31,9 @@ import org.onebusaway.gtfs.services.MockGtfs;
 import org.opentripplanner.graph_builder.model.GtfsBundle;
 import org.opentripplanner.gtfs.BikeAccess;
 import org.opentripplanner.routing.edgetype.TripPattern;
+import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
 
 public class GtfsGraphBuilderModuleTest {
@@ -96,6 +100,45 @@ public class GtfsGraphBuilderModuleTest {
                 BikeAccess.fromTrip(withId(trips, new AgencyAndId(feedId.getId(), "t1"))));
     }
 
+    /** Loading feeds in parallel must build the same graph as loading them one at a time. */
+    @Test
+    public void testParallelLoadingMatchesSerial() throws IOException {
+        MockGtfs first = getSimpleGtfs();
+        MockGtfs second = getSimpleGtfs();
+        second.putStops(3);
+        second.putTrips(1, "r0", "sid0");
+        second.putStopTimes("t0", "s0,s1,s2");
+
+        GtfsModule serialModule = new GtfsModule(getGtfsAsBundleList(first, second));
+        serialModule.setMaxFeedsLoadedAtOnce(1);
+        Graph serial = new Graph();
+        serialModule.buildGraph(serial, _extra);
+
+        GtfsModule parallelModule = new GtfsModule(getGtfsAsBundleList(first, second));
+        parallelModule.setMaxFeedsLoadedAtOnce(2);
+        Graph parallel = new Graph();
+        parallelModule.buildGraph(parallel, _extra);
+
+        assertEquals(describe(serial), describe(parallel));
+        assertEquals(serial.getFeedIds(), parallel.getFeedIds());
+        assertEquals(serial.getAgencies("FEED0").size(), parallel.getAgencies("FEED0").size());
+    }
+
+    /** The vertices in the order they were created, each with its outgoing edges. */
+    private static List<String> describe(Graph graph) {
+        List<Vertex> vertices = new ArrayList<>(graph.getVertices());
+        Collections.sort(vertices, (a, b) -> Integer.compare(a.getIndex(), b.getIndex()));
+        List<String> description = new ArrayList<>();
+        for (Vertex v : vertices) {
+            StringBuilder sb = new StringBuilder(v.getClass().getSimpleName()).append(' ').append(v.getLabel());
+            for (Edge e : v.getOutgoing()) {
+                sb.append(' ').append(e.getClass().getSimpleName()).append('>').append(e.getToVertex().getLabel());
+            }
+            description.add(sb.toString());
+        }
+        return description;
+    }
+
     private MockGtfs getSimpleGtfs() throws IOException {
         MockGtfs gtfs = MockGtfs.create();
         gtfs.putAgencies(1);
@@ -116,6 +159,17 @@ public class GtfsGraphBuilderModuleTest {
         return list;
     }
 
+    private static List<GtfsBundle> getGtfsAsBundleList (MockGtfs... feeds) {
+        List<GtfsBundle> list = Lists.newArrayList();
+        for (int i = 0; i < feeds.length; i++) {
+            GtfsBundle bundle = new GtfsBundle();
+            bundle.setFeedId(new GtfsFeedId.Builder().id("FEED" + i).build());
+            bundle.setPath(feeds[i].getPath());
+            list.add(bundle);
+        }
+        return list;
+    }
+
     private static <S extends Serializable, T extends IdentityBean<S>> T withId(Iterable<T> beans,
             S id) {
         for (T bean : beans) {
@@ -0,0 +1,124 @@
+package org.opentripplanner.graph_builder.module.ned;
+
+import junit.framework.TestCase;
+import org.geotools.coverage.grid.GridCoverageFactory;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.opengis.coverage.Coverage;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.common.geometry.PackedCoordinateSequence;
+import org.opentripplanner.graph_builder.services.ned.ElevationGridCoverageFactory;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.edgetype.StreetWithElevationEdge;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class ElevationModuleTest extends TestCase {
+
+    private static final int GRID_SIZE = 30;
+
+    private static final double GRID_STEP = 0.01;
+
+    /** Sampling the cells in parallel must give the same profiles as sampling them one after the other. */
+    public void testParallelMatchesSerial () {
+        Coverage dem = makeDem();
+
+        Graph serialGraph = makeGraph();
+        ElevationModule serial = new ElevationModule(new FixedCoverageFactory(dem));
+        serial.setParallel(false);
+        serial.buildGraph(serialGraph, new HashMap<Class<?>, Object>());
+
+        Graph parallelGraph = makeGraph();
+        new ElevationModule(new FixedCoverageFactory(dem)).buildGraph(parallelGraph, new HashMap<Class<?>, Object>());
+
+        Map<String, PackedCoordinateSequence> serialProfiles = profiles(serialGraph);
+        Map<String, PackedCoordinateSequence> parallelProfiles = profiles(parallelGraph);
+        assertEquals(2 * GRID_SIZE * (GRID_SIZE - 1), serialProfiles.size());
+        assertEquals(serialProfiles.keySet(), parallelProfiles.keySet());
+        for (Map.Entry<String, PackedCoordinateSequence> entry : serialProfiles.entrySet()) {
+            PackedCoordinateSequence expected = entry.getValue();
+            PackedCoordinateSequence actual = parallelProfiles.get(entry.getKey());
+            assertNotNull(entry.getKey(), expected);
+            assertEquals(entry.getKey(), expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.getOrdinate(i, 0), actual.getOrdinate(i, 0), 0);
+                assertEquals(expected.getOrdinate(i, 1), actual.getOrdinate(i, 1), 0);
+            }
+        }
+    }
+
+    /** A grid of streets spanning several sampling cells, so that several tasks sample it. */
+    private static Graph makeGraph () {
+        Graph graph = new Graph();
+        IntersectionVertex[][] vertices = new IntersectionVertex[GRID_SIZE][GRID_SIZE];
+        for (int i = 0; i < GRID_SIZE; i++) {
+            for (int j = 0; j < GRID_SIZE; j++) {
+                vertices[i][j] = new IntersectionVertex(graph, i + "_" + j, -122.15 + i * GRID_STEP,
+                        45.35 + j * GRID_STEP);
+            }
+        }
+        for (int i = 0; i < GRID_SIZE; i++) {
+            for (int j = 0; j < GRID_SIZE; j++) {
+                if (i + 1 < GRID_SIZE) makeEdge(vertices[i][j], vertices[i + 1][j]);
+                if (j + 1 < GRID_SIZE) makeEdge(vertices[i][j], vertices[i][j + 1]);
+            }
+        }
+        return graph;
+    }
+
+    private static void makeEdge (IntersectionVertex from, IntersectionVertex to) {
+        new StreetWithElevationEdge(from, to, GeometryUtils.makeLineString(from.getX(), from.getY(), to.getX(),
+                to.getY()), from.getLabel() + "-" + to.getLabel(), 800, StreetTraversalPermission.ALL, false);
+    }
+
+    /** Rolling terrain, so that neighbouring samples differ. */
+    private static Coverage makeDem () {
+        float[][] heights = new float[200][200];
+        for (int row = 0; row < heights.length; row++) {
+            for (int col = 0; col < heights[row].length; col++) {
+                heights[row][col] = (float) (100 + 50 * Math.sin(row / 7.0) + 30 * Math.cos(col / 5.0));
+            }
+        }
+        ReferencedEnvelope envelope = new ReferencedEnvelope(-122.2, -121.8, 45.3, 45.7,
+                DefaultGeographicCRS.WGS84);
+        return new GridCoverageFactory().create("dem", heights, envelope);
+    }
+
+    private static Map<String, PackedCoordinateSequence> profiles (Graph graph) {
+        Map<String, PackedCoordinateSequence> profiles = new HashMap<>();
+        for (Vertex v : graph.getVertices()) {
+            for (Edge e : v.getOutgoing()) {
+                profiles.put(e.getName(), ((StreetWithElevationEdge) e).getElevationProfile());
+            }
+        }
+        return profiles;
+    }
+
+    private static class FixedCoverageFactory implements ElevationGridCoverageFactory {
+
+        private final Coverage coverage;
+
+        FixedCoverageFactory (Coverage coverage) {
+            this.coverage = coverage;
+        }
+
+        @Override
+        public Coverage getGridCoverage () {
+            return coverage;
+        }
+
+        @Override
+        public void checkInputs () {
+        }
+
+        @Override
+        public void setGraph (Graph graph) {
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.graph_builder.module.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URLDecoder;
+
+import org.junit.Test;
+import org.opentripplanner.openstreetmap.impl.BinaryFileBasedOpenStreetMapProviderImpl;
+import org.opentripplanner.openstreetmap.model.OSMNode;
+import org.opentripplanner.openstreetmap.model.OSMWay;
+
+public class OSMDatabaseTest {
+
+    @Test
+    public void testNodesOfWaysAreKept() throws Exception {
+        BinaryFileBasedOpenStreetMapProviderImpl pr = new BinaryFileBasedOpenStreetMapProviderImpl();
+        pr.setPath(new File(URLDecoder.decode(getClass().getResource("map.osm.pbf").getPath(), "UTF-8")));
+        OSMDatabase osmdb = new OSMDatabase();
+        pr.readOSM(osmdb);
+        osmdb.postLoad();
+
+        assertFalse(osmdb.getWays().isEmpty());
+        for (OSMWay way : osmdb.getWays()) {
+            for (Long nodeId : way.getNodeRefs()) {
+                assertTrue(osmdb.isNodeBelongsToWay(nodeId));
+                OSMNode node = osmdb.getNode(nodeId);
+                if (node == null) {
+                    // The way leaves the extract.
+                    continue;
+                }
+                assertEquals(nodeId.longValue(), node.getId());
+            }
+        }
+    }
+
+    @Test
+    public void testUnusedNodeTagsAreDiscarded() {
+        OSMDatabase osmdb = new OSMDatabase();
+        OSMWay way = new OSMWay();
+        way.setId(1);
+        way.addTag("highway", "residential");
+        way.addNodeRef(10);
+        way.addNodeRef(11);
+        osmdb.addWay(way);
+        osmdb.doneSecondPhaseWays();
+
+        OSMNode imported = new OSMNode();
+        imported.setId(10);
+        imported.addTag("created_by", "JOSM");
+        imported.addTag("tiger:county", "Multnomah, OR");
+        osmdb.addNode(imported);
+
+        OSMNode signal = new OSMNode();
+        signal.setId(11);
+        signal.addTag("highway", "traffic_signals");
+        signal.addTag("source", "survey");
+        osmdb.addNode(signal);
+
+        assertNull(osmdb.getNode(10L).getTags());
+        assertNotNull(osmdb.getNode(11L));
+        assertTrue(osmdb.getNode(11L).hasTrafficLight());
+        assertFalse(osmdb.getNode(11L).hasTag("source"));
+        assertEquals(2, way.getNodeRefs().size());
+        assertEquals(11L, way.getNodeRefs().get(1).longValue());
+    }
+}
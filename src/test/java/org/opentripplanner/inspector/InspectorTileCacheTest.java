@@ -0,0 +1,147 @@
+package org.opentripplanner.inspector;
+
+import com.google.common.io.Files;
+import com.vividsolutions.jts.geom.Coordinate;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.opentripplanner.inspector.InspectorTileCache.CachedTile;
+import org.opentripplanner.routing.graph.Graph;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Collections;
+
+public class InspectorTileCacheTest extends TestCase {
+
+    /** Tiles are rendered once, then served from memory with the same ETag. */
+    public void testMemoryCache () throws Exception {
+        CountingRenderer renderer = new CountingRenderer();
+        InspectorTileCache cache = new InspectorTileCache(manager(new Graph(), renderer), new Graph(),
+                null, 1024 * 1024, 0);
+
+        CachedTile tile = cache.getTile("test", 10, 511, 340, "png");
+        assertEquals("image/png", tile.mimeType);
+        assertSame(tile, cache.getTile("test", 10, 511, 340, "png"));
+        assertEquals(1, renderer.nRaster);
+
+        CachedTile vector = cache.getTile("test", 10, 511, 340, "pbf");
+        assertEquals(InspectorTileCache.VECTOR_TILE_MIME_TYPE, vector.mimeType);
+        // A tile message with a single layer (field 3, length delimited)
+        assertEquals(0x1A, vector.bytes[0]);
+        assertFalse(vector.eTag.equals(tile.eTag));
+        assertEquals(1, renderer.nVector);
+
+        try {
+            cache.getTile("unknown", 10, 511, 340, "png");
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            cache.getTile("test", 1, 2, 0, "png");
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    /** Vector tiles of a layer without a vector renderer are refused before anything is rendered. */
+    public void testRasterOnlyLayer () throws Exception {
+        CountingRenderer renderer = new CountingRenderer();
+        TileRendererManager manager = manager(new Graph(), renderer);
+        manager.registerRenderer("raster", new TileRenderer() {
+            @Override
+            public int getColorModel () {
+                return BufferedImage.TYPE_INT_ARGB;
+            }
+
+            @Override
+            public void renderTile (TileRenderContext context) {
+            }
+
+            @Override
+            public String getName () {
+                return "Raster";
+            }
+        });
+        InspectorTileCache cache = new InspectorTileCache(manager, new Graph(), null, 1024 * 1024, 0);
+        assertEquals("image/png", cache.getTile("raster", 10, 511, 340, "png").mimeType);
+        try {
+            cache.getTile("raster", 10, 511, 340, "pbf");
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    /** Tiles on disk are reused for the same graph and deleted for another graph of the router. */
+    public void testDiskCache () throws Exception {
+        File directory = Files.createTempDir();
+        try {
+            Graph graph = new Graph();
+            CountingRenderer renderer = new CountingRenderer();
+            InspectorTileCache cache = new InspectorTileCache(manager(graph, renderer), graph,
+                    directory, 1024 * 1024, 1024 * 1024);
+            cache.awaitDiskScan();
+            CachedTile tile = cache.getTile("test", 10, 511, 340, "png");
+            cache.shutdown();
+
+            cache = new InspectorTileCache(manager(graph, renderer), graph, directory, 1024 * 1024,
+                    1024 * 1024);
+            cache.awaitDiskScan();
+            assertEquals(tile.eTag, cache.getTile("test", 10, 511, 340, "png").eTag);
+            assertEquals(1, renderer.nRaster);
+            cache.shutdown();
+
+            Graph reloaded = new Graph();
+            reloaded.buildTime.setTime(graph.buildTime.getTime() + 1000);
+            cache = new InspectorTileCache(manager(reloaded, renderer), reloaded, directory,
+                    1024 * 1024, 1024 * 1024);
+            cache.awaitDiskScan();
+            cache.getTile("test", 10, 511, 340, "png");
+            assertEquals(2, renderer.nRaster);
+            // Only the tiles of the reloaded graph are left
+            assertEquals(1, directory.listFiles().length);
+        } finally {
+            FileUtils.deleteDirectory(directory);
+        }
+    }
+
+    private static TileRendererManager manager (Graph graph, TileRenderer renderer) {
+        TileRendererManager manager = new TileRendererManager(graph);
+        manager.registerRenderer("test", renderer);
+        return manager;
+    }
+
+    private static class CountingRenderer implements TileRenderer, VectorTileRenderer {
+
+        int nRaster = 0;
+
+        int nVector = 0;
+
+        @Override
+        public int getColorModel () {
+            return BufferedImage.TYPE_INT_ARGB;
+        }
+
+        @Override
+        public void renderTile (TileRenderContext context) {
+            nRaster++;
+            context.graphics.setColor(Color.RED);
+            context.graphics.drawLine(0, 0, context.tileWidth, context.tileHeight);
+        }
+
+        @Override
+        public void renderVectorTile (TileRenderContext context, VectorTileEncoder encoder) {
+            nVector++;
+            Coordinate[] diagonal = new Coordinate[] {
+                    new Coordinate(context.bbox.getMinX(), context.bbox.getMaxY()),
+                    new Coordinate(context.bbox.getMaxX(), context.bbox.getMinY()) };
+            assertTrue(encoder.addLineString(diagonal, Collections.singletonMap("color", "#ff0000")));
+        }
+
+        @Override
+        public String getName () {
+            return "Test";
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.openstreetmap.impl;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.opentripplanner.openstreetmap.model.OSMNode;
+import org.opentripplanner.openstreetmap.model.OSMRelation;
+import org.opentripplanner.openstreetmap.model.OSMWay;
+import org.opentripplanner.openstreetmap.services.OpenStreetMapContentHandler;
+
+import crosby.binary.file.BlockInputStream;
+
+public class ParallelBinaryOpenStreetMapReaderTest {
+
+    /** The entities must reach the handler in the same order as with the single-threaded parser. */
+    @Test
+    public void testSameEntitiesInSameOrder() throws Exception {
+        for (String name : new String[] { "map.osm.pbf", "skoyen.osm.pbf" }) {
+            File file = new File(URLDecoder.decode(getClass()
+                    .getResource("/org/opentripplanner/graph_builder/module/osm/" + name).getPath(), "UTF-8"));
+
+            EntityRecorder sequential = new EntityRecorder();
+            BinaryOpenStreetMapParser parser = new BinaryOpenStreetMapParser(sequential);
+            parser.setParseNodes(false);
+            parser.setParseWays(false);
+            new BlockInputStream(new FileInputStream(file), parser).process();
+            parser.setParseRelations(false);
+            parser.setParseWays(true);
+            new BlockInputStream(new FileInputStream(file), parser).process();
+            parser.setParseNodes(true);
+            parser.setParseWays(false);
+            new BlockInputStream(new FileInputStream(file), parser).process();
+
+            EntityRecorder parallel = new EntityRecorder();
+            try (ParallelBinaryOpenStreetMapReader reader = new ParallelBinaryOpenStreetMapReader(file, 3)) {
+                reader.read(parallel, false, false, true);
+                reader.read(parallel, false, true, false);
+                reader.read(parallel, true, false, false);
+                // Reading again after the block types are known must not change anything.
+                reader.read(parallel, false, false, true);
+            }
+
+            assertFalse(sequential.entities.isEmpty());
+            List<String> expected = new ArrayList<String>(sequential.entities);
+            expected.addAll(sequential.relations);
+            assertEquals(expected, parallel.entities);
+        }
+    }
+
+    private static class EntityRecorder implements OpenStreetMapContentHandler {
+
+        List<String> entities = new ArrayList<String>();
+
+        List<String> relations = new ArrayList<String>();
+
+        @Override
+        public void addNode(OSMNode node) {
+            entities.add(node + " " + node.lat + " " + node.lon + " " + node.getTags());
+        }
+
+        @Override
+        public void addWay(OSMWay way) {
+            entities.add(way + " " + way.getNodeRefs() + " " + way.getTags());
+        }
+
+        @Override
+        public void addRelation(OSMRelation relation) {
+            String entity = "osm relation " + relation.getId() + " " + relation.getMembers().size() + " "
+                    + relation.getTags();
+            entities.add(entity);
+            relations.add(entity);
+        }
+
+        @Override
+        public void doneFirstPhaseRelations() {
+        }
+
+        @Override
+        public void doneSecondPhaseWays() {
+        }
+
+        @Override
+        public void doneThirdPhaseNodes() {
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.opentripplanner.profile;
+
+import gnu.trove.map.TIntIntMap;
+import junit.framework.TestCase;
+import org.joda.time.LocalDate;
+import org.junit.Test;
+import org.opentripplanner.analyst.cluster.TaskStatistics;
+import org.opentripplanner.analyst.scenario.ConvertToFrequency;
+import org.opentripplanner.analyst.scenario.Scenario;
+import org.opentripplanner.api.parameter.QualifiedModeSet;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+
+import java.util.Arrays;
+
+import static org.opentripplanner.graph_builder.module.FakeGraph.*;
+
+/**
+ * Make sure that RAPTOR searches are reproducible with a fixed random seed, whether the departure minutes are
+ * searched sequentially or in parallel.
+ */
+public class RaptorWorkerTest extends TestCase {
+
+    @Test
+    public void testSeededSearchesAreDeterministic () throws Exception {
+        Graph graph = buildGraphNoTransit();
+        addPerpendicularRoutes(graph);
+        link(graph);
+        graph.index(new DefaultStreetVertexIndexFactory());
+
+        ProfileRequest request = new ProfileRequest();
+        request.date = new LocalDate(2015, 6, 10);
+        request.fromTime = 7 * 3600;
+        request.toTime = 8 * 3600;
+        request.fromLat = request.toLat = 39.9621;
+        request.fromLon = request.toLon = -83.0007;
+        request.accessModes = request.egressModes = request.directModes = new QualifiedModeSet("WALK");
+        request.transitModes = new TraverseModeSet("TRANSIT");
+        request.randomSeed = 1234L;
+
+        // Turn one of the lines near the origin into a frequency line so Monte Carlo draws are made, leaving the others
+        // scheduled so there are several departure minutes to split between tasks.
+        ConvertToFrequency ctf = new ConvertToFrequency();
+        ctf.groupBy = ConvertToFrequency.ConversionGroup.ROUTE_DIRECTION;
+        ctf.routeId = new String [] { "horizontalroute11" };
+        ctf.windowStart = 5 * 3600;
+        ctf.windowEnd = 10 * 3600;
+        request.scenario = new Scenario(0);
+        request.scenario.modifications = Arrays.asList(ctf);
+
+        RaptorWorkerData data = RepeatedRaptorProfileRouter.getRaptorWorkerData(request, graph, null,
+                new TaskStatistics());
+        assertTrue(data.hasFrequencies);
+        assertTrue(data.hasSchedules);
+        TIntIntMap accessTimes = new RepeatedRaptorProfileRouter(graph, request).findInitialStops(false, data);
+        int[] nonTransitTimes = new int[Vertex.getMaxIndex()];
+        Arrays.fill(nonTransitTimes, RaptorWorker.UNREACHED);
+
+        PropagatedTimesStore sequential1 = run(graph, request, data, accessTimes, nonTransitTimes, false);
+        PropagatedTimesStore sequential2 = run(graph, request, data, accessTimes, nonTransitTimes, false);
+        PropagatedTimesStore parallel1 = run(graph, request, data, accessTimes, nonTransitTimes, true);
+        PropagatedTimesStore parallel2 = run(graph, request, data, accessTimes, nonTransitTimes, true);
+
+        assertTrue(Arrays.equals(sequential1.avgs, sequential2.avgs));
+        assertTrue(Arrays.equals(sequential1.mins, sequential2.mins));
+        assertTrue(Arrays.equals(sequential1.maxs, sequential2.maxs));
+
+        assertTrue(Arrays.equals(parallel1.avgs, parallel2.avgs));
+        assertTrue(Arrays.equals(parallel1.mins, parallel2.mins));
+        assertTrue(Arrays.equals(parallel1.maxs, parallel2.maxs));
+
+        // The best case of every minute does not depend on which block it was searched in.
+        assertTrue(Arrays.equals(sequential1.mins, parallel1.mins));
+    }
+
+    private static PropagatedTimesStore run (Graph graph, ProfileRequest request, RaptorWorkerData data,
+                                             TIntIntMap accessTimes, int[] nonTransitTimes, boolean parallel) {
+        RaptorWorker worker = new RaptorWorker(data, request);
+        worker.parallel = parallel;
+        return worker.runRaptor(graph, accessTimes, nonTransitTimes, new TaskStatistics());
+    }
+}
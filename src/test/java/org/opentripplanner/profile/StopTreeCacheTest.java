@@ -0,0 +1,67 @@
+package org.opentripplanner.profile;
+
+import junit.framework.TestCase;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.GraphIndex;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+import org.opentripplanner.routing.vertextype.TransitStop;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.opentripplanner.graph_builder.module.FakeGraph.*;
+
+public class StopTreeCacheTest extends TestCase {
+
+    /** A cache saved with a graph must still point to the same vertices once they are given new indexes on load. */
+    public void testSavedWithGraph () throws Exception {
+        Graph graph = buildGraphNoTransit();
+        addTransit(graph);
+        link(graph);
+        graph.index(new DefaultStreetVertexIndexFactory());
+
+        StopTreeCache cache = new StopTreeCache(graph, GraphIndex.MAX_WALK_METERS);
+        Map<String, Map<String, Integer>> before = byLabel(cache, graph);
+        assertFalse(before.isEmpty());
+
+        // propagateStop must agree with the distances returned for the stop.
+        TransitStop stop = cache.getStops().get(0);
+        int[] times = new int[Vertex.getMaxIndex()];
+        cache.propagateStop(stop, 100, 1.0, times);
+        int[] distances = cache.getDistancesForStop(stop);
+        assertTrue(distances.length > 0);
+        for (int i = 0; i < distances.length; i += 2) {
+            assertEquals(100 + distances[i + 1], times[distances[i]]);
+        }
+
+        graph.putService(StopTreeCache.class, cache);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        graph.save(new ObjectOutputStream(bytes));
+        Graph loaded = Graph.load(new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())),
+                Graph.LoadLevel.FULL);
+
+        // The saved cache is used rather than built again, and its trees lead to the same vertices.
+        StopTreeCache loadedCache = loaded.index.getStopTreeCache();
+        assertSame(loaded.getService(StopTreeCache.class), loadedCache);
+        assertEquals(before, byLabel(loadedCache, loaded));
+    }
+
+    private static Map<String, Map<String, Integer>> byLabel (StopTreeCache cache, Graph graph) {
+        Map<String, Map<String, Integer>> ret = new HashMap<>();
+        for (TransitStop stop : cache.getStops()) {
+            Map<String, Integer> tree = new HashMap<>();
+            int[] distances = cache.getDistancesForStop(stop);
+            for (int i = 0; i < distances.length; i += 2) {
+                tree.put(graph.getVertexById(distances[i]).getLabel(), distances[i + 1]);
+            }
+            ret.put(stop.getLabel(), tree);
+        }
+        return ret;
+    }
+
+}
@@ -0,0 +1,65 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.algorithm.strategies;
+
+import junit.framework.TestCase;
+import org.opentripplanner.ConstantsForTests;
+import org.opentripplanner.routing.algorithm.AStar;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.spt.GraphPath;
+import org.opentripplanner.util.TestUtils;
+
+public class InterleavedBidirectionalHeuristicTest extends TestCase {
+
+    private static final String[][] STOP_PAIRS = {
+            { "8371", "8374" }, { "8374", "8371" }, { "10579", "8371" }, { "8389", "1252" }, { "10428", "4231" }
+    };
+
+    /** Running the backward search on another thread must not change the paths found, only how fast. */
+    public void testConcurrentSearchFindsSameWeights() {
+        Graph graph = ConstantsForTests.getInstance().getPortlandGraph();
+        String feedId = graph.getFeedIds().iterator().next();
+        for (String[] pair : STOP_PAIRS) {
+            Vertex from = graph.getVertex(feedId + ":" + pair[0]);
+            Vertex to = graph.getVertex(feedId + ":" + pair[1]);
+            assertNotNull("stop " + pair[0], from);
+            assertNotNull("stop " + pair[1], to);
+            GraphPath trivial = route(graph, from, to, false, new TrivialRemainingWeightHeuristic());
+            GraphPath interleaved = route(graph, from, to, false, new InterleavedBidirectionalHeuristic());
+            InterleavedBidirectionalHeuristic concurrentHeuristic = new InterleavedBidirectionalHeuristic();
+            GraphPath concurrent = route(graph, from, to, true, concurrentHeuristic);
+            concurrentHeuristic.close();
+            if (trivial == null) {
+                assertNull(interleaved);
+                assertNull(concurrent);
+                continue;
+            }
+            assertEquals(trivial.getWeight(), interleaved.getWeight(), 1e-6);
+            assertEquals(trivial.getWeight(), concurrent.getWeight(), 1e-6);
+        }
+    }
+
+    private GraphPath route(Graph graph, Vertex from, Vertex to, boolean concurrent,
+                            RemainingWeightHeuristic heuristic) {
+        RoutingRequest options = new RoutingRequest();
+        options.dateTime = TestUtils.dateInSeconds("America/Los_Angeles", 2009, 11, 1, 12, 34, 25);
+        options.concurrentHeuristic = concurrent;
+        options.setRoutingContext(graph, from, to);
+        options.rctx.remainingWeightHeuristic = heuristic;
+        return new AStar().getShortestPathTree(options).getPath(to, true);
+    }
+
+}
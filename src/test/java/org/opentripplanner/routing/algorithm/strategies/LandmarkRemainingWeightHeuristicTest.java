@@ -0,0 +1,190 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.algorithm.strategies;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
+import org.opentripplanner.graph_builder.module.LandmarkModule;
+import org.opentripplanner.routing.algorithm.AStar;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.OptimizeType;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.spt.GraphPath;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+import org.opentripplanner.util.NonLocalizedString;
+
+import static org.junit.Assert.*;
+
+public class LandmarkRemainingWeightHeuristicTest {
+
+    private static final int SIZE = 8;
+
+    private Graph graph;
+
+    private LandmarkDistances landmarks;
+
+    /**
+     * A grid of streets with a river between columns 3 and 4, crossed by a single bridge on the last row: the
+     * Euclidean heuristic is very optimistic across the river, the landmarks are not.
+     */
+    @Before
+    public void setUp() {
+        graph = new Graph();
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                new IntersectionVertex(graph, label(row, col), -122 + col * 0.001, 47 + row * 0.001);
+            }
+        }
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                if (col + 1 < SIZE && (col != 3 || row == SIZE - 1)) {
+                    street(label(row, col), label(row, col + 1));
+                }
+                if (row + 1 < SIZE) {
+                    street(label(row, col), label(row + 1, col));
+                }
+            }
+        }
+        new LandmarkModule(4).buildGraph(graph, null);
+        landmarks = graph.getService(LandmarkDistances.class);
+    }
+
+    @Test
+    public void testBoundsAreAdmissibleAndTighterThanEuclidean() {
+        assertNotNull(landmarks);
+        assertEquals(4, landmarks.getLandmarkCount());
+        assertEquals(SIZE * SIZE, landmarks.getVertexCount());
+
+        for (int from = 0; from < SIZE * SIZE; from += 5) {
+            for (int to = 0; to < SIZE * SIZE; to += 3) {
+                Vertex a = graph.getVertex(label(from / SIZE, from % SIZE));
+                Vertex b = graph.getVertex(label(to / SIZE, to % SIZE));
+                if (a == b) {
+                    continue;
+                }
+                GraphPath path = route(a, b, false, new EuclideanRemainingWeightHeuristic());
+                double meters = 0;
+                for (State s : path.states) {
+                    if (s.getBackEdge() != null) {
+                        meters += s.getBackEdge().getDistance();
+                    }
+                }
+                int bound = landmarks.lowerBound(landmarks.getPosition(a), landmarks.getPosition(b));
+                assertTrue(bound <= Math.round(meters * 1000));
+            }
+        }
+
+        // Across the river, the street distance is much longer than the straight line.
+        Vertex west = graph.getVertex(label(0, 3));
+        Vertex east = graph.getVertex(label(0, 4));
+        double straight = SphericalDistanceLibrary.fastDistance(west.getCoordinate(), east.getCoordinate());
+        int bound = landmarks.lowerBound(landmarks.getPosition(west), landmarks.getPosition(east));
+        assertTrue(bound / 1000.0 > 5 * straight);
+    }
+
+    @Test
+    public void testSamePathsAsEuclidean() {
+        for (boolean arriveBy : new boolean[] { false, true }) {
+            Vertex a = graph.getVertex(label(0, 0));
+            Vertex b = graph.getVertex(label(2, 6));
+            GraphPath euclidean = route(a, b, arriveBy, new EuclideanRemainingWeightHeuristic());
+            GraphPath landmark = route(a, b, arriveBy, new LandmarkRemainingWeightHeuristic(landmarks));
+            assertEquals(euclidean.getWeight(), landmark.getWeight(), 1e-6);
+            assertEquals(euclidean.states.size(), landmark.states.size());
+        }
+    }
+
+    /** Driving runs at the speed of the street, which can be higher than the requested car speed. */
+    @Test
+    public void testAdmissibleWhenDriving() {
+        for (Edge e : graph.getEdges()) {
+            ((StreetEdge) e).setCarSpeed(30);
+        }
+        RoutingRequest options = new RoutingRequest(TraverseMode.CAR);
+        options.carSpeed = 10;
+        assertAdmissible(options);
+    }
+
+    /** Safe streets along the first row make cycling there cheaper than its length at the bicycle speed. */
+    @Test
+    public void testAdmissibleWhenCyclingSafely() {
+        for (Edge e : graph.getEdges()) {
+            if (e.getFromVertex().getLabel().startsWith("v_1_") && e.getToVertex().getLabel().startsWith("v_1_")) {
+                ((StreetEdge) e).setBicycleSafetyFactor(0.1f);
+            }
+        }
+        RoutingRequest options = new RoutingRequest(TraverseMode.BICYCLE, OptimizeType.SAFE);
+        assertAdmissible(options);
+    }
+
+    /**
+     * Checks that the heuristic never overestimates the remaining weight along the paths it finds, and that they are
+     * as good as those found without a heuristic.
+     */
+    private void assertAdmissible(RoutingRequest template) {
+        Vertex a = graph.getVertex(label(0, 0));
+        Vertex b = graph.getVertex(label(2, 6));
+        for (boolean arriveBy : new boolean[] { false, true }) {
+            GraphPath trivial = route(template.clone(), a, b, arriveBy, new TrivialRemainingWeightHeuristic());
+            LandmarkRemainingWeightHeuristic heuristic = new LandmarkRemainingWeightHeuristic(landmarks);
+            GraphPath landmark = route(template.clone(), a, b, arriveBy, heuristic);
+            assertEquals(trivial.getWeight(), landmark.getWeight(), 1e-6);
+            if (!arriveBy) {
+                for (State s : trivial.states) {
+                    double remaining = trivial.getWeight() - s.getWeight();
+                    assertTrue(heuristic.estimateRemainingWeight(s) <= remaining + 1e-6);
+                }
+            }
+        }
+    }
+
+    private GraphPath route(Vertex from, Vertex to, boolean arriveBy, RemainingWeightHeuristic heuristic) {
+        return route(new RoutingRequest(), from, to, arriveBy, heuristic);
+    }
+
+    private GraphPath route(RoutingRequest options, Vertex from, Vertex to, boolean arriveBy,
+                            RemainingWeightHeuristic heuristic) {
+        options.setArriveBy(arriveBy);
+        options.setRoutingContext(graph, from, to);
+        options.rctx.remainingWeightHeuristic = heuristic;
+        GraphPath path = new AStar().getShortestPathTree(options).getPath(arriveBy ? from : to, false);
+        assertNotNull(path);
+        return path;
+    }
+
+    private void street(String from, String to) {
+        Vertex a = graph.getVertex(from);
+        Vertex b = graph.getVertex(to);
+        double length = SphericalDistanceLibrary.distance(a.getCoordinate(), b.getCoordinate());
+        new StreetEdge((IntersectionVertex) a, (IntersectionVertex) b,
+                GeometryUtils.makeLineString(a.getLon(), a.getLat(), b.getLon(), b.getLat()),
+                new NonLocalizedString(from + "-" + to), length, StreetTraversalPermission.ALL, false);
+        new StreetEdge((IntersectionVertex) b, (IntersectionVertex) a,
+                GeometryUtils.makeLineString(b.getLon(), b.getLat(), a.getLon(), a.getLat()),
+                new NonLocalizedString(to + "-" + from), length, StreetTraversalPermission.ALL, true);
+    }
+
+    private static String label(int row, int col) {
+        return "v_" + row + "_" + col;
+    }
+
+}
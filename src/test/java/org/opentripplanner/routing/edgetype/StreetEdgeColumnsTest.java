@@ -0,0 +1,215 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.edgetype;
+
+import com.google.common.io.Files;
+import com.vividsolutions.jts.geom.Coordinate;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opentripplanner.common.TurnRestriction;
+import org.opentripplanner.common.TurnRestrictionType;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.common.geometry.PackedCoordinateSequence;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StreetEdgeColumnsTest {
+
+    private File graphFile;
+
+    private File streetFile;
+
+    private Graph graph;
+
+    private StreetEdge main, mainBack, restricted;
+
+    private StreetWithElevationEdge hill;
+
+    private FreeEdge free;
+
+    @Before
+    public void before() throws IOException {
+        graphFile = File.createTempFile("Graph", ".obj");
+        streetFile = new File(graphFile.getParentFile(), graphFile.getName() + ".streets");
+
+        graph = new Graph();
+        IntersectionVertex a = new IntersectionVertex(graph, "a", -122.00, 45.00);
+        IntersectionVertex b = new IntersectionVertex(graph, "b", -122.01, 45.00);
+        IntersectionVertex c = new IntersectionVertex(graph, "c", -122.01, 45.01);
+        main = new StreetEdge(a, b, GeometryUtils.makeLineString(-122.00, 45.00, -122.005, 45.001, -122.01, 45.00),
+                "Main Street", 790, StreetTraversalPermission.ALL, false);
+        mainBack = new StreetEdge(b, a, GeometryUtils.makeLineString(-122.01, 45.00, -122.005, 45.001, -122.00, 45.00),
+                main.getRawName(), 790, StreetTraversalPermission.ALL, true);
+        mainBack.shareData(main);
+        main.wayId = 42;
+        main.setStreetClass(StreetEdge.CLASS_STREET);
+        main.setCarSpeed(13.4f);
+        main.setBicycleSafetyFactor(1.3f);
+
+        hill = new StreetWithElevationEdge(b, c, GeometryUtils.makeLineString(-122.01, 45.00, -122.01, 45.01),
+                "Hill Road", 1110, StreetTraversalPermission.PEDESTRIAN_AND_BICYCLE, false);
+        hill.setElevationProfile(new PackedCoordinateSequence.Double(new Coordinate[] {
+                new Coordinate(0, 10), new Coordinate(500, 60), new Coordinate(1110, 40)
+        }), false);
+        hill.setStairs(true);
+
+        restricted = new StreetEdge(c, a, GeometryUtils.makeLineString(-122.01, 45.01, -122.00, 45.00),
+                "Diagonal", 1400, StreetTraversalPermission.CAR, false);
+        graph.addTurnRestriction(restricted, new TurnRestriction(restricted, main,
+                TurnRestrictionType.NO_TURN, TraverseModeSet.allModes()));
+        free = new FreeEdge(c, b);
+    }
+
+    @After
+    public void after() {
+        graphFile.delete();
+        streetFile.delete();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        graph.save(graphFile, streetFile);
+        Graph loaded = load(streetFile);
+
+        assertEquals(graph.countVertices(), loaded.countVertices());
+        assertEquals(graph.countEdges(), loaded.countEdges());
+
+        StreetEdge loadedMain = (StreetEdge) findEdge(loaded, main);
+        assertSameStreet(main, loadedMain);
+        assertEquals(42, loadedMain.wayId);
+        StreetEdge loadedBack = (StreetEdge) findEdge(loaded, mainBack);
+        assertSameStreet(mainBack, loadedBack);
+        assertSame(loadedMain.getRawName(), loadedBack.getRawName());
+
+        StreetWithElevationEdge loadedHill = (StreetWithElevationEdge) findEdge(loaded, hill);
+        assertSameStreet(hill, loadedHill);
+        assertTrue(loadedHill.isStairs());
+        assertEquals(hill.getMaxSlope(), loadedHill.getMaxSlope(), 0.0);
+        assertEquals(hill.getSlopeWorkCostEffectiveLength(), loadedHill.getSlopeWorkCostEffectiveLength(), 0.0);
+        assertArrayEquals(hill.getElevationProfile().toCoordinateArray(),
+                loadedHill.getElevationProfile().toCoordinateArray());
+
+        Edge loadedFree = findEdge(loaded, free);
+        assertNotNull(loadedFree);
+        assertEquals(free.getId(), loadedFree.getId());
+    }
+
+    /** Edges referenced from elsewhere in the graph must still be the same objects as the edges in the street network. */
+    @Test
+    public void testReferencedEdgesKeepTheirIdentity() throws Exception {
+        graph.save(graphFile, streetFile);
+        Graph loaded = load(streetFile);
+
+        StreetEdge loadedRestricted = (StreetEdge) findEdge(loaded, restricted);
+        StreetEdge loadedMain = (StreetEdge) findEdge(loaded, main);
+        assertSameStreet(restricted, loadedRestricted);
+        List<TurnRestriction> restrictions = loaded.getTurnRestrictions(loadedRestricted);
+        assertEquals(1, restrictions.size());
+        assertSame(loadedRestricted, restrictions.get(0).from);
+        assertSame(loadedMain, restrictions.get(0).to);
+    }
+
+    @Test
+    public void testMissingStreetFile() throws Exception {
+        graph.save(graphFile, streetFile);
+        try {
+            load(null);
+            fail("Loading a columnar graph without its street file should fail.");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testMismatchedStreetFile() throws Exception {
+        graph.save(graphFile, streetFile);
+        File otherGraphFile = File.createTempFile("Graph", ".obj");
+        try {
+            // Saving again gives the street file a different bundle id.
+            graph.save(otherGraphFile, streetFile);
+            load(streetFile);
+            fail("Loading a graph with the street file of another graph should fail.");
+        } catch (IllegalStateException e) {
+            // expected
+        } finally {
+            otherGraphFile.delete();
+        }
+    }
+
+    /** Both file-based entry points must find the street file saved next to the graph file. */
+    @Test
+    public void testLoadFromFileFindsStreetFile() throws Exception {
+        File directory = Files.createTempDir();
+        File file = new File(directory, "Graph.obj");
+        try {
+            graph.save(file, new File(directory, StreetEdgeColumns.FILENAME));
+            for (Graph loaded : new Graph[] { Graph.load(file, Graph.LoadLevel.FULL),
+                    Graph.load(getClass().getClassLoader(), file, Graph.LoadLevel.FULL) }) {
+                assertEquals(graph.countEdges(), loaded.countEdges());
+                assertSameStreet(main, (StreetEdge) findEdge(loaded, main));
+            }
+        } finally {
+            FileUtils.deleteDirectory(directory);
+        }
+    }
+
+    private Graph load(File streetFile) throws Exception {
+        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(graphFile))) {
+            return Graph.load(in, Graph.LoadLevel.FULL, new DefaultStreetVertexIndexFactory(), streetFile);
+        }
+    }
+
+    /** @return the edge of the loaded graph between the vertices with the same labels as the given edge. */
+    private static Edge findEdge(Graph loaded, Edge original) {
+        Vertex from = loaded.getVertex(original.getFromVertex().getLabel());
+        for (Edge e : from.getOutgoing()) {
+            if (e.getClass() == original.getClass()
+                    && e.getToVertex().getLabel().equals(original.getToVertex().getLabel())) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    private static void assertSameStreet(StreetEdge expected, StreetEdge actual) {
+        assertNotNull(actual);
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getDistance(), actual.getDistance(), 0.0);
+        assertEquals(expected.getPermission(), actual.getPermission());
+        assertEquals(expected.getStreetClass(), actual.getStreetClass());
+        assertEquals(expected.getCarSpeed(), actual.getCarSpeed(), 0.0f);
+        assertEquals(expected.getBicycleSafetyFactor(), actual.getBicycleSafetyFactor(), 0.0f);
+        assertEquals(expected.getInAngle(), actual.getInAngle());
+        assertEquals(expected.getOutAngle(), actual.getOutAngle());
+        assertEquals(expected.isBack(), actual.isBack());
+        assertEquals(expected.isWheelchairAccessible(), actual.isWheelchairAccessible());
+        assertTrue(expected.getGeometry().equalsExact(actual.getGeometry()));
+    }
+
+}
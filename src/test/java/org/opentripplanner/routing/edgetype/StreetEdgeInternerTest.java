@@ -0,0 +1,75 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.edgetype;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.LineString;
+import org.junit.Test;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.common.geometry.PackedCoordinateSequence;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+import org.opentripplanner.util.NonLocalizedString;
+
+import static org.junit.Assert.*;
+
+public class StreetEdgeInternerTest {
+
+    @Test
+    public void testEqualDataIsShared() {
+        Graph graph = new Graph();
+        IntersectionVertex a = new IntersectionVertex(graph, "a", -122.00, 45.00);
+        IntersectionVertex b = new IntersectionVertex(graph, "b", -122.01, 45.00);
+        IntersectionVertex c = new IntersectionVertex(graph, "c", -122.00, 45.01);
+        IntersectionVertex d = new IntersectionVertex(graph, "d", -122.01, 45.01);
+
+        // Two parallel streets with the same name and the same shape relative to their endpoints, and a third one.
+        StreetEdge ab = new StreetEdge(a, b, GeometryUtils.makeLineString(-122.00, 45.00, -122.005, 45.001, -122.01, 45.00),
+                new NonLocalizedString("Main Street"), 790, StreetTraversalPermission.ALL, false);
+        StreetEdge cd = new StreetEdge(c, d, GeometryUtils.makeLineString(-122.00, 45.01, -122.005, 45.011, -122.01, 45.01),
+                new NonLocalizedString("Main Street"), 790, StreetTraversalPermission.ALL, false);
+        StreetWithElevationEdge ac = new StreetWithElevationEdge(a, c, GeometryUtils.makeLineString(-122.00, 45.00, -122.001, 45.005, -122.00, 45.01),
+                new NonLocalizedString("Hill Road"), 1110, StreetTraversalPermission.ALL, false);
+        StreetWithElevationEdge bd = new StreetWithElevationEdge(b, d, GeometryUtils.makeLineString(-122.01, 45.00, -122.01, 45.01),
+                new NonLocalizedString("Hill Road"), 1110, StreetTraversalPermission.ALL, false);
+        for (StreetWithElevationEdge e : new StreetWithElevationEdge[] { ac, bd }) {
+            e.setElevationProfile(new PackedCoordinateSequence.Double(new Coordinate[] {
+                    new Coordinate(0, 10), new Coordinate(1110, 40)
+            }), false);
+        }
+        LineString abGeometry = ab.getGeometry();
+        LineString cdGeometry = cd.getGeometry();
+        assertNotSame(ab.getRawName(), cd.getRawName());
+
+        StreetEdgeInterner interner = new StreetEdgeInterner();
+        for (StreetEdge e : new StreetEdge[] { ab, cd, ac, bd }) {
+            interner.intern(e);
+        }
+
+        assertEquals(4, interner.getEdgeCount());
+        assertEquals(2, interner.getDistinctNameCount());
+        assertSame(ab.getRawName(), cd.getRawName());
+        assertSame(ac.getRawName(), bd.getRawName());
+        assertNotSame(ab.getRawName(), ac.getRawName());
+        assertEquals(1, interner.getSharedGeometryCount());
+        assertEquals(1, interner.getSharedProfileCount());
+        assertTrue(interner.getSavedBytes() > 0);
+
+        // Sharing must not change what the edges look like.
+        assertTrue(abGeometry.equalsExact(ab.getGeometry()));
+        assertTrue(cdGeometry.equalsExact(cd.getGeometry()));
+        assertArrayEquals(ac.getElevationProfile().toCoordinateArray(), bd.getElevationProfile().toCoordinateArray());
+    }
+
+}
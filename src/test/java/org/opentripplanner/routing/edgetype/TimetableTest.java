@@ -16,11 +16,14 @@ package org.opentripplanner.routing.edgetype;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.opentripplanner.util.TestUtils.AUGUST;
 
 import java.io.File;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
 
 import com.google.common.collect.Iterables;
@@ -35,6 +38,8 @@ import org.opentripplanner.gtfs.GtfsContext;
 import org.opentripplanner.gtfs.GtfsLibrary;
 import org.opentripplanner.routing.algorithm.AStar;
 import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.ServiceDay;
+import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.edgetype.factory.GTFSPatternHopFactory;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.graph.Vertex;
@@ -315,4 +320,49 @@ public class TimetableTest {
         updatedTripTimes = timetable.createUpdatedTripTimes(tripUpdate, timeZone, serviceDate); 
         assertNull(updatedTripTimes);
     }
+
+    /**
+     * The binary search over the per-stop trip index must give the same trips as a plain linear scan.
+     * The Portland graph has patterns with enough trips to be indexed.
+     */
+    @Test
+    public void testIndexedSearchMatchesLinearScan() {
+        Graph portland = ConstantsForTests.getInstance().getPortlandGraph();
+        RoutingRequest options = new RoutingRequest();
+        options.setDummyRoutingContext(portland);
+        long midnight = TestUtils.dateInSeconds("America/Los_Angeles", 2009, 11, 2, 0, 0, 0);
+        Set<TripPattern> tripPatterns = new HashSet<TripPattern>();
+        for (TransitBoardAlight tba : Iterables.filter(portland.getEdges(), TransitBoardAlight.class)) {
+            tripPatterns.add(tba.getPattern());
+        }
+        for (TripPattern tripPattern : tripPatterns) {
+            Timetable table = tripPattern.scheduledTimetable;
+            if (table.tripTimes.size() < 16 || !table.frequencyEntries.isEmpty()) continue;
+            ServiceDay serviceDay = new ServiceDay(portland, midnight + 12 * 3600, portland.getCalendarService(),
+                    tripPattern.route.getAgency().getId());
+            for (int stop = 0; stop < tripPattern.getStops().size(); stop++) {
+                for (int t = -3600; t < 30 * 3600; t += 397) {
+                    State s0 = new State(null, midnight + t, options);
+                    assertSame(linearScan(table, serviceDay, stop, t, true),
+                            table.getNextTrip(s0, serviceDay, stop, true));
+                    assertSame(linearScan(table, serviceDay, stop, t, false),
+                            table.getNextTrip(s0, serviceDay, stop, false));
+                }
+            }
+        }
+    }
+
+    /** The reference search: the first-listed trip with the best time at the stop, ignoring transfer rules. */
+    private static TripTimes linearScan(Timetable table, ServiceDay serviceDay, int stop, int time, boolean boarding) {
+        TripTimes best = null;
+        for (TripTimes tt : table.tripTimes) {
+            if (tt.isCanceled() || !serviceDay.serviceRunning(tt.serviceCode)) continue;
+            int t = boarding ? tt.getDepartureTime(stop) : tt.getArrivalTime(stop);
+            if (t < 0 || (boarding ? t < time : t > time)) continue;
+            if (best == null || (boarding ? t < best.getDepartureTime(stop) : t > best.getArrivalTime(stop))) {
+                best = tt;
+            }
+        }
+        return best;
+    }
 }
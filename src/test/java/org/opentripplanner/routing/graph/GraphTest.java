@@ -15,11 +15,21 @@ package org.opentripplanner.routing.graph;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.opentripplanner.util.ArrayUtils.contains;
 
+import java.util.HashSet;
+import java.util.List;
+
 import org.junit.Test;
+import org.opentripplanner.graph_builder.module.FakeGraph;
 import org.opentripplanner.routing.alertpatch.AlertPatch;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+import org.opentripplanner.routing.services.StreetVertexIndexService;
+import org.opentripplanner.routing.vertextype.TransitStop;
+
+import com.vividsolutions.jts.geom.Envelope;
 
 public class GraphTest {
     @Test
@@ -124,4 +134,40 @@ public class GraphTest {
         assertFalse(contains (alertPatches[9], alertPatch2));
         assertFalse(contains (alertPatches[9], alertPatch3));
     }
+
+    /** The indexing stages run concurrently, but must give the same indices as running them one after the other. */
+    @Test
+    public final void testConcurrentIndexMatchesSequential() throws Exception {
+        Graph graph = FakeGraph.buildGraphNoTransit();
+        FakeGraph.addTransitMultipleLines(graph);
+        FakeGraph.link(graph);
+        graph.index(new DefaultStreetVertexIndexFactory());
+
+        int nEdges = 0;
+        for (Vertex v : graph.getVertices()) {
+            assertSame(v, graph.getVertexById(v.getIndex()));
+            for (Edge e : v.getOutgoing()) {
+                assertSame(e, graph.getEdgeById(e.getId()));
+                nEdges++;
+            }
+        }
+        assertTrue(nEdges > 0);
+
+        StreetVertexIndexService sequentialStreetIndex = new DefaultStreetVertexIndexFactory().newIndex(graph);
+        Envelope extent = graph.getExtent();
+        assertEquals(new HashSet<>(sequentialStreetIndex.getVerticesForEnvelope(extent)),
+                new HashSet<>(graph.streetIndex.getVerticesForEnvelope(extent)));
+        assertEquals(new HashSet<>(sequentialStreetIndex.getEdgesForEnvelope(extent)),
+                new HashSet<>(graph.streetIndex.getEdgesForEnvelope(extent)));
+        List<TransitStop> stops = graph.streetIndex.getTransitStopForEnvelope(extent);
+        assertFalse(stops.isEmpty());
+        assertEquals(new HashSet<>(sequentialStreetIndex.getTransitStopForEnvelope(extent)), new HashSet<>(stops));
+
+        GraphIndex sequentialIndex = new GraphIndex(graph);
+        assertFalse(graph.index.patternForId.isEmpty());
+        assertEquals(sequentialIndex.stopForId, graph.index.stopForId);
+        assertEquals(sequentialIndex.tripForId, graph.index.tripForId);
+        assertEquals(sequentialIndex.routeForId, graph.index.routeForId);
+        assertEquals(sequentialIndex.patternForId, graph.index.patternForId);
+    }
 }
@@ -0,0 +1,138 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.graph;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.graph_builder.linking.SimpleStreetSplitter;
+import org.opentripplanner.routing.algorithm.EarliestArrivalSearch;
+import org.opentripplanner.routing.algorithm.GenericDijkstra;
+import org.opentripplanner.routing.bike_rental.BikeRentalStation;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.edgetype.RentABikeOffEdge;
+import org.opentripplanner.routing.edgetype.RentABikeOnEdge;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.spt.ShortestPathTree;
+import org.opentripplanner.routing.vertextype.BikeRentalStationVertex;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests that the searches used for isochrones and travel time surfaces see the real-time entities of the snapshot
+ * held by their routing context, even though those entities are not in the graph.
+ */
+public class RealtimeStreetOverlayTest {
+
+    private Graph graph;
+
+    private IntersectionVertex a;
+
+    private IntersectionVertex b;
+
+    private BikeRentalStationVertex station;
+
+    @Before
+    public void setUp() {
+        graph = new Graph();
+        a = new IntersectionVertex(graph, "a", -122.00, 45.00);
+        b = new IntersectionVertex(graph, "b", -122.01, 45.00);
+        new StreetEdge(a, b, GeometryUtils.makeLineString(-122.00, 45.00, -122.01, 45.00),
+                "Main Street", 790, StreetTraversalPermission.ALL, false);
+        new StreetEdge(b, a, GeometryUtils.makeLineString(-122.01, 45.00, -122.00, 45.00),
+                "Main Street", 790, StreetTraversalPermission.ALL, true);
+
+        BikeRentalStation rentalStation = new BikeRentalStation();
+        rentalStation.id = "1";
+        rentalStation.x = -122.005;
+        rentalStation.y = 45.0001;
+        rentalStation.bikesAvailable = 5;
+        rentalStation.spacesAvailable = 5;
+        station = new BikeRentalStationVertex(null, rentalStation);
+        StreetAttachment attachment = new StreetAttachment(station);
+        attachment.open();
+        try {
+            new SimpleStreetSplitter(graph).link(attachment);
+            new RentABikeOnEdge(station, station, Collections.singleton("default"));
+            new RentABikeOffEdge(station, station, Collections.singleton("default"));
+        } finally {
+            attachment.close();
+        }
+        graph.setStreetAttachments(this, Collections.singletonList(attachment));
+    }
+
+    @Test
+    public void testEarliestArrivalSearchSeesStation() {
+        ShortestPathTree spt = new EarliestArrivalSearch().getShortestPathTree(makeRequest());
+        assertNotNull(spt.getState(station));
+        assertNotNull(spt.getState(b));
+    }
+
+    @Test
+    public void testGenericDijkstraSeesStation() {
+        RoutingRequest options = makeRequest();
+        ShortestPathTree spt = new GenericDijkstra(options).getShortestPathTree(new State(options));
+        assertNotNull(spt.getState(station));
+        assertNotNull(spt.getState(b));
+    }
+
+    /** Searches keep the snapshot of their context, and only the following searches stop seeing a removed station. */
+    @Test
+    public void testSearchKeepsItsSnapshot() {
+        RoutingRequest before = makeRequest();
+        graph.setStreetAttachments(this, Collections.<StreetAttachment>emptyList());
+        assertNotNull(new EarliestArrivalSearch().getShortestPathTree(before).getState(station));
+        ShortestPathTree spt = new EarliestArrivalSearch().getShortestPathTree(makeRequest());
+        assertNull(spt.getState(station));
+        assertNotNull(spt.getState(b));
+    }
+
+    /** Availability is published with the attachment, which is kept as long as the station does not move. */
+    @Test
+    public void testAvailabilityFollowsSnapshot() {
+        RealtimeStreetOverlay before = graph.getRealtimeStreetOverlay();
+        StreetAttachment attachment = before.getAttachments(this).get(0);
+        BikeRentalStation emptied = new BikeRentalStation();
+        emptied.id = "1";
+        emptied.bikesAvailable = 0;
+        emptied.spacesAvailable = 10;
+        graph.setStreetAttachments(this, Collections.singletonList(attachment),
+                Collections.singletonMap(station, emptied));
+
+        RealtimeStreetOverlay after = graph.getRealtimeStreetOverlay();
+        assertSame(attachment, after.getAttachments(this).get(0));
+        assertEquals(0, station.getBikesAvailable(after));
+        assertEquals(10, station.getSpacesAvailable(after));
+        assertEquals(5, station.getBikesAvailable(before));
+        assertEquals(5, station.getSpacesAvailable(before));
+    }
+
+    private RoutingRequest makeRequest() {
+        RoutingRequest options = new RoutingRequest(new TraverseModeSet("BICYCLE,WALK"));
+        options.allowBikeRental = true;
+        options.dateTime = 1000000000L;
+        options.setRoutingContext(graph, a, b);
+        return options;
+    }
+
+}
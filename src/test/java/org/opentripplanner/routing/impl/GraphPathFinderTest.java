@@ -0,0 +1,109 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.impl;
+
+import junit.framework.TestCase;
+import org.opentripplanner.ConstantsForTests;
+import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.routing.algorithm.AStar;
+import org.opentripplanner.routing.core.RoutingContext;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.spt.DominanceFunction;
+import org.opentripplanner.routing.spt.GraphPath;
+import org.opentripplanner.routing.spt.ShortestPathTree;
+import org.opentripplanner.standalone.Router;
+import org.opentripplanner.util.TestUtils;
+
+import java.util.List;
+
+/**
+ * Searches with request-scoped linking keep the links of their origin and destination out of the graph. The reversed
+ * searches used to compact legs must still be able to reach them.
+ */
+public class GraphPathFinderTest extends TestCase {
+
+    private Graph graph;
+
+    private Vertex firstStop;
+
+    private Vertex lastStop;
+
+    private long startTime;
+
+    @Override
+    protected void setUp() {
+        graph = ConstantsForTests.getInstance().getPortlandGraph();
+        String feedId = graph.getFeedIds().iterator().next();
+        firstStop = graph.getVertex(feedId + ":8371");
+        lastStop = graph.getVertex(feedId + ":8374");
+        assertNotNull(firstStop);
+        assertNotNull(lastStop);
+        startTime = TestUtils.dateInSeconds("America/Los_Angeles", 2009, 11, 1, 12, 34, 25);
+    }
+
+    public void testCompactLegsWithRequestScopedLinking() {
+        RoutingRequest options = makeRequest();
+        options.setModes(new TraverseModeSet("WALK,TRANSIT"));
+        options.compactLegsByReversedSearch = true;
+        List<GraphPath> paths = new GraphPathFinder(new Router("TEST", graph)).graphPathFinderEntryPoint(options);
+        assertFalse(paths.isEmpty());
+        for (GraphPath path : paths) {
+            assertSame(options.rctx.fromVertex, path.states.getFirst().getVertex());
+            assertSame(options.rctx.toVertex, path.states.getLast().getVertex());
+        }
+    }
+
+    /** A reversed search from a stop back to the temporary origin only finds it through the forward overlay. */
+    public void testReversedContextSharesTemporaryEdges() {
+        RoutingRequest options = makeRequest();
+        options.setModes(new TraverseModeSet("WALK"));
+        options.setRoutingContext(graph);
+        Vertex origin = options.rctx.fromVertex;
+        assertNotNull(options.rctx.temporaryEdges);
+
+        RoutingRequest reversed = options.clone();
+        reversed.setArriveBy(true);
+        reversed.dominanceFunction = new DominanceFunction.MinimumWeight();
+        reversed.setRoutingContext(graph, origin, firstStop);
+        assertNull(searchToTarget(reversed));
+
+        reversed = options.clone();
+        reversed.setArriveBy(true);
+        reversed.dominanceFunction = new DominanceFunction.MinimumWeight();
+        reversed.rctx = new RoutingContext(reversed, graph, origin, firstStop, options.rctx);
+        assertSame(options.rctx.temporaryEdges, reversed.rctx.temporaryEdges);
+        GraphPath path = searchToTarget(reversed);
+        assertNotNull(path);
+        assertSame(origin, path.states.getFirst().getVertex());
+        options.cleanup();
+    }
+
+    private RoutingRequest makeRequest() {
+        RoutingRequest options = new RoutingRequest();
+        options.dateTime = startTime;
+        options.requestScopedLinking = true;
+        options.from = new GenericLocation(firstStop.getLat() + 0.001, firstStop.getLon());
+        options.to = new GenericLocation(lastStop.getLat() + 0.001, lastStop.getLon());
+        return options;
+    }
+
+    private GraphPath searchToTarget(RoutingRequest options) {
+        ShortestPathTree spt = new AStar().getShortestPathTree(options);
+        return spt.getPath(options.rctx.target, false);
+    }
+
+}
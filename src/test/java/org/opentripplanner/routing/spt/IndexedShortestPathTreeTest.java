@@ -0,0 +1,120 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.spt;
+
+import junit.framework.TestCase;
+import org.opentripplanner.ConstantsForTests;
+import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.routing.algorithm.AStar;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.util.TestUtils;
+
+/**
+ * Check that searches using the vertex-indexed shortest path tree and pooled queues give exactly the same results as
+ * the map-based tree. Their speed and allocation rate are compared by AStarBenchmark in the benchmark profile.
+ */
+public class IndexedShortestPathTreeTest extends TestCase {
+
+    private static final String[][] STOP_PAIRS = {
+            {"8371", "8374"}, {"10579", "8371"}, {"8389", "1252"}, {"10428", "4231"}
+    };
+
+    public void testSamePathsAsMapBasedTree() {
+        Graph graph = ConstantsForTests.getInstance().getPortlandGraph();
+        String feedId = graph.getFeedIds().iterator().next();
+        long startTime = TestUtils.dateInSeconds("America/Los_Angeles", 2009, 11, 1, 12, 34, 25);
+
+        for (String[] pair : STOP_PAIRS) {
+            Vertex start = graph.getVertex(feedId + ":" + pair[0]);
+            Vertex end = graph.getVertex(feedId + ":" + pair[1]);
+            assertNotNull("stop " + pair[0], start);
+            assertNotNull("stop " + pair[1], end);
+            for (DominanceFunction dominanceFunction : new DominanceFunction[] {
+                    new DominanceFunction.Pareto(), new DominanceFunction.MinimumWeight() }) {
+                ShortestPathTree mapTree = search(graph, start, end, startTime, dominanceFunction, false);
+                ShortestPathTree indexedTree = search(graph, start, end, startTime, dominanceFunction, true);
+                assertTrue(indexedTree instanceof IndexedShortestPathTree);
+                assertEquals(mapTree.getVertexCount(), indexedTree.getVertexCount());
+                assertEquals(mapTree.getAllStates().size(), indexedTree.getAllStates().size());
+                assertEquals(mapTree.getVertices(), indexedTree.getVertices());
+                assertTrue(indexedTree.getVertexCount() > 0);
+                assertSamePath(mapTree.getPath(end, false), indexedTree.getPath(end, false));
+            }
+        }
+    }
+
+    /** Temporary origin and destination vertices are outside the graph's index range and are kept aside. */
+    public void testSamePathsBetweenTemporaryVertices() {
+        Graph graph = ConstantsForTests.getInstance().getPortlandGraph();
+        String feedId = graph.getFeedIds().iterator().next();
+        Vertex start = graph.getVertex(feedId + ":8371");
+        Vertex end = graph.getVertex(feedId + ":8374");
+        assertNotNull(start);
+        assertNotNull(end);
+        long startTime = TestUtils.dateInSeconds("America/Los_Angeles", 2009, 11, 1, 12, 34, 25);
+
+        GraphPath[] paths = new GraphPath[2];
+        for (int i = 0; i < 2; i++) {
+            RoutingRequest options = new RoutingRequest();
+            options.dateTime = startTime;
+            options.worstTime = startTime + 60 * 60;
+            options.indexedSearch = i == 1;
+            options.from = new GenericLocation(start.getLat() + 0.001, start.getLon());
+            options.to = new GenericLocation(end.getLat() + 0.001, end.getLon());
+            options.setRoutingContext(graph);
+            assertTrue(options.rctx.origin.getIndex() >= graph.getVertexIndexLimit());
+            ShortestPathTree spt = new AStar().getShortestPathTree(options);
+            paths[i] = spt.getPath(options.rctx.target, false);
+            assertNotNull(paths[i]);
+            options.cleanup();
+        }
+        assertEquals(paths[0].states.size(), paths[1].states.size());
+        for (int i = 0; i < paths[0].states.size(); i++) {
+            assertEquals(paths[0].states.get(i).getTimeSeconds(), paths[1].states.get(i).getTimeSeconds());
+            assertEquals(paths[0].states.get(i).getWeight(), paths[1].states.get(i).getWeight(), 0.0);
+        }
+    }
+    private ShortestPathTree search(Graph graph, Vertex start, Vertex end, long time,
+                                    DominanceFunction dominanceFunction, boolean indexed) {
+        RoutingRequest options = new RoutingRequest();
+        options.dateTime = time;
+        options.worstTime = time + 60 * 60;
+        options.dominanceFunction = dominanceFunction;
+        options.indexedSearch = indexed;
+        options.setRoutingContext(graph, start, end);
+        ShortestPathTree spt = new AStar().getShortestPathTree(options);
+        options.cleanup();
+        return spt;
+    }
+
+    private void assertSamePath(GraphPath expected, GraphPath actual) {
+        if (expected == null) {
+            assertNull(actual);
+            return;
+        }
+        assertNotNull(actual);
+        assertEquals(expected.states.size(), actual.states.size());
+        for (int i = 0; i < expected.states.size(); i++) {
+            State e = expected.states.get(i);
+            State a = actual.states.get(i);
+            assertSame(e.getVertex(), a.getVertex());
+            assertEquals(e.getTimeSeconds(), a.getTimeSeconds());
+            assertEquals(e.getWeight(), a.getWeight(), 0.0);
+        }
+    }
+
+}
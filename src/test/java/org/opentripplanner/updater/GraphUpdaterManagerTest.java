@@ -0,0 +1,91 @@
+package org.opentripplanner.updater;
+
+import org.junit.Test;
+import org.opentripplanner.routing.graph.Graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+
+public class GraphUpdaterManagerTest {
+
+    /** Queued writes are run highest priority first, and superseded writes of the same feed are dropped. */
+    @Test
+    public void testPrioritiesAndCoalescing() throws Exception {
+        GraphUpdaterManager manager = new GraphUpdaterManager(new Graph());
+        try {
+            final CountDownLatch started = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            manager.execute(graph -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            started.await();
+
+            List<String> applied = new ArrayList<String>();
+            manager.execute(new RecordingWrite(applied, "bikes 1", GraphWriterRunnable.LOW_PRIORITY, "bikes"));
+            manager.execute(new RecordingWrite(applied, "alerts", GraphWriterRunnable.NORMAL_PRIORITY, null));
+            manager.execute(new RecordingWrite(applied, "trips", GraphWriterRunnable.HIGH_PRIORITY, null));
+            manager.execute(new RecordingWrite(applied, "bikes 2", GraphWriterRunnable.LOW_PRIORITY, "bikes"));
+            assertEquals(3, manager.getWriteQueueStatus().queueDepth);
+            assertEquals(1, manager.getWriteQueueStatus().coalesced);
+
+            release.countDown();
+            manager.executeBlocking(new RecordingWrite(applied, "last", GraphWriterRunnable.LOW_PRIORITY, null));
+            assertEquals(Arrays.asList("trips", "alerts", "bikes 2", "last"), applied);
+
+            GraphUpdaterManager.WriteQueueStatus status = manager.getWriteQueueStatus();
+            assertEquals(0, status.queueDepth);
+            assertEquals(5, status.applied);
+            assertEquals(0, status.failed);
+        } finally {
+            manager.stop();
+        }
+    }
+
+    /** A write that records its name when run, and replaces earlier writes with the same key. */
+    private static class RecordingWrite implements GraphWriterRunnable {
+
+        private final List<String> applied;
+
+        private final String name;
+
+        private final int priority;
+
+        private final Object key;
+
+        RecordingWrite(List<String> applied, String name, int priority, Object key) {
+            this.applied = applied;
+            this.name = name;
+            this.priority = priority;
+            this.key = key;
+        }
+
+        @Override
+        public void run(Graph graph) {
+            applied.add(name);
+        }
+
+        @Override
+        public int getPriority() {
+            return priority;
+        }
+
+        @Override
+        public Object getCoalescingKey() {
+            return key;
+        }
+
+        @Override
+        public GraphWriterRunnable coalesce(GraphWriterRunnable later) {
+            return later;
+        }
+    }
+}
@@ -26,6 +26,21 @@ public class GtfsRealtimeFuzzyTripMatcherTest extends GtfsTest {
         assertFalse(trip1.hasTripId());
     }
 
+    public void testMatchSameTripRepeatedly() throws Exception {
+        String feedId = graph.getFeedIds().iterator().next();
+
+        GtfsRealtimeFuzzyTripMatcher matcher = new GtfsRealtimeFuzzyTripMatcher(graph.index);
+        TripDescriptor trip1 = TripDescriptor.newBuilder().setRouteId("1").setDirectionId(0).
+                setStartTime("06:47:00").setStartDate("20090915").build();
+        assertEquals("10W1020", matcher.match(feedId, trip1).getTripId());
+        // The second match reads the index built by the first one
+        assertEquals("10W1020", matcher.match(feedId, trip1).getTripId());
+        trip1 = TripDescriptor.newBuilder().setRouteId("1").setDirectionId(1).
+                setStartTime("06:47:00").setStartDate("20090915").build();
+        // Same start time in the other direction
+        assertFalse("10W1020".equals(matcher.match(feedId, trip1).getTripId()));
+    }
+
     @Override
     public String getFeedName() {
         return "google_transit.zip";
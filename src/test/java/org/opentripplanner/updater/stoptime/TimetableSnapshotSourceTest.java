@@ -216,6 +216,42 @@ public class TimetableSnapshotSourceTest {
         assertEquals(RealTimeState.SCHEDULED, forToday.getTripTimes(tripIndex2).getRealTimeState());
     }
 
+    @Test
+    public void testFullDatasetOnlyAppliesChangedTrips() {
+        final AgencyAndId tripId = new AgencyAndId(feedId, "1.1");
+        final Trip trip = graph.index.tripForId.get(tripId);
+        final TripPattern pattern = graph.index.patternForTrip.get(trip);
+        final int tripIndex = pattern.scheduledTimetable.getTripIndex(tripId);
+
+        final TripUpdate.Builder tripUpdateBuilder = TripUpdate.newBuilder();
+        tripUpdateBuilder.setTrip(TripDescriptor.newBuilder().setTripId("1.1")
+                .setScheduleRelationship(TripDescriptor.ScheduleRelationship.SCHEDULED));
+        final StopTimeUpdate.Builder stopTimeUpdateBuilder = tripUpdateBuilder.addStopTimeUpdateBuilder();
+        stopTimeUpdateBuilder.setScheduleRelationship(StopTimeUpdate.ScheduleRelationship.SCHEDULED);
+        stopTimeUpdateBuilder.setStopSequence(2);
+        stopTimeUpdateBuilder.getArrivalBuilder().setDelay(1);
+        stopTimeUpdateBuilder.getDepartureBuilder().setDelay(1);
+        tripUpdateBuilder.setTimestamp(1);
+        final TripUpdate tripUpdate = tripUpdateBuilder.build();
+        tripUpdateBuilder.setTimestamp(2);
+        final TripUpdate sameTripUpdate = tripUpdateBuilder.build();
+
+        updater.maxSnapshotFrequency = -1;
+        updater.applyTripUpdates(graph, true, Arrays.asList(tripUpdate), feedId);
+        final Timetable forToday = updater.getTimetableSnapshot().resolve(pattern, serviceDate);
+        assertEquals(1, forToday.getTripTimes(tripIndex).getArrivalDelay(1));
+
+        // The same update with a new timestamp does not copy the timetable again.
+        updater.applyTripUpdates(graph, true, Arrays.asList(sameTripUpdate), feedId);
+        assertSame(forToday, updater.getTimetableSnapshot().resolve(pattern, serviceDate));
+
+        // A trip that is no longer in the feed goes back to its scheduled times.
+        updater.applyTripUpdates(graph, true, Arrays.<TripUpdate>asList(), feedId);
+        final Timetable reset = updater.getTimetableSnapshot().resolve(pattern, serviceDate);
+        assertNotSame(forToday, reset);
+        assertSame(pattern.scheduledTimetable.getTripTimes(tripIndex), reset.getTripTimes(tripIndex));
+    }
+
     @Test
     public void testHandleAddedTrip() throws ParseException {
         // GIVEN
@@ -13,13 +13,17 @@
 
 package org.opentripplanner.updater.stoptime;
 
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
 import org.junit.Test;
 import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.updater.GraphWriterRunnable;
 
 import com.google.transit.realtime.GtfsRealtime.TripUpdate;
 
@@ -42,4 +46,31 @@ public class TripUpdateGraphWriterRunnableTest {
 
         verify(timetableSnapshotSource).applyTripUpdates(graph, fullDataset, updates, agencyId);
     }
+
+    @Test
+    public void testCoalesce() {
+        final TripUpdate first = TripUpdate.newBuilder().buildPartial();
+        final TripUpdate second = TripUpdate.newBuilder().buildPartial();
+        final TripUpdate third = TripUpdate.newBuilder().buildPartial();
+        final TripUpdateGraphWriterRunnable full =
+                new TripUpdateGraphWriterRunnable(true, Collections.singletonList(first), "feed");
+        final TripUpdateGraphWriterRunnable differential =
+                new TripUpdateGraphWriterRunnable(false, Collections.singletonList(second), "feed");
+        final TripUpdateGraphWriterRunnable laterFull =
+                new TripUpdateGraphWriterRunnable(true, Collections.singletonList(third), "feed");
+        final TripUpdateGraphWriterRunnable otherFeed =
+                new TripUpdateGraphWriterRunnable(true, Collections.singletonList(third), "other feed");
+
+        // A differential update is appended to the queued one, keeping it a full dataset.
+        GraphWriterRunnable merged = full.coalesce(differential);
+        Graph graph = mock(Graph.class);
+        TimetableSnapshotSource timetableSnapshotSource = mock(TimetableSnapshotSource.class);
+        graph.timetableSnapshotSource = timetableSnapshotSource;
+        merged.run(graph);
+        verify(timetableSnapshotSource).applyTripUpdates(graph, true, Arrays.asList(first, second), "feed");
+
+        // A later full dataset replaces everything before it.
+        assertSame(laterFull, merged.coalesce(laterFull));
+        assertNull(full.coalesce(otherFeed));
+    }
 }